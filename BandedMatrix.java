@@ -0,0 +1,316 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A rows x cols matrix whose non-zero entries lie within kl diagonals below and ku diagonals
+ *   above the main one (e.g., a finite-difference operator), storing only that band:
+ *   kl + ku + 1 entries per row, so rows * (kl + ku + 1) in all.
+ *
+ *   Entry (i, j) with -kl <= j - i <= ku is stored at i * (kl + ku + 1) + (j - i + kl).  The
+ *   stored part of each row is one contiguous run, so a product with a Vector is one short
+ *   SIMD dot product per row, O(rows * bandwidth) instead of O(rows * cols).  Slots of the
+ *   band that fall outside the matrix (in the first and last rows) stay 0.0.
+ *
+ */
+public class BandedMatrix implements LinearOperator {
+
+	private final int _nRows;       // Number of rows
+	private final int _nCols;       // Number of columns
+	private final int _nLower;      // kl: diagonals stored below the main one
+	private final int _nUpper;      // ku: diagonals stored above the main one
+	private final double[] _adData; // The band, row by row, kl + ku + 1 slots per row
+
+	/** Allocates a new banded matrix, all entries 0.0
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param kl number of diagonals below the main one
+	 * @param ku number of diagonals above the main one
+	 * @throws LinAlgException if a dimension is <= 0, a bandwidth is negative or the band is too large
+	 */
+	public BandedMatrix(int rows, int cols, int kl, int ku) throws LinAlgException {
+		if (rows <= 0 || cols <= 0)
+			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+		if (kl < 0 || ku < 0)
+			throw new LinAlgException("Bandwidths (" + kl + "," + ku + ") cannot be negative");
+		if ((long)rows * ((long)kl + ku + 1) > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Band of (" + rows + "," + cols + ") matrix with bandwidths (" + kl + "," + ku + ") exceeds the maximum array size");
+		_nRows = rows;
+		_nCols = cols;
+		_nLower = kl;
+		_nUpper = ku;
+		_adData = new double[rows * (kl + ku + 1)];
+	}
+
+	/** Creates the banded matrix holding the band of m; the entries of m outside it are ignored
+	 *
+	 * @param m
+	 * @param kl
+	 * @param ku
+	 * @throws LinAlgException if a bandwidth is negative or the band is too large
+	 */
+	public BandedMatrix(Matrix m, int kl, int ku) throws LinAlgException {
+		this(m.getNumRows(), m.getNumCols(), kl, ku);
+		for (int i = 0; i < _nRows; i++)
+			for (int j = rowLo(i), p = slot(i, j); j < rowHi(i); j++, p++)
+				_adData[p] = m.entry(i, j);
+	}
+
+	/** Copy constructor
+	 *
+	 * @param m
+	 */
+	public BandedMatrix(BandedMatrix m) {
+		_nRows = m._nRows;
+		_nCols = m._nCols;
+		_nLower = m._nLower;
+		_nUpper = m._nUpper;
+		_adData = m._adData.clone();
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Returns kl, the number of diagonals stored below the main one
+	 *
+	 * @return
+	 */
+	public int getLowerBandwidth() {
+		return _nLower;
+	}
+
+	/** Returns ku, the number of diagonals stored above the main one
+	 *
+	 * @return
+	 */
+	public int getUpperBandwidth() {
+		return _nUpper;
+	}
+
+	/** Return the scalar value at the given row and column (0.0 outside the band)
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		Structured.checkIndices(row, col, _nRows, _nCols);
+		return inBand(row, col) ? _adData[slot(row, col)] : 0.0;
+	}
+
+	/** Set the value at (row, col), which must be in the band
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds or outside the band
+	 */
+	public void set(int row, int col, double val) throws LinAlgException {
+		Structured.checkIndices(row, col, _nRows, _nCols);
+		if (!inBand(row, col)) {
+			throw new LinAlgException("Cannot set entry (" + row + ", " + col + ") of a matrix with bandwidths (" + _nLower + "," + _nUpper + "): it is outside the band");
+		}
+		_adData[slot(row, col)] = val;
+	}
+
+	/** Returns the transpose of *this*, a cols x rows matrix with the bandwidths swapped
+	 *
+	 * @return
+	 */
+	public BandedMatrix transpose() {
+		BandedMatrix out = new BandedMatrix(_nCols, _nRows, _nUpper, _nLower, new double[_nCols * (_nLower + _nUpper + 1)]);
+		for (int i = 0; i < _nRows; i++)
+			for (int j = rowLo(i), p = slot(i, j); j < rowHi(i); j++, p++)
+				out._adData[out.slot(j, i)] = _adData[p];
+		return out;
+	}
+
+	/** Returns the dense Matrix with the same entries
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		Matrix m = Structured.newMatrix(_nRows, _nCols);
+		double[] data = m.getData();
+		for (int i = 0; i < _nRows; i++)
+			System.arraycopy(_adData, slot(i, rowLo(i)), data, i * _nCols + rowLo(i), rowHi(i) - rowLo(i));
+		return m;
+	}
+
+	/** Returns the product b * m, in O(rows * bandwidth * m columns)
+	 *
+	 * @param b
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if b columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(BandedMatrix b, Matrix m) throws LinAlgException {
+		Structured.checkProduct(b._nCols, m.getNumRows());
+		int cols = m.getNumCols();
+		Matrix out = new Matrix(b._nRows, cols);
+		double[] c = out.getData();
+		for (int i = 0; i < b._nRows; i++)
+			for (int j = b.rowLo(i), p = b.slot(i, j); j < b.rowHi(i); j++, p++)
+				if (b._adData[p] != 0.0)
+					m.axpyRow(b._adData[p], j, 0, cols, c, i * cols);
+		return out;
+	}
+
+	/** Returns the product m * b, in O(m rows * cols * bandwidth)
+	 *
+	 * @param m
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of b rows
+	 */
+	public static Matrix Multiply(Matrix m, BandedMatrix b) throws LinAlgException {
+		Structured.checkProduct(m.getNumCols(), b._nRows);
+		int rows = m.getNumRows(), cols = b._nCols;
+		Matrix out = new Matrix(rows, cols);
+		double[] c = out.getData();
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < b._nRows; j++) { // Row i of the product combines the band rows j of b
+				double a = m.entry(i, j);
+				if (a != 0.0)
+					VectorKernels.INSTANCE.axpy(a, b._adData, b.slot(j, b.rowLo(j)), c, i * cols + b.rowLo(j), b.rowHi(j) - b.rowLo(j));
+			}
+		return out;
+	}
+
+	/** Returns the product of two banded matrices, banded again with bandwidths
+	 *  (kl1 + kl2, ku1 + ku2) (capped by its dimensions)
+	 *
+	 * @param b1
+	 * @param b2
+	 * @return
+	 * @throws LinAlgException if b1 columns do not match the size of b2 rows
+	 */
+	public static BandedMatrix Multiply(BandedMatrix b1, BandedMatrix b2) throws LinAlgException {
+		Structured.checkProduct(b1._nCols, b2._nRows);
+		int kl = (int)Math.min((long)b1._nLower + b2._nLower, b1._nRows - 1);
+		int ku = (int)Math.min((long)b1._nUpper + b2._nUpper, b2._nCols - 1);
+		BandedMatrix out = new BandedMatrix(b1._nRows, b2._nCols, kl, ku);
+		for (int i = 0; i < b1._nRows; i++)
+			for (int j = b1.rowLo(i), p = b1.slot(i, j); j < b1.rowHi(i); j++, p++) {
+				double a = b1._adData[p];
+				if (a != 0.0) // Row j of b2 lands inside the band of row i of the product
+					VectorKernels.INSTANCE.axpy(a, b2._adData, b2.slot(j, b2.rowLo(j)), out._adData, out.slot(i, b2.rowLo(j)), b2.rowHi(j) - b2.rowLo(j));
+			}
+		return out;
+	}
+
+	/** Returns the product b * v, in O(rows * bandwidth)
+	 *
+	 * @param b
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if b columns do not match the size of v
+	 */
+	public static Vector Multiply(BandedMatrix b, Vector v) throws LinAlgException {
+		Vector out = new Vector(b._nRows);
+		b.apply(v, out);
+		return out;
+	}
+
+	/** Writes *this* times in into out: one dot product over the band of each row
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, false);
+		double[] x = in.getValues(), y = out.getValues();
+		for (int i = 0; i < _nRows; i++) {
+			int lo = rowLo(i);
+			y[i] = VectorKernels.INSTANCE.dot(_adData, slot(i, lo), x, lo, rowHi(i) - lo);
+		}
+		out.modified();
+	}
+
+	/** Writes the transpose of *this* times in into out: one axpy over the band of each row
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, true);
+		double[] x = in.getValues(), y = out.getValues();
+		Arrays.fill(y, 0, _nCols, 0.0);
+		for (int i = 0; i < _nRows; i++) {
+			int lo = rowLo(i);
+			if (x[i] != 0.0)
+				VectorKernels.INSTANCE.axpy(x[i], _adData, slot(i, lo), y, lo, rowHi(i) - lo);
+		}
+		out.modified();
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** One "[ ... ]" line per row, like Matrix.toString() */
+	@Override
+	public String toString() {
+		return toMatrix().toString();
+	}
+
+	/** Two BandedMatrices are equal iff they have the same dimensions, bandwidths and stored
+	 *  entries (only the band is compared)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof BandedMatrix))
+			return false;
+		BandedMatrix m = (BandedMatrix)o;
+		return _nRows == m._nRows && _nCols == m._nCols && _nLower == m._nLower && _nUpper == m._nUpper
+				&& Structured.sameValues(_adData, m._adData, _adData.length);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = ((31 * _nRows + _nCols) * 31 + _nLower) * 31 + _nUpper;
+		return 31 * hash + Structured.hashValues(_adData, _adData.length);
+	}
+
+	private BandedMatrix(int rows, int cols, int kl, int ku, double[] data) {
+		_nRows = rows;
+		_nCols = cols;
+		_nLower = kl;
+		_nUpper = ku;
+		_adData = data;
+	}
+
+	private boolean inBand(int row, int col) {
+		return col - row >= -_nLower && col - row <= _nUpper;
+	}
+
+	/** First column stored in row i */
+	private int rowLo(int i) {
+		return Math.min(_nCols, Math.max(0, i - _nLower));
+	}
+
+	/** One past the last column stored in row i (at least rowLo(i), even when the band misses the matrix) */
+	private int rowHi(int i) {
+		return Math.max(rowLo(i), (int)Math.min(_nCols, (long)i + _nUpper + 1));
+	}
+
+	/** Position of (row, col) in the band */
+	private int slot(int row, int col) {
+		return row * (_nLower + _nUpper + 1) + col - row + _nLower;
+	}
+}
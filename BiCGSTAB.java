@@ -0,0 +1,93 @@
+package linalg;
+
+/*** The stabilized biconjugate gradient method (BiCGSTAB, van der Vorst) with right
+ *   preconditioning, for general non-symmetric A.  Each iteration applies A and the
+ *   preconditioner twice and keeps five work vectors (seven with a preconditioner); unlike
+ *   GMRES its memory does not grow with the iteration count.
+ *
+ */
+public class BiCGSTAB extends IterativeSolver {
+
+	/** Creates a solver with the default tolerance and iteration limit and no preconditioner
+	 *
+	 * @throws LinAlgException never (the defaults are valid)
+	 */
+	public BiCGSTAB() throws LinAlgException {
+		this(DEFAULT_TOLERANCE, 0, null);
+	}
+
+	/** Creates a solver with the given relative tolerance and iteration limit (0 for 10 times
+	 *  the dimension) and no preconditioner
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @throws LinAlgException if tolerance is not positive or maxIterations is negative
+	 */
+	public BiCGSTAB(double tolerance, int maxIterations) throws LinAlgException {
+		this(tolerance, maxIterations, null);
+	}
+
+	/** Creates a solver with the given relative tolerance, iteration limit (0 for 10 times the
+	 *  dimension) and preconditioner (null for none)
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param preconditioner
+	 * @throws LinAlgException if tolerance is not positive or maxIterations is negative
+	 */
+	public BiCGSTAB(double tolerance, int maxIterations, LinearOperator preconditioner) throws LinAlgException {
+		super(tolerance, maxIterations, preconditioner);
+	}
+
+	@Override
+	Result iterate(LinearOperator A, Vector b, Vector x, double target, double bNorm, int maxIterations, Workspace ws) throws LinAlgException {
+		int n = b.getDim();
+		Vector r = ws.vector(n), rHat = ws.vector(n), p = ws.vector(n), v = ws.vector(n), t = ws.vector(n);
+		residual(A, b, x, r);
+		double rNorm = Vector.Nrm2(r);
+		if (rNorm <= target)
+			return new Result(true, 0, rNorm / bNorm);
+		boolean preconditioned = getPreconditioner() != null;
+		Vector pHat = preconditioned ? ws.vector(n) : p; // M p
+		Vector sHat = preconditioned ? ws.vector(n) : r; // M s, where s overwrites r
+		System.arraycopy(r.getValues(), 0, rHat.getValues(), 0, n);
+		System.arraycopy(r.getValues(), 0, p.getValues(), 0, n);
+		rHat.modified();
+		p.modified();
+		double rho = Vector.InnerProd(rHat, r);
+		for (int k = 1; k <= maxIterations; k++) {
+			if (preconditioned)
+				precondition(p, pHat);
+			A.apply(pHat, v);
+			double rHatV = Vector.InnerProd(rHat, v);
+			if (rHatV == 0.0)
+				throw new LinAlgException("BiCGSTAB broke down at iteration " + k + ": the shadow residual is orthogonal to A p");
+			double alpha = rho / rHatV;
+			Vector.Axpy(-alpha, v, r); // r now holds s = r - alpha * v
+			Vector.Axpy(alpha, pHat, x);
+			rNorm = Vector.Nrm2(r);
+			if (rNorm <= target)
+				return new Result(true, k, rNorm / bNorm);
+			if (preconditioned)
+				precondition(r, sHat);
+			A.apply(sHat, t);
+			double tt = Vector.InnerProd(t, t);
+			double omega = tt == 0.0 ? 0.0 : Vector.InnerProd(t, r) / tt;
+			Vector.Axpy(omega, sHat, x);
+			Vector.Axpy(-omega, t, r); // r = s - omega * t
+			rNorm = Vector.Nrm2(r);
+			if (rNorm <= target)
+				return new Result(true, k, rNorm / bNorm);
+			if (omega == 0.0)
+				throw new LinAlgException("BiCGSTAB broke down at iteration " + k + ": the stabilizing step vanished");
+			double rhoNext = Vector.InnerProd(rHat, r);
+			if (rhoNext == 0.0)
+				throw new LinAlgException("BiCGSTAB broke down at iteration " + k + ": the residual became orthogonal to the shadow residual");
+			double beta = rhoNext / rho * (alpha / omega);
+			Vector.Axpy(-omega, v, p);
+			Vector.Axpby(1.0, r, beta, p); // p = r + beta * (p - omega * v)
+			rho = rhoNext;
+		}
+		return new Result(false, maxIterations, rNorm / bNorm);
+	}
+}
@@ -0,0 +1,191 @@
+package linalg;
+
+/*** Cholesky factorization A = L L^T of a symmetric positive definite Matrix A, with L
+ *   lower triangular.  It takes half the work of LU and needs no pivoting.
+ *
+ *   Blocked like LAPACK's potrf: for each panel of BLOCK columns the diagonal block is
+ *   factored directly, the panel below it is solved against it, and the trailing lower
+ *   triangle is updated with A22 -= L21 * L21^T, done block column by block column with
+ *   the Gemm engine (only the lower trapezoid of each block column is touched).
+ *
+ *   Only the lower triangle of A is used for the factorization; A is checked to be
+ *   symmetric first (to a relative tolerance of 1e-12 of its largest entry).
+ *
+ */
+public final class CholeskyDecomposition implements Factorization {
+
+	/** Columns per panel */
+	static final int BLOCK = 64;
+
+	/** Largest asymmetry accepted, relative to the largest entry of A */
+	static final double SYMMETRY_TOLERANCE = 1e-12;
+
+	private final int _nDim;
+	private final double[] _adL; // Row-major n x n, L in the lower triangle, zeros above
+
+	/** Factors A
+	 * 
+	 * @param A
+	 * @throws LinAlgException if A is not square, not symmetric or not positive definite
+	 */
+	public CholeskyDecomposition(Matrix A) throws LinAlgException {
+		if (A.getNumRows() != A.getNumCols()) {
+			throw new LinAlgException("Cannot Cholesky factor a " + A.getNumRows() + "x" + A.getNumCols() + " matrix: it must be square");
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		int n = A.getNumRows();
+		_nDim = n;
+		_adL = new Matrix(A).getData();
+		double[] a = _adL;
+		double maxAbs = 0.0;
+		for (int i = 0; i < n * n; i++)
+			maxAbs = Math.max(maxAbs, Math.abs(a[i]));
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				if (Math.abs(a[i * n + j] - a[j * n + i]) > SYMMETRY_TOLERANCE * maxAbs) {
+					throw new LinAlgException("Matrix is not symmetric: entries (" + i + ", " + j + ") and (" + j + ", " + i + ") differ");
+				}
+			}
+		}
+		double[] negL = n > BLOCK ? new double[(n - BLOCK) * BLOCK] : null;
+		for (int k = 0; k < n; k += BLOCK) {
+			int nb = Math.min(BLOCK, n - k);
+			int panelEnd = k + nb;
+			// 1. Factor the diagonal block; columns left of k were already subtracted by step 3
+			for (int i = k; i < panelEnd; i++) {
+				for (int j = k; j <= i; j++) {
+					double s = a[i * n + j] - VectorKernels.INSTANCE.dot(a, i * n + k, a, j * n + k, j - k);
+					if (i == j) {
+						if (!(s > 0.0)) { // Also catches NaN
+							throw new LinAlgException("Matrix is not positive definite: pivot " + i + " is " + s);
+						}
+						a[i * n + i] = Math.sqrt(s);
+					} else {
+						a[i * n + j] = s / a[j * n + j];
+					}
+				}
+			}
+			if (panelEnd == n)
+				break;
+			int rest = n - panelEnd;
+			// 2. L21 = A21 * inverse(L11)^T, row by row
+			for (int i = panelEnd; i < n; i++) {
+				for (int j = k; j < panelEnd; j++) {
+					double s = a[i * n + j] - VectorKernels.INSTANCE.dot(a, i * n + k, a, j * n + k, j - k);
+					a[i * n + j] = s / a[j * n + j];
+				}
+			}
+			// 3. A22 -= L21 * L21^T on the lower trapezoid of each block column
+			for (int i = 0; i < rest; i++)
+				for (int j = 0; j < nb; j++)
+					negL[i * nb + j] = -a[(panelEnd + i) * n + k + j];
+			for (int jb = panelEnd; jb < n; jb += BLOCK) {
+				int jn = Math.min(BLOCK, n - jb);
+				Gemm.multiply(n - jb, jn, nb,
+						negL, (jb - panelEnd) * nb, nb, 1,
+						a, jb * n + k, 1, n,  // L21^T: element (p, c) is L(jb + c, k + p)
+						a, jb * n + jb, n, 1);
+			}
+		}
+		for (int i = 0; i < n; i++) // Clear the (partly updated) upper triangle
+			for (int j = i + 1; j < n; j++)
+				a[i * n + j] = 0.0;
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.CHOLESKY, start, (long)n * n, 1.0 / 3.0 * n * n * n);
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nDim;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nDim;
+	}
+
+	@Override
+	public Vector solve(Vector b) throws LinAlgException {
+		Vector x = new Vector(_nDim);
+		solve(b, x);
+		return x;
+	}
+
+	@Override
+	public void solve(Vector b, Vector x) throws LinAlgException {
+		if (b.getDim() != _nDim || x.getDim() != _nDim) {
+			throw new LinAlgException("Cannot solve a system of dimension " + _nDim + " with vectors of dimension " + b.getDim() + " and " + x.getDim());
+		}
+		int n = _nDim;
+		double[] l = _adL, y = x.getValues();
+		if (x != b)
+			System.arraycopy(b.getValues(), 0, y, 0, n);
+		for (int i = 0; i < n; i++) // L y = b
+			y[i] = (y[i] - VectorKernels.INSTANCE.dot(l, i * n, y, 0, i)) / l[i * n + i];
+		for (int i = n - 1; i >= 0; i--) { // L^T x = y, column by column so rows of L are read contiguously
+			y[i] /= l[i * n + i];
+			if (y[i] != 0.0)
+				VectorKernels.INSTANCE.axpy(-y[i], l, i * n, y, 0, i);
+		}
+		x.modified();
+	}
+
+	@Override
+	public Matrix solve(Matrix B) throws LinAlgException {
+		if (B.getNumRows() != _nDim) {
+			throw new LinAlgException("Cannot solve a system of dimension " + _nDim + " with a right-hand side having " + B.getNumRows() + " rows");
+		}
+		int n = _nDim, m = B.getNumCols();
+		Matrix X = new Matrix(B);
+		double[] l = _adL, x = X.getData();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				double lij = l[i * n + j];
+				if (lij != 0.0)
+					VectorKernels.INSTANCE.axpy(-lij, x, j * m, x, i * m, m);
+			}
+			divideRow(x, i * m, m, l[i * n + i]);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			divideRow(x, i * m, m, l[i * n + i]);
+			for (int j = 0; j < i; j++) {
+				double lij = l[i * n + j];
+				if (lij != 0.0)
+					VectorKernels.INSTANCE.axpy(-lij, x, i * m, x, j * m, m);
+			}
+		}
+		return X;
+	}
+
+	private static void divideRow(double[] x, int off, int m, double d) {
+		for (int c = off; c < off + m; c++)
+			x[c] /= d;
+	}
+
+	/** Returns det(A), the squared product of the diagonal of L
+	 * 
+	 */
+	@Override
+	public double det() {
+		double det = 1.0;
+		for (int i = 0; i < _nDim; i++)
+			det *= _adL[i * _nDim + i];
+		return det * det;
+	}
+
+	@Override
+	public Matrix inverse() throws LinAlgException {
+		return solve(Matrix.GetIdentity(_nDim));
+	}
+
+	/** Returns the lower triangular factor L
+	 * 
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getL() throws LinAlgException {
+		Matrix L = new Matrix(_nDim, _nDim);
+		System.arraycopy(_adL, 0, L.getData(), 0, _nDim * _nDim);
+		return L;
+	}
+}
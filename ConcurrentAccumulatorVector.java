@@ -0,0 +1,322 @@
+package linalg;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/*** A vector that many threads can add into at once without a shared lock, for gradient
+ *   accumulation, histogram counts and similar running totals.
+ *
+ *   Like java.util.concurrent.atomic.DoubleAdder, the value is spread over stripes: each
+ *   stripe is a full-length copy of the vector, and the logical value is the sum of all of
+ *   them.  An update claims one stripe with a single compare-and-set, adds into it with the
+ *   ordinary (SIMD) kernels and releases it.  A thread that finds its stripe claimed moves to
+ *   another one instead of waiting, and when that keeps happening the number of stripes grows,
+ *   up to the number of processors.  Threads therefore settle on stripes of their own, and
+ *   updates proceed in parallel with no cache line written by more than one thread.
+ *
+ *   Each stripe holds getDim() doubles, so the memory used is at most (number of processors) x
+ *   getDim() doubles, and reads (sum, get) cost one pass over every stripe.  Each update is
+ *   atomic: a read sees either all of it or none of it, although a read that runs concurrently
+ *   with updates does not see a single instant of the whole vector.
+ *
+ */
+public class ConcurrentAccumulatorVector {
+
+	private static final int MAX_STRIPES = Math.max(1, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+	/** Doubles of padding before and after each stripe's entries (one 64-byte cache line) */
+	private static final int PAD = 8;
+
+	private static final VarHandle STATE;
+	private static final VarHandle GROWING;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			STATE = lookup.findVarHandle(Stripe.class, "_nState", int.class);
+			GROWING = lookup.findVarHandle(ConcurrentAccumulatorVector.class, "_nGrowing", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** Each thread's current guess at a free stripe (a non-zero hash, reduced modulo the stripe count) */
+	private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> new int[] { mix(Thread.currentThread().getId()) | 1 });
+
+	private final int _nDim;              // Dimension of the vector
+	private volatile Stripe[] _aStripes;   // Length is a power of two, at most MAX_STRIPES
+	@SuppressWarnings("unused")
+	private volatile int _nGrowing;        // 1 while a thread is replacing _aStripes (via GROWING)
+
+	/** One copy of the vector, updated by whichever thread has claimed it */
+	private static final class Stripe {
+		// Padding keeps the claim word of neighbouring stripes on separate cache lines
+		long _p0, _p1, _p2, _p3, _p4, _p5, _p6;
+		volatile int _nState; // 0 when free, 1 while claimed (via STATE)
+		long _q0, _q1, _q2, _q3, _q4, _q5, _q6;
+		final double[] _adVal; // Entries at [PAD, PAD + dim)
+
+		Stripe(int dim) {
+			_adVal = new double[dim + 2 * PAD];
+		}
+
+		boolean tryClaim() {
+			return _nState == 0 && STATE.compareAndSet(this, 0, 1);
+		}
+
+		void claim() {
+			for (int spins = 0; !tryClaim(); spins++) {
+				if (spins < 64)
+					Thread.onSpinWait();
+				else
+					Thread.yield(); // The holder may be descheduled: let it run
+			}
+		}
+
+		void release() {
+			STATE.setRelease(this, 0);
+		}
+	}
+
+	/** Allocates a new accumulator of dimension dim, all entries 0.0
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is < 1
+	 */
+	public ConcurrentAccumulatorVector(int dim) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		if (dim > Integer.MAX_VALUE - 8 - 2 * PAD)
+			throw new LinAlgException("Vector dimension " + dim + " exceeds the maximum array size");
+		_nDim = dim;
+		_aStripes = new Stripe[] { new Stripe(dim) };
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Adds delta to the entry at index
+	 *
+	 * @param index
+	 * @param delta
+	 * @throws LinAlgException if index is out of bounds
+	 */
+	public void add(int index, double delta) throws LinAlgException {
+		if (index < 0 || index >= _nDim) {
+			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+		}
+		Stripe s = claim();
+		s._adVal[PAD + index] += delta;
+		s.release();
+	}
+
+	/** Adds v to *this* elementwise (a single atomic update)
+	 *
+	 * @param v
+	 * @throws LinAlgException if v does not have the dimension of *this*
+	 */
+	public void addInPlace(Vector v) throws LinAlgException {
+		if (v.getDim() != _nDim) {
+			throw new LinAlgException("Cannot add a vector of dimension " + v.getDim() + " to an accumulator of dimension " + _nDim);
+		}
+		Stripe s = claim();
+		VectorKernels.INSTANCE.axpy(1.0, v.getValues(), 0, s._adVal, PAD, _nDim);
+		s.release();
+	}
+
+	/** Adds a * v to *this* elementwise (a single atomic update; e.g., a scaled gradient)
+	 *
+	 * @param a
+	 * @param v
+	 * @throws LinAlgException if v does not have the dimension of *this*
+	 */
+	public void addInPlace(double a, Vector v) throws LinAlgException {
+		if (v.getDim() != _nDim) {
+			throw new LinAlgException("Cannot add a vector of dimension " + v.getDim() + " to an accumulator of dimension " + _nDim);
+		}
+		if (a == 0.0)
+			return;
+		Stripe s = claim();
+		VectorKernels.INSTANCE.axpy(a, v.getValues(), 0, s._adVal, PAD, _nDim);
+		s.release();
+	}
+
+	/** Adds a scalar d to every entry (a single atomic update)
+	 *
+	 * @param d
+	 */
+	public void scalarAddInPlace(double d) {
+		Stripe s = claim();
+		VectorKernels.INSTANCE.scalarAdd(s._adVal, d, s._adVal, PAD, PAD + _nDim);
+		s.release();
+	}
+
+	/** Returns the current total of the entry at index
+	 *
+	 * @param index
+	 * @return
+	 * @throws LinAlgException if index is out of bounds
+	 */
+	public double get(int index) throws LinAlgException {
+		if (index < 0 || index >= _nDim) {
+			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+		}
+		double sum = 0.0;
+		for (Stripe s : _aStripes) {
+			s.claim();
+			sum += s._adVal[PAD + index];
+			s.release();
+		}
+		return sum;
+	}
+
+	/** Returns a new Vector holding the current totals
+	 *
+	 * @return
+	 */
+	public Vector sum() {
+		Vector out = newVector(_nDim);
+		collect(out, false);
+		return out;
+	}
+
+	/** Writes the current totals into out, allocating nothing
+	 *
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void sum(Vector out) throws LinAlgException {
+		checkOutput(out);
+		collect(out, false);
+	}
+
+	/** Returns a new Vector holding the current totals and sets every entry back to 0.0; an
+	 *  update is counted either in the result or in what remains, never in both or neither
+	 *
+	 * @return
+	 */
+	public Vector sumThenReset() {
+		Vector out = newVector(_nDim);
+		collect(out, true);
+		return out;
+	}
+
+	/** Writes the current totals into out and sets every entry back to 0.0 (see sumThenReset())
+	 *
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void sumThenReset(Vector out) throws LinAlgException {
+		checkOutput(out);
+		collect(out, true);
+	}
+
+	/** Sets every entry back to 0.0 */
+	public void reset() {
+		for (Stripe s : _aStripes) {
+			s.claim();
+			Arrays.fill(s._adVal, PAD, PAD + _nDim, 0.0);
+			s.release();
+		}
+	}
+
+	/** Returns the number of stripes currently in use (for diagnostics)
+	 *
+	 * @return
+	 */
+	public int getStripeCount() {
+		return _aStripes.length;
+	}
+
+	/** out = sum of every stripe, each claimed while it is read (and zeroed, if reset) */
+	private void collect(Vector out, boolean reset) {
+		double[] values = out.getValues();
+		Arrays.fill(values, 0, _nDim, 0.0);
+		for (Stripe s : _aStripes) {
+			s.claim();
+			VectorKernels.INSTANCE.axpy(1.0, s._adVal, PAD, values, 0, _nDim);
+			if (reset)
+				Arrays.fill(s._adVal, PAD, PAD + _nDim, 0.0);
+			s.release();
+		}
+		out.modified();
+	}
+
+	/** Claims a stripe for the calling thread: its own one if free, otherwise the next free one
+	 *  it probes, growing the stripes when a full round of probes found them all claimed */
+	private Stripe claim() {
+		int[] probe = PROBE.get();
+		for (;;) {
+			Stripe[] stripes = _aStripes;
+			int mask = stripes.length - 1;
+			int h = probe[0];
+			for (int attempt = 0; attempt <= mask; attempt++) {
+				Stripe s = stripes[h & mask];
+				if (s.tryClaim()) {
+					probe[0] = h; // Start here next time: this stripe is likely to stay free for us
+					return s;
+				}
+				h = next(h);
+			}
+			probe[0] = h;
+			if (stripes.length >= MAX_STRIPES) {
+				// As many stripes as processors: whoever holds ours finishes almost at once
+				Stripe s = stripes[h & mask];
+				s.claim();
+				return s;
+			}
+			grow(stripes);
+		}
+	}
+
+	/** Doubles the stripes, unless another thread already has */
+	private void grow(Stripe[] seen) {
+		if (_aStripes != seen || !GROWING.compareAndSet(this, 0, 1))
+			return;
+		try {
+			if (_aStripes == seen) {
+				Stripe[] stripes = Arrays.copyOf(seen, seen.length * 2);
+				for (int i = seen.length; i < stripes.length; i++)
+					stripes[i] = new Stripe(_nDim);
+				_aStripes = stripes;
+			}
+		} finally {
+			GROWING.setRelease(this, 0);
+		}
+	}
+
+	private void checkOutput(Vector out) throws LinAlgException {
+		if (out.getDim() != _nDim) {
+			throw new LinAlgException("Cannot write a result of dimension " + _nDim + " into a vector of dimension " + out.getDim());
+		}
+	}
+
+	private static Vector newVector(int dim) {
+		try {
+			return new Vector(dim);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: dim >= 1
+		}
+	}
+
+	/** Spreads the bits of a thread id (the 64-bit finalizer of SplitMix64) */
+	private static int mix(long id) {
+		long z = id * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (int)(z ^ (z >>> 31));
+	}
+
+	/** Next probe position (xorshift, as in java.util.concurrent's Striped64) */
+	private static int next(int h) {
+		h ^= h << 13;
+		h ^= h >>> 17;
+		h ^= h << 5;
+		return h;
+	}
+}
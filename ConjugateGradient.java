@@ -0,0 +1,74 @@
+package linalg;
+
+/*** The (preconditioned) conjugate gradient method, for symmetric positive definite A (and a
+ *   symmetric positive definite preconditioner).  Each iteration applies A and the
+ *   preconditioner once and keeps four work vectors (three without a preconditioner).
+ *
+ */
+public class ConjugateGradient extends IterativeSolver {
+
+	/** Creates a solver with the default tolerance and iteration limit and no preconditioner
+	 *
+	 * @throws LinAlgException never (the defaults are valid)
+	 */
+	public ConjugateGradient() throws LinAlgException {
+		this(DEFAULT_TOLERANCE, 0, null);
+	}
+
+	/** Creates a solver with the given relative tolerance and iteration limit (0 for 10 times
+	 *  the dimension) and no preconditioner
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @throws LinAlgException if tolerance is not positive or maxIterations is negative
+	 */
+	public ConjugateGradient(double tolerance, int maxIterations) throws LinAlgException {
+		this(tolerance, maxIterations, null);
+	}
+
+	/** Creates a solver with the given relative tolerance, iteration limit (0 for 10 times the
+	 *  dimension) and preconditioner (null for none)
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param preconditioner
+	 * @throws LinAlgException if tolerance is not positive or maxIterations is negative
+	 */
+	public ConjugateGradient(double tolerance, int maxIterations, LinearOperator preconditioner) throws LinAlgException {
+		super(tolerance, maxIterations, preconditioner);
+	}
+
+	@Override
+	Result iterate(LinearOperator A, Vector b, Vector x, double target, double bNorm, int maxIterations, Workspace ws) throws LinAlgException {
+		int n = b.getDim();
+		Vector r = ws.vector(n), p = ws.vector(n), q = ws.vector(n);
+		residual(A, b, x, r);
+		double rNorm = Vector.Nrm2(r);
+		if (rNorm <= target)
+			return new Result(true, 0, rNorm / bNorm);
+		Vector z = getPreconditioner() != null ? ws.vector(n) : r; // z = M r
+		if (z != r)
+			precondition(r, z);
+		System.arraycopy(z.getValues(), 0, p.getValues(), 0, n);
+		p.modified();
+		double rz = Vector.InnerProd(r, z);
+		for (int k = 1; k <= maxIterations; k++) {
+			A.apply(p, q);
+			double pq = Vector.InnerProd(p, q);
+			if (!(pq > 0.0))
+				throw new LinAlgException("Conjugate gradient broke down at iteration " + k + ": the operator is not positive definite");
+			double alpha = rz / pq;
+			Vector.Axpy(alpha, p, x);
+			Vector.Axpy(-alpha, q, r);
+			rNorm = Vector.Nrm2(r);
+			if (rNorm <= target)
+				return new Result(true, k, rNorm / bNorm);
+			if (z != r)
+				precondition(r, z);
+			double rzNext = Vector.InnerProd(r, z);
+			Vector.Axpby(1.0, z, rzNext / rz, p); // p = z + beta * p
+			rz = rzNext;
+		}
+		return new Result(false, maxIterations, rNorm / bNorm);
+	}
+}
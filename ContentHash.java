@@ -0,0 +1,55 @@
+package linalg;
+
+/*** Content hashes for Matrix and Vector (and FloatMatrix and FloatVector), consistent with
+ *   their equals().
+ *
+ *   A hash is the sum (modulo 2^64) of one mixed term per entry, which depends on the entry's
+ *   value and its logical position, finished by mixing in the shape.  Being a sum, it is kept
+ *   current through a set() in O(1) by swapping the old entry's term for the new one; being
+ *   built from logical positions, it does not depend on the storage layout, so a view hashes
+ *   like its compact copy.  -0.0 hashes like 0.0, since equals() does not tell them apart.
+ *
+ */
+final class ContentHash {
+
+	private ContentHash() {
+	}
+
+	/** The term of an entry with value val at logical position (row-major index) position */
+	static long term(long position, double val) {
+		return mix(Double.doubleToLongBits(val + 0.0) ^ (position * 0x9E3779B97F4A7C15L));
+	}
+
+	/** The sum of the terms of the n entries a[off], ..., a[off + n - 1], at positions 0 .. n - 1 */
+	static long sum(double[] a, int off, int n) {
+		long sum = 0L;
+		for (int i = 0; i < n; i++)
+			sum += term(i, a[off + i]);
+		return sum;
+	}
+
+	/** The sum of the terms of the n float entries a[off], ..., a[off + n - 1], at positions 0 .. n - 1 */
+	static long sum(float[] a, int off, int n) {
+		long sum = 0L;
+		for (int i = 0; i < n; i++)
+			sum += term(i, a[off + i]); // Widening is exact, so equal floats give equal terms
+		return sum;
+	}
+
+	/** The hash of content whose terms add up to sum and whose shape is shape */
+	static long finish(long sum, long shape) {
+		return mix(sum + mix(shape ^ 0xD6E8FEB86659FD93L));
+	}
+
+	/** Folds a 64-bit hash into an int for hashCode() */
+	static int fold(long hash) {
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+	/** The 64-bit finalizer of SplitMix64 (a bijection that spreads every bit over all others) */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
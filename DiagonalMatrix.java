@@ -0,0 +1,232 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A square matrix that is zero off its diagonal, such as the identity, stored as the n
+ *   diagonal entries alone.  Products with it scale rows or columns in O(n^2) (O(n) with a
+ *   Vector or another DiagonalMatrix) instead of the O(n^3) of a dense product.
+ *
+ */
+public class DiagonalMatrix implements LinearOperator {
+
+	private final int _nDim;     // Number of rows and columns
+	private final double[] _adDiag; // Entry (i, i) is _adDiag[i]
+
+	/** Allocates a new n x n diagonal matrix, all entries 0.0
+	 *
+	 * @param n
+	 * @throws LinAlgException if n is <= 0
+	 */
+	public DiagonalMatrix(int n) throws LinAlgException {
+		if (n <= 0)
+			throw new LinAlgException("Size " + n + " must be greater than 0");
+		_nDim = n;
+		_adDiag = new double[n];
+	}
+
+	/** Creates the diagonal matrix diag(d) (d is copied)
+	 *
+	 * @param d
+	 */
+	public DiagonalMatrix(Vector d) {
+		_nDim = d.getDim();
+		_adDiag = Arrays.copyOf(d.getValues(), _nDim);
+	}
+
+	/** Copy constructor
+	 *
+	 * @param m
+	 */
+	public DiagonalMatrix(DiagonalMatrix m) {
+		_nDim = m._nDim;
+		_adDiag = m._adDiag.clone();
+	}
+
+	/** Returns the n x n identity matrix, storing n entries (see Matrix.GetIdentity for a dense one)
+	 *
+	 * @param n
+	 * @return
+	 * @throws LinAlgException if n is <= 0
+	 */
+	public static DiagonalMatrix identity(int n) throws LinAlgException {
+		DiagonalMatrix m = new DiagonalMatrix(n);
+		Arrays.fill(m._adDiag, 1.0);
+		return m;
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nDim;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nDim;
+	}
+
+	/** Return the scalar value at the given row and column (0.0 off the diagonal)
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		return row == col ? _adDiag[row] : 0.0;
+	}
+
+	/** Set the value at (row, col), which must be on the diagonal
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds or row != col
+	 */
+	public void set(int row, int col, double val) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		if (row != col)
+			throw new LinAlgException("Cannot set entry (" + row + ", " + col + ") of a diagonal matrix: it is off the diagonal");
+		_adDiag[row] = val;
+	}
+
+	/** Returns a new Vector holding the diagonal
+	 *
+	 * @return
+	 */
+	public Vector getDiagonal() {
+		Vector v = Structured.newVector(_nDim);
+		System.arraycopy(_adDiag, 0, v.getValues(), 0, _nDim);
+		return v;
+	}
+
+	/** Returns the transpose of *this* (a copy: a diagonal matrix is its own transpose)
+	 *
+	 * @return
+	 */
+	public DiagonalMatrix transpose() {
+		return new DiagonalMatrix(this);
+	}
+
+	/** Returns the dense Matrix with the same entries
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		Matrix m = Structured.newMatrix(_nDim, _nDim);
+		double[] data = m.getData();
+		for (int i = 0; i < _nDim; i++)
+			data[i * (_nDim + 1)] = _adDiag[i];
+		return m;
+	}
+
+	/** Returns the product d * m: row i of m scaled by d(i, i), in O(rows * cols)
+	 *
+	 * @param d
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if d columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(DiagonalMatrix d, Matrix m) throws LinAlgException {
+		Structured.checkProduct(d._nDim, m.getNumRows());
+		int cols = m.getNumCols();
+		Matrix out = new Matrix(d._nDim, cols);
+		double[] c = out.getData();
+		for (int i = 0; i < d._nDim; i++)
+			if (d._adDiag[i] != 0.0)
+				m.axpyRow(d._adDiag[i], i, 0, cols, c, i * cols);
+		return out;
+	}
+
+	/** Returns the product m * d: column j of m scaled by d(j, j), in O(rows * cols)
+	 *
+	 * @param m
+	 * @param d
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of d rows
+	 */
+	public static Matrix Multiply(Matrix m, DiagonalMatrix d) throws LinAlgException {
+		Structured.checkProduct(m.getNumCols(), d._nDim);
+		int rows = m.getNumRows(), cols = d._nDim;
+		Matrix out = new Matrix(rows, cols);
+		double[] c = out.getData();
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				c[i * cols + j] = m.entry(i, j) * d._adDiag[j];
+		return out;
+	}
+
+	/** Returns the product of two diagonal matrices (diagonal again), in O(n)
+	 *
+	 * @param d1
+	 * @param d2
+	 * @return
+	 * @throws LinAlgException if the sizes do not match
+	 */
+	public static DiagonalMatrix Multiply(DiagonalMatrix d1, DiagonalMatrix d2) throws LinAlgException {
+		Structured.checkProduct(d1._nDim, d2._nDim);
+		DiagonalMatrix out = new DiagonalMatrix(d1._nDim);
+		VectorKernels.INSTANCE.mult(d1._adDiag, d2._adDiag, out._adDiag, 0, d1._nDim);
+		return out;
+	}
+
+	/** Returns the product d * v (v scaled elementwise by the diagonal), in O(n)
+	 *
+	 * @param d
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if d columns do not match the size of v
+	 */
+	public static Vector Multiply(DiagonalMatrix d, Vector v) throws LinAlgException {
+		Vector out = new Vector(d._nDim);
+		d.apply(v, out);
+		return out;
+	}
+
+	/** Writes *this* times in into out (in may not be out)
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, false);
+		VectorKernels.INSTANCE.mult(_adDiag, in.getValues(), out.getValues(), 0, _nDim);
+		out.modified();
+	}
+
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		apply(in, out);
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** One "[ ... ]" line per row, like Matrix.toString() */
+	@Override
+	public String toString() {
+		return toMatrix().toString();
+	}
+
+	/** Two DiagonalMatrices are equal iff they have the same size and diagonal (only the
+	 *  n stored entries are compared)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof DiagonalMatrix))
+			return false;
+		DiagonalMatrix m = (DiagonalMatrix)o;
+		return _nDim == m._nDim && Structured.sameValues(_adDiag, m._adDiag, _nDim);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * _nDim + Structured.hashValues(_adDiag, _nDim);
+	}
+}
@@ -0,0 +1,219 @@
+package linalg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/*** Decides whether (and on which ForkJoinPool) the operations in this package run in parallel.
+ *
+ *   A context is immutable.  Pass one explicitly to the overloads that accept it, e.g.,
+ *   Matrix.Multiply(m1, m2, ctx), or install one globally with setDefault() so that the
+ *   ordinary methods pick it up.  The initial default is sequential().
+ *
+ *   Work is only split when an operation touches more than splitSize elements, and the
+ *   split points depend only on the problem size and splitSize (never on the number of
+ *   threads or on scheduling), so parallel reductions such as Vector.InnerProd give the
+ *   same result on every run for a fixed splitSize.
+ *
+ */
+public final class ExecutionContext {
+
+	/** Default number of elements handled by one leaf task (and the sequential cutoff) */
+	public static final int DEFAULT_SPLIT_SIZE = 1 << 15;
+
+	/** Rows and columns of C computed by one task of a parallel Matrix.Multiply */
+	static final int MULTIPLY_TILE = 256;
+
+	private static final ExecutionContext SEQUENTIAL = new ExecutionContext(null, DEFAULT_SPLIT_SIZE);
+
+	private static volatile ExecutionContext _defaultContext = SEQUENTIAL;
+
+	private final ForkJoinPool _pool; // null means run everything on the calling thread
+	private final int _nSplitSize;    // Elements per leaf task; smaller inputs stay sequential
+
+	private ExecutionContext(ForkJoinPool pool, int splitSize) {
+		_pool = pool;
+		_nSplitSize = splitSize;
+	}
+
+	/** Returns the context that runs everything on the calling thread
+	 *
+	 * @return
+	 */
+	public static ExecutionContext sequential() {
+		return SEQUENTIAL;
+	}
+
+	/** Returns a context backed by the common ForkJoinPool with the default split size
+	 *
+	 * @return
+	 */
+	public static ExecutionContext parallel() {
+		return new ExecutionContext(ForkJoinPool.commonPool(), DEFAULT_SPLIT_SIZE);
+	}
+
+	/** Returns a context backed by a new ForkJoinPool with the given parallelism
+	 *  (the pool lives as long as the context, so create it once and reuse it)
+	 *
+	 * @param parallelism
+	 * @return
+	 * @throws LinAlgException if parallelism is < 1
+	 */
+	public static ExecutionContext parallel(int parallelism) throws LinAlgException {
+		if (parallelism < 1)
+			throw new LinAlgException("Parallelism " + parallelism + " cannot be less than 1");
+		return new ExecutionContext(new ForkJoinPool(parallelism), DEFAULT_SPLIT_SIZE);
+	}
+
+	/** Returns a context backed by the given pool that splits work into chunks of splitSize elements
+	 *
+	 * @param pool
+	 * @param splitSize
+	 * @return
+	 * @throws LinAlgException if pool is null or splitSize is < 1
+	 */
+	public static ExecutionContext parallel(ForkJoinPool pool, int splitSize) throws LinAlgException {
+		if (pool == null)
+			throw new LinAlgException("ForkJoinPool cannot be null");
+		if (splitSize < 1)
+			throw new LinAlgException("Split size " + splitSize + " cannot be less than 1");
+		return new ExecutionContext(pool, splitSize);
+	}
+
+	/** Returns the context used by methods that do not take one explicitly
+	 *
+	 * @return
+	 */
+	public static ExecutionContext getDefault() {
+		return _defaultContext;
+	}
+
+	/** Installs the context used by methods that do not take one explicitly
+	 *
+	 * @param ctx
+	 * @throws LinAlgException if ctx is null
+	 */
+	public static void setDefault(ExecutionContext ctx) throws LinAlgException {
+		if (ctx == null)
+			throw new LinAlgException("ExecutionContext cannot be null");
+		_defaultContext = ctx;
+	}
+
+	/** Returns the pool backing this context, or null if it is sequential
+	 *
+	 * @return
+	 */
+	public ForkJoinPool getPool() {
+		return _pool;
+	}
+
+	/** Returns the number of elements handled by one leaf task
+	 *
+	 * @return
+	 */
+	public int getSplitSize() {
+		return _nSplitSize;
+	}
+
+	/** True if work of the given size (in elements) should be split across the pool
+	 *
+	 * @param work
+	 * @return
+	 */
+	boolean shouldSplit(long work) {
+		return _pool != null && work > _nSplitSize;
+	}
+
+	/** A loop body over the half-open index range [lo, hi) */
+	interface RangeBody {
+		void run(int lo, int hi);
+	}
+
+	/** A partial reduction over the half-open index range [lo, hi) */
+	interface RangeSum {
+		double sum(int lo, int hi);
+	}
+
+	/** Runs body over [0, n) in chunks of at most grain indices, in parallel when this
+	 *  context has a pool and there is more than one chunk
+	 *
+	 * @param n
+	 * @param grain
+	 * @param body
+	 */
+	void forRange(int n, int grain, RangeBody body) {
+		if (_pool == null || n <= grain) {
+			body.run(0, n);
+			return;
+		}
+		_pool.invoke(new RangeAction(0, n, grain, body));
+	}
+
+	/** Sums body over [0, n) in chunks of at most grain indices; partial sums are combined
+	 *  pairwise along a tree whose shape depends only on n and grain
+	 *
+	 * @param n
+	 * @param grain
+	 * @param body
+	 * @return
+	 */
+	double sumRange(int n, int grain, RangeSum body) {
+		if (_pool == null || n <= grain)
+			return body.sum(0, n);
+		return _pool.invoke(new RangeTask(0, n, grain, body));
+	}
+
+	/** Splits [lo, hi) on a multiple of grain so the leaves are the same chunks every run */
+	private static int split(int lo, int hi, int grain) {
+		int chunks = (hi - lo + grain - 1) / grain;
+		return lo + (chunks / 2) * grain;
+	}
+
+	private static final class RangeAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int _nLo, _nHi, _nGrain;
+		private final RangeBody _body;
+
+		RangeAction(int lo, int hi, int grain, RangeBody body) {
+			_nLo = lo;
+			_nHi = hi;
+			_nGrain = grain;
+			_body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (_nHi - _nLo <= _nGrain) {
+				_body.run(_nLo, _nHi);
+				return;
+			}
+			int mid = split(_nLo, _nHi, _nGrain);
+			invokeAll(new RangeAction(_nLo, mid, _nGrain, _body), new RangeAction(mid, _nHi, _nGrain, _body));
+		}
+	}
+
+	private static final class RangeTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		private final int _nLo, _nHi, _nGrain;
+		private final RangeSum _body;
+
+		RangeTask(int lo, int hi, int grain, RangeSum body) {
+			_nLo = lo;
+			_nHi = hi;
+			_nGrain = grain;
+			_body = body;
+		}
+
+		@Override
+		protected Double compute() {
+			if (_nHi - _nLo <= _nGrain)
+				return _body.sum(_nLo, _nHi);
+			int mid = split(_nLo, _nHi, _nGrain);
+			RangeTask left = new RangeTask(_nLo, mid, _nGrain, _body);
+			RangeTask right = new RangeTask(mid, _nHi, _nGrain, _body);
+			left.fork();
+			double rightSum = right.compute();
+			return left.join() + rightSum; // Always left + right, regardless of which finished first
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package linalg;
+
+/*** A factored square (or, for QR, tall) matrix A that solves A x = b for any number of
+ *   right-hand sides.  The O(n^3) factorization is done once, in the constructor of
+ *   LUDecomposition, CholeskyDecomposition or QRDecomposition; each solve afterwards
+ *   costs O(n^2) per right-hand side.
+ *
+ */
+public interface Factorization {
+
+	/** Returns the number of rows of the factored matrix
+	 * 
+	 * @return
+	 */
+	int getNumRows();
+
+	/** Returns the number of columns of the factored matrix
+	 * 
+	 * @return
+	 */
+	int getNumCols();
+
+	/** Returns the solution x of A x = b (least squares for a tall QR)
+	 * 
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if b has the wrong dimension or A is singular
+	 */
+	Vector solve(Vector b) throws LinAlgException;
+
+	/** Writes the solution of A x = b into x (x may be b when A is square)
+	 * 
+	 * @param b
+	 * @param x
+	 * @throws LinAlgException if b or x has the wrong dimension or A is singular
+	 */
+	void solve(Vector b, Vector x) throws LinAlgException;
+
+	/** Returns the solution X of A X = B, one column per right-hand side
+	 * 
+	 * @param B
+	 * @return
+	 * @throws LinAlgException if B has the wrong number of rows or A is singular
+	 */
+	Matrix solve(Matrix B) throws LinAlgException;
+
+	/** Returns the determinant of A
+	 * 
+	 * @return
+	 * @throws LinAlgException if A is not square
+	 */
+	double det() throws LinAlgException;
+
+	/** Returns the inverse of A
+	 * 
+	 * @return
+	 * @throws LinAlgException if A is not square or is singular
+	 */
+	Matrix inverse() throws LinAlgException;
+}
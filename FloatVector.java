@@ -0,0 +1,358 @@
+package linalg;
+
+/*** A multidimensional real-valued vector stored in single precision (float), with the same
+ *   operations as Vector at half the memory and half the bandwidth.
+ *
+ *   Arithmetic between FloatVectors rounds every result to float, exactly like float
+ *   arithmetic in Java.  Reductions (InnerProd here, and FloatMatrix.Multiply) can instead
+ *   keep a wider running sum, chosen by an Accumulation mode: the float storage stays the
+ *   same, only the sum inside the kernel changes.
+ *
+ */
+public class FloatVector {
+
+	/** How InnerProd and FloatMatrix.Multiply accumulate their sums of products */
+	public enum Accumulation {
+		/** Sum in float: fastest, but the error grows with the dimension */
+		FLOAT,
+		/** Sum in double: each float product is exact in double, so this loses almost nothing */
+		DOUBLE,
+		/** Sum in double with Kahan compensation: for very long or badly cancelling sums */
+		KAHAN
+	}
+
+	private int _nDim;      // Dimension of the FloatVector; nomenclature: _ for data member, n for integer
+	private float[] _afVal; // Contents of the FloatVector; nomenclature: _ for data member, a for array, f for float
+
+	/** Constructor: allocates space for a new vector of dimension dim
+	 *
+	 * @param dim
+	 * @throws LinAlgException if vector dimension is < 1
+	 */
+	public FloatVector(int dim) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		_nDim = dim;
+		_afVal = new float[dim]; // Entries will be automatically initialized to 0.0f
+	}
+
+	/** Copy constructor: makes a new copy of an existing FloatVector v
+	 *
+	 * @param v
+	 */
+	public FloatVector(FloatVector v) {
+		_nDim = v._nDim;
+		_afVal = v._afVal.clone();
+	}
+
+	/** Conversion constructor: makes a FloatVector holding the entries of v rounded to float
+	 *
+	 * @param v
+	 */
+	public FloatVector(Vector v) {
+		_nDim = v.getDim();
+		_afVal = new float[_nDim];
+		double[] values = v.getValues();
+		for (int i = 0; i < _nDim; i++)
+			_afVal[i] = (float)values[i];
+	}
+
+	/** Constructor: creates a new FloatVector with dimension and values given by init
+	 *
+	 * @param init: a String formatted like "[ -1.2 2.0 3.1 5.8 ]" (must start with [ and end with ])
+	 * @throws LinAlgException if init is not properly formatted (missing [ or ], or improperly formatted number)
+	 */
+	public FloatVector(String init) throws LinAlgException {
+		double[] values = TextCodec.parseVector(init);
+		_nDim = values.length;
+		_afVal = new float[_nDim];
+		for (int i = 0; i < _nDim; i++)
+			_afVal[i] = (float)values[i];
+	}
+
+	/** Returns a new Vector holding the entries of *this* (exactly: every float is a double)
+	 *
+	 * @return
+	 */
+	public Vector toVector() {
+		try {
+			Vector v = new Vector(_nDim);
+			double[] values = v.getValues();
+			for (int i = 0; i < _nDim; i++)
+				values[i] = _afVal[i];
+			return v;
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: _nDim >= 1
+		}
+	}
+
+	/** Same text as Vector.toString() for the same values */
+	@Override
+	public String toString() {
+		return TextCodec.toString(toVector());
+	}
+
+	/** Two FloatVectors are equal iff they have the same dimension and values match at all indices
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof FloatVector))
+			return false;
+		FloatVector v = (FloatVector)o;
+		if (_nDim != v._nDim)
+			return false;
+		for (int index = 0; index < _nDim; index++)
+			if (_afVal[index] != v._afVal[index])
+				return false;
+		return true;
+	}
+
+	/** Overrides hashCode() on Object consistently with equals() (-0.0f hashes like 0.0f); it is
+	 *  computed from the content on every call, since a FloatVector does not track writes
+	 *
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		return ContentHash.fold(ContentHash.finish(ContentHash.sum(_afVal, 0, _nDim), _nDim));
+	}
+
+	/** Package-private access to the backing array for FloatMatrix
+	 *
+	 * @return
+	 */
+	float[] getValues() {
+		return _afVal;
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return: the dimensionality of this FloatVector
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Returns the value of this vector at the given index
+	 *
+	 * @param index
+	 * @return
+	 * @throws LinAlgException if array index is out of bounds
+	 */
+	public float get(int index) throws LinAlgException {
+		if (index < 0 || index >= _nDim) {
+			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+		}
+		return _afVal[index];
+	}
+
+	/** Set the value val of the vector at the given index
+	 *
+	 * @param index
+	 * @param val
+	 * @throws LinAlgException if array index is out of bounds
+	 */
+	public void set(int index, float val) throws LinAlgException {
+		if (index < 0 || index >= _nDim) {
+			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+		}
+		_afVal[index] = val;
+	}
+
+	/** This adds a scalar d to all elements of *this* FloatVector
+	 *  (should modify *this*)
+	 *
+	 * @param d
+	 */
+	public void scalarAddInPlace(float d) {
+		scalarAdd(_afVal, d, _afVal, _nDim);
+	}
+
+	/** This creates a new FloatVector, adds a scalar d to it, and returns it
+	 *  (should not modify *this*)
+	 *
+	 * @param d
+	 * @return new FloatVector after scalar addition
+	 */
+	public FloatVector scalarAdd(float d) {
+		FloatVector newVector = new FloatVector(this);
+		newVector.scalarAddInPlace(d);
+		return newVector;
+	}
+
+	/** Writes *this* plus a scalar d into out, allocating nothing (out may be *this*)
+	 *
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void scalarAdd(float d, FloatVector out) throws LinAlgException {
+		checkOutput(out);
+		scalarAdd(_afVal, d, out._afVal, _nDim);
+	}
+
+	/** This multiplies a scalar d by all elements of *this* FloatVector
+	 *  (should modify *this*)
+	 *
+	 * @param d
+	 */
+	public void scalarMultInPlace(float d) {
+		scalarMult(_afVal, d, _afVal, _nDim);
+	}
+
+	/** This creates a new FloatVector, multiplies it by a scalar d, and returns it
+	 *  (should not modify *this*)
+	 *
+	 * @param d
+	 * @return new FloatVector after scalar multiplication
+	 */
+	public FloatVector scalarMult(float d) {
+		FloatVector newVector = new FloatVector(this);
+		newVector.scalarMultInPlace(d);
+		return newVector;
+	}
+
+	/** Writes *this* multiplied by a scalar d into out, allocating nothing (out may be *this*)
+	 *
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void scalarMult(float d, FloatVector out) throws LinAlgException {
+		checkOutput(out);
+		scalarMult(_afVal, d, out._afVal, _nDim);
+	}
+
+	/** Performs an elementwise addition of v to *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseAddInPlace(FloatVector v) throws LinAlgException {
+		elementwiseAdd(v, this);
+	}
+
+	/** Performs an elementwise addition of *this* and v and returns a new FloatVector with result
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public FloatVector elementwiseAdd(FloatVector v) throws LinAlgException {
+		FloatVector newVector = new FloatVector(_nDim);
+		elementwiseAdd(v, newVector);
+		return newVector;
+	}
+
+	/** Writes the elementwise sum of *this* and v into out, allocating nothing
+	 *  (out may be *this* or v, since every entry only depends on the same index)
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseAdd(FloatVector v, FloatVector out) throws LinAlgException {
+		if (v._nDim != _nDim) {
+			throw new LinAlgException("Cannot elementWiseAdd vectors of different dimensions " + _nDim + " and " + v._nDim);
+		}
+		checkOutput(out);
+		float[] a = _afVal, b = v._afVal, c = out._afVal;
+		for (int i = 0; i < _nDim; i++)
+			c[i] = a[i] + b[i];
+	}
+
+	/** Performs an elementwise multiplication of v and *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseMultInPlace(FloatVector v) throws LinAlgException {
+		elementwiseMult(v, this);
+	}
+
+	/** Performs an elementwise multiplication of *this* and v and returns a new FloatVector with result
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public FloatVector elementwiseMult(FloatVector v) throws LinAlgException {
+		FloatVector newVector = new FloatVector(_nDim);
+		elementwiseMult(v, newVector);
+		return newVector;
+	}
+
+	/** Writes the elementwise product of *this* and v into out, allocating nothing
+	 *  (out may be *this* or v, since every entry only depends on the same index)
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseMult(FloatVector v, FloatVector out) throws LinAlgException {
+		if (v._nDim != _nDim) {
+			throw new LinAlgException("Cannot elementWiseMult vectors of different dimensions " + _nDim + " and " + v._nDim);
+		}
+		checkOutput(out);
+		float[] a = _afVal, b = v._afVal, c = out._afVal;
+		for (int i = 0; i < _nDim; i++)
+			c[i] = a[i] * b[i];
+	}
+
+	/** Performs an inner product of FloatVectors v1 and v2, accumulated in float
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public static double InnerProd(FloatVector v1, FloatVector v2) throws LinAlgException {
+		return InnerProd(v1, v2, Accumulation.FLOAT);
+	}
+
+	/** Performs an inner product of FloatVectors v1 and v2 with the given accumulation
+	 *  (the result is a double so that DOUBLE and KAHAN do not lose their extra precision)
+	 *
+	 * @param v1
+	 * @param v2
+	 * @param acc
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public static double InnerProd(FloatVector v1, FloatVector v2, Accumulation acc) throws LinAlgException {
+		if (v1._nDim != v2._nDim) {
+			throw new LinAlgException("Cannot innerProd vectors of different dimensions " + v1._nDim + " and " + v2._nDim);
+		}
+		return dot(v1._afVal, 0, v2._afVal, 0, v1._nDim, acc);
+	}
+
+	/** The inner product kernel for the given accumulation (shared with FloatMatrix) */
+	static double dot(float[] a, int aOff, float[] b, int bOff, int n, Accumulation acc) {
+		switch (acc) {
+		case DOUBLE:
+			return VectorKernels.INSTANCE.dotFloatWide(a, aOff, b, bOff, n);
+		case KAHAN:
+			return VectorKernels.INSTANCE.dotFloatKahan(a, aOff, b, bOff, n);
+		default:
+			return VectorKernels.INSTANCE.dotFloat(a, aOff, b, bOff, n);
+		}
+	}
+
+	private static void scalarAdd(float[] a, float d, float[] out, int n) {
+		for (int i = 0; i < n; i++)
+			out[i] = a[i] + d;
+	}
+
+	private static void scalarMult(float[] a, float d, float[] out, int n) {
+		for (int i = 0; i < n; i++)
+			out[i] = a[i] * d;
+	}
+
+	private void checkOutput(FloatVector out) throws LinAlgException {
+		if (out._nDim != _nDim) {
+			throw new LinAlgException("Cannot write a result of dimension " + _nDim + " into a vector of dimension " + out._nDim);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** The restarted generalized minimal residual method, GMRES(m), with right preconditioning,
+ *   for general non-symmetric A.  Each cycle builds an orthonormal basis of up to m Krylov
+ *   vectors by modified Gram-Schmidt, reducing the (m + 1) x m Hessenberg matrix to triangular
+ *   form with Givens rotations as it grows, so the residual norm is known at every iteration
+ *   without forming x; x is updated once at the end of the cycle and the method restarts from
+ *   the new residual.  Memory is m + 2 vectors plus O(m^2), all taken from the Workspace.
+ *
+ */
+public class GMRES extends IterativeSolver {
+
+	/** Default number of iterations between restarts */
+	public static final int DEFAULT_RESTART = 30;
+
+	private final int _nRestart;
+
+	/** Creates a solver with the default tolerance, iteration limit and restart length and no
+	 *  preconditioner
+	 *
+	 * @throws LinAlgException never (the defaults are valid)
+	 */
+	public GMRES() throws LinAlgException {
+		this(DEFAULT_TOLERANCE, 0, DEFAULT_RESTART, null);
+	}
+
+	/** Creates a solver with the given relative tolerance, iteration limit (0 for 10 times the
+	 *  dimension) and restart length m, and no preconditioner
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param restart
+	 * @throws LinAlgException if tolerance is not positive, maxIterations is negative or restart is < 1
+	 */
+	public GMRES(double tolerance, int maxIterations, int restart) throws LinAlgException {
+		this(tolerance, maxIterations, restart, null);
+	}
+
+	/** Creates a solver with the given relative tolerance, iteration limit (0 for 10 times the
+	 *  dimension), restart length m and preconditioner (null for none)
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param restart
+	 * @param preconditioner
+	 * @throws LinAlgException if tolerance is not positive, maxIterations is negative or restart is < 1
+	 */
+	public GMRES(double tolerance, int maxIterations, int restart, LinearOperator preconditioner) throws LinAlgException {
+		super(tolerance, maxIterations, preconditioner);
+		if (restart < 1)
+			throw new LinAlgException("Restart length " + restart + " cannot be less than 1");
+		_nRestart = restart;
+	}
+
+	/** Returns the number of iterations between restarts
+	 *
+	 * @return
+	 */
+	public int getRestart() {
+		return _nRestart;
+	}
+
+	@Override
+	Result iterate(LinearOperator A, Vector b, Vector x, double target, double bNorm, int maxIterations, Workspace ws) throws LinAlgException {
+		int n = b.getDim();
+		int m = Math.min(_nRestart, n);
+		Vector[] basis = new Vector[m + 1]; // Once per solve, not per iteration
+		for (int i = 0; i <= m; i++)
+			basis[i] = ws.vector(n);
+		boolean preconditioned = getPreconditioner() != null;
+		Vector z = ws.vector(n);
+		// Column j of the Hessenberg matrix is h[j * (m + 1) + i]; rotations and g are length m + 1
+		double[] h = ws.matrix(m, m + 1).getData();
+		double[] cs = ws.vector(m + 1).getValues(), sn = ws.vector(m + 1).getValues(), g = ws.vector(m + 1).getValues();
+		int iterations = 0;
+		double rNorm = 0.0;
+		while (true) {
+			Vector r = basis[0];
+			residual(A, b, x, r);
+			rNorm = Vector.Nrm2(r);
+			if (rNorm <= target)
+				return new Result(true, iterations, rNorm / bNorm);
+			if (iterations >= maxIterations)
+				return new Result(false, iterations, rNorm / bNorm);
+			r.scalarMultInPlace(1.0 / rNorm);
+			g[0] = rNorm;
+			int k = 0; // Basis vectors used in this cycle
+			while (k < m && iterations < maxIterations) {
+				Vector w = basis[k + 1];
+				int col = k * (m + 1);
+				if (preconditioned)
+					precondition(basis[k], z);
+				A.apply(preconditioned ? z : basis[k], w);
+				for (int i = 0; i <= k; i++) {
+					double hij = Vector.InnerProd(w, basis[i]);
+					h[col + i] = hij;
+					Vector.Axpy(-hij, basis[i], w);
+				}
+				double hNext = Vector.Nrm2(w);
+				if (hNext != 0.0)
+					w.scalarMultInPlace(1.0 / hNext);
+				// Apply the previous rotations to the new column, then one more to zero hNext
+				for (int i = 0; i < k; i++) {
+					double hi = h[col + i], hi1 = h[col + i + 1];
+					h[col + i] = cs[i] * hi + sn[i] * hi1;
+					h[col + i + 1] = -sn[i] * hi + cs[i] * hi1;
+				}
+				double hkk = h[col + k], d = Math.hypot(hkk, hNext);
+				if (d == 0.0)
+					throw new LinAlgException("GMRES broke down at iteration " + (iterations + 1) + ": the operator is singular on the Krylov space");
+				cs[k] = hkk / d;
+				sn[k] = hNext / d;
+				h[col + k] = d;
+				g[k + 1] = -sn[k] * g[k];
+				g[k] = cs[k] * g[k];
+				k++;
+				iterations++;
+				if (Math.abs(g[k]) <= target || hNext == 0.0)
+					break; // Converged (hNext == 0.0: the Krylov space is invariant, so x is exact)
+			}
+			// Solve the k x k triangular system R y = g in place, then x += M (basis * y)
+			for (int i = k - 1; i >= 0; i--) {
+				double sum = g[i];
+				for (int j = i + 1; j < k; j++)
+					sum -= h[j * (m + 1) + i] * g[j];
+				g[i] = sum / h[i * (m + 1) + i];
+			}
+			Arrays.fill(z.getValues(), 0, n, 0.0);
+			z.modified();
+			for (int i = 0; i < k; i++)
+				Vector.Axpy(g[i], basis[i], z);
+			if (preconditioned) {
+				precondition(z, basis[0]); // The basis is rebuilt from scratch on restart
+				Vector.Axpy(1.0, basis[0], x);
+			} else {
+				Vector.Axpy(1.0, z, x);
+			}
+		}
+	}
+}
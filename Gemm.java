@@ -0,0 +1,202 @@
+package linalg;
+
+/*** A cache-blocked, register-tiled general matrix multiply (GEMM) engine used by
+ *   Matrix.Multiply(Matrix, Matrix) to compute C += A * B.
+ *
+ *   Every operand is described by its flat storage array, an offset and a row and column
+ *   stride (see Matrix), so views such as subMatrix() and transposeView() are multiplied
+ *   in place without being copied first; packing absorbs the strides.
+ *
+ *   The loop structure follows the classic Goto/BLIS layout:
+ *
+ *     for jc in blocks of NC columns of B and C           (B panel stays in L3/L2)
+ *       for pc in blocks of KC rows of B / columns of A   (pack B[pc:pc+KC, jc:jc+NC])
+ *         for ic in blocks of MC rows of A and C          (pack A[ic:ic+MC, pc:pc+KC], stays in L2)
+ *           for each NR-wide sliver of packed B           (stays in L1)
+ *             for each MR-tall sliver of packed A
+ *               micro-kernel: MR x NR tile of C held in registers
+ *
+ *   Each element of C is loaded once per KC block and accumulated in ascending k order,
+ *   so the result is bit-for-bit identical to the textbook triple loop.
+ *
+ */
+final class Gemm {
+
+	static final int MR = 4;    // Rows of the register tile held by the micro-kernel
+	static final int NR = 4;    // Columns of the register tile held by the micro-kernel
+	static final int MC = 64;   // Rows of A packed per L2 block
+	static final int KC = 256;  // Depth of each packed panel (shared dimension)
+	static final int NC = 1024; // Columns of B packed per L3 block
+
+	/** Products with fewer multiply-adds than this take the cheap, unpacked path */
+	static final long SMALL_THRESHOLD = 64L * 64L * 64L;
+
+	/** Each thread's packing buffers for A and B, kept between calls so repeated products
+	 *  (e.g., Matrix.Multiply into a reused output) allocate nothing; at most
+	 *  MC * KC + KC * NC doubles (about 2 MB) per thread
+	 */
+	private static final ThreadLocal<double[][]> PACKING = ThreadLocal.withInitial(() -> new double[2][0]);
+
+	private Gemm() {} // Static helpers only
+
+	/** Computes C += A * B where A is m x k, B is k x n and C is m x n; element (i, j) of A
+	 *  is a[aOff + i * aRs + j * aCs] and likewise for B and C
+	 *
+	 */
+	static void multiply(int m, int n, int k,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		if ((long)m * n * k < SMALL_THRESHOLD) {
+			multiplySmall(m, n, k, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+			return;
+		}
+		// Packing buffers sized for the blocks actually used (partial slivers are padded to MR / NR);
+		// packing overwrites every entry the kernels read, so stale contents do not matter
+		double[][] buffers = PACKING.get();
+		int sizeA = roundUp(Math.min(MC, m), MR) * Math.min(KC, k);
+		int sizeB = Math.min(KC, k) * roundUp(Math.min(NC, n), NR);
+		if (buffers[0].length < sizeA)
+			buffers[0] = new double[sizeA];
+		if (buffers[1].length < sizeB)
+			buffers[1] = new double[sizeB];
+		double[] packedA = buffers[0], packedB = buffers[1];
+		for (int jc = 0; jc < n; jc += NC) {
+			int nc = Math.min(NC, n - jc);
+			for (int pc = 0; pc < k; pc += KC) {
+				int kc = Math.min(KC, k - pc);
+				packB(b, bOff + pc * bRs + jc * bCs, bRs, bCs, kc, nc, packedB);
+				for (int ic = 0; ic < m; ic += MC) {
+					int mc = Math.min(MC, m - ic);
+					packA(a, aOff + ic * aRs + pc * aCs, aRs, aCs, mc, kc, packedA);
+					macroKernel(packedA, packedB, c, cOff + ic * cRs + jc * cCs, cRs, cCs, mc, nc, kc);
+				}
+			}
+		}
+	}
+
+	private static int roundUp(int value, int multiple) {
+		return (value + multiple - 1) / multiple * multiple;
+	}
+
+	/** The i-k-j loop order: streams along rows of B and C instead of striding down columns of B
+	 *
+	 */
+	private static void multiplySmall(int m, int n, int k,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		for (int i = 0; i < m; i++) {
+			int cRow = cOff + i * cRs;
+			int aRow = aOff + i * aRs;
+			for (int p = 0; p < k; p++) {
+				double aip = a[aRow + p * aCs];
+				int bj = bOff + p * bRs;
+				int cj = cRow;
+				for (int j = 0; j < n; j++, bj += bCs, cj += cCs)
+					c[cj] += aip * b[bj];
+			}
+		}
+	}
+
+	/** Packs the mc x kc block of A starting at a[aOff] into MR-row slivers, each stored k-major
+	 *  (i.e., the MR values needed at each step of the micro-kernel are adjacent)
+	 *
+	 */
+	private static void packA(double[] a, int aOff, int aRs, int aCs, int mc, int kc, double[] packed) {
+		int pos = 0;
+		for (int i = 0; i < mc; i += MR) {
+			int mr = Math.min(MR, mc - i);
+			int rowStart = aOff + i * aRs;
+			for (int p = 0; p < kc; p++) {
+				int src = rowStart + p * aCs;
+				for (int r = 0; r < mr; r++, src += aRs)
+					packed[pos + r] = a[src];
+				for (int r = mr; r < MR; r++)
+					packed[pos + r] = 0.0; // Pad partial slivers so the kernel always sees MR rows
+				pos += MR;
+			}
+		}
+	}
+
+	/** Packs the kc x nc block of B starting at b[bOff] into NR-column slivers, each stored k-major
+	 *
+	 */
+	private static void packB(double[] b, int bOff, int bRs, int bCs, int kc, int nc, double[] packed) {
+		int pos = 0;
+		for (int j = 0; j < nc; j += NR) {
+			int nr = Math.min(NR, nc - j);
+			int colStart = bOff + j * bCs;
+			for (int p = 0; p < kc; p++) {
+				int src = colStart + p * bRs;
+				for (int s = 0; s < nr; s++, src += bCs)
+					packed[pos + s] = b[src];
+				for (int s = nr; s < NR; s++)
+					packed[pos + s] = 0.0;
+				pos += NR;
+			}
+		}
+	}
+
+	/** Sweeps the micro-kernel over every MR x NR tile of the mc x nc block of C starting at c[cOff]
+	 *
+	 */
+	private static void macroKernel(double[] packedA, double[] packedB, double[] c, int cOff, int cRs, int cCs,
+			int mc, int nc, int kc) {
+		for (int j = 0; j < nc; j += NR) {
+			int nr = Math.min(NR, nc - j);
+			int bOff = j * kc; // Each NR sliver of packed B holds kc * NR values
+			for (int i = 0; i < mc; i += MR) {
+				int mr = Math.min(MR, mc - i);
+				int aOff = i * kc;
+				int tile = cOff + i * cRs + j * cCs;
+				if (mr == MR && nr == NR)
+					microKernel(kc, packedA, aOff, packedB, bOff, c, tile, cRs, cCs);
+				else
+					edgeKernel(kc, mr, nr, packedA, aOff, packedB, bOff, c, tile, cRs, cCs);
+			}
+		}
+	}
+
+	/** Computes a full 4 x 4 tile of C with all sixteen partial sums held in locals
+	 *
+	 */
+	private static void microKernel(int kc, double[] pa, int aOff, double[] pb, int bOff,
+			double[] c, int tile, int cRs, int cCs) {
+		int r0 = tile, r1 = r0 + cRs, r2 = r1 + cRs, r3 = r2 + cRs;
+		int s1 = cCs, s2 = 2 * cCs, s3 = 3 * cCs;
+		double c00 = c[r0], c01 = c[r0 + s1], c02 = c[r0 + s2], c03 = c[r0 + s3];
+		double c10 = c[r1], c11 = c[r1 + s1], c12 = c[r1 + s2], c13 = c[r1 + s3];
+		double c20 = c[r2], c21 = c[r2 + s1], c22 = c[r2 + s2], c23 = c[r2 + s3];
+		double c30 = c[r3], c31 = c[r3 + s1], c32 = c[r3 + s2], c33 = c[r3 + s3];
+		int ai = aOff, bi = bOff;
+		for (int p = 0; p < kc; p++, ai += MR, bi += NR) {
+			double a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+			double b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+			c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+			c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+			c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+			c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+		}
+		c[r0] = c00; c[r0 + s1] = c01; c[r0 + s2] = c02; c[r0 + s3] = c03;
+		c[r1] = c10; c[r1 + s1] = c11; c[r1 + s2] = c12; c[r1 + s3] = c13;
+		c[r2] = c20; c[r2 + s1] = c21; c[r2 + s2] = c22; c[r2 + s3] = c23;
+		c[r3] = c30; c[r3 + s1] = c31; c[r3 + s2] = c32; c[r3 + s3] = c33;
+	}
+
+	/** Handles the partial tiles on the bottom and right edges of C
+	 *
+	 */
+	private static void edgeKernel(int kc, int mr, int nr, double[] pa, int aOff, double[] pb, int bOff,
+			double[] c, int tile, int cRs, int cCs) {
+		for (int r = 0; r < mr; r++) {
+			for (int s = 0; s < nr; s++) {
+				int pos = tile + r * cRs + s * cCs;
+				double sum = c[pos];
+				for (int p = 0; p < kc; p++)
+					sum += pa[aOff + p * MR + r] * pb[bOff + p * NR + s];
+				c[pos] = sum;
+			}
+		}
+	}
+}
@@ -0,0 +1,383 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** Accumulates the Gram matrix X^T X, the cross-product X^T y, the column means and the
+ *   covariance of a stream of rows x (each with an optional target y) without ever holding X.
+ *   Rows can be added one at a time or in batches, as Vectors or raw double[], and results can
+ *   be read at any point.  Memory is O(d^2) for d columns, whatever the number of rows.
+ *
+ *   Internally the accumulator keeps the row count n, the column means and the co-moment
+ *   matrix M = sum over rows of (x - mean)(x - mean)^T, rather than raw sums of products:
+ *   raw sums lose every significant digit of the covariance when the means are large next to
+ *   the spread.  Rows are buffered BLOCK at a time.  Each full block is centered on its own
+ *   mean, its co-moment is added with one Gemm (a matrix-matrix product instead of BLOCK
+ *   rank-1 updates), and it is then combined with the running totals by the pairwise update
+ *   of Chan, Golub and LeVeque:
+ *
+ *     n = na + nb,  delta = mean_b - mean_a,
+ *     mean = mean_a + delta * nb / n,  M = M_a + M_b + delta delta^T * na * nb / n
+ *
+ *   merge() applies the same update to combine accumulators filled by different threads or
+ *   shards.  An accumulator is not itself thread-safe; use one per thread and merge them.
+ *
+ */
+public class GramAccumulator {
+
+	/** Rows buffered before they are folded into the totals with one Gemm */
+	static final int BLOCK = 64;
+
+	private final int _nDim;          // Number of columns d
+	private final boolean _bTarget;   // True if every row carries a target y
+	private long _lCount;             // Rows folded into the totals below
+	private final double[] _adMean;   // Column means of those rows
+	private final double[] _adM2;     // d x d co-moment matrix, row-major
+	private double _dMeanY;           // Mean of the targets
+	private final double[] _adM2xy;   // sum of (x - mean) * (y - meanY)
+	private double _dM2yy;            // sum of (y - meanY)^2
+	private final double[] _adBuffer; // Rows not yet folded in, BLOCK x d row-major
+	private final double[] _adBufferY; // Their targets
+	private int _nBuffered;
+	private final double[] _adDelta;  // Scratch: difference of two means
+
+	/** Creates an empty accumulator for rows of dimension dim without targets
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is < 1 or dim x dim is too large for one array
+	 */
+	public GramAccumulator(int dim) throws LinAlgException {
+		this(dim, false);
+	}
+
+	/** Creates an empty accumulator for rows of dimension dim; if withTarget, every row comes
+	 *  with a target value y and X^T y is accumulated as well
+	 *
+	 * @param dim
+	 * @param withTarget
+	 * @throws LinAlgException if dim is < 1 or dim x dim is too large for one array
+	 */
+	public GramAccumulator(int dim, boolean withTarget) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		if ((long)dim * dim > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Dimensions (" + dim + "," + dim + ") exceed the maximum array size");
+		_nDim = dim;
+		_bTarget = withTarget;
+		_adMean = new double[dim];
+		_adM2 = new double[dim * dim];
+		_adM2xy = new double[withTarget ? dim : 0];
+		_adBuffer = new double[BLOCK * dim];
+		_adBufferY = new double[withTarget ? BLOCK : 0];
+		_adDelta = new double[dim];
+	}
+
+	/** Get the number of columns of the rows
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** True if rows carry a target value
+	 *
+	 * @return
+	 */
+	public boolean hasTarget() {
+		return _bTarget;
+	}
+
+	/** Returns the number of rows added so far
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return _lCount + _nBuffered;
+	}
+
+	/** Adds one row (for an accumulator without targets)
+	 *
+	 * @param x
+	 * @throws LinAlgException if x does not have getDim() entries or targets are expected
+	 */
+	public void addRow(Vector x) throws LinAlgException {
+		checkRow(x.getDim(), false);
+		buffer(x.getValues(), 0, 0.0);
+	}
+
+	/** Adds one row with its target value
+	 *
+	 * @param x
+	 * @param y
+	 * @throws LinAlgException if x does not have getDim() entries or no targets are expected
+	 */
+	public void addRow(Vector x, double y) throws LinAlgException {
+		checkRow(x.getDim(), true);
+		buffer(x.getValues(), 0, y);
+	}
+
+	/** Adds one row given as a raw array (for an accumulator without targets)
+	 *
+	 * @param x
+	 * @throws LinAlgException if x does not have getDim() entries or targets are expected
+	 */
+	public void addRow(double[] x) throws LinAlgException {
+		checkRow(x.length, false);
+		buffer(x, 0, 0.0);
+	}
+
+	/** Adds one row given as a raw array, with its target value
+	 *
+	 * @param x
+	 * @param y
+	 * @throws LinAlgException if x does not have getDim() entries or no targets are expected
+	 */
+	public void addRow(double[] x, double y) throws LinAlgException {
+		checkRow(x.length, true);
+		buffer(x, 0, y);
+	}
+
+	/** Adds every row of X (for an accumulator without targets)
+	 *
+	 * @param X
+	 * @throws LinAlgException if X does not have getDim() columns or targets are expected
+	 */
+	public void addRows(Matrix X) throws LinAlgException {
+		checkRow(X.getNumCols(), false);
+		addRows(X, null);
+	}
+
+	/** Adds every row of X, row i with target y[i]
+	 *
+	 * @param X
+	 * @param y
+	 * @throws LinAlgException if X does not have getDim() columns, y does not have one entry per
+	 *         row of X, or no targets are expected
+	 */
+	public void addRows(Matrix X, Vector y) throws LinAlgException {
+		checkRow(X.getNumCols(), y != null);
+		if (y != null && y.getDim() != X.getNumRows()) {
+			throw new LinAlgException("Cannot add " + X.getNumRows() + " rows with " + y.getDim() + " target values");
+		}
+		double[] data = X.getData();
+		int rs = X.getRowStride(), cs = X.getColStride();
+		for (int row = 0; row < X.getNumRows(); row++) {
+			int src = X.getOffset() + row * rs;
+			int dst = _nBuffered * _nDim;
+			if (cs == 1) {
+				System.arraycopy(data, src, _adBuffer, dst, _nDim);
+			} else {
+				for (int col = 0; col < _nDim; col++, src += cs)
+					_adBuffer[dst + col] = data[src];
+			}
+			if (_bTarget)
+				_adBufferY[_nBuffered] = y.getValues()[row];
+			if (++_nBuffered == BLOCK)
+				flush();
+		}
+	}
+
+	/** Adds the rows of other to *this* (other is left with the same logical content)
+	 *
+	 * @param other
+	 * @throws LinAlgException if other has a different dimension or target setting
+	 */
+	public void merge(GramAccumulator other) throws LinAlgException {
+		if (other._nDim != _nDim || other._bTarget != _bTarget) {
+			throw new LinAlgException("Cannot merge an accumulator of dimension " + other._nDim + (other._bTarget ? " with" : " without")
+					+ " targets into one of dimension " + _nDim + (_bTarget ? " with" : " without") + " targets");
+		}
+		if (other == this)
+			throw new LinAlgException("Cannot merge an accumulator into itself");
+		flush();
+		other.flush();
+		combine(other._lCount, other._adMean, other._adM2, other._dMeanY, other._adM2xy, other._dM2yy);
+	}
+
+	/** Returns the column means of the rows added so far
+	 *
+	 * @return
+	 * @throws LinAlgException if no rows were added
+	 */
+	public Vector getMeans() throws LinAlgException {
+		flushChecked(1);
+		return vectorOf(_adMean, 1.0, null, 0.0);
+	}
+
+	/** Returns the Gram matrix X^T X of the rows added so far
+	 *
+	 * @return
+	 * @throws LinAlgException if no rows were added
+	 */
+	public Matrix getGram() throws LinAlgException {
+		flushChecked(1);
+		Matrix g = new Matrix(_nDim, _nDim);
+		double[] out = g.getData();
+		System.arraycopy(_adM2, 0, out, 0, _adM2.length);
+		for (int i = 0; i < _nDim; i++) // X^T X = M + n * mean mean^T
+			VectorKernels.INSTANCE.axpy(_lCount * _adMean[i], _adMean, 0, out, i * _nDim, _nDim);
+		return g;
+	}
+
+	/** Returns the cross-product X^T y of the rows added so far
+	 *
+	 * @return
+	 * @throws LinAlgException if no rows were added or rows carry no targets
+	 */
+	public Vector getCrossProduct() throws LinAlgException {
+		checkTarget();
+		flushChecked(1);
+		return vectorOf(_adM2xy, 1.0, _adMean, _lCount * _dMeanY); // X^T y = Mxy + n * meanY * mean
+	}
+
+	/** Returns the sample covariance matrix (divided by n - 1) of the rows added so far
+	 *
+	 * @return
+	 * @throws LinAlgException if fewer than two rows were added
+	 */
+	public Matrix getCovariance() throws LinAlgException {
+		flushChecked(2);
+		Matrix c = new Matrix(_nDim, _nDim);
+		VectorKernels.INSTANCE.scalarMult(_adM2, 1.0 / (_lCount - 1), c.getData(), 0, _adM2.length);
+		return c;
+	}
+
+	/** Returns the sample covariance of every column with the target (divided by n - 1)
+	 *
+	 * @return
+	 * @throws LinAlgException if fewer than two rows were added or rows carry no targets
+	 */
+	public Vector getCrossCovariance() throws LinAlgException {
+		checkTarget();
+		flushChecked(2);
+		return vectorOf(_adM2xy, 1.0 / (_lCount - 1), null, 0.0);
+	}
+
+	/** Sets the accumulator back to its empty state */
+	public void reset() {
+		_lCount = 0;
+		_nBuffered = 0;
+		Arrays.fill(_adMean, 0.0);
+		Arrays.fill(_adM2, 0.0);
+		Arrays.fill(_adM2xy, 0.0);
+		_dMeanY = 0.0;
+		_dM2yy = 0.0;
+	}
+
+	private void buffer(double[] x, int off, double y) {
+		System.arraycopy(x, off, _adBuffer, _nBuffered * _nDim, _nDim);
+		if (_bTarget)
+			_adBufferY[_nBuffered] = y;
+		if (++_nBuffered == BLOCK)
+			flush();
+	}
+
+	/** Folds the buffered rows into the totals: center them on their own mean, add their
+	 *  co-moment with one Gemm and combine the result with Chan's update */
+	private void flush() {
+		int m = _nBuffered;
+		if (m == 0)
+			return;
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		int d = _nDim;
+		double[] rows = _adBuffer;
+		double[] mean = _adDelta; // Used as the block mean until combine() takes it over
+		Arrays.fill(mean, 0.0);
+		for (int r = 0; r < m; r++)
+			VectorKernels.INSTANCE.axpy(1.0, rows, r * d, mean, 0, d);
+		VectorKernels.INSTANCE.scalarMult(mean, 1.0 / m, mean, 0, d);
+		for (int r = 0; r < m; r++)
+			VectorKernels.INSTANCE.axpy(-1.0, mean, 0, rows, r * d, d);
+		double meanY = 0.0, m2yy = 0.0;
+		if (_bTarget) {
+			for (int r = 0; r < m; r++)
+				meanY += _adBufferY[r];
+			meanY /= m;
+			for (int r = 0; r < m; r++) {
+				double dy = _adBufferY[r] - meanY;
+				_adBufferY[r] = dy;
+				m2yy += dy * dy;
+			}
+		}
+		// Fold the block into the totals.  Its co-moment is C^T C for the centered rows C; since
+		// Chan's update adds M_a + M_b, C^T C (and C^T y) go straight into the running sums.
+		Gemm.multiply(d, d, m,
+				rows, 0, 1, d,
+				rows, 0, d, 1,
+				_adM2, 0, d, 1);
+		if (_bTarget) {
+			for (int r = 0; r < m; r++)
+				VectorKernels.INSTANCE.axpy(_adBufferY[r], rows, r * d, _adM2xy, 0, d);
+		}
+		_nBuffered = 0;
+		combine(m, mean, null, meanY, null, m2yy);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.GRAM_UPDATE, start, (long)m * d, 2.0 * m * d * d);
+	}
+
+	/** Chan's update with a second set of rows (count nb, means meanB, co-moments m2B, or
+	 *  null when they were already added to _adM2 / _adM2xy) */
+	private void combine(long nb, double[] meanB, double[] m2B, double meanYB, double[] m2xyB, double m2yyB) {
+		if (nb == 0)
+			return;
+		int d = _nDim;
+		long na = _lCount, n = na + nb;
+		double w = (double)na * nb / n;
+		double[] delta = _adDelta;
+		if (delta != meanB) {
+			for (int i = 0; i < d; i++)
+				delta[i] = meanB[i] - _adMean[i];
+		} else {
+			VectorKernels.INSTANCE.axpy(-1.0, _adMean, 0, delta, 0, d); // meanB is the scratch itself
+		}
+		if (m2B != null)
+			VectorKernels.INSTANCE.axpy(1.0, m2B, 0, _adM2, 0, d * d);
+		if (na > 0) {
+			for (int i = 0; i < d; i++)
+				VectorKernels.INSTANCE.axpy(w * delta[i], delta, 0, _adM2, i * d, d);
+		}
+		if (_bTarget) {
+			double deltaY = meanYB - _dMeanY;
+			if (m2xyB != null)
+				VectorKernels.INSTANCE.axpy(1.0, m2xyB, 0, _adM2xy, 0, d);
+			if (na > 0)
+				VectorKernels.INSTANCE.axpy(w * deltaY, delta, 0, _adM2xy, 0, d);
+			_dM2yy += m2yyB + w * deltaY * deltaY;
+			_dMeanY += deltaY * nb / n;
+		}
+		VectorKernels.INSTANCE.axpy((double)nb / n, delta, 0, _adMean, 0, d);
+		_lCount = n;
+	}
+
+	private void flushChecked(long minRows) throws LinAlgException {
+		flush();
+		if (_lCount < minRows) {
+			throw new LinAlgException("Cannot compute this from " + _lCount + " rows: at least " + minRows + " needed");
+		}
+	}
+
+	private void checkRow(int dim, boolean withTarget) throws LinAlgException {
+		if (dim != _nDim) {
+			throw new LinAlgException("Cannot add a row of dimension " + dim + " to an accumulator of dimension " + _nDim);
+		}
+		if (withTarget != _bTarget) {
+			throw new LinAlgException(_bTarget ? "Every row needs a target value" : "Rows cannot have target values: the accumulator was created without targets");
+		}
+	}
+
+	private void checkTarget() throws LinAlgException {
+		if (!_bTarget) {
+			throw new LinAlgException("The accumulator was created without targets");
+		}
+	}
+
+	/** Returns a new Vector holding scale * a + shift * b (b may be null) */
+	private Vector vectorOf(double[] a, double scale, double[] b, double shift) throws LinAlgException {
+		Vector v = new Vector(_nDim);
+		double[] out = v.getValues();
+		VectorKernels.INSTANCE.scalarMult(a, scale, out, 0, _nDim);
+		if (b != null)
+			VectorKernels.INSTANCE.axpy(shift, b, 0, out, 0, _nDim);
+		return v;
+	}
+}
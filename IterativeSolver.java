@@ -0,0 +1,191 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** Base class of the Krylov solvers for A x = b (ConjugateGradient, BiCGSTAB, GMRES), which
+ *   only need to apply A, so A can be any LinearOperator: a dense or sparse matrix, or an
+ *   operator that is never stored at all.
+ *
+ *   A solve stops when the residual norm ||b - A x|| is at most getTolerance() * ||b||, or after
+ *   getMaxIterations() iterations, and reports which in its Result.  An optional preconditioner
+ *   M (an operator approximating the inverse of A, e.g., LinearOperators.jacobi(a)) usually
+ *   cuts the iteration count sharply.
+ *
+ *   The work vectors of a solve come from the calling thread's Workspace and are released when
+ *   it returns: the iterations themselves allocate nothing, and repeated solves of the same
+ *   size allocate nothing at all.  A solver holds only its settings, so one instance can be
+ *   used by several threads at once.
+ *
+ */
+public abstract class IterativeSolver {
+
+	/** Default relative residual tolerance */
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+
+	private final double _dTolerance;          // Relative residual at which a solve stops
+	private final int _nMaxIterations;         // 0: 10 times the dimension of the system
+	private final LinearOperator _preconditioner; // null for none
+
+	/** The outcome of one solve
+	 *
+	 */
+	public static final class Result {
+		private final boolean _bConverged;
+		private final int _nIterations;
+		private final double _dResidual;
+
+		Result(boolean converged, int iterations, double residual) {
+			_bConverged = converged;
+			_nIterations = iterations;
+			_dResidual = residual;
+		}
+
+		/** True if the tolerance was met
+		 *
+		 * @return
+		 */
+		public boolean isConverged() {
+			return _bConverged;
+		}
+
+		/** Returns the number of iterations performed (one application of A each, two for BiCGSTAB)
+		 *
+		 * @return
+		 */
+		public int getIterations() {
+			return _nIterations;
+		}
+
+		/** Returns the final relative residual ||b - A x|| / ||b|| as tracked by the iteration
+		 *
+		 * @return
+		 */
+		public double getRelativeResidual() {
+			return _dResidual;
+		}
+
+		@Override
+		public String toString() {
+			return (_bConverged ? "converged" : "not converged") + " after " + _nIterations + " iterations, relative residual " + _dResidual;
+		}
+	}
+
+	/** Creates a solver with the given relative tolerance, iteration limit (0 for 10 times the
+	 *  dimension of each system) and preconditioner (null for none)
+	 *
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param preconditioner
+	 * @throws LinAlgException if tolerance is not positive or maxIterations is negative
+	 */
+	IterativeSolver(double tolerance, int maxIterations, LinearOperator preconditioner) throws LinAlgException {
+		if (!(tolerance > 0.0))
+			throw new LinAlgException("Tolerance " + tolerance + " must be greater than 0");
+		if (maxIterations < 0)
+			throw new LinAlgException("Iteration limit " + maxIterations + " cannot be negative");
+		_dTolerance = tolerance;
+		_nMaxIterations = maxIterations;
+		_preconditioner = preconditioner;
+	}
+
+	/** Returns the relative tolerance: a solve converges once ||b - A x|| <= getTolerance() * ||b||
+	 *
+	 * @return
+	 */
+	public double getTolerance() {
+		return _dTolerance;
+	}
+
+	/** Returns the iteration limit (0: 10 times the dimension of each system)
+	 *
+	 * @return
+	 */
+	public int getMaxIterations() {
+		return _nMaxIterations;
+	}
+
+	/** Returns the preconditioner, or null if there is none
+	 *
+	 * @return
+	 */
+	public LinearOperator getPreconditioner() {
+		return _preconditioner;
+	}
+
+	/** Solves A x = b starting from x = 0 and returns x (check convergence with the other solve())
+	 *
+	 * @param A
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if A is not square, its dimension does not match b, or the method breaks down
+	 */
+	public Vector solve(LinearOperator A, Vector b) throws LinAlgException {
+		Vector x = new Vector(b.getDim());
+		solve(A, b, x);
+		return x;
+	}
+
+	/** Solves A x = b starting from the guess held in x, which is overwritten by the solution
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if A is not square, its dimension does not match b or x, or the
+	 *         method breaks down
+	 */
+	public Result solve(LinearOperator A, Vector b, Vector x) throws LinAlgException {
+		int n = A.getNumRows();
+		if (A.getNumCols() != n)
+			throw new LinAlgException("Cannot solve with a " + n + "x" + A.getNumCols() + " operator: it must be square");
+		if (b.getDim() != n || x.getDim() != n)
+			throw new LinAlgException("Cannot solve a system of dimension " + n + " with vectors of dimension " + b.getDim() + " and " + x.getDim());
+		if (_preconditioner != null && (_preconditioner.getNumRows() != n || _preconditioner.getNumCols() != n))
+			throw new LinAlgException("Cannot precondition a system of dimension " + n + " with a " + _preconditioner.getNumRows() + "x" + _preconditioner.getNumCols() + " operator");
+		double bNorm = Vector.Nrm2(b);
+		if (bNorm == 0.0) {
+			Arrays.fill(x.getValues(), 0, n, 0.0); // The exact solution
+			x.modified();
+			return new Result(true, 0, 0.0);
+		}
+		int maxIterations = _nMaxIterations > 0 ? _nMaxIterations : (int)Math.min(Integer.MAX_VALUE, 10L * n);
+		Workspace ws = Workspace.get();
+		int mark = ws.mark();
+		try {
+			return iterate(A, b, x, _dTolerance * bNorm, bNorm, maxIterations, ws);
+		} finally {
+			ws.release(mark);
+		}
+	}
+
+	/** Runs the method until ||r|| <= target or maxIterations; scratch vectors come from ws
+	 *  (released by the caller)
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param target absolute residual norm at which to stop
+	 * @param bNorm ||b||, to report relative residuals
+	 * @param maxIterations
+	 * @param ws
+	 * @return
+	 * @throws LinAlgException if the method breaks down
+	 */
+	abstract Result iterate(LinearOperator A, Vector b, Vector x, double target, double bNorm, int maxIterations, Workspace ws) throws LinAlgException;
+
+	/** r = b - A x */
+	static void residual(LinearOperator A, Vector b, Vector x, Vector r) throws LinAlgException {
+		A.apply(x, r);
+		Vector.Axpby(1.0, b, -1.0, r);
+	}
+
+	/** out = M in, or out = in without a preconditioner */
+	void precondition(Vector in, Vector out) throws LinAlgException {
+		if (_preconditioner != null)
+			_preconditioner.apply(in, out);
+		else {
+			System.arraycopy(in.getValues(), 0, out.getValues(), 0, in.getDim());
+			out.modified();
+		}
+	}
+}
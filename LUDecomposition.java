@@ -0,0 +1,255 @@
+package linalg;
+
+/*** LU factorization with partial (row) pivoting, P A = L U, of a square Matrix A.
+ *
+ *   The factorization is blocked the way LAPACK's getrf is: columns are processed in
+ *   panels of BLOCK.  Each panel is factored with the plain row-pivoting algorithm, the
+ *   block row to its right is solved against the panel's unit lower triangle, and the
+ *   trailing matrix is updated in one product, A22 -= L21 * U12, done by the Gemm engine.
+ *   Almost all of the work is therefore in cache-blocked matrix multiplication.
+ *
+ *   L (unit diagonal, not stored) and U share one compact row-major copy of A; the input
+ *   Matrix is not modified.
+ *
+ */
+public final class LUDecomposition implements Factorization {
+
+	/** Columns per panel */
+	static final int BLOCK = 64;
+
+	private final int _nDim;
+	private final double[] _adLU;    // Row-major n x n: strictly lower part is L, upper part is U
+	private final int[] _anSwap;     // Row i was swapped with row _anSwap[i] >= i at step i
+	private final boolean _bOddSwaps; // True if an odd number of actual swaps were made
+
+	/** Factors A
+	 * 
+	 * @param A
+	 * @throws LinAlgException if A is not square or is singular (a zero pivot column)
+	 */
+	public LUDecomposition(Matrix A) throws LinAlgException {
+		this(A, false);
+	}
+
+	/** Factors A; if allowSingular, a column with no non-zero pivot is left in place (its
+	 *  diagonal entry of U is 0, so det() is 0) and the factorization continues, as LAPACK's
+	 *  getrf does, instead of throwing
+	 * 
+	 * @param A
+	 * @param allowSingular
+	 * @throws LinAlgException if A is not square, or is singular and allowSingular is false
+	 */
+	LUDecomposition(Matrix A, boolean allowSingular) throws LinAlgException {
+		if (A.getNumRows() != A.getNumCols()) {
+			throw new LinAlgException("Cannot LU factor a " + A.getNumRows() + "x" + A.getNumCols() + " matrix: it must be square");
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		int n = A.getNumRows();
+		_nDim = n;
+		_adLU = new Matrix(A).getData(); // The copy constructor always produces a compact row-major copy
+		_anSwap = new int[n];
+		double[] lu = _adLU;
+		boolean odd = false;
+		double[] negL = n > BLOCK ? new double[(n - BLOCK) * BLOCK] : null;
+		for (int k = 0; k < n; k += BLOCK) {
+			int nb = Math.min(BLOCK, n - k);
+			int panelEnd = k + nb;
+			// 1. Factor the panel (columns k .. panelEnd - 1, all rows below k)
+			for (int j = k; j < panelEnd; j++) {
+				int p = j;
+				double max = Math.abs(lu[j * n + j]);
+				for (int i = j + 1; i < n; i++) {
+					double abs = Math.abs(lu[i * n + j]);
+					if (abs > max) {
+						max = abs;
+						p = i;
+					}
+				}
+				if (allowSingular && max == 0.0) { // Nothing to eliminate below a zero diagonal
+					_anSwap[j] = j;
+					continue;
+				}
+				if (!(max > 0.0)) { // Also catches NaN
+					throw new LinAlgException("Matrix is singular: column " + j + " has no non-zero pivot");
+				}
+				_anSwap[j] = p;
+				if (p != j) {
+					swapRows(lu, n, p, j);
+					odd = !odd;
+				}
+				double pivot = lu[j * n + j];
+				for (int i = j + 1; i < n; i++) {
+					double l = lu[i * n + j] /= pivot;
+					if (l != 0.0 && j + 1 < panelEnd)
+						VectorKernels.INSTANCE.axpy(-l, lu, j * n + j + 1, lu, i * n + j + 1, panelEnd - j - 1);
+				}
+			}
+			if (panelEnd == n)
+				break;
+			int rest = n - panelEnd;
+			// 2. U12 = inverse(L11) * A12, by forward substitution along the block row
+			for (int i = k + 1; i < panelEnd; i++) {
+				for (int j = k; j < i; j++) {
+					double l = lu[i * n + j];
+					if (l != 0.0)
+						VectorKernels.INSTANCE.axpy(-l, lu, j * n + panelEnd, lu, i * n + panelEnd, rest);
+				}
+			}
+			// 3. A22 -= L21 * U12; Gemm only accumulates, so it is given -L21 (negation is exact)
+			for (int i = 0; i < rest; i++)
+				for (int j = 0; j < nb; j++)
+					negL[i * nb + j] = -lu[(panelEnd + i) * n + k + j];
+			Gemm.multiply(rest, rest, nb,
+					negL, 0, nb, 1,
+					lu, k * n + panelEnd, n, 1,
+					lu, panelEnd * n + panelEnd, n, 1);
+		}
+		_bOddSwaps = odd;
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.LU, start, (long)n * n, 2.0 / 3.0 * n * n * n);
+	}
+
+	private static void swapRows(double[] a, int n, int r1, int r2) {
+		int o1 = r1 * n, o2 = r2 * n;
+		for (int c = 0; c < n; c++) {
+			double t = a[o1 + c];
+			a[o1 + c] = a[o2 + c];
+			a[o2 + c] = t;
+		}
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nDim;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nDim;
+	}
+
+	@Override
+	public Vector solve(Vector b) throws LinAlgException {
+		Vector x = new Vector(_nDim);
+		solve(b, x);
+		return x;
+	}
+
+	@Override
+	public void solve(Vector b, Vector x) throws LinAlgException {
+		if (b.getDim() != _nDim || x.getDim() != _nDim) {
+			throw new LinAlgException("Cannot solve a system of dimension " + _nDim + " with vectors of dimension " + b.getDim() + " and " + x.getDim());
+		}
+		int n = _nDim;
+		double[] lu = _adLU, y = x.getValues();
+		if (x != b)
+			System.arraycopy(b.getValues(), 0, y, 0, n);
+		for (int i = 0; i < n; i++) { // Apply P in the order the swaps were made
+			int p = _anSwap[i];
+			if (p != i) {
+				double t = y[i];
+				y[i] = y[p];
+				y[p] = t;
+			}
+		}
+		for (int i = 1; i < n; i++) // L y = P b (unit diagonal)
+			y[i] -= VectorKernels.INSTANCE.dot(lu, i * n, y, 0, i);
+		for (int i = n - 1; i >= 0; i--) // U x = y
+			y[i] = (y[i] - VectorKernels.INSTANCE.dot(lu, i * n + i + 1, y, i + 1, n - i - 1)) / lu[i * n + i];
+		x.modified();
+	}
+
+	@Override
+	public Matrix solve(Matrix B) throws LinAlgException {
+		if (B.getNumRows() != _nDim) {
+			throw new LinAlgException("Cannot solve a system of dimension " + _nDim + " with a right-hand side having " + B.getNumRows() + " rows");
+		}
+		int n = _nDim, m = B.getNumCols();
+		Matrix X = new Matrix(B); // Compact row-major: each row is one contiguous run of m values
+		double[] lu = _adLU, x = X.getData();
+		for (int i = 0; i < n; i++) {
+			int p = _anSwap[i];
+			if (p != i)
+				swapRows(x, m, i, p);
+		}
+		for (int i = 1; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				double l = lu[i * n + j];
+				if (l != 0.0)
+					VectorKernels.INSTANCE.axpy(-l, x, j * m, x, i * m, m);
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			for (int j = i + 1; j < n; j++) {
+				double u = lu[i * n + j];
+				if (u != 0.0)
+					VectorKernels.INSTANCE.axpy(-u, x, j * m, x, i * m, m);
+			}
+			double d = lu[i * n + i];
+			for (int c = i * m; c < (i + 1) * m; c++)
+				x[c] /= d;
+		}
+		return X;
+	}
+
+	/** Returns det(A) = (-1)^swaps * product of the diagonal of U
+	 * 
+	 */
+	@Override
+	public double det() {
+		double det = _bOddSwaps ? -1.0 : 1.0;
+		for (int i = 0; i < _nDim; i++)
+			det *= _adLU[i * _nDim + i];
+		return det;
+	}
+
+	@Override
+	public Matrix inverse() throws LinAlgException {
+		return solve(Matrix.GetIdentity(_nDim));
+	}
+
+	/** Returns the unit lower triangular factor L
+	 * 
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getL() throws LinAlgException {
+		Matrix L = new Matrix(_nDim, _nDim);
+		double[] l = L.getData();
+		for (int i = 0; i < _nDim; i++) {
+			System.arraycopy(_adLU, i * _nDim, l, i * _nDim, i);
+			l[i * _nDim + i] = 1.0;
+		}
+		return L;
+	}
+
+	/** Returns the upper triangular factor U
+	 * 
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getU() throws LinAlgException {
+		Matrix U = new Matrix(_nDim, _nDim);
+		double[] u = U.getData();
+		for (int i = 0; i < _nDim; i++)
+			System.arraycopy(_adLU, i * _nDim + i, u, i * _nDim + i, _nDim - i);
+		return U;
+	}
+
+	/** Returns the row permutation: row i of P A (and of L U) is row getPivot()[i] of A
+	 * 
+	 * @return
+	 */
+	public int[] getPivot() {
+		int[] perm = new int[_nDim];
+		for (int i = 0; i < _nDim; i++)
+			perm[i] = i;
+		for (int i = 0; i < _nDim; i++) {
+			int p = _anSwap[i];
+			int t = perm[i];
+			perm[i] = perm[p];
+			perm[p] = t;
+		}
+		return perm;
+	}
+}
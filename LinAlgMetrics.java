@@ -0,0 +1,265 @@
+package linalg;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*** Opt-in, per-operation counters for the hot paths of this package: calls, elements
+ *   processed, estimated floating-point operations, bytes allocated for results, total time
+ *   and a latency histogram, plus a JDK Flight Recorder event for every operation on at
+ *   least JFR_THRESHOLD elements.
+ *
+ *   Metrics are off unless the JVM is started with -Dlinalg.metrics=true.  Every
+ *   instrumented method tests the static final ENABLED first, which the JIT folds to a
+ *   constant, so with metrics off the instrumentation is removed from the compiled code
+ *   entirely.  With metrics on, counters are LongAdders, which threads update without
+ *   contending on a shared cache line.
+ *
+ *   The instrumented call sites follow one pattern:
+ *
+ *     long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+ *     ... the operation ...
+ *     if (LinAlgMetrics.ENABLED)
+ *         LinAlgMetrics.record(LinAlgMetrics.Op.INNER_PROD, start, n, 2.0 * n);
+ *
+ *   snapshot() returns a consistent-enough copy of every counter for scraping into another
+ *   metrics system (each counter is read atomically, but not all of them at one instant).
+ *
+ */
+public final class LinAlgMetrics {
+
+	/** True if the JVM was started with -Dlinalg.metrics=true */
+	public static final boolean ENABLED = Boolean.getBoolean("linalg.metrics");
+
+	/** Operations on at least this many elements also emit a JFR event (-Dlinalg.metrics.jfrThreshold) */
+	public static final long JFR_THRESHOLD = Long.getLong("linalg.metrics.jfrThreshold", 1L << 20);
+
+	/** Latency buckets: bucket b counts calls that took [2^(b-1), 2^b) nanoseconds (bucket 0: under 1 ns) */
+	public static final int HISTOGRAM_BUCKETS = 64;
+
+	/** The instrumented operations */
+	public enum Op {
+		MATRIX_MULTIPLY,        // Matrix.Multiply(Matrix, Matrix) and everything built on it
+		MATRIX_VECTOR_MULTIPLY, // Matrix.Multiply(Matrix, Vector)
+		GEMV,                   // Matrix.Gemv
+		TRANSPOSE,              // Matrix.transpose and transposeInPlace
+		INNER_PROD,             // Vector.InnerProd
+		ELEMENTWISE_ADD,        // Vector.elementwiseAdd and elementwiseAddInPlace
+		ELEMENTWISE_MULT,       // Vector.elementwiseMult and elementwiseMultInPlace
+		AXPY,                   // Vector.Axpy and Axpby
+		LU,                     // LUDecomposition
+		CHOLESKY,               // CholeskyDecomposition
+		QR,                     // QRDecomposition
+		BATCH_MULTIPLY,         // MatrixBatch.Multiply
+		BATCH_INVERSE,          // MatrixBatch.inverse
+		GRAM_UPDATE             // GramAccumulator folding a block of rows into its totals
+	}
+
+	private static final Stats[] STATS = new Stats[Op.values().length];
+	static {
+		for (int i = 0; i < STATS.length; i++)
+			STATS[i] = new Stats();
+	}
+
+	private LinAlgMetrics() {} // Static helpers only
+
+	/** Records one completed call of op that started at System.nanoTime() == start
+	 *  (callers test ENABLED first)
+	 *
+	 * @param op
+	 * @param start
+	 * @param elements the number of entries the operation read or wrote (its size)
+	 * @param flops estimated floating-point operations
+	 */
+	static void record(Op op, long start, long elements, double flops) {
+		long elapsed = System.nanoTime() - start;
+		Stats s = STATS[op.ordinal()];
+		s._calls.increment();
+		s._elements.add(elements);
+		s._flops.add((long)flops);
+		s._nanos.add(elapsed);
+		s._aHistogram[bucket(elapsed)].increment();
+		if (elements >= JFR_THRESHOLD) {
+			OperationEvent event = new OperationEvent();
+			if (event.shouldCommit()) {
+				event.operation = op.name();
+				event.elements = elements;
+				event.flops = (long)flops;
+				event.elapsed = elapsed;
+				event.commit();
+			}
+		}
+	}
+
+	/** Records bytes allocated for the result of op (by the allocating variants, which then
+	 *  record the call itself through the variant they delegate to; callers test ENABLED first)
+	 *
+	 * @param op
+	 * @param bytes
+	 */
+	static void allocated(Op op, long bytes) {
+		STATS[op.ordinal()]._bytes.add(bytes);
+	}
+
+	/** Returns a copy of the counters of every operation that has been called at least once
+	 *
+	 * @return
+	 */
+	public static Map<Op, OpSnapshot> snapshot() {
+		Map<Op, OpSnapshot> map = new EnumMap<Op, OpSnapshot>(Op.class);
+		for (Op op : Op.values()) {
+			OpSnapshot s = STATS[op.ordinal()].snapshot(op);
+			if (s.getCalls() > 0)
+				map.put(op, s);
+		}
+		return map;
+	}
+
+	/** Sets every counter back to zero (calls in progress may still be recorded afterwards) */
+	public static void reset() {
+		for (Stats s : STATS)
+			s.reset();
+	}
+
+	/** Histogram bucket of a duration: 0 for 0 ns, else 1 + floor(log2(nanos)) */
+	static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/** Counters of one operation, immutable once taken */
+	public static final class OpSnapshot {
+		private final Op _op;
+		private final long _lCalls, _lElements, _lFlops, _lBytes, _lNanos;
+		private final long[] _alHistogram;
+
+		OpSnapshot(Op op, long calls, long elements, long flops, long bytes, long nanos, long[] histogram) {
+			_op = op;
+			_lCalls = calls;
+			_lElements = elements;
+			_lFlops = flops;
+			_lBytes = bytes;
+			_lNanos = nanos;
+			_alHistogram = histogram;
+		}
+
+		public Op getOp() {
+			return _op;
+		}
+
+		public long getCalls() {
+			return _lCalls;
+		}
+
+		public long getElements() {
+			return _lElements;
+		}
+
+		public long getFlops() {
+			return _lFlops;
+		}
+
+		public long getBytesAllocated() {
+			return _lBytes;
+		}
+
+		public long getTotalNanos() {
+			return _lNanos;
+		}
+
+		/** Returns a copy of the latency histogram (see HISTOGRAM_BUCKETS)
+		 *
+		 * @return
+		 */
+		public long[] getLatencyHistogram() {
+			return _alHistogram.clone();
+		}
+
+		/** Returns an upper bound on the q-quantile of the latency, in nanoseconds: the upper
+		 *  edge of the histogram bucket that contains it (0 if there were no calls)
+		 *
+		 * @param q in [0, 1], e.g., 0.99
+		 * @return
+		 */
+		public long getLatencyQuantile(double q) {
+			long total = 0;
+			for (long c : _alHistogram)
+				total += c;
+			if (total == 0)
+				return 0;
+			long rank = (long)Math.ceil(Math.max(0.0, Math.min(1.0, q)) * total);
+			long seen = 0;
+			for (int b = 0; b < _alHistogram.length; b++) {
+				seen += _alHistogram[b];
+				if (seen >= Math.max(1, rank))
+					return b == 0 ? 0 : (b >= 63 ? Long.MAX_VALUE : (1L << b) - 1);
+			}
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public String toString() {
+			return _op + ": calls=" + _lCalls + " elements=" + _lElements + " flops=" + _lFlops
+					+ " bytes=" + _lBytes + " nanos=" + _lNanos + " p50<=" + getLatencyQuantile(0.5)
+					+ " p99<=" + getLatencyQuantile(0.99);
+		}
+	}
+
+	private static final class Stats {
+		final LongAdder _calls = new LongAdder();
+		final LongAdder _elements = new LongAdder();
+		final LongAdder _flops = new LongAdder();
+		final LongAdder _bytes = new LongAdder();
+		final LongAdder _nanos = new LongAdder();
+		final LongAdder[] _aHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+		Stats() {
+			for (int b = 0; b < HISTOGRAM_BUCKETS; b++)
+				_aHistogram[b] = new LongAdder();
+		}
+
+		OpSnapshot snapshot(Op op) {
+			long[] histogram = new long[HISTOGRAM_BUCKETS];
+			for (int b = 0; b < HISTOGRAM_BUCKETS; b++)
+				histogram[b] = _aHistogram[b].sum();
+			return new OpSnapshot(op, _calls.sum(), _elements.sum(), _flops.sum(), _bytes.sum(), _nanos.sum(), histogram);
+		}
+
+		void reset() {
+			_calls.reset();
+			_elements.reset();
+			_flops.reset();
+			_bytes.reset();
+			_nanos.reset();
+			for (LongAdder b : _aHistogram)
+				b.reset();
+		}
+	}
+
+	/** The JFR event for one large operation (enable "linalg.Operation" in the recording settings) */
+	@Name("linalg.Operation")
+	@Label("Linear Algebra Operation")
+	@Category("Linear Algebra")
+	@Description("A linalg operation on at least linalg.metrics.jfrThreshold elements")
+	static final class OperationEvent extends Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Elements")
+		long elements;
+
+		@Label("Estimated FLOPs")
+		long flops;
+
+		@Label("Elapsed")
+		@Description("Time taken by the operation (the event itself is committed at its end)")
+		@Timespan(Timespan.NANOSECONDS)
+		long elapsed;
+	}
+}
@@ -0,0 +1,52 @@
+package linalg;
+
+/*** A linear map from vectors of dimension getNumCols() to vectors of dimension getNumRows(),
+ *   known only through what it does to a vector.  Matrix, SparseMatrix and OffHeapMatrix
+ *   implement it, and LinearOperators builds diagonal, scaled, summed and composed operators
+ *   from others, so an operator that is far too large to store on the heap (or is never formed
+ *   at all, e.g., A^T A) can still be applied and handed to the iterative solvers
+ *   (ConjugateGradient, BiCGSTAB, GMRES).
+ *
+ */
+public interface LinearOperator {
+
+	/** Get the dimension of the results of apply()
+	 *
+	 * @return
+	 */
+	int getNumRows();
+
+	/** Get the dimension of the inputs of apply()
+	 *
+	 * @return
+	 */
+	int getNumCols();
+
+	/** Writes *this* applied to in into out, overwriting every entry of out
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if in does not have getNumCols() entries, out does not have
+	 *         getNumRows() entries, or out is in
+	 */
+	void apply(Vector in, Vector out) throws LinAlgException;
+
+	/** Writes the transpose of *this* applied to in into out (in has getNumRows() entries and out
+	 *  getNumCols()); operators that cannot do this keep the default, which throws
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match, out is in, or the operator has no transpose
+	 */
+	default void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		throw new LinAlgException("This operator cannot be applied transposed");
+	}
+
+	/** True if applyTranspose() is supported
+	 *
+	 * @return
+	 */
+	default boolean hasTranspose() {
+		return false;
+	}
+}
@@ -0,0 +1,379 @@
+package linalg;
+
+/*** Factories for LinearOperators built from vectors and other operators without forming their
+ *   matrices: identity, diagonal (and the Jacobi preconditioner, the inverse diagonal of a
+ *   matrix), scaled, transposed, summed and composed.
+ *
+ *   The operators keep references to what they are built from (a later change to a diagonal
+ *   Vector or an underlying Matrix is seen by the operator).  Sums and compositions need one
+ *   intermediate vector per apply(); it comes from the calling thread's Workspace, so a
+ *   steady-state loop allocates nothing and the operators can be applied from several threads.
+ *
+ */
+public final class LinearOperators {
+
+	private LinearOperators() {} // Static helpers only
+
+	/** Returns the n x n identity operator
+	 *
+	 * @param n
+	 * @return
+	 * @throws LinAlgException if n is < 1
+	 */
+	public static LinearOperator identity(int n) throws LinAlgException {
+		if (n <= 0)
+			throw new LinAlgException("Operator dimension " + n + " cannot be less than 1");
+		return new Identity(n);
+	}
+
+	/** Returns the operator that multiplies its input elementwise by d (the diagonal matrix diag(d))
+	 *
+	 * @param d
+	 * @return
+	 */
+	public static LinearOperator diagonal(Vector d) {
+		return new Diagonal(d);
+	}
+
+	/** Returns the Jacobi preconditioner of a: the diagonal operator diag(1 / a(i, i))
+	 *
+	 * @param a
+	 * @return
+	 * @throws LinAlgException if a is not square or has a 0.0 on its diagonal
+	 */
+	public static LinearOperator jacobi(Matrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("Cannot build a Jacobi preconditioner of a " + a.getNumRows() + "x" + a.getNumCols() + " matrix: it must be square");
+		Vector d = new Vector(a.getNumRows());
+		for (int i = 0; i < a.getNumRows(); i++)
+			d.set(i, inverseDiagonal(a.get(i, i), i));
+		return new Diagonal(d);
+	}
+
+	/** Returns the Jacobi preconditioner of a: the diagonal operator diag(1 / a(i, i))
+	 *
+	 * @param a
+	 * @return
+	 * @throws LinAlgException if a is not square or has a 0.0 on its diagonal
+	 */
+	public static LinearOperator jacobi(SparseMatrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("Cannot build a Jacobi preconditioner of a " + a.getNumRows() + "x" + a.getNumCols() + " matrix: it must be square");
+		Vector d = new Vector(a.getNumRows());
+		for (int i = 0; i < a.getNumRows(); i++)
+			d.set(i, inverseDiagonal(a.get(i, i), i));
+		return new Diagonal(d);
+	}
+
+	/** Returns the operator alpha * op
+	 *
+	 * @param alpha
+	 * @param op
+	 * @return
+	 */
+	public static LinearOperator scaled(double alpha, LinearOperator op) {
+		return new Scaled(alpha, op);
+	}
+
+	/** Returns the transpose of op, applied through op.applyTranspose()
+	 *
+	 * @param op
+	 * @return
+	 * @throws LinAlgException if op has no transpose
+	 */
+	public static LinearOperator transpose(LinearOperator op) throws LinAlgException {
+		if (!op.hasTranspose())
+			throw new LinAlgException("This operator cannot be applied transposed");
+		return new Transposed(op);
+	}
+
+	/** Returns the operator a + b
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if a and b do not have the same dimensions
+	 */
+	public static LinearOperator sum(LinearOperator a, LinearOperator b) throws LinAlgException {
+		if (a.getNumRows() != b.getNumRows() || a.getNumCols() != b.getNumCols())
+			throw new LinAlgException("Cannot add operators of different dimensions (" + a.getNumRows() + "," + a.getNumCols() + ") and (" + b.getNumRows() + "," + b.getNumCols() + ")");
+		return new Sum(a, b);
+	}
+
+	/** Returns the composition a * b (b is applied first)
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if a columns do not match b rows
+	 */
+	public static LinearOperator compose(LinearOperator a, LinearOperator b) throws LinAlgException {
+		if (a.getNumCols() != b.getNumRows())
+			throw new LinAlgException("Cannot compose an operator with " + a.getNumCols() + " columns with one of " + b.getNumRows() + " rows");
+		return new Product(a, b);
+	}
+
+	/** Checks the operands of op.apply(in, out), or of op.applyTranspose(in, out) if transposed */
+	static void checkApply(LinearOperator op, Vector in, Vector out, boolean transposed) throws LinAlgException {
+		int rows = transposed ? op.getNumCols() : op.getNumRows();
+		int cols = transposed ? op.getNumRows() : op.getNumCols();
+		if (in.getDim() != cols)
+			throw new LinAlgException("Cannot apply an operator with " + cols + " columns to a vector of dimension " + in.getDim());
+		if (out.getDim() != rows)
+			throw new LinAlgException("Cannot write the result of an operator with " + rows + " rows into a vector of dimension " + out.getDim());
+		if (out == in)
+			throw new LinAlgException("Cannot apply an operator into its input vector");
+	}
+
+	private static double inverseDiagonal(double d, int i) throws LinAlgException {
+		if (d == 0.0)
+			throw new LinAlgException("Cannot build a Jacobi preconditioner: diagonal entry " + i + " is 0.0");
+		return 1.0 / d;
+	}
+
+	private static final class Identity implements LinearOperator {
+		private final int _nDim;
+
+		Identity(int n) {
+			_nDim = n;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _nDim;
+		}
+
+		@Override
+		public int getNumCols() {
+			return _nDim;
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			checkApply(this, in, out, false);
+			System.arraycopy(in.getValues(), 0, out.getValues(), 0, _nDim);
+			out.modified();
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			apply(in, out);
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return true;
+		}
+	}
+
+	private static final class Diagonal implements LinearOperator {
+		private final Vector _d;
+
+		Diagonal(Vector d) {
+			_d = d;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _d.getDim();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _d.getDim();
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			checkApply(this, in, out, false);
+			VectorKernels.INSTANCE.mult(_d.getValues(), in.getValues(), out.getValues(), 0, _d.getDim());
+			out.modified();
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			apply(in, out);
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return true;
+		}
+	}
+
+	private static final class Scaled implements LinearOperator {
+		private final double _dAlpha;
+		private final LinearOperator _op;
+
+		Scaled(double alpha, LinearOperator op) {
+			_dAlpha = alpha;
+			_op = op;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _op.getNumRows();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _op.getNumCols();
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			_op.apply(in, out);
+			Vector.Scal(_dAlpha, out);
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			_op.applyTranspose(in, out);
+			Vector.Scal(_dAlpha, out);
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return _op.hasTranspose();
+		}
+	}
+
+	private static final class Transposed implements LinearOperator {
+		private final LinearOperator _op;
+
+		Transposed(LinearOperator op) {
+			_op = op;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _op.getNumCols();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _op.getNumRows();
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			_op.applyTranspose(in, out);
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			_op.apply(in, out);
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return true;
+		}
+	}
+
+	private static final class Sum implements LinearOperator {
+		private final LinearOperator _a, _b;
+
+		Sum(LinearOperator a, LinearOperator b) {
+			_a = a;
+			_b = b;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _a.getNumRows();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _a.getNumCols();
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			apply(in, out, false);
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			apply(in, out, true);
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return _a.hasTranspose() && _b.hasTranspose();
+		}
+
+		private void apply(Vector in, Vector out, boolean transposed) throws LinAlgException {
+			checkApply(this, in, out, transposed);
+			Workspace ws = Workspace.get();
+			int mark = ws.mark();
+			try {
+				Vector tmp = ws.vector(out.getDim());
+				if (transposed) {
+					_a.applyTranspose(in, out);
+					_b.applyTranspose(in, tmp);
+				} else {
+					_a.apply(in, out);
+					_b.apply(in, tmp);
+				}
+				VectorKernels.INSTANCE.axpy(1.0, tmp.getValues(), 0, out.getValues(), 0, out.getDim());
+				out.modified();
+			} finally {
+				ws.release(mark);
+			}
+		}
+	}
+
+	private static final class Product implements LinearOperator {
+		private final LinearOperator _a, _b;
+
+		Product(LinearOperator a, LinearOperator b) {
+			_a = a;
+			_b = b;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _a.getNumRows();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _b.getNumCols();
+		}
+
+		@Override
+		public void apply(Vector in, Vector out) throws LinAlgException {
+			checkApply(this, in, out, false);
+			Workspace ws = Workspace.get();
+			int mark = ws.mark();
+			try {
+				Vector tmp = ws.vector(_b.getNumRows());
+				_b.apply(in, tmp);
+				_a.apply(tmp, out);
+			} finally {
+				ws.release(mark);
+			}
+		}
+
+		@Override
+		public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+			checkApply(this, in, out, true);
+			Workspace ws = Workspace.get();
+			int mark = ws.mark();
+			try {
+				Vector tmp = ws.vector(_a.getNumCols());
+				_a.applyTranspose(in, tmp);
+				_b.applyTranspose(tmp, out);
+			} finally {
+				ws.release(mark);
+			}
+		}
+
+		@Override
+		public boolean hasTranspose() {
+			return _a.hasTranspose() && _b.hasTranspose();
+		}
+	}
+}
@@ -1,20 +1,41 @@
 package linalg;
 
+import java.util.Arrays;
+
 /*** A class that represents a two dimensional real-valued (double) matrix
  *   and supports various matrix computations required in linear algebra.
  *   
  *   Class and method comments are in JavaDoc: https://en.wikipedia.org/wiki/Javadoc
  *
+ *   Every write (set, transposeInPlace and any operation that writes its result into a
+ *   matrix) advances the version of the matrix's storage, which it shares with all of its
+ *   views, and hashCode() is computed from the content and cached until the next write; set()
+ *   keeps a computed hash current in O(1).  Together they let results computed from a matrix
+ *   be cached and reused (see ResultCache).
+ *
  */
-public class Matrix {
+public class Matrix implements LinearOperator {
 
 	private int _nRows; // Number of rows in this matrix; nomenclature: _ for data member, n for integer
 	private int _nCols; // Number of columns in this matrix; nomenclature: _ for data member, n for integer
-	// TODO: add your own data member to represent the matrix content
-	//       you could use a 2D array, or an array of Vectors (e.g., for each row)
-/*	private double[] _adRows;
-	private double[] _adCols;*/
-	private double[][] _adRCs;
+	// The content lives in one flat array; element (row, col) is stored at
+	// _adData[_nOffset + row * _nRowStride + col * _nColStride].  A freshly allocated
+	// matrix is row-major (_nRowStride = _nCols, _nColStride = 1), while views share
+	// another matrix's array with their own offset and strides.
+	private double[] _adData;
+	private int _nOffset;
+	private int _nRowStride;
+	private int _nColStride;
+	// The version is shared by every matrix viewing the same storage, so a write through any of
+	// them changes it; the content hash is cached with the version it was computed at
+	private final Version _version;
+	private long _lHash;     // Sum of the ContentHash terms of the entries, valid while _lHashVersion is the version
+	private volatile long _lHashVersion = -1L; // Written after _lHash, so a reader that sees it current also sees _lHash
+
+	/** The write counter of one storage array */
+	private static final class Version {
+		long _lValue;
+	}
 	
 	/** Allocates a new matrix of the given row and column dimensions
 	 * 
@@ -27,9 +48,36 @@ public class Matrix {
 		if (rows <= 0 || cols <= 0) {
 			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
 		}
+		if ((long)rows * cols > Integer.MAX_VALUE - 8) {
+			throw new LinAlgException("Dimensions (" + rows + "," + cols + ") exceed the maximum array size");
+		}
 		_nRows = rows;
 		_nCols = cols;
-		_adRCs = new double[_nRows][_nCols]; // Entries will be automatically initialized to 0.0
+		_adData = new double[rows * cols]; // Entries will be automatically initialized to 0.0
+		_nOffset = 0;
+		_nRowStride = cols;
+		_nColStride = 1;
+		_version = new Version();
+	}
+
+	/** View constructor: wraps existing storage without copying it (used by the view methods below)
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param data
+	 * @param offset
+	 * @param rowStride
+	 * @param colStride
+	 * @param version of the viewed storage
+	 */
+	private Matrix(int rows, int cols, double[] data, int offset, int rowStride, int colStride, Version version) {
+		_nRows = rows;
+		_nCols = cols;
+		_adData = data;
+		_nOffset = offset;
+		_nRowStride = rowStride;
+		_nColStride = colStride;
+		_version = version;
 	}
 	
 	/** Copy constructor: makes a new copy of an existing Matrix m
@@ -39,12 +87,22 @@ public class Matrix {
 	 */
 	public Matrix(Matrix m) {
 		// TODO: hint: see the corresponding Vector "copy constructor" for an example
+		// A copy is always compact and row-major, even when m is a view
 		_nRows = m._nRows;
 		_nCols = m._nCols;
-		_adRCs = new double[_nRows][_nCols]; // This allocates a matrix of size _nRows*_nCols
-		for (int i = 0; i < _nRows; i++) {
-			for (int j = 0; j < _nCols; j++) {
-				_adRCs[i][j] = m._adRCs[i][j];
+		_adData = new double[_nRows * _nCols]; // This allocates a matrix of size _nRows*_nCols
+		_nOffset = 0;
+		_nRowStride = _nCols;
+		_nColStride = 1;
+		_version = new Version();
+		if (m.isContiguous()) {
+			System.arraycopy(m._adData, m._nOffset, _adData, 0, _adData.length);
+		} else {
+			for (int i = 0; i < _nRows; i++) {
+				int src = m._nOffset + i * m._nRowStride;
+				int dst = i * _nCols;
+				for (int j = 0; j < _nCols; j++, src += m._nColStride)
+					_adData[dst + j] = m._adData[src];
 			}
 		}
 	}
@@ -54,17 +112,8 @@ public class Matrix {
 	 */
 	public String toString() {
 		// TODO: hint: see Vector.toString() for an example
-		// We could just repeatedly append to an existing String, but that copies the String each
-		// time, whereas a StringBuilder simply appends new characters to the end of the String
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < _nRows; i++) {
-			sb.append("[");
-			for (int j = 0; j < _nCols; j++) {
-					sb.append(String.format(" %6.3f ", _adRCs[i][j])); // Append each vector value in order
-			}
-			sb.append(" ]" + "\n");
-		}
-		return sb.toString(); 
+		// One "[ ... ]" line per row, formatted by TextCodec (see Vector.toString())
+		return TextCodec.toString(this); 
 	}
 
 	/** Tests whether another Object o (most often a matrix) is a equal to *this*
@@ -86,7 +135,7 @@ public class Matrix {
 			}
 			for (int i = 0; i < _nRows; i++) {
 				for (int j = 0; j < _nCols; j++) {
-					if (_adRCs[i][j] != m._adRCs[i][j]) {
+					if (_adData[index(i, j)] != m._adData[m.index(i, j)]) {
 						return false; // If two Matrices mismatch at any index, they are not equal
 					}
 				}
@@ -97,6 +146,59 @@ public class Matrix {
 			return false; // Two objects cannot be equal if they don't have the same class type	
 		}
 	}
+
+	/** Returns a hash code consistent with equals(): equal matrices (views included) have equal
+	 *  hash codes.  The hash is computed from the content once and cached until the next write.
+	 *
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		return ContentHash.fold(contentHash());
+	}
+
+	/** Returns the version of the storage of *this*, which every write through *this* or any view
+	 *  sharing its storage advances (set, transposeInPlace and any operation that writes its
+	 *  result into the matrix): while the version stays the same, so does the content
+	 *
+	 * @return
+	 */
+	public long getVersion() {
+		return _version._lValue;
+	}
+
+	/** 64-bit hash of the dimensions and entries (see ContentHash), cached until the next write
+	 *
+	 * @return
+	 */
+	long contentHash() {
+		long version = _version._lValue;
+		if (_lHashVersion != version) {
+			long sum = 0L;
+			for (int i = 0; i < _nRows; i++) {
+				long position = (long)i * _nCols;
+				int src = _nOffset + i * _nRowStride;
+				if (_nColStride == 1) {
+					for (int j = 0; j < _nCols; j++)
+						sum += ContentHash.term(position + j, _adData[src + j]);
+				} else {
+					for (int j = 0; j < _nCols; j++, src += _nColStride)
+						sum += ContentHash.term(position + j, _adData[src]);
+				}
+			}
+			_lHash = sum;
+			_lHashVersion = version;
+		}
+		return ContentHash.finish(_lHash, ((long)_nRows << 32) | _nCols);
+	}
+
+	/** Records a write to the storage of *this*: advances the version shared with its views,
+	 *  invalidating cached hashes (to be called by every operation in this package that writes
+	 *  into a matrix)
+	 */
+	void modified() {
+		_version._lValue++;
+	}
 	
 	/** Return the number of rows in this matrix
 	 *   
@@ -131,7 +233,7 @@ public class Matrix {
 		if (row > (_nRows -1) || col > (_nCols -1)) { // if _nCols is 3, then the array is [0,1,2]
 			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
 		}
-		return _adRCs[row][col];
+		return _adData[index(row, col)];
 	}
 	
 	/** Return the Vector of numbers corresponding to the provided row index
@@ -146,12 +248,34 @@ public class Matrix {
 			throw new LinAlgException("Row index (" + row + ") out of bounds [0, " + _nRows + "])");
 		}
 		Vector v = new Vector(_nCols);
-		for (int i = 0; i < _nCols; i++) {
-			v.set(i, _adRCs[row][i]); //use method from Vector since _adVal is invisible
-		}
+		getRow(row, v);
 		return v;
 	}
 
+	/** Copies the given row into out, allocating nothing
+	 * 
+	 * @param row
+	 * @param out
+	 * @throws LinAlgException if row is out of bounds or out does not have one entry per column
+	 */
+	public void getRow(int row, Vector out) throws LinAlgException {
+		if (row < 0 || row > (_nRows -1)) { 
+			throw new LinAlgException("Row index (" + row + ") out of bounds [0, " + _nRows + "])");
+		}
+		if (out.getDim() != _nCols) {
+			throw new LinAlgException("Cannot copy a row of " + _nCols + " columns into a vector of dimension " + out.getDim());
+		}
+		double[] values = out.getValues(); // Package-private access to the backing array avoids a bounds check per set()
+		int src = _nOffset + row * _nRowStride;
+		if (_nColStride == 1) {
+			System.arraycopy(_adData, src, values, 0, _nCols);
+		} else {
+			for (int i = 0; i < _nCols; i++, src += _nColStride)
+				values[i] = _adData[src];
+		}
+		out.modified();
+	}
+
 	/** Set the row and col of this matrix to the provided val
 	 * 
 	 * @param row
@@ -167,7 +291,15 @@ public class Matrix {
 		if (row > (_nRows -1) || col > (_nCols -1)) {
 			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
 		}
-		_adRCs[row][col] = val;
+		int pos = index(row, col);
+		long position = (long)row * _nCols + col;
+		boolean current = _lHashVersion == _version._lValue;
+		if (current) // Keep the computed hash current: swap this entry's term
+			_lHash += ContentHash.term(position, val) - ContentHash.term(position, _adData[pos]);
+		_adData[pos] = val;
+		_version._lValue++;
+		if (current)
+			_lHashVersion = _version._lValue;
 	}
 	
 	/** Return a new Matrix that is the transpose of *this*, i.e., if "transpose"
@@ -179,12 +311,57 @@ public class Matrix {
 	 */
 	public Matrix transpose() throws LinAlgException {
 		Matrix transpose = new Matrix(_nCols, _nRows);
-		for (int row = 0; row < _nRows; row++) {
-			for (int col = 0; col < _nCols; col++) {
-				transpose.set(col, row, get(row,col)); // get value at the original matrix (1,2); make it the value at (2,1)
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.TRANSPOSE, 8L * _nRows * _nCols);
+		transpose(transpose);
+		return transpose;
+	}
+
+	/** Writes the transpose of *this* into out, allocating nothing
+	 * 
+	 * @param out
+	 * @throws LinAlgException if out is not getNumCols() x getNumRows() or shares storage with *this*
+	 *         (use transposeView() for a transpose that shares storage)
+	 */
+	public void transpose(Matrix out) throws LinAlgException {
+		if (out._nRows != _nCols || out._nCols != _nRows) {
+			throw new LinAlgException("Cannot write the transpose of a " + _nRows + "x" + _nCols + " matrix into a " + out._nRows + "x" + out._nCols + " matrix");
+		}
+		checkNoAlias(out, this, "transpose");
+		// value at the original matrix (1,2) becomes the value at (2,1); Transpose.copy walks
+		// the two matrices in cache-sized blocks instead of striding through a whole column
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		Transpose.copy(_nRows, _nCols, _adData, _nOffset, _nRowStride, _nColStride,
+				out._adData, out._nOffset, out._nRowStride, out._nColStride);
+		out.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.TRANSPOSE, start, (long)_nRows * _nCols, 0.0);
+	}
+
+	/** Transposes *this* within its own storage, allocating nothing for a square matrix (any
+	 *  view included) and one bit per element for a rectangular one, whose dimensions swap;
+	 *  other views of the same storage see the rearranged values
+	 * 
+	 * @throws LinAlgException if *this* is rectangular and is a view rather than a whole matrix
+	 *         (transpose it into a new matrix, or use transposeView(), instead)
+	 */
+	public void transposeInPlace() throws LinAlgException {
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		if (_nRows == _nCols) {
+			Transpose.square(_nRows, _adData, _nOffset, _nRowStride, _nColStride);
+		} else {
+			if (!isContiguous() || _nOffset != 0 || _adData.length != _nRows * _nCols) {
+				throw new LinAlgException("Cannot transpose a " + _nRows + "x" + _nCols + " view in place: only square views can be");
 			}
+			Transpose.cycles(_nRows, _nCols, _adData, 0);
+			int rows = _nRows;
+			_nRows = _nCols;
+			_nCols = rows;
+			_nRowStride = rows;
 		}
-		return transpose;
+		modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.TRANSPOSE, start, (long)_nRows * _nCols, 0.0);
 	}
 
 	/** Return a new Matrix that is the square identity matrix (1's on diagonal, 0's elsewhere) 
@@ -205,12 +382,8 @@ public class Matrix {
 			throw new LinAlgException("Size " + dim + " must be greater than 0");
 		}
 		Matrix newMatrix = new Matrix(dim, dim);
-		for (int row = 0; row < newMatrix._nRows; row++) {
-			for (int col = 0; col < newMatrix._nCols; col++) {
-				if (row == col) {
-					newMatrix._adRCs[row][col] = 1;
-				}
-			}
+		for (int diag = 0; diag < dim; diag++) {
+			newMatrix._adData[diag * (dim + 1)] = 1; // Only the diagonal is set, everything else stays 0.0
 		}
 		return newMatrix;
 	}
@@ -225,20 +398,272 @@ public class Matrix {
 	 */
 	public static Matrix Multiply(Matrix m1, Matrix m2) throws LinAlgException {
 		// TODO: this should not return null!
+		return Multiply(m1, m2, ExecutionContext.getDefault());
+	}
+
+	/** Returns the Matrix result of multiplying Matrix m1 and m2, running on the given context;
+	 *  in parallel the output is split into tiles that are each computed by one task
+	 *  (every element is still summed in the same order, so the result does not depend on ctx)
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix Multiply(Matrix m1, Matrix m2, ExecutionContext ctx) throws LinAlgException {
 		if (m2._nRows != m1._nCols) {
 			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2._nRows + " rows");
 		}
 		Matrix C = new Matrix(m1._nRows, m2._nCols);
-        for (int i = 0; i < C._nRows; i++) {
-            for (int j = 0; j < C._nCols; j++) {
-                for (int k = 0; k < m1._nCols; k++) { //serve as a counter for both matrices
-                    C._adRCs[i][j] += (m1._adRCs[i][k] * m2._adRCs[k][j]);
-                }
-            }
-        }
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.MATRIX_MULTIPLY, 8L * m1._nRows * m2._nCols);
+		multiplyAdd(m1, m2, C, ctx);
         return C;
 	}
+
+	/** Writes the product of m1 and m2 into out, allocating nothing beyond Gemm's packing buffers
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param out
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows, out has the wrong
+	 *         shape, or out shares storage with m1 or m2
+	 */
+	public static void Multiply(Matrix m1, Matrix m2, Matrix out) throws LinAlgException {
+		Multiply(m1, m2, out, ExecutionContext.getDefault());
+	}
+
+	/** Writes the product of m1 and m2 into out, running on the given context (see Multiply(m1, m2, out))
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows, out has the wrong
+	 *         shape, or out shares storage with m1 or m2
+	 */
+	public static void Multiply(Matrix m1, Matrix m2, Matrix out, ExecutionContext ctx) throws LinAlgException {
+		if (m2._nRows != m1._nCols) {
+			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2._nRows + " rows");
+		}
+		if (out._nRows != m1._nRows || out._nCols != m2._nCols) {
+			throw new LinAlgException("Cannot write a " + m1._nRows + "x" + m2._nCols + " product into a " + out._nRows + "x" + out._nCols + " matrix");
+		}
+		// C is read while it is being written, so an operand sharing its storage would be corrupted
+		checkNoAlias(out, m1, "Multiply");
+		checkNoAlias(out, m2, "Multiply");
+		out.fill(0.0);
+		multiplyAdd(m1, m2, out, ctx);
+		out.modified();
+	}
+
+	/** Computes C += m1 * m2 (dimensions already validated), split into output tiles when ctx allows
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param C
+	 * @param ctx
+	 */
+	private static void multiplyAdd(Matrix m1, Matrix m2, Matrix C, ExecutionContext ctx) {
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		multiplyAddTiles(m1, m2, C, ctx);
+		if (LinAlgMetrics.ENABLED) {
+			long m = m1._nRows, n = m2._nCols, k = m1._nCols;
+			LinAlgMetrics.record(LinAlgMetrics.Op.MATRIX_MULTIPLY, start, m * k + k * n + m * n, 2.0 * m * n * k);
+		}
+	}
+
+	private static void multiplyAddTiles(Matrix m1, Matrix m2, Matrix C, ExecutionContext ctx) {
+		int m = m1._nRows, n = m2._nCols, k = m1._nCols;
+		int tile = ExecutionContext.MULTIPLY_TILE;
+		int rowTiles = (m + tile - 1) / tile;
+		int colTiles = (n + tile - 1) / tile;
+		if (rowTiles * colTiles == 1 || !ctx.shouldSplit((long)m * n)) {
+			// Blocked and packed GEMM; small products take a plain i-k-j loop inside Gemm
+			Gemm.multiply(m, n, k,
+					m1._adData, m1._nOffset, m1._nRowStride, m1._nColStride,
+					m2._adData, m2._nOffset, m2._nRowStride, m2._nColStride,
+					C._adData, C._nOffset, C._nRowStride, C._nColStride);
+			return;
+		}
+		ctx.forRange(rowTiles * colTiles, 1, (lo, hi) -> {
+			for (int t = lo; t < hi; t++) {
+				int row = (t / colTiles) * tile;
+				int col = (t % colTiles) * tile;
+				Gemm.multiply(Math.min(tile, m - row), Math.min(tile, n - col), k,
+						m1._adData, m1._nOffset + row * m1._nRowStride, m1._nRowStride, m1._nColStride,
+						m2._adData, m2._nOffset + col * m2._nColStride, m2._nRowStride, m2._nColStride,
+						C._adData, C.index(row, col), C._nRowStride, C._nColStride);
+			}
+		});
+	}
 		
+	/** Returns the product m[0] * m[1] * ... * m[k-1], evaluated in the parenthesization that
+	 *  needs the fewest multiply-adds.  The order is chosen by the classic O(k^3) dynamic
+	 *  program over the chain's dimensions, which is negligible next to the products
+	 *  themselves; e.g., for shapes 10x1000, 1000x10 and 10x1000 it does 2e5 instead of
+	 *  1e8 multiply-adds.
+	 * 
+	 * @param m
+	 * @return a new Matrix (a copy of m[0] if the chain has a single matrix)
+	 * @throws LinAlgException if the chain is empty or the inner dimensions of two neighbours
+	 *         do not match (checked before anything is multiplied)
+	 */
+	public static Matrix MultiplyChain(Matrix... m) throws LinAlgException {
+		return MultiplyChain(ExecutionContext.getDefault(), m);
+	}
+
+	/** Returns the product m[0] * m[1] * ... * m[k-1] in the cheapest order, running each
+	 *  product on the given context (see MultiplyChain(Matrix...))
+	 * 
+	 * @param ctx
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the chain is empty or the inner dimensions of two neighbours do not match
+	 */
+	public static Matrix MultiplyChain(ExecutionContext ctx, Matrix... m) throws LinAlgException {
+		int k = m.length;
+		if (k == 0) {
+			throw new LinAlgException("Cannot multiply an empty chain of matrices");
+		}
+		for (int i = 0; i + 1 < k; i++) {
+			if (m[i + 1]._nRows != m[i]._nCols) {
+				throw new LinAlgException("Cannot multiply matrix m" + i + " having " + m[i]._nCols + " columns with matrix m" + (i + 1) + " having " + m[i + 1]._nRows + " rows");
+			}
+		}
+		// dims[i] x dims[i + 1] is the shape of m[i]
+		long[] dims = new long[k + 1];
+		for (int i = 0; i < k; i++)
+			dims[i] = m[i]._nRows;
+		dims[k] = m[k - 1]._nCols;
+		// cost[i][j] = fewest multiply-adds for m[i..j], split[i][j] = last matrix of its left factor
+		long[][] cost = new long[k][k];
+		int[][] split = new int[k][k];
+		for (int len = 2; len <= k; len++) {
+			for (int i = 0; i + len - 1 < k; i++) {
+				int j = i + len - 1;
+				cost[i][j] = Long.MAX_VALUE;
+				for (int s = i; s < j; s++) {
+					long c = cost[i][s] + cost[s + 1][j] + dims[i] * dims[s + 1] * dims[j + 1];
+					if (c < cost[i][j]) {
+						cost[i][j] = c;
+						split[i][j] = s;
+					}
+				}
+			}
+		}
+		Matrix result = multiplyChain(m, split, 0, k - 1, ctx);
+		return result == m[0] ? new Matrix(m[0]) : result;
+	}
+
+	/** Multiplies m[i..j] following split (returns m[i] itself when i == j)
+	 * 
+	 * @param m
+	 * @param split
+	 * @param i
+	 * @param j
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException
+	 */
+	private static Matrix multiplyChain(Matrix[] m, int[][] split, int i, int j, ExecutionContext ctx) throws LinAlgException {
+		if (i == j)
+			return m[i];
+		int s = split[i][j];
+		return Multiply(multiplyChain(m, split, i, s, ctx), multiplyChain(m, split, s + 1, j, ctx), ctx);
+	}
+
+	/** Returns *this* raised to the given power by repeated squaring: about 2 log2(exponent)
+	 *  products instead of exponent - 1, all written into three reused buffers
+	 *  (power(0) is the identity)
+	 * 
+	 * @param exponent
+	 * @return
+	 * @throws LinAlgException if *this* is not square or exponent is negative
+	 */
+	public Matrix power(int exponent) throws LinAlgException {
+		return power(exponent, ExecutionContext.getDefault());
+	}
+
+	/** Returns *this* raised to the given power, running each product on the given context (see power(int))
+	 * 
+	 * @param exponent
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if *this* is not square or exponent is negative
+	 */
+	public Matrix power(int exponent, ExecutionContext ctx) throws LinAlgException {
+		if (_nRows != _nCols) {
+			throw new LinAlgException("Cannot raise a " + _nRows + "x" + _nCols + " matrix to a power: it must be square");
+		}
+		if (exponent < 0) {
+			throw new LinAlgException("Exponent " + exponent + " cannot be negative");
+		}
+		if (exponent == 0)
+			return GetIdentity(_nRows);
+		// base holds this^(2^i); result accumulates the factors for the set bits of exponent
+		Matrix base = new Matrix(this);
+		Matrix result = null;
+		Matrix tmp = null;
+		while (true) {
+			if ((exponent & 1) != 0) {
+				if (result == null) {
+					result = new Matrix(base);
+				} else {
+					if (tmp == null)
+						tmp = new Matrix(_nRows, _nCols);
+					Multiply(result, base, tmp, ctx);
+					Matrix t = result; result = tmp; tmp = t;
+				}
+			}
+			exponent >>>= 1;
+			if (exponent == 0)
+				return result;
+			if (tmp == null)
+				tmp = new Matrix(_nRows, _nCols);
+			Multiply(base, base, tmp, ctx);
+			Matrix t = base; base = tmp; tmp = t;
+		}
+	}
+
+	/** Returns the solution x of *this* x = b for a square *this*; factors *this* on every
+	 *  call, so use LUDecomposition directly to solve many systems with the same matrix
+	 * 
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if *this* is not square or is singular, or b has the wrong dimension
+	 */
+	public Vector solve(Vector b) throws LinAlgException {
+		return new LUDecomposition(this).solve(b);
+	}
+
+	/** Returns the determinant of *this*: 0 if it is singular (LU finds a column with no
+	 *  non-zero pivot), NaN if any entry is NaN or infinite
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square
+	 */
+	public double det() throws LinAlgException {
+		if (_nRows != _nCols) {
+			throw new LinAlgException("Cannot compute the det of a " + _nRows + "x" + _nCols + " matrix: it must be square");
+		}
+		for (int i = 0; i < _nRows; i++)
+			for (int j = 0; j < _nCols; j++)
+				if (!Double.isFinite(_adData[index(i, j)]))
+					return Double.NaN;
+		return new LUDecomposition(this, true).det();
+	}
+
+	/** Returns the inverse of *this* (via LUDecomposition)
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square or is singular
+	 */
+	public Matrix inverse() throws LinAlgException {
+		return new LUDecomposition(this).inverse();
+	}
+
 	/** Returns the Vector result of multiplying Matrix m by Vector v (assuming v is a column vector)
 	 * 
 	 * @param m
@@ -248,17 +673,488 @@ public class Matrix {
 	 */
 	public static Vector Multiply(Matrix m, Vector v) throws LinAlgException {
 		// TODO: this should not return null!
+		return Multiply(m, v, ExecutionContext.getDefault());
+	}
+
+	/** Returns the Vector result of multiplying Matrix m by Vector v, running on the given context;
+	 *  in parallel each task computes a contiguous block of rows
+	 * 
+	 * @param m
+	 * @param v
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector Multiply(Matrix m, Vector v, ExecutionContext ctx) throws LinAlgException {
 		Vector vec = new Vector(m._nRows);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.MATRIX_VECTOR_MULTIPLY, 8L * m._nRows);
+		Multiply(m, v, vec, ctx);
+		return vec;
+	}
+
+	/** Writes the product of Matrix m and Vector v into out, allocating nothing
+	 * 
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if m columns do match the size of v, out does not have one entry per
+	 *         row of m, or out is v
+	 */
+	public static void Multiply(Matrix m, Vector v, Vector out) throws LinAlgException {
+		Multiply(m, v, out, ExecutionContext.getDefault());
+	}
+
+	/** Writes the product of Matrix m and Vector v into out, running on the given context (see Multiply(m, v, out))
+	 * 
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if m columns do match the size of v, out does not have one entry per
+	 *         row of m, or out is v
+	 */
+	public static void Multiply(Matrix m, Vector v, Vector out, ExecutionContext ctx) throws LinAlgException {
 		if (m._nCols != v.getDim()) { //use method from Vector since _nDim is invisible
 			throw new LinAlgException("Cannot multiply matrix with " + m._nCols + " columns with a vector of dimension " + v.getDim());
 		} 
+		if (out.getDim() != m._nRows) {
+			throw new LinAlgException("Cannot write the product of a matrix with " + m._nRows + " rows into a vector of dimension " + out.getDim());
+		}
+		if (out == v) {
+			throw new LinAlgException("Cannot Multiply into the input vector: every output entry reads all of v");
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] x = v.getValues();
+		double[] y = out.getValues();
+		if (!ctx.shouldSplit((long)m._nRows * m._nCols)) {
+			multiplyRows(m, x, y, 0, m._nRows); // No task objects on the sequential path
+		} else {
+			int rowsPerTask = Math.max(1, ctx.getSplitSize() / m._nCols);
+			ctx.forRange(m._nRows, rowsPerTask, (lo, hi) -> multiplyRows(m, x, y, lo, hi));
+		}
+		out.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.MATRIX_VECTOR_MULTIPLY, start, (long)m._nRows * m._nCols, 2.0 * m._nRows * m._nCols);
+	}
+
+	/** Writes *this* times in into out (LinearOperator; see Multiply(m, v, out))
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		Multiply(this, in, out);
+	}
+
+	/** Writes the transpose of *this* times in into out; Gemv streams the rows of *this* (the
+	 *  columns of the transposed view) with axpy instead of striding down columns
+	 * 
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		Gemv(1.0, transposeView(), in, 0.0, out);
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** Computes y[row] = (row of m) . x for the rows in [lo, hi)
+	 * 
+	 * @param m
+	 * @param x
+	 * @param y
+	 * @param lo
+	 * @param hi
+	 */
+	private static void multiplyRows(Matrix m, double[] x, double[] y, int lo, int hi) {
+		for (int row = lo; row < hi; row++) {
+			int src = m._nOffset + row * m._nRowStride;
+			if (m._nColStride == 1) {
+				y[row] = VectorKernels.INSTANCE.dot(m._adData, src, x, 0, m._nCols); // SIMD when available
+				continue;
+			}
+			double sum = 0;
+			for (int column = 0; column < m._nCols; column++, src += m._nColStride) {
+				sum += m._adData[src] * x[column];
+			}
+			y[row] = sum;
+		}
+	}
+
+	/** Computes y = alpha * A * x + beta * y in one pass over A (BLAS gemv), modifies y; as
+	 *  in BLAS, y is not read when beta is 0.  Row-major layouts take one fused dot product
+	 *  per row; column-major ones (e.g., a transposeView()) take one axpy per column, so
+	 *  both stream through A contiguously.
+	 * 
+	 * @param alpha
+	 * @param A
+	 * @param x
+	 * @param beta
+	 * @param y
+	 * @throws LinAlgException if A columns do not match the size of x, A rows do not match the
+	 *         size of y, or x is y
+	 */
+	public static void Gemv(double alpha, Matrix A, Vector x, double beta, Vector y) throws LinAlgException {
+		if (A._nCols != x.getDim()) {
+			throw new LinAlgException("Cannot multiply matrix with " + A._nCols + " columns with a vector of dimension " + x.getDim());
+		}
+		if (y.getDim() != A._nRows) {
+			throw new LinAlgException("Cannot write the product of a matrix with " + A._nRows + " rows into a vector of dimension " + y.getDim());
+		}
+		if (x == y) {
+			throw new LinAlgException("Cannot Gemv into the input vector: every output entry reads all of x");
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = A._adData, xv = x.getValues(), yv = y.getValues();
+		int rows = A._nRows, cols = A._nCols;
+		if (A._nColStride != 1 && A._nRowStride == 1) {
+			if (beta == 0.0)
+				Arrays.fill(yv, 0, rows, 0.0);
+			else if (beta != 1.0)
+				VectorKernels.INSTANCE.scalarMult(yv, beta, yv, 0, rows);
+			for (int col = 0; col < cols; col++) {
+				double scale = alpha * xv[col];
+				if (scale != 0.0)
+					VectorKernels.INSTANCE.axpy(scale, a, A._nOffset + col * A._nColStride, yv, 0, rows);
+			}
+			y.modified();
+			if (LinAlgMetrics.ENABLED)
+				LinAlgMetrics.record(LinAlgMetrics.Op.GEMV, start, (long)rows * cols, 2.0 * rows * cols);
+			return;
+		}
+		for (int row = 0; row < rows; row++) {
+			int src = A._nOffset + row * A._nRowStride;
+			double sum;
+			if (A._nColStride == 1) {
+				sum = VectorKernels.INSTANCE.dot(a, src, xv, 0, cols);
+			} else {
+				sum = 0;
+				for (int column = 0; column < cols; column++, src += A._nColStride)
+					sum += a[src] * xv[column];
+			}
+			yv[row] = beta == 0.0 ? alpha * sum : alpha * sum + beta * yv[row];
+		}
+		y.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.GEMV, start, (long)rows * cols, 2.0 * rows * cols);
+	}
+
+	/** Computes A = alpha * x * y^T + A, the rank-1 update (BLAS ger), modifies A
+	 * 
+	 * @param alpha
+	 * @param x
+	 * @param y
+	 * @param A
+	 * @throws LinAlgException if A rows do not match the size of x or A columns do not match the size of y
+	 */
+	public static void Ger(double alpha, Vector x, Vector y, Matrix A) throws LinAlgException {
+		if (A._nRows != x.getDim() || A._nCols != y.getDim()) {
+			throw new LinAlgException("Cannot add the outer product of vectors of dimensions " + x.getDim() + " and " + y.getDim() + " to a " + A._nRows + "x" + A._nCols + " matrix");
+		}
+		double[] a = A._adData, xv = x.getValues(), yv = y.getValues();
+		A.modified();
+		if (A._nColStride != 1 && A._nRowStride == 1) {
+			for (int col = 0; col < A._nCols; col++) {
+				double scale = alpha * yv[col];
+				if (scale != 0.0)
+					VectorKernels.INSTANCE.axpy(scale, xv, 0, a, A._nOffset + col * A._nColStride, A._nRows);
+			}
+			return;
+		}
+		for (int row = 0; row < A._nRows; row++) {
+			double scale = alpha * xv[row];
+			if (scale == 0.0)
+				continue;
+			int dst = A._nOffset + row * A._nRowStride;
+			if (A._nColStride == 1) {
+				VectorKernels.INSTANCE.axpy(scale, yv, 0, a, dst, A._nCols);
+			} else {
+				for (int column = 0; column < A._nCols; column++, dst += A._nColStride)
+					a[dst] += scale * yv[column];
+			}
+		}
+	}
+
+	/** Returns the Vector result of multiplying SparseMatrix m by Vector v (see SparseMatrix.Multiply)
+	 * 
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector Multiply(SparseMatrix m, Vector v) throws LinAlgException {
+		return SparseMatrix.Multiply(m, v);
+	}
+
+	/** Returns d * m, scaling the rows of m (see DiagonalMatrix.Multiply)
+	 * 
+	 * @param d
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if d columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(DiagonalMatrix d, Matrix m) throws LinAlgException {
+		return DiagonalMatrix.Multiply(d, m);
+	}
+
+	/** Returns m * d, scaling the columns of m (see DiagonalMatrix.Multiply)
+	 * 
+	 * @param m
+	 * @param d
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of d rows
+	 */
+	public static Matrix Multiply(Matrix m, DiagonalMatrix d) throws LinAlgException {
+		return DiagonalMatrix.Multiply(m, d);
+	}
+
+	/** Returns t * m using only the stored triangle (see TriangularMatrix.Multiply)
+	 * 
+	 * @param t
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if t columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(TriangularMatrix t, Matrix m) throws LinAlgException {
+		return TriangularMatrix.Multiply(t, m);
+	}
+
+	/** Returns m * t using only the stored triangle (see TriangularMatrix.Multiply)
+	 * 
+	 * @param m
+	 * @param t
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of t rows
+	 */
+	public static Matrix Multiply(Matrix m, TriangularMatrix t) throws LinAlgException {
+		return TriangularMatrix.Multiply(m, t);
+	}
+
+	/** Returns s * m from the packed triangle of s (see SymmetricMatrix.Multiply)
+	 * 
+	 * @param s
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(SymmetricMatrix s, Matrix m) throws LinAlgException {
+		return SymmetricMatrix.Multiply(s, m);
+	}
+
+	/** Returns m * s from the packed triangle of s (see SymmetricMatrix.Multiply)
+	 * 
+	 * @param m
+	 * @param s
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of s rows
+	 */
+	public static Matrix Multiply(Matrix m, SymmetricMatrix s) throws LinAlgException {
+		return SymmetricMatrix.Multiply(m, s);
+	}
+
+	/** Returns b * m using only the band of b (see BandedMatrix.Multiply)
+	 * 
+	 * @param b
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if b columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(BandedMatrix b, Matrix m) throws LinAlgException {
+		return BandedMatrix.Multiply(b, m);
+	}
+
+	/** Returns m * b using only the band of b (see BandedMatrix.Multiply)
+	 * 
+	 * @param m
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of b rows
+	 */
+	public static Matrix Multiply(Matrix m, BandedMatrix b) throws LinAlgException {
+		return BandedMatrix.Multiply(m, b);
+	}
+
+	/** Returns the Vector result of multiplying any LinearOperator (e.g., a DiagonalMatrix,
+	 *  TriangularMatrix, SymmetricMatrix or BandedMatrix) by Vector v through its own kernel
+	 * 
+	 * @param op
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if op columns do match the size of v
+	 */
+	public static Vector Multiply(LinearOperator op, Vector v) throws LinAlgException {
+		Vector vec = new Vector(op.getNumRows());
+		op.apply(v, vec);
+		return vec;
+	}
+
+	/** Returns the Vector result of multiplying Matrix m by SparseVector v; only the columns of m
+	 *  selected by the non-zeros of v are read
+	 * 
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector Multiply(Matrix m, SparseVector v) throws LinAlgException {
+		if (m._nCols != v.getDim()) {
+			throw new LinAlgException("Cannot multiply matrix with " + m._nCols + " columns with a vector of dimension " + v.getDim());
+		}
+		Vector vec = new Vector(m._nRows);
+		double[] y = vec.getValues();
+		int[] idx = v.getIndices();
+		double[] val = v.getNonZeroValues();
 		for (int row = 0; row < m._nRows; row++) {
+			int src = m._nOffset + row * m._nRowStride;
 			double sum = 0;
-			for (int column = 0; column < m._nCols; column++) {
-				sum += m._adRCs[row][column] * v.get(column);
-		        vec.set(row,sum);
+			for (int k = 0; k < idx.length; k++) {
+				sum += m._adData[src + idx[k] * m._nColStride] * val[k];
 			}
+			y[row] = sum;
 		}
 		return vec;
 	}
+
+	/** Returns a view of the rows x cols block of *this* whose top-left corner is at (row, col);
+	 *  the view shares storage with *this*, so a set() on either is visible through the other
+	 * 
+	 * @param row
+	 * @param col
+	 * @param rows
+	 * @param cols
+	 * @return
+	 * @throws LinAlgException if the block does not lie inside this matrix or is empty
+	 */
+	public Matrix subMatrix(int row, int col, int rows, int cols) throws LinAlgException {
+		if (rows <= 0 || cols <= 0) {
+			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+		}
+		if (row < 0 || col < 0 || row + rows > _nRows || col + cols > _nCols) {
+			throw new LinAlgException("Block (" + row + ", " + col + ") of size (" + rows + "," + cols + ") is out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
+		}
+		return new Matrix(rows, cols, _adData, index(row, col), _nRowStride, _nColStride, _version);
+	}
+
+	/** Returns a 1 x cols view of the given row of *this* (shares storage, see subMatrix)
+	 * 
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds
+	 */
+	public Matrix rowView(int row) throws LinAlgException {
+		if (row < 0 || row > (_nRows -1)) { 
+			throw new LinAlgException("Row index (" + row + ") out of bounds [0, " + _nRows + "])");
+		}
+		return new Matrix(1, _nCols, _adData, _nOffset + row * _nRowStride, _nRowStride, _nColStride, _version);
+	}
+
+	/** Returns a rows x 1 view of the given column of *this* (shares storage, see subMatrix)
+	 * 
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if col is out of bounds
+	 */
+	public Matrix columnView(int col) throws LinAlgException {
+		if (col < 0 || col > (_nCols -1)) { 
+			throw new LinAlgException("Column index (" + col + ") out of bounds [0, " + _nCols + "])");
+		}
+		return new Matrix(_nRows, 1, _adData, _nOffset + col * _nColStride, _nRowStride, _nColStride, _version);
+	}
+
+	/** Returns the transpose of *this* as a view: no data is copied, the row and column strides
+	 *  are simply swapped, so the view and *this* see each other's updates
+	 * 
+	 * @return
+	 */
+	public Matrix transposeView() {
+		return new Matrix(_nCols, _nRows, _adData, _nOffset, _nColStride, _nRowStride, _version);
+	}
+
+	/** Sets every entry of *this* (or of the block it views) to val
+	 * 
+	 * @param val
+	 */
+	private void fill(double val) {
+		if (isContiguous()) {
+			Arrays.fill(_adData, _nOffset, _nOffset + _nRows * _nCols, val);
+			return;
+		}
+		for (int row = 0; row < _nRows; row++) {
+			int pos = _nOffset + row * _nRowStride;
+			for (int col = 0; col < _nCols; col++, pos += _nColStride)
+				_adData[pos] = val;
+		}
+	}
+
+	/** Rejects an "into" destination that shares storage with an operand (e.g., a view of it)
+	 * 
+	 * @param out
+	 * @param operand
+	 * @param op
+	 * @throws LinAlgException if out and operand are backed by the same array
+	 */
+	private static void checkNoAlias(Matrix out, Matrix operand, String op) throws LinAlgException {
+		if (out._adData == operand._adData) {
+			throw new LinAlgException("Cannot " + op + " into a matrix that shares storage with an operand");
+		}
+	}
+
+	/** Position of (row, col) in _adData (no bounds checks, callers must validate)
+	 * 
+	 * @param row
+	 * @param col
+	 * @return
+	 */
+	private int index(int row, int col) {
+		return _nOffset + row * _nRowStride + col * _nColStride;
+	}
+
+	/** True when the content occupies one gap-free row-major run of _adData
+	 * 
+	 * @return
+	 */
+	boolean isContiguous() {
+		return _nColStride == 1 && (_nRowStride == _nCols || _nRows == 1);
+	}
+
+	// Package-private access to the storage layout for the kernels in this package
+	double[] getData() {
+		return _adData;
+	}
+
+	int getOffset() {
+		return _nOffset;
+	}
+
+	int getRowStride() {
+		return _nRowStride;
+	}
+
+	int getColStride() {
+		return _nColStride;
+	}
+
+	/** Element (row, col) without bounds checks, for the kernels in this package */
+	double entry(int row, int col) {
+		return _adData[index(row, col)];
+	}
+
+	/** y[yOff, yOff + cols) += alpha * (columns [lo, lo + cols) of row), for the structured-matrix kernels */
+	void axpyRow(double alpha, int row, int lo, int cols, double[] y, int yOff) {
+		int src = index(row, lo);
+		if (_nColStride == 1) {
+			VectorKernels.INSTANCE.axpy(alpha, _adData, src, y, yOff, cols);
+			return;
+		}
+		for (int k = 0; k < cols; k++, src += _nColStride)
+			y[yOff + k] += alpha * _adData[src];
+	}
 }		
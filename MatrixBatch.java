@@ -0,0 +1,623 @@
+package linalg;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*** A batch of N small real-valued (double) matrices of the same shape, stored together
+ *   in one flat array so that millions of tiny transforms cost neither an object nor a
+ *   double[][] each.
+ *
+ *   The layout is structure-of-arrays: entry (row, col) of matrix b is stored at
+ *   _adData[(row * cols + col) * N + b].  Every kernel therefore walks the batch index in
+ *   its innermost loop over contiguous memory, which the JIT can vectorize, rather than
+ *   looping over the few entries of a single matrix.  Square 2x2, 3x3 and 4x4 batches
+ *   (and those shapes times a batch of column vectors) use fully unrolled kernels.
+ *
+ *   A batch of vectors is simply a batch of dim x 1 matrices, so Multiply(a, x) with an
+ *   n x n batch a and an n x 1 batch x is the batched matrix-vector product.
+ *
+ *   The overloads taking an ExecutionContext split the batch into chunks across its pool;
+ *   each matrix is always handled by exactly one task, so the result does not depend on
+ *   the context.
+ *
+ */
+public final class MatrixBatch {
+
+	private int _nSize;      // Number of matrices in this batch (N)
+	private int _nRows;      // Number of rows of each matrix
+	private int _nCols;      // Number of columns of each matrix
+	private double[] _adData; // Entry (row, col) of matrix b at _adData[(row * _nCols + col) * _nSize + b]
+
+	/** Allocates a batch of size rows x cols matrices, all entries 0.0
+	 *
+	 * @param size
+	 * @param rows
+	 * @param cols
+	 * @throws LinAlgException if size, rows or cols is <= 0, or the batch is too large for one array
+	 */
+	public MatrixBatch(int size, int rows, int cols) throws LinAlgException {
+		if (size <= 0) {
+			throw new LinAlgException("Batch size " + size + " must be greater than 0");
+		}
+		if (rows <= 0 || cols <= 0) {
+			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+		}
+		if ((long)size * rows * cols > Integer.MAX_VALUE - 8) {
+			throw new LinAlgException("A batch of " + size + " matrices of dimensions (" + rows + "," + cols + ") exceeds the maximum array size");
+		}
+		_nSize = size;
+		_nRows = rows;
+		_nCols = cols;
+		_adData = new double[size * rows * cols];
+	}
+
+	/** Copy constructor: makes a new copy of an existing batch
+	 *
+	 * @param m
+	 */
+	public MatrixBatch(MatrixBatch m) {
+		_nSize = m._nSize;
+		_nRows = m._nRows;
+		_nCols = m._nCols;
+		_adData = m._adData.clone();
+	}
+
+	/** Returns a batch holding copies of the given matrices, which must all have the same shape
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m is empty or the matrices do not all have the same shape
+	 */
+	public static MatrixBatch of(Matrix... m) throws LinAlgException {
+		if (m.length == 0) {
+			throw new LinAlgException("Cannot make a batch of zero matrices");
+		}
+		MatrixBatch batch = new MatrixBatch(m.length, m[0].getNumRows(), m[0].getNumCols());
+		for (int b = 0; b < m.length; b++)
+			batch.setMatrix(b, m[b]);
+		return batch;
+	}
+
+	/** Returns the number of matrices in this batch
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return _nSize;
+	}
+
+	/** Returns the number of rows of each matrix
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	/** Returns the number of columns of each matrix
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Returns entry (row, col) of matrix b
+	 *
+	 * @param b
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if b, row or col is out of bounds
+	 */
+	public double get(int b, int row, int col) throws LinAlgException {
+		checkIndex(b, row, col);
+		return _adData[(row * _nCols + col) * _nSize + b];
+	}
+
+	/** Sets entry (row, col) of matrix b to val
+	 *
+	 * @param b
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if b, row or col is out of bounds
+	 */
+	public void set(int b, int row, int col, double val) throws LinAlgException {
+		checkIndex(b, row, col);
+		_adData[(row * _nCols + col) * _nSize + b] = val;
+	}
+
+	/** Returns a new Matrix holding a copy of matrix b
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if b is out of bounds
+	 */
+	public Matrix getMatrix(int b) throws LinAlgException {
+		Matrix m = new Matrix(_nRows, _nCols);
+		getMatrix(b, m);
+		return m;
+	}
+
+	/** Copies matrix b into out, allocating nothing
+	 *
+	 * @param b
+	 * @param out
+	 * @throws LinAlgException if b is out of bounds or out does not have the shape of this batch
+	 */
+	public void getMatrix(int b, Matrix out) throws LinAlgException {
+		checkBatchIndex(b);
+		checkShape(out);
+		double[] dst = out.getData();
+		for (int row = 0; row < _nRows; row++) {
+			int pos = out.getOffset() + row * out.getRowStride();
+			for (int col = 0; col < _nCols; col++, pos += out.getColStride())
+				dst[pos] = _adData[(row * _nCols + col) * _nSize + b];
+		}
+		out.modified();
+	}
+
+	/** Copies m into matrix b of this batch
+	 *
+	 * @param b
+	 * @param m
+	 * @throws LinAlgException if b is out of bounds or m does not have the shape of this batch
+	 */
+	public void setMatrix(int b, Matrix m) throws LinAlgException {
+		checkBatchIndex(b);
+		checkShape(m);
+		double[] src = m.getData();
+		for (int row = 0; row < _nRows; row++) {
+			int pos = m.getOffset() + row * m.getRowStride();
+			for (int col = 0; col < _nCols; col++, pos += m.getColStride())
+				_adData[(row * _nCols + col) * _nSize + b] = src[pos];
+		}
+	}
+
+	/** Returns a new batch whose matrix b is the product a[b] * x[b] for every b
+	 *
+	 * @param a
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if the batch sizes differ or the matrices cannot be multiplied
+	 */
+	public static MatrixBatch Multiply(MatrixBatch a, MatrixBatch x) throws LinAlgException {
+		return Multiply(a, x, ExecutionContext.getDefault());
+	}
+
+	/** Returns a new batch whose matrix b is the product a[b] * x[b] for every b, splitting
+	 *  the batch across ctx's pool
+	 *
+	 * @param a
+	 * @param x
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if the batch sizes differ or the matrices cannot be multiplied
+	 */
+	public static MatrixBatch Multiply(MatrixBatch a, MatrixBatch x, ExecutionContext ctx) throws LinAlgException {
+		checkMultiply(a, x);
+		MatrixBatch out = new MatrixBatch(a._nSize, a._nRows, x._nCols);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.BATCH_MULTIPLY, 8L * out._adData.length);
+		multiply(a, x, out, ctx);
+		return out;
+	}
+
+	/** Writes a[b] * x[b] into out[b] for every b, allocating nothing
+	 *
+	 * @param a
+	 * @param x
+	 * @param out
+	 * @throws LinAlgException if the batch sizes differ, the matrices cannot be multiplied,
+	 *         out has the wrong shape or shares storage with a or x
+	 */
+	public static void Multiply(MatrixBatch a, MatrixBatch x, MatrixBatch out) throws LinAlgException {
+		Multiply(a, x, out, ExecutionContext.getDefault());
+	}
+
+	/** Writes a[b] * x[b] into out[b] for every b, splitting the batch across ctx's pool
+	 *
+	 * @param a
+	 * @param x
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if the batch sizes differ, the matrices cannot be multiplied,
+	 *         out has the wrong shape or shares storage with a or x
+	 */
+	public static void Multiply(MatrixBatch a, MatrixBatch x, MatrixBatch out, ExecutionContext ctx) throws LinAlgException {
+		checkMultiply(a, x);
+		checkOutput(out, a._nSize, a._nRows, x._nCols);
+		checkNoAlias(out, a, "Multiply");
+		checkNoAlias(out, x, "Multiply");
+		multiply(a, x, out, ctx);
+	}
+
+	/** Returns a new batch holding the transpose of every matrix of *this*
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public MatrixBatch transpose() throws LinAlgException {
+		MatrixBatch out = new MatrixBatch(_nSize, _nCols, _nRows);
+		transpose(out);
+		return out;
+	}
+
+	/** Writes the transpose of every matrix of *this* into out, allocating nothing
+	 *  (in the batched layout this is one contiguous copy per entry)
+	 *
+	 * @param out
+	 * @throws LinAlgException if out has the wrong shape or shares storage with *this*
+	 */
+	public void transpose(MatrixBatch out) throws LinAlgException {
+		checkOutput(out, _nSize, _nCols, _nRows);
+		checkNoAlias(out, this, "transpose");
+		for (int row = 0; row < _nRows; row++)
+			for (int col = 0; col < _nCols; col++)
+				System.arraycopy(_adData, (row * _nCols + col) * _nSize, out._adData, (col * _nRows + row) * _nSize, _nSize);
+	}
+
+	/** Returns a new batch holding the inverse of every matrix of *this*
+	 *
+	 * @return
+	 * @throws LinAlgException if the matrices are not square or one of them is singular
+	 */
+	public MatrixBatch inverse() throws LinAlgException {
+		return inverse(ExecutionContext.getDefault());
+	}
+
+	/** Returns a new batch holding the inverse of every matrix of *this*, splitting the
+	 *  batch across ctx's pool
+	 *
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if the matrices are not square or one of them is singular
+	 */
+	public MatrixBatch inverse(ExecutionContext ctx) throws LinAlgException {
+		MatrixBatch out = new MatrixBatch(_nSize, _nRows, _nCols);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.BATCH_INVERSE, 8L * _adData.length);
+		inverse(out, ctx);
+		return out;
+	}
+
+	/** Writes the inverse of every matrix of *this* into out, allocating nothing for
+	 *  2x2, 3x3 and 4x4 batches (larger ones go through LUDecomposition one matrix at a time)
+	 *
+	 * @param out
+	 * @throws LinAlgException if the matrices are not square or one of them is singular (out is
+	 *         then partly written), or out has the wrong shape or shares storage with *this*
+	 */
+	public void inverse(MatrixBatch out) throws LinAlgException {
+		inverse(out, ExecutionContext.getDefault());
+	}
+
+	/** Writes the inverse of every matrix of *this* into out, splitting the batch across ctx's pool
+	 *
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if the matrices are not square or one of them is singular (out is
+	 *         then partly written), or out has the wrong shape or shares storage with *this*
+	 */
+	public void inverse(MatrixBatch out, ExecutionContext ctx) throws LinAlgException {
+		if (_nRows != _nCols) {
+			throw new LinAlgException("Cannot invert a batch of " + _nRows + "x" + _nCols + " matrices: they must be square");
+		}
+		checkOutput(out, _nSize, _nRows, _nCols);
+		checkNoAlias(out, this, "inverse");
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		int singular;
+		if (!ctx.shouldSplit((long)_nSize * _nRows * _nCols)) {
+			singular = invertRange(this, out, 0, _nSize);
+		} else {
+			AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+			ctx.forRange(_nSize, grain(ctx, _nRows * _nCols), (lo, hi) -> {
+				int b = invertRange(this, out, lo, hi);
+				if (b >= 0)
+					first.accumulateAndGet(b, Math::min);
+			});
+			singular = first.get() == Integer.MAX_VALUE ? -1 : first.get();
+		}
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.BATCH_INVERSE, start, (long)_adData.length, 0.0);
+		if (singular >= 0) {
+			throw new LinAlgException("Matrix " + singular + " of the batch is singular");
+		}
+	}
+
+	/** Batch indices per parallel task so that each task touches about splitSize entries */
+	private static int grain(ExecutionContext ctx, int entriesPerMatrix) {
+		return Math.max(1, ctx.getSplitSize() / entriesPerMatrix);
+	}
+
+	private static void multiply(MatrixBatch a, MatrixBatch x, MatrixBatch out, ExecutionContext ctx) {
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		int entries = a._nRows * a._nCols + x._nRows * x._nCols;
+		if (!ctx.shouldSplit((long)a._nSize * entries))
+			multiplyRange(a, x, out, 0, a._nSize);
+		else
+			ctx.forRange(a._nSize, grain(ctx, entries), (lo, hi) -> multiplyRange(a, x, out, lo, hi));
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.BATCH_MULTIPLY, start, (long)a._nSize * (entries + out._nRows * out._nCols),
+					2.0 * a._nSize * a._nRows * a._nCols * x._nCols);
+	}
+
+	/** out[b] = a[b] * x[b] for b in [lo, hi), dispatching to an unrolled kernel when there is one */
+	private static void multiplyRange(MatrixBatch a, MatrixBatch x, MatrixBatch out, int lo, int hi) {
+		int n = a._nRows;
+		if (n == a._nCols && n == x._nRows && (x._nCols == n || x._nCols == 1)) {
+			boolean vec = x._nCols == 1;
+			switch (n) {
+			case 2:
+				if (vec) multiplyVec2(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				else multiply2(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				return;
+			case 3:
+				if (vec) multiplyVec3(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				else multiply3(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				return;
+			case 4:
+				if (vec) multiplyVec4(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				else multiply4(a._adData, x._adData, out._adData, a._nSize, lo, hi);
+				return;
+			default:
+				break;
+			}
+		}
+		multiplyGeneral(a, x, out, lo, hi);
+	}
+
+	private static void multiplyGeneral(MatrixBatch a, MatrixBatch x, MatrixBatch out, int lo, int hi) {
+		int N = a._nSize, inner = a._nCols, cols = x._nCols;
+		double[] ad = a._adData, xd = x._adData, od = out._adData;
+		for (int row = 0; row < a._nRows; row++) {
+			for (int col = 0; col < cols; col++) {
+				int o = (row * cols + col) * N;
+				for (int b = lo; b < hi; b++)
+					od[o + b] = 0.0;
+				for (int k = 0; k < inner; k++) {
+					int ao = (row * inner + k) * N, xo = (k * cols + col) * N;
+					for (int b = lo; b < hi; b++)
+						od[o + b] += ad[ao + b] * xd[xo + b];
+				}
+			}
+		}
+	}
+
+	private static void multiply2(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double a00 = a[b], a01 = a[N + b], a10 = a[2 * N + b], a11 = a[3 * N + b];
+			double x00 = x[b], x01 = x[N + b], x10 = x[2 * N + b], x11 = x[3 * N + b];
+			o[b]         = a00 * x00 + a01 * x10;
+			o[N + b]     = a00 * x01 + a01 * x11;
+			o[2 * N + b] = a10 * x00 + a11 * x10;
+			o[3 * N + b] = a10 * x01 + a11 * x11;
+		}
+	}
+
+	private static void multiply3(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double a00 = a[b],         a01 = a[N + b],     a02 = a[2 * N + b];
+			double a10 = a[3 * N + b], a11 = a[4 * N + b], a12 = a[5 * N + b];
+			double a20 = a[6 * N + b], a21 = a[7 * N + b], a22 = a[8 * N + b];
+			double x00 = x[b],         x01 = x[N + b],     x02 = x[2 * N + b];
+			double x10 = x[3 * N + b], x11 = x[4 * N + b], x12 = x[5 * N + b];
+			double x20 = x[6 * N + b], x21 = x[7 * N + b], x22 = x[8 * N + b];
+			o[b]         = a00 * x00 + a01 * x10 + a02 * x20;
+			o[N + b]     = a00 * x01 + a01 * x11 + a02 * x21;
+			o[2 * N + b] = a00 * x02 + a01 * x12 + a02 * x22;
+			o[3 * N + b] = a10 * x00 + a11 * x10 + a12 * x20;
+			o[4 * N + b] = a10 * x01 + a11 * x11 + a12 * x21;
+			o[5 * N + b] = a10 * x02 + a11 * x12 + a12 * x22;
+			o[6 * N + b] = a20 * x00 + a21 * x10 + a22 * x20;
+			o[7 * N + b] = a20 * x01 + a21 * x11 + a22 * x21;
+			o[8 * N + b] = a20 * x02 + a21 * x12 + a22 * x22;
+		}
+	}
+
+	private static void multiply4(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double x00 = x[b],          x01 = x[N + b],      x02 = x[2 * N + b],  x03 = x[3 * N + b];
+			double x10 = x[4 * N + b],  x11 = x[5 * N + b],  x12 = x[6 * N + b],  x13 = x[7 * N + b];
+			double x20 = x[8 * N + b],  x21 = x[9 * N + b],  x22 = x[10 * N + b], x23 = x[11 * N + b];
+			double x30 = x[12 * N + b], x31 = x[13 * N + b], x32 = x[14 * N + b], x33 = x[15 * N + b];
+			for (int row = 0; row < 4; row++) { // Constant trip count: the JIT unrolls it fully
+				int r = 4 * row * N + b;
+				double ai0 = a[r], ai1 = a[r + N], ai2 = a[r + 2 * N], ai3 = a[r + 3 * N];
+				o[r]         = ai0 * x00 + ai1 * x10 + ai2 * x20 + ai3 * x30;
+				o[r + N]     = ai0 * x01 + ai1 * x11 + ai2 * x21 + ai3 * x31;
+				o[r + 2 * N] = ai0 * x02 + ai1 * x12 + ai2 * x22 + ai3 * x32;
+				o[r + 3 * N] = ai0 * x03 + ai1 * x13 + ai2 * x23 + ai3 * x33;
+			}
+		}
+	}
+
+	private static void multiplyVec2(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double x0 = x[b], x1 = x[N + b];
+			o[b]     = a[b] * x0 + a[N + b] * x1;
+			o[N + b] = a[2 * N + b] * x0 + a[3 * N + b] * x1;
+		}
+	}
+
+	private static void multiplyVec3(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double x0 = x[b], x1 = x[N + b], x2 = x[2 * N + b];
+			o[b]         = a[b] * x0 + a[N + b] * x1 + a[2 * N + b] * x2;
+			o[N + b]     = a[3 * N + b] * x0 + a[4 * N + b] * x1 + a[5 * N + b] * x2;
+			o[2 * N + b] = a[6 * N + b] * x0 + a[7 * N + b] * x1 + a[8 * N + b] * x2;
+		}
+	}
+
+	private static void multiplyVec4(double[] a, double[] x, double[] o, int N, int lo, int hi) {
+		for (int b = lo; b < hi; b++) {
+			double x0 = x[b], x1 = x[N + b], x2 = x[2 * N + b], x3 = x[3 * N + b];
+			o[b]         = a[b] * x0 + a[N + b] * x1 + a[2 * N + b] * x2 + a[3 * N + b] * x3;
+			o[N + b]     = a[4 * N + b] * x0 + a[5 * N + b] * x1 + a[6 * N + b] * x2 + a[7 * N + b] * x3;
+			o[2 * N + b] = a[8 * N + b] * x0 + a[9 * N + b] * x1 + a[10 * N + b] * x2 + a[11 * N + b] * x3;
+			o[3 * N + b] = a[12 * N + b] * x0 + a[13 * N + b] * x1 + a[14 * N + b] * x2 + a[15 * N + b] * x3;
+		}
+	}
+
+	/** Inverts m[b] into out[b] for b in [lo, hi); returns the first singular b, or -1 */
+	private static int invertRange(MatrixBatch m, MatrixBatch out, int lo, int hi) {
+		switch (m._nRows) {
+		case 1:
+			return invert1(m._adData, out._adData, lo, hi);
+		case 2:
+			return invert2(m._adData, out._adData, m._nSize, lo, hi);
+		case 3:
+			return invert3(m._adData, out._adData, m._nSize, lo, hi);
+		case 4:
+			return invert4(m._adData, out._adData, m._nSize, lo, hi);
+		default:
+			return invertGeneral(m, out, lo, hi);
+		}
+	}
+
+	private static int invert1(double[] a, double[] o, int lo, int hi) {
+		int singular = -1;
+		for (int b = lo; b < hi; b++) {
+			if (a[b] == 0.0 && singular < 0)
+				singular = b;
+			o[b] = 1.0 / a[b];
+		}
+		return singular;
+	}
+
+	private static int invert2(double[] a, double[] o, int N, int lo, int hi) {
+		int singular = -1;
+		for (int b = lo; b < hi; b++) {
+			double a00 = a[b], a01 = a[N + b], a10 = a[2 * N + b], a11 = a[3 * N + b];
+			double det = a00 * a11 - a01 * a10;
+			if (det == 0.0 && singular < 0)
+				singular = b;
+			double s = 1.0 / det;
+			o[b]         =  a11 * s;
+			o[N + b]     = -a01 * s;
+			o[2 * N + b] = -a10 * s;
+			o[3 * N + b] =  a00 * s;
+		}
+		return singular;
+	}
+
+	private static int invert3(double[] a, double[] o, int N, int lo, int hi) {
+		int singular = -1;
+		for (int b = lo; b < hi; b++) {
+			double a00 = a[b],         a01 = a[N + b],     a02 = a[2 * N + b];
+			double a10 = a[3 * N + b], a11 = a[4 * N + b], a12 = a[5 * N + b];
+			double a20 = a[6 * N + b], a21 = a[7 * N + b], a22 = a[8 * N + b];
+			double c00 = a11 * a22 - a12 * a21; // Cofactors of the first row
+			double c01 = a12 * a20 - a10 * a22;
+			double c02 = a10 * a21 - a11 * a20;
+			double det = a00 * c00 + a01 * c01 + a02 * c02;
+			if (det == 0.0 && singular < 0)
+				singular = b;
+			double s = 1.0 / det;
+			o[b]         = c00 * s;
+			o[N + b]     = (a02 * a21 - a01 * a22) * s;
+			o[2 * N + b] = (a01 * a12 - a02 * a11) * s;
+			o[3 * N + b] = c01 * s;
+			o[4 * N + b] = (a00 * a22 - a02 * a20) * s;
+			o[5 * N + b] = (a02 * a10 - a00 * a12) * s;
+			o[6 * N + b] = c02 * s;
+			o[7 * N + b] = (a01 * a20 - a00 * a21) * s;
+			o[8 * N + b] = (a00 * a11 - a01 * a10) * s;
+		}
+		return singular;
+	}
+
+	/** The adjugate from the 2x2 minors of the top two and bottom two rows (Laplace expansion) */
+	private static int invert4(double[] a, double[] o, int N, int lo, int hi) {
+		int singular = -1;
+		for (int b = lo; b < hi; b++) {
+			double a00 = a[b],          a01 = a[N + b],      a02 = a[2 * N + b],  a03 = a[3 * N + b];
+			double a10 = a[4 * N + b],  a11 = a[5 * N + b],  a12 = a[6 * N + b],  a13 = a[7 * N + b];
+			double a20 = a[8 * N + b],  a21 = a[9 * N + b],  a22 = a[10 * N + b], a23 = a[11 * N + b];
+			double a30 = a[12 * N + b], a31 = a[13 * N + b], a32 = a[14 * N + b], a33 = a[15 * N + b];
+			double s0 = a00 * a11 - a10 * a01, s1 = a00 * a12 - a10 * a02, s2 = a00 * a13 - a10 * a03;
+			double s3 = a01 * a12 - a11 * a02, s4 = a01 * a13 - a11 * a03, s5 = a02 * a13 - a12 * a03;
+			double c5 = a22 * a33 - a32 * a23, c4 = a21 * a33 - a31 * a23, c3 = a21 * a32 - a31 * a22;
+			double c2 = a20 * a33 - a30 * a23, c1 = a20 * a32 - a30 * a22, c0 = a20 * a31 - a30 * a21;
+			double det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+			if (det == 0.0 && singular < 0)
+				singular = b;
+			double s = 1.0 / det;
+			o[b]          = ( a11 * c5 - a12 * c4 + a13 * c3) * s;
+			o[N + b]      = (-a01 * c5 + a02 * c4 - a03 * c3) * s;
+			o[2 * N + b]  = ( a31 * s5 - a32 * s4 + a33 * s3) * s;
+			o[3 * N + b]  = (-a21 * s5 + a22 * s4 - a23 * s3) * s;
+			o[4 * N + b]  = (-a10 * c5 + a12 * c2 - a13 * c1) * s;
+			o[5 * N + b]  = ( a00 * c5 - a02 * c2 + a03 * c1) * s;
+			o[6 * N + b]  = (-a30 * s5 + a32 * s2 - a33 * s1) * s;
+			o[7 * N + b]  = ( a20 * s5 - a22 * s2 + a23 * s1) * s;
+			o[8 * N + b]  = ( a10 * c4 - a11 * c2 + a13 * c0) * s;
+			o[9 * N + b]  = (-a00 * c4 + a01 * c2 - a03 * c0) * s;
+			o[10 * N + b] = ( a30 * s4 - a31 * s2 + a33 * s0) * s;
+			o[11 * N + b] = (-a20 * s4 + a21 * s2 - a23 * s0) * s;
+			o[12 * N + b] = (-a10 * c3 + a11 * c1 - a12 * c0) * s;
+			o[13 * N + b] = ( a00 * c3 - a01 * c1 + a02 * c0) * s;
+			o[14 * N + b] = (-a30 * s3 + a31 * s1 - a32 * s0) * s;
+			o[15 * N + b] = ( a20 * s3 - a21 * s1 + a22 * s0) * s;
+		}
+		return singular;
+	}
+
+	/** Larger matrices: gather each one, invert it with LUDecomposition and scatter the result */
+	private static int invertGeneral(MatrixBatch m, MatrixBatch out, int lo, int hi) {
+		try {
+			Matrix tmp = new Matrix(m._nRows, m._nCols);
+			for (int b = lo; b < hi; b++) {
+				m.getMatrix(b, tmp);
+				try {
+					out.setMatrix(b, new LUDecomposition(tmp).inverse());
+				} catch (LinAlgException e) {
+					return b; // Singular: LUDecomposition found a column with no non-zero pivot
+				}
+			}
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Shapes were checked by the caller
+		}
+		return -1;
+	}
+
+	private void checkIndex(int b, int row, int col) throws LinAlgException {
+		checkBatchIndex(b);
+		if (row < 0 || col < 0 || row > (_nRows - 1) || col > (_nCols - 1)) {
+			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
+		}
+	}
+
+	private void checkBatchIndex(int b) throws LinAlgException {
+		if (b < 0 || b > (_nSize - 1)) {
+			throw new LinAlgException("Batch index (" + b + ") out of bounds [0, " + _nSize + "])");
+		}
+	}
+
+	private void checkShape(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != _nRows || m.getNumCols() != _nCols) {
+			throw new LinAlgException("Cannot copy between a batch of " + _nRows + "x" + _nCols + " matrices and a " + m.getNumRows() + "x" + m.getNumCols() + " matrix");
+		}
+	}
+
+	private static void checkMultiply(MatrixBatch a, MatrixBatch x) throws LinAlgException {
+		if (a._nSize != x._nSize) {
+			throw new LinAlgException("Cannot multiply batches of different sizes " + a._nSize + " and " + x._nSize);
+		}
+		if (a._nCols != x._nRows) {
+			throw new LinAlgException("Cannot multiply matrices having " + a._nCols + " columns with matrices having " + x._nRows + " rows");
+		}
+	}
+
+	private static void checkOutput(MatrixBatch out, int size, int rows, int cols) throws LinAlgException {
+		if (out._nSize != size || out._nRows != rows || out._nCols != cols) {
+			throw new LinAlgException("Cannot write a batch of " + size + " " + rows + "x" + cols + " matrices into a batch of " + out._nSize + " " + out._nRows + "x" + out._nCols + " matrices");
+		}
+	}
+
+	private static void checkNoAlias(MatrixBatch out, MatrixBatch operand, String op) throws LinAlgException {
+		if (out._adData == operand._adData) {
+			throw new LinAlgException("Cannot " + op + " into a batch that shares storage with an operand");
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package linalg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*** A lazily evaluated Matrix expression: products and transposes of Matrices, recorded
+ *   with dimension checks when they are built and computed only by eval() or when a
+ *   VectorExpr that uses them is evaluated.
+ *
+ *   Evaluation avoids work the plain Matrix calls cannot see:
+ *
+ *     - a product applied to a vector, (A * B) * v, runs as A * (B * v): two matrix-vector
+ *       products instead of a matrix-matrix product (see multiply(VectorExpr)); likewise a
+ *       transposed product, (A * B)^T * v, runs as B^T * (A^T * v) on transposed views
+ *     - a chain of products is evaluated in its cheapest order (see Matrix.MultiplyChain),
+ *       however it was parenthesized when it was built
+ *     - transposes are never copied: transpose() of an input becomes Matrix.transposeView()
+ *       and the product kernels read the swapped strides directly, and a double transpose
+ *       cancels
+ *
+ *   Leaves refer to their Matrices, so changes to them before eval() are seen by eval(),
+ *   including a new shape (a rectangular transposeInPlace): the shape of an expression is that
+ *   of its operands when it is asked for.  Operands whose shapes no longer fit together make
+ *   evaluation throw IllegalStateException.
+ *
+ */
+public abstract class MatrixExpr {
+
+	/** Returns an expression whose value is m (m is not copied)
+	 * 
+	 * @param m
+	 * @return
+	 */
+	public static MatrixExpr of(Matrix m) {
+		return new Leaf(m);
+	}
+
+	/** Returns the number of rows of the result (from the shape of the operands now)
+	 * 
+	 * @return
+	 */
+	public abstract int getNumRows();
+
+	/** Returns the number of columns of the result (from the shape of the operands now)
+	 * 
+	 * @return
+	 */
+	public abstract int getNumCols();
+
+	/** Returns the expression *this* * e
+	 * 
+	 * @param e
+	 * @return
+	 * @throws LinAlgException if *this* columns do not match the size of e rows
+	 */
+	public MatrixExpr multiply(MatrixExpr e) throws LinAlgException {
+		if (e.getNumRows() != getNumCols()) {
+			throw new LinAlgException("Cannot multiply matrix m1 having " + getNumCols() + " columns with matrix m2 having " + e.getNumRows() + " rows");
+		}
+		return new Product(this, e);
+	}
+
+	/** Returns the expression *this* * m
+	 * 
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if *this* columns do not match the size of m rows
+	 */
+	public MatrixExpr multiply(Matrix m) throws LinAlgException {
+		return multiply(of(m));
+	}
+
+	/** Returns the expression *this* * v (v taken as a column vector)
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if *this* columns do not match the size of v
+	 */
+	public VectorExpr multiply(VectorExpr v) throws LinAlgException {
+		if (v.getDim() != getNumCols()) {
+			throw new LinAlgException("Cannot multiply matrix with " + getNumCols() + " columns with a vector of dimension " + v.getDim());
+		}
+		return new VectorExpr.MatVec(this, v);
+	}
+
+	/** Returns the expression *this* * v (v taken as a column vector)
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if *this* columns do not match the size of v
+	 */
+	public VectorExpr multiply(Vector v) throws LinAlgException {
+		return multiply(VectorExpr.of(v));
+	}
+
+	/** Returns the expression transpose(*this*)
+	 * 
+	 * @return
+	 */
+	public MatrixExpr transpose() {
+		if (this instanceof Transpose)
+			return ((Transpose)this)._child; // transpose(transpose(A)) = A
+		return new Transpose(this);
+	}
+
+	/** Evaluates the expression into a new, compact Matrix that shares no storage with the inputs
+	 * 
+	 * @return
+	 * @throws IllegalStateException if operands were reshaped so that their shapes no longer fit
+	 */
+	public Matrix eval() {
+		return eval(ExecutionContext.getDefault());
+	}
+
+	/** Evaluates the expression into a new, compact Matrix on the given context
+	 * 
+	 * @param ctx
+	 * @return
+	 * @throws IllegalStateException if operands were reshaped so that their shapes no longer fit
+	 */
+	public Matrix eval(ExecutionContext ctx) {
+		Matrix m = materialize(ctx);
+		return isFresh() && m.isContiguous() ? m : new Matrix(m); // Copy leaves and views
+	}
+
+	/** Returns the value of the expression, possibly an input Matrix or a view of one */
+	abstract Matrix materialize(ExecutionContext ctx);
+
+	/** True if materialize() returns storage that no input refers to */
+	abstract boolean isFresh();
+
+	/** Returns *this* * x as a new Vector, applying products right to left
+	 * 
+	 * @param x
+	 * @param ctx
+	 * @return
+	 * @throws IllegalStateException if an operand was reshaped so that x no longer fits
+	 */
+	Vector apply(Vector x, ExecutionContext ctx) {
+		if (this instanceof Product) {
+			Product p = (Product)this;
+			return p._left.apply(p._right.apply(x, ctx), ctx); // (A * B) * x = A * (B * x)
+		}
+		if (this instanceof Transpose && ((Transpose)this)._child instanceof Product) {
+			Product p = (Product)((Transpose)this)._child;
+			return p._right.transpose().apply(p._left.transpose().apply(x, ctx), ctx); // (A * B)^T * x = B^T * (A^T * x)
+		}
+		Matrix a = materialize(ctx);
+		Vector y = VectorExpr.newVector(a.getNumRows());
+		try {
+			if (a.getColStride() == 1)
+				Matrix.Multiply(a, x, y, ctx);
+			else
+				Matrix.Gemv(1.0, a, x, 0.0, y); // Streams column-major views (transposes) column by column
+		} catch (LinAlgException e) {
+			// Dimensions were checked when the expression was built, so an operand has been reshaped since
+			throw new IllegalStateException(e.getMessage() + " (an operand was reshaped)", e);
+		}
+		return y;
+	}
+
+	/** An input Matrix; its shape is read from the Matrix on every use, since
+	 *  transposeInPlace() may change it */
+	private static final class Leaf extends MatrixExpr {
+		private final Matrix _m;
+
+		Leaf(Matrix m) {
+			_m = m;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _m.getNumRows();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _m.getNumCols();
+		}
+
+		@Override
+		Matrix materialize(ExecutionContext ctx) {
+			return _m;
+		}
+
+		@Override
+		boolean isFresh() {
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "M" + getNumRows() + "x" + getNumCols();
+		}
+	}
+
+	private static final class Transpose extends MatrixExpr {
+		private final MatrixExpr _child;
+
+		Transpose(MatrixExpr child) {
+			_child = child;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _child.getNumCols();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _child.getNumRows();
+		}
+
+		@Override
+		Matrix materialize(ExecutionContext ctx) {
+			return _child.materialize(ctx).transposeView();
+		}
+
+		@Override
+		boolean isFresh() {
+			return _child.isFresh();
+		}
+
+		@Override
+		public String toString() {
+			return _child + "^T";
+		}
+	}
+
+	private static final class Product extends MatrixExpr {
+		private final MatrixExpr _left, _right;
+
+		Product(MatrixExpr left, MatrixExpr right) {
+			_left = left;
+			_right = right;
+		}
+
+		@Override
+		public int getNumRows() {
+			return _left.getNumRows();
+		}
+
+		@Override
+		public int getNumCols() {
+			return _right.getNumCols();
+		}
+
+		@Override
+		Matrix materialize(ExecutionContext ctx) {
+			// Nested products form one chain, multiplied in the cheapest order
+			List<Matrix> factors = new ArrayList<>();
+			collectFactors(factors, ctx);
+			try {
+				return Matrix.MultiplyChain(ctx, factors.toArray(new Matrix[0]));
+			} catch (LinAlgException e) {
+				// The chain was checked when the expression was built, so an operand has been reshaped since
+				throw new IllegalStateException(e.getMessage() + " (an operand was reshaped)", e);
+			}
+		}
+
+		private void collectFactors(List<Matrix> factors, ExecutionContext ctx) {
+			for (MatrixExpr e : new MatrixExpr[] { _left, _right }) {
+				if (e instanceof Product)
+					((Product)e).collectFactors(factors, ctx);
+				else
+					factors.add(e.materialize(ctx));
+			}
+		}
+
+		@Override
+		boolean isFresh() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _left + " * " + _right + ")";
+		}
+	}
+}
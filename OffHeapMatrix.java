@@ -0,0 +1,552 @@
+package linalg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*** A two dimensional real-valued (double) matrix whose content lives outside the Java heap,
+ *   either in anonymous native memory (allocate) or in a memory-mapped file (create / open).
+ *
+ *   The content is row-major and split into chunks of 2^27 doubles (1 GiB), each backed by one
+ *   direct or mapped DoubleBuffer, so a matrix is not limited by the 2^31 array-length limit
+ *   and its size is only bounded by native memory or disk.  get/set/getRow work element- or
+ *   row-wise, and Multiply/transpose stream bounded blocks through the heap, so a matrix far
+ *   larger than the heap can be processed without ever being loaded completely.
+ *
+ *   File format (all values little-endian):
+ *
+ *     offset  size  content
+ *          0     4  magic bytes "LAMX"
+ *          4     4  int   format version (currently 1)
+ *          8     8  long  number of rows
+ *         16     8  long  number of columns
+ *         24     4  int   element type (1 = IEEE 754 double)
+ *         28    36  reserved, zero
+ *         64     -  rows * cols doubles, row-major
+ *
+ *   An OffHeapMatrix is not a Matrix: every Matrix kernel (and getData() and the strided views)
+ *   works on one double[] on the heap, which is exactly what this class exists to avoid.  It is
+ *   a LinearOperator instead, so Matrix.Multiply(LinearOperator, Vector) and the iterative
+ *   solvers accept it directly and stream it a block at a time; the dense factorizations need
+ *   the whole matrix on the heap, which toMatrix() copies it to when it fits.
+ *
+ *   Note: the JDK has no way to unmap or free a direct buffer on demand; close() flushes and
+ *   releases the file, and the native memory is returned once the buffers are collected.
+ *
+ */
+public class OffHeapMatrix implements Closeable, LinearOperator {
+
+	public static final int HEADER_BYTES = 64;
+	static final int VERSION = 1;
+	static final int TYPE_DOUBLE = 1;
+	private static final byte[] MAGIC = { 'L', 'A', 'M', 'X' };
+
+	private static final int CHUNK_SHIFT = 27;                    // 2^27 doubles per chunk
+	private static final long CHUNK_DOUBLES = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_DOUBLES - 1;
+	private static final int BLOCK_ELEMENTS = 1 << 22;            // Heap budget per streamed block (32 MB)
+	private static final int TRANSPOSE_TILE = 512;
+
+	private int _nRows;              // Number of rows in this matrix
+	private int _nCols;              // Number of columns in this matrix
+	private DoubleBuffer[] _aChunks; // Content, CHUNK_DOUBLES per buffer; null once closed
+	private MappedByteBuffer[] _aMapped; // The mappings behind _aChunks (needed to flush them), null for anonymous ones
+	private FileChannel _channel;    // Backing file for mapped matrices, null for anonymous ones
+
+	private OffHeapMatrix(int rows, int cols, DoubleBuffer[] chunks) {
+		_nRows = rows;
+		_nCols = cols;
+		_aChunks = chunks;
+	}
+
+	private OffHeapMatrix(int rows, int cols, MappedByteBuffer[] mapped, FileChannel channel) {
+		_nRows = rows;
+		_nCols = cols;
+		_aMapped = mapped;
+		_channel = channel;
+		_aChunks = new DoubleBuffer[mapped.length];
+		for (int c = 0; c < mapped.length; c++)
+			_aChunks[c] = mapped[c].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	/** Allocates a rows x cols matrix in anonymous native memory, initialized to 0.0
+	 *
+	 * @param rows
+	 * @param cols
+	 * @return
+	 * @throws LinAlgException if either rows or cols is <= 0
+	 */
+	public static OffHeapMatrix allocate(int rows, int cols) throws LinAlgException {
+		checkDims(rows, cols);
+		long size = (long)rows * cols;
+		DoubleBuffer[] chunks = new DoubleBuffer[chunkCount(size)];
+		for (int c = 0; c < chunks.length; c++) {
+			long doubles = Math.min(CHUNK_DOUBLES, size - c * CHUNK_DOUBLES);
+			chunks[c] = ByteBuffer.allocateDirect((int)(doubles * Double.BYTES)).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+		return new OffHeapMatrix(rows, cols, chunks);
+	}
+
+	/** Creates (or truncates) file as a rows x cols matrix initialized to 0.0 and maps it
+	 *
+	 * @param file
+	 * @param rows
+	 * @param cols
+	 * @return
+	 * @throws LinAlgException if either rows or cols is <= 0
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static OffHeapMatrix create(Path file, int rows, int cols) throws LinAlgException, IOException {
+		checkDims(rows, cols);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC).putInt(VERSION).putLong(rows).putLong(cols).putInt(TYPE_DOUBLE);
+			header.rewind();
+			channel.write(header, 0);
+			long bytes = HEADER_BYTES + (long)rows * cols * Double.BYTES;
+			channel.write(ByteBuffer.allocate(1), bytes - 1); // Extends the file (sparse where supported)
+			return new OffHeapMatrix(rows, cols, map(channel, (long)rows * cols), channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Maps an existing matrix file (see the class comment for the format) for reading and writing
+	 *
+	 * @param file
+	 * @return
+	 * @throws LinAlgException if the file is not a valid matrix file
+	 * @throws IOException if the file cannot be read or mapped
+	 */
+	public static OffHeapMatrix open(Path file) throws LinAlgException, IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+				;
+			header.flip();
+			if (header.remaining() < HEADER_BYTES)
+				throw new LinAlgException("Malformed matrix file: " + file + " is shorter than its header");
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			int version = header.getInt();
+			long rows = header.getLong(), cols = header.getLong();
+			int type = header.getInt();
+			if (!Arrays.equals(magic, MAGIC) || version != VERSION || type != TYPE_DOUBLE)
+				throw new LinAlgException("Malformed matrix file: " + file + " has an unknown header");
+			if (rows <= 0 || cols <= 0 || rows > Integer.MAX_VALUE || cols > Integer.MAX_VALUE)
+				throw new LinAlgException("Malformed matrix file: " + file + " has dimensions (" + rows + "," + cols + ")");
+			long bytes;
+			try { // Each dimension fits in an int, but a forged pair can still overflow the byte count
+				bytes = Math.addExact(HEADER_BYTES, Math.multiplyExact(Math.multiplyExact(rows, cols), (long)Double.BYTES));
+			} catch (ArithmeticException e) {
+				throw new LinAlgException("Malformed matrix file: " + file + " has dimensions (" + rows + "," + cols + ")");
+			}
+			if (channel.size() < bytes)
+				throw new LinAlgException("Malformed matrix file: " + file + " is shorter than its " + rows + " x " + cols + " payload");
+			return new OffHeapMatrix((int)rows, (int)cols, map(channel, rows * cols), channel);
+		} catch (IOException | LinAlgException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Copies a heap Matrix into anonymous native memory
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public static OffHeapMatrix fromMatrix(Matrix m) throws LinAlgException {
+		OffHeapMatrix result = allocate(m.getNumRows(), m.getNumCols());
+		result.copyFrom(m);
+		return result;
+	}
+
+	/** Writes a heap Matrix to file (see the class comment for the format) and returns it mapped
+	 *
+	 * @param m
+	 * @param file
+	 * @return
+	 * @throws LinAlgException
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static OffHeapMatrix fromMatrix(Matrix m, Path file) throws LinAlgException, IOException {
+		OffHeapMatrix result = create(file, m.getNumRows(), m.getNumCols());
+		result.copyFrom(m);
+		return result;
+	}
+
+	/** Copies this matrix into a heap Matrix (only sensible when it fits in the heap)
+	 *
+	 * @return
+	 * @throws LinAlgException if this matrix is closed or too large for a heap Matrix
+	 */
+	public Matrix toMatrix() throws LinAlgException {
+		checkOpen();
+		Matrix m = new Matrix(_nRows, _nCols);
+		read(0, m.getData(), 0, _nRows * _nCols);
+		return m;
+	}
+
+	/** Return the number of rows in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	/** Return the number of columns in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** True if this matrix is backed by a file
+	 *
+	 * @return
+	 */
+	public boolean isMapped() {
+		return _channel != null;
+	}
+
+	/** Return the scalar value at the given row and column of the matrix
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds or this matrix is closed
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		checkIndex(row, col);
+		long index = (long)row * _nCols + col;
+		return _aChunks[(int)(index >>> CHUNK_SHIFT)].get((int)(index & CHUNK_MASK));
+	}
+
+	/** Set the row and col of this matrix to the provided val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds or this matrix is closed
+	 */
+	public void set(int row, int col, double val) throws LinAlgException {
+		checkIndex(row, col);
+		long index = (long)row * _nCols + col;
+		_aChunks[(int)(index >>> CHUNK_SHIFT)].put((int)(index & CHUNK_MASK), val);
+	}
+
+	/** Return the Vector of numbers corresponding to the provided row index (copied onto the heap)
+	 *
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds or this matrix is closed
+	 */
+	public Vector getRow(int row) throws LinAlgException {
+		checkOpen();
+		if (row < 0 || row > (_nRows -1))
+			throw new LinAlgException("Row index (" + row + ") out of bounds [0, " + _nRows + "])");
+		Vector v = new Vector(_nCols);
+		read((long)row * _nCols, v.getValues(), 0, _nCols);
+		return v;
+	}
+
+	/** Return the transpose of *this* in anonymous native memory
+	 *
+	 * @return
+	 * @throws LinAlgException if this matrix is closed
+	 */
+	public OffHeapMatrix transpose() throws LinAlgException {
+		checkOpen();
+		OffHeapMatrix result = allocate(_nCols, _nRows);
+		transposeInto(result);
+		return result;
+	}
+
+	/** Return the transpose of *this* written to file
+	 *
+	 * @param file
+	 * @return
+	 * @throws LinAlgException if this matrix is closed
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public OffHeapMatrix transpose(Path file) throws LinAlgException, IOException {
+		checkOpen();
+		OffHeapMatrix result = create(file, _nCols, _nRows);
+		transposeInto(result);
+		return result;
+	}
+
+	/** Transposes tile by tile: each TRANSPOSE_TILE x TRANSPOSE_TILE tile is read row-wise,
+	 *  transposed on the heap and written back row-wise, so both sides are accessed sequentially
+	 *
+	 */
+	private void transposeInto(OffHeapMatrix result) {
+		int tile = TRANSPOSE_TILE;
+		double[] in = new double[tile * tile];
+		double[] out = new double[tile * tile];
+		for (int row = 0; row < _nRows; row += tile) {
+			int rows = Math.min(tile, _nRows - row);
+			for (int col = 0; col < _nCols; col += tile) {
+				int cols = Math.min(tile, _nCols - col);
+				for (int r = 0; r < rows; r++)
+					read((long)(row + r) * _nCols + col, in, r * cols, cols);
+				for (int r = 0; r < rows; r++)
+					for (int c = 0; c < cols; c++)
+						out[c * rows + r] = in[r * cols + c];
+				for (int c = 0; c < cols; c++)
+					result.write((long)(col + c) * _nRows + row, out, c * rows, rows);
+			}
+		}
+	}
+
+	/** Returns the result of multiplying m1 by m2 in anonymous native memory
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows or either is closed
+	 */
+	public static OffHeapMatrix Multiply(OffHeapMatrix m1, OffHeapMatrix m2) throws LinAlgException {
+		m1.checkOpen(); // Before allocating, so a closed operand does not leak the result's memory
+		m2.checkOpen();
+		if (m2._nRows != m1._nCols)
+			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2._nRows + " rows");
+		OffHeapMatrix result = allocate(m1._nRows, m2._nCols);
+		Multiply(m1, m2, result);
+		return result;
+	}
+
+	/** Computes m1 * m2 into out (e.g., a matrix created on a file), streaming blocks of rows of m1
+	 *  and panels of m2 through the heap and multiplying each pair with the blocked GEMM kernel;
+	 *  at most a few BLOCK_ELEMENTS doubles are on the heap at any time
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match, out is m1 or m2, or any operand is closed
+	 */
+	public static void Multiply(OffHeapMatrix m1, OffHeapMatrix m2, OffHeapMatrix out) throws LinAlgException {
+		m1.checkOpen();
+		m2.checkOpen();
+		out.checkOpen();
+		if (m2._nRows != m1._nCols)
+			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2._nRows + " rows");
+		if (out._nRows != m1._nRows || out._nCols != m2._nCols)
+			throw new LinAlgException("Result matrix is (" + out._nRows + "," + out._nCols + ") but the product is (" + m1._nRows + "," + m2._nCols + ")");
+		if (out == m1 || out == m2)
+			throw new LinAlgException("Result matrix cannot be one of the operands");
+		int m = m1._nRows, n = m2._nCols, k = m1._nCols;
+		int rowBlock = Math.max(1, Math.min(m, BLOCK_ELEMENTS / Math.max(k, n)));
+		int depthBlock = Math.max(1, Math.min(k, BLOCK_ELEMENTS / n));
+		double[] a = new double[rowBlock * k];
+		double[] b = new double[depthBlock * n];
+		double[] c = new double[rowBlock * n];
+		for (int row = 0; row < m; row += rowBlock) {
+			int rows = Math.min(rowBlock, m - row);
+			m1.read((long)row * k, a, 0, rows * k);
+			Arrays.fill(c, 0, rows * n, 0.0);
+			for (int p = 0; p < k; p += depthBlock) {
+				int depth = Math.min(depthBlock, k - p);
+				m2.read((long)p * n, b, 0, depth * n);
+				Gemm.multiply(rows, n, depth, a, p, k, 1, b, 0, n, 1, c, 0, n, 1);
+			}
+			out.write((long)row * n, c, 0, rows * n);
+		}
+	}
+
+	/** Returns the Vector result of multiplying m by v, streaming m row block by row block
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v or m is closed
+	 */
+	public static Vector Multiply(OffHeapMatrix m, Vector v) throws LinAlgException {
+		m.checkOpen();
+		Vector vec = new Vector(m._nRows);
+		Multiply(m, v, vec);
+		return vec;
+	}
+
+	/** Writes the product of m and v into out, streaming m row block by row block
+	 *
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if m columns do match the size of v, out does not have one entry per
+	 *         row of m, out is v, or m is closed
+	 */
+	public static void Multiply(OffHeapMatrix m, Vector v, Vector out) throws LinAlgException {
+		m.checkOpen();
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("Cannot multiply matrix with " + m._nCols + " columns with a vector of dimension " + v.getDim());
+		if (out.getDim() != m._nRows)
+			throw new LinAlgException("Cannot write the product of a matrix with " + m._nRows + " rows into a vector of dimension " + out.getDim());
+		if (out == v)
+			throw new LinAlgException("Cannot Multiply into the input vector: it is read after entries are written");
+		double[] x = v.getValues(), y = out.getValues();
+		int rowBlock = Math.max(1, Math.min(m._nRows, BLOCK_ELEMENTS / m._nCols));
+		double[] a = new double[rowBlock * m._nCols];
+		for (int row = 0; row < m._nRows; row += rowBlock) {
+			int rows = Math.min(rowBlock, m._nRows - row);
+			m.read((long)row * m._nCols, a, 0, rows * m._nCols);
+			for (int r = 0; r < rows; r++)
+				y[row + r] = VectorKernels.INSTANCE.dot(a, r * m._nCols, x, 0, m._nCols);
+		}
+		out.modified();
+	}
+
+	/** Writes *this* times in into out (LinearOperator; see Multiply(m, v, out))
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match, out is in, or this matrix is closed
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		Multiply(this, in, out);
+	}
+
+	/** Writes the transpose of *this* times in into out in the same single pass over the rows as
+	 *  apply(), adding each row scaled by its entry of in to out
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match, out is in, or this matrix is closed
+	 */
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		checkOpen();
+		if (_nRows != in.getDim())
+			throw new LinAlgException("Cannot multiply matrix with " + _nRows + " columns with a vector of dimension " + in.getDim());
+		if (out.getDim() != _nCols)
+			throw new LinAlgException("Cannot write the product of a matrix with " + _nCols + " rows into a vector of dimension " + out.getDim());
+		if (out == in)
+			throw new LinAlgException("Cannot Multiply into the input vector: it is read after entries are written");
+		double[] x = in.getValues(), y = out.getValues();
+		Arrays.fill(y, 0, _nCols, 0.0);
+		int rowBlock = Math.max(1, Math.min(_nRows, BLOCK_ELEMENTS / _nCols));
+		double[] a = new double[rowBlock * _nCols];
+		for (int row = 0; row < _nRows; row += rowBlock) {
+			int rows = Math.min(rowBlock, _nRows - row);
+			read((long)row * _nCols, a, 0, rows * _nCols);
+			for (int r = 0; r < rows; r++) {
+				double xr = x[row + r];
+				if (xr != 0.0)
+					VectorKernels.INSTANCE.axpy(xr, a, r * _nCols, y, 0, _nCols);
+			}
+		}
+		out.modified();
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** Flushes changes of a mapped matrix to its file (no-op for anonymous memory)
+	 *
+	 * @throws LinAlgException if this matrix is closed
+	 */
+	public void force() throws LinAlgException {
+		checkOpen();
+		if (_aMapped == null)
+			return;
+		for (MappedByteBuffer chunk : _aMapped)
+			chunk.force();
+	}
+
+	/** Flushes a mapped matrix and releases its file; any further use throws LinAlgException
+	 *
+	 */
+	@Override
+	public void close() throws IOException {
+		if (_aChunks == null)
+			return;
+		try {
+			if (_channel != null)
+				force();
+		} catch (LinAlgException e) {
+			// Cannot happen: _aChunks was checked above
+		} finally {
+			_aChunks = null;
+			_aMapped = null;
+			if (_channel != null)
+				_channel.close();
+		}
+	}
+
+	/** Copies len doubles starting at element index start into dst[off...], crossing chunks as needed */
+	void read(long start, double[] dst, int off, int len) {
+		while (len > 0) {
+			DoubleBuffer chunk = _aChunks[(int)(start >>> CHUNK_SHIFT)];
+			int pos = (int)(start & CHUNK_MASK);
+			int count = Math.min(len, chunk.capacity() - pos);
+			chunk.get(pos, dst, off, count);
+			start += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/** Copies len doubles from src[off...] to element index start onward, crossing chunks as needed */
+	void write(long start, double[] src, int off, int len) {
+		while (len > 0) {
+			DoubleBuffer chunk = _aChunks[(int)(start >>> CHUNK_SHIFT)];
+			int pos = (int)(start & CHUNK_MASK);
+			int count = Math.min(len, chunk.capacity() - pos);
+			chunk.put(pos, src, off, count);
+			start += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	private void copyFrom(Matrix m) {
+		Matrix src = m.isContiguous() ? m : new Matrix(m);
+		write(0, src.getData(), src.getOffset(), _nRows * _nCols);
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, long size) throws IOException {
+		MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount(size)];
+		for (int c = 0; c < chunks.length; c++) {
+			long doubles = Math.min(CHUNK_DOUBLES, size - c * CHUNK_DOUBLES);
+			chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + c * CHUNK_DOUBLES * Double.BYTES, doubles * Double.BYTES);
+		}
+		return chunks;
+	}
+
+	private static int chunkCount(long size) {
+		return (int)((size + CHUNK_DOUBLES - 1) >>> CHUNK_SHIFT);
+	}
+
+	private static void checkDims(int rows, int cols) throws LinAlgException {
+		if (rows <= 0 || cols <= 0)
+			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+	}
+
+	private void checkOpen() throws LinAlgException {
+		if (_aChunks == null)
+			throw new LinAlgException("OffHeapMatrix has been closed");
+	}
+
+	private void checkIndex(int row, int col) throws LinAlgException {
+		checkOpen();
+		if (row < 0 || col < 0 || row > (_nRows -1) || col > (_nCols -1))
+			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
+	}
+}
@@ -0,0 +1,288 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** Householder QR factorization A = Q R of an m x n Matrix A with m >= n, where Q has
+ *   orthonormal columns and R is n x n upper triangular.  For a tall A, solve() returns
+ *   the least squares solution minimizing |A x - b|.
+ *
+ *   Each column k is reflected onto a multiple of e_k by a Householder vector v_k, which is
+ *   stored in place of the column (as in LINPACK and JAMA), so H_k = I - v_k v_k^T / v_k[k].
+ *   The factors are kept column by column (i.e., as the transpose of A), so the reflections
+ *   and the back substitution only run the dot and axpy kernels over contiguous memory.
+ *
+ *   The factorization is blocked by panels of BLOCK columns, like LAPACK's geqrf: each panel
+ *   is factored with the plain reflections, then every trailing column is reflected by the
+ *   whole panel before moving on to the next column.  A trailing column is thus streamed from
+ *   memory once per panel rather than once per reflection, and the panel's vectors stay in
+ *   cache.  geqrf instead combines a panel's reflections in the compact WY form
+ *   I - V T V^T and updates the trailing matrix with matrix products.  Here that form only
+ *   adds the work of building and applying T: Gemm's scalar register tile is slower than the
+ *   SIMD dot and axpy kernels on products only BLOCK deep, and column-wise the two forms
+ *   stream the same memory.  So the reflections are applied one at a time, with the same
+ *   arithmetic as the unblocked factorization.  Matrices of at most CROSSOVER entries
+ *   already fit in cache and are factored as a single panel.
+ *
+ */
+public final class QRDecomposition implements Factorization {
+
+	/** Columns per panel */
+	static final int BLOCK = 64;
+
+	/** Matrices of at most this many entries (about 1 MB) fit in cache and are factored unblocked */
+	static final long CROSSOVER = 384L * 384L;
+
+	private final int _nRows, _nCols;
+	private final double[] _adQRt;  // n x m: row k holds column k (v_k below the diagonal, R above)
+	private final double[] _adRdiag; // Diagonal of R
+	private final boolean _bOddReflections; // True if an odd number of reflections were applied
+
+	/** Factors A
+	 * 
+	 * @param A
+	 * @throws LinAlgException if A has fewer rows than columns
+	 */
+	public QRDecomposition(Matrix A) throws LinAlgException {
+		int m = A.getNumRows(), n = A.getNumCols();
+		if (m < n) {
+			throw new LinAlgException("Cannot QR factor a " + m + "x" + n + " matrix: it needs at least as many rows as columns");
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		_nRows = m;
+		_nCols = n;
+		_adQRt = new Matrix(A.transposeView()).getData(); // Compact copy of A^T
+		_adRdiag = new double[n];
+		double[] qr = _adQRt;
+		boolean odd = false;
+		int block = (long)m * n <= CROSSOVER ? n : BLOCK; // One panel: the unblocked factorization
+		for (int k = 0; k < n; k += block) {
+			int nb = Math.min(block, n - k);
+			int panelEnd = k + nb;
+			// 1. Factor the panel (columns k .. panelEnd - 1, all rows below k)
+			for (int j = k; j < panelEnd; j++) {
+				int col = j * m; // Start of column j
+				double nrm = Vector.nrm2(qr, col + j, m - j);
+				if (nrm != 0.0) {
+					if (qr[col + j] < 0)
+						nrm = -nrm;
+					for (int i = j; i < m; i++)
+						qr[col + i] /= nrm;
+					qr[col + j] += 1.0;
+					for (int c = j + 1; c < panelEnd; c++) // Apply the reflection to the rest of the panel
+						reflect(qr, m, j, c);
+					odd = !odd;
+				}
+				_adRdiag[j] = -nrm;
+			}
+			// 2. Apply the panel's reflections to each trailing column in turn, while the column stays in cache
+			for (int c = panelEnd; c < n; c++)
+				for (int j = k; j < panelEnd; j++)
+					reflect(qr, m, j, c);
+		}
+		_bOddReflections = odd;
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.QR, start, (long)m * n, 2.0 * n * n * (m - n / 3.0));
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** True if R has no zero on its diagonal, i.e., A has full column rank
+	 * 
+	 * @return
+	 */
+	public boolean isFullRank() {
+		for (int k = 0; k < _nCols; k++)
+			if (_adRdiag[k] == 0.0)
+				return false;
+		return true;
+	}
+
+	/** Returns the least squares solution x minimizing |A x - b| (the exact solution if A is square)
+	 * 
+	 */
+	@Override
+	public Vector solve(Vector b) throws LinAlgException {
+		Vector x = new Vector(_nCols);
+		solve(b, x);
+		return x;
+	}
+
+	@Override
+	public void solve(Vector b, Vector x) throws LinAlgException {
+		if (b.getDim() != _nRows || x.getDim() != _nCols) {
+			throw new LinAlgException("Cannot solve a " + _nRows + "x" + _nCols + " system with vectors of dimension " + b.getDim() + " and " + x.getDim());
+		}
+		checkFullRank();
+		int m = _nRows, n = _nCols;
+		double[] y = Arrays.copyOf(b.getValues(), m); // Q^T b overwrites it, and x may be b
+		applyQt(y);
+		// R x = (Q^T b)[0, n), column by column so that R is read contiguously
+		for (int k = n - 1; k >= 0; k--) {
+			y[k] /= _adRdiag[k];
+			if (y[k] != 0.0)
+				VectorKernels.INSTANCE.axpy(-y[k], _adQRt, k * m, y, 0, k);
+		}
+		System.arraycopy(y, 0, x.getValues(), 0, n);
+		x.modified();
+	}
+
+	@Override
+	public Matrix solve(Matrix B) throws LinAlgException {
+		if (B.getNumRows() != _nRows) {
+			throw new LinAlgException("Cannot solve a " + _nRows + "x" + _nCols + " system with a right-hand side having " + B.getNumRows() + " rows");
+		}
+		checkFullRank();
+		int m = _nRows, n = _nCols, nrhs = B.getNumCols();
+		double[] y = new Matrix(B).getData(); // m x nrhs, row-major
+		double[] w = new double[nrhs];
+		double[] qr = _adQRt;
+		for (int k = 0; k < n; k++) { // Y = H_k Y: w = v_k^T Y, then Y -= v_k w / v_k[k]
+			double vkk = qr[k * m + k];
+			if (vkk == 0.0)
+				continue;
+			Arrays.fill(w, 0.0);
+			for (int i = k; i < m; i++)
+				if (qr[k * m + i] != 0.0)
+					VectorKernels.INSTANCE.axpy(qr[k * m + i], y, i * nrhs, w, 0, nrhs);
+			for (int i = k; i < m; i++) {
+				double s = -qr[k * m + i] / vkk;
+				if (s != 0.0)
+					VectorKernels.INSTANCE.axpy(s, w, 0, y, i * nrhs, nrhs);
+			}
+		}
+		for (int k = n - 1; k >= 0; k--) {
+			double d = _adRdiag[k];
+			for (int c = k * nrhs; c < (k + 1) * nrhs; c++)
+				y[c] /= d;
+			for (int i = 0; i < k; i++) {
+				double r = qr[k * m + i];
+				if (r != 0.0)
+					VectorKernels.INSTANCE.axpy(-r, y, k * nrhs, y, i * nrhs, nrhs);
+			}
+		}
+		Matrix X = new Matrix(n, nrhs);
+		System.arraycopy(y, 0, X.getData(), 0, n * nrhs);
+		return X;
+	}
+
+	/** Returns the least squares solution x minimizing |A x - b| (the same as solve(b))
+	 * 
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if b has the wrong dimension or A is rank deficient
+	 */
+	public Vector leastSquares(Vector b) throws LinAlgException {
+		return solve(b);
+	}
+
+	/** Returns det(A) = (-1)^reflections * product of the diagonal of R
+	 * 
+	 * @throws LinAlgException if A is not square
+	 */
+	@Override
+	public double det() throws LinAlgException {
+		checkSquare("det");
+		double det = _bOddReflections ? -1.0 : 1.0;
+		for (int k = 0; k < _nCols; k++)
+			det *= _adRdiag[k];
+		return det;
+	}
+
+	@Override
+	public Matrix inverse() throws LinAlgException {
+		checkSquare("inverse");
+		return solve(Matrix.GetIdentity(_nRows));
+	}
+
+	/** Returns the n x n upper triangular factor R
+	 * 
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getR() throws LinAlgException {
+		int m = _nRows, n = _nCols;
+		Matrix R = new Matrix(n, n);
+		double[] r = R.getData();
+		for (int i = 0; i < n; i++) {
+			r[i * n + i] = _adRdiag[i];
+			for (int j = i + 1; j < n; j++)
+				r[i * n + j] = _adQRt[j * m + i];
+		}
+		return R;
+	}
+
+	/** Returns the m x n factor Q with orthonormal columns (Q R = A)
+	 * 
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getQ() throws LinAlgException {
+		int m = _nRows, n = _nCols;
+		double[] qt = new double[n * m]; // Column j of Q is row j, starting as e_j
+		for (int j = 0; j < n; j++) {
+			qt[j * m + j] = 1.0;
+			applyQ(qt, j * m);
+		}
+		Matrix Qt = new Matrix(n, m);
+		System.arraycopy(qt, 0, Qt.getData(), 0, n * m);
+		return Qt.transpose();
+	}
+
+	/** Applies H_j to column c of the factorization qr (n x m, column by column): c -= v_j (v_j^T c) / v_j[j] */
+	private static void reflect(double[] qr, int m, int j, int c) {
+		double vjj = qr[j * m + j];
+		if (vjj == 0.0)
+			return; // A zero column reflects nothing
+		double s = -VectorKernels.INSTANCE.dot(qr, j * m + j, qr, c * m + j, m - j) / vjj;
+		if (s != 0.0)
+			VectorKernels.INSTANCE.axpy(s, qr, j * m + j, qr, c * m + j, m - j);
+	}
+
+	/** y = Q^T y for y of length m: applies H_0, H_1, ..., H_{n-1} in order */
+	private void applyQt(double[] y) {
+		int m = _nRows;
+		double[] qr = _adQRt;
+		for (int k = 0; k < _nCols; k++) {
+			double vkk = qr[k * m + k];
+			if (vkk == 0.0)
+				continue;
+			double s = -VectorKernels.INSTANCE.dot(qr, k * m + k, y, k, m - k) / vkk;
+			if (s != 0.0)
+				VectorKernels.INSTANCE.axpy(s, qr, k * m + k, y, k, m - k);
+		}
+	}
+
+	/** y[off, off + m) = Q y: applies H_{n-1}, ..., H_0 in order */
+	private void applyQ(double[] y, int off) {
+		int m = _nRows;
+		double[] qr = _adQRt;
+		for (int k = _nCols - 1; k >= 0; k--) {
+			double vkk = qr[k * m + k];
+			if (vkk == 0.0)
+				continue;
+			double s = -VectorKernels.INSTANCE.dot(qr, k * m + k, y, off + k, m - k) / vkk;
+			if (s != 0.0)
+				VectorKernels.INSTANCE.axpy(s, qr, k * m + k, y, off + k, m - k);
+		}
+	}
+
+	private void checkFullRank() throws LinAlgException {
+		if (!isFullRank()) {
+			throw new LinAlgException("Matrix is rank deficient: R has a zero on its diagonal");
+		}
+	}
+
+	private void checkSquare(String op) throws LinAlgException {
+		if (_nRows != _nCols) {
+			throw new LinAlgException("Cannot compute the " + op + " of a " + _nRows + "x" + _nCols + " matrix: it must be square");
+		}
+	}
+}
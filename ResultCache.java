@@ -0,0 +1,369 @@
+package linalg;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*** A bounded, thread-safe memo of expensive results (matrix products, transposes, identities,
+ *   inverses and factorizations) keyed by the content of their operands.
+ *
+ *   A request hashes its operands with their cached content hashes (see Matrix.hashCode()),
+ *   so asking again for the result of the same unchanged operands costs a map lookup and two
+ *   version checks: O(1), however large the matrices.  An entry remembers its operands weakly,
+ *   together with their versions, and is only reused when each operand of a request is one of
+ *   them unchanged (the O(1) case) or is equals() to one that is still unchanged (a copy
+ *   with the same content).  An operand written to since, or collected, makes the entry a miss;
+ *   the recomputed result replaces it if the key is unchanged, and otherwise (new content, so
+ *   a new key) the stale entry is left to be evicted as the least recently used.
+ *
+ *   Results are shared by every caller that gets them, so treat them as read-only.  A result
+ *   that is modified anyway is noticed through its version and recomputed on its next request.
+ *
+ *   The cache holds at most getMaxBytes() of results (8 bytes per double they hold), evicting
+ *   the least recently used ones first; a result larger than that is returned without being
+ *   cached.  Lookups and updates take a short lock, while results are computed outside it, so
+ *   two threads missing on the same key at once both compute it and the later one is kept.
+ *
+ */
+public class ResultCache {
+
+	/** Default bound on the bytes of cached results (256 MB) */
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+	private enum Op {
+		MULTIPLY, MULTIPLY_VECTOR, TRANSPOSE, IDENTITY, INVERSE, LU, CHOLESKY, QR
+	}
+
+	private final long _lMaxBytes;
+	private final LinkedHashMap<Key, Entry> _map = new LinkedHashMap<>(16, 0.75f, true); // Least recently used first
+	private long _lBytes;                      // Bytes of the results in _map (guarded by this)
+	private final LongAdder _hits = new LongAdder();
+	private final LongAdder _misses = new LongAdder();
+	private final LongAdder _evictions = new LongAdder();
+
+	/** Creates a cache of at most DEFAULT_MAX_BYTES of results */
+	public ResultCache() {
+		_lMaxBytes = DEFAULT_MAX_BYTES;
+	}
+
+	/** Creates a cache of at most maxBytes of results
+	 *
+	 * @param maxBytes
+	 * @throws LinAlgException if maxBytes is < 0
+	 */
+	public ResultCache(long maxBytes) throws LinAlgException {
+		if (maxBytes < 0)
+			throw new LinAlgException("Cache size " + maxBytes + " cannot be negative");
+		_lMaxBytes = maxBytes;
+	}
+
+	/** Returns the product of m1 and m2 (see Matrix.Multiply(m1, m2))
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public Matrix multiply(Matrix m1, Matrix m2) throws LinAlgException {
+		long v1 = m1.getVersion(), v2 = m2.getVersion();
+		Key key = new Key(Op.MULTIPLY, m1.contentHash(), m2.contentHash());
+		Object cached = find(key, m1, v1, m2, v2);
+		if (cached != null)
+			return (Matrix)cached;
+		Matrix result = Matrix.Multiply(m1, m2);
+		store(key, new Entry(result, result.getVersion(), bytes(result), m1, v1, m2, v2));
+		return result;
+	}
+
+	/** Returns the product of Matrix m and Vector v (see Matrix.Multiply(m, v))
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public Vector multiply(Matrix m, Vector v) throws LinAlgException {
+		long vm = m.getVersion(), vv = v.getVersion();
+		Key key = new Key(Op.MULTIPLY_VECTOR, m.contentHash(), v.contentHash());
+		Object cached = find(key, m, vm, v, vv);
+		if (cached != null)
+			return (Vector)cached;
+		Vector result = Matrix.Multiply(m, v);
+		store(key, new Entry(result, result.getVersion(), 8L * result.getDim(), m, vm, v, vv));
+		return result;
+	}
+
+	/** Returns the transpose of m, as a new matrix rather than a view (see Matrix.transpose())
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix transpose(Matrix m) throws LinAlgException {
+		long vm = m.getVersion();
+		Key key = new Key(Op.TRANSPOSE, m.contentHash(), 0L);
+		Object cached = find(key, m, vm, null, 0L);
+		if (cached != null)
+			return (Matrix)cached;
+		Matrix result = m.transpose();
+		store(key, new Entry(result, result.getVersion(), bytes(result), m, vm, null, 0L));
+		return result;
+	}
+
+	/** Returns the dim x dim identity matrix (see Matrix.GetIdentity(dim))
+	 *
+	 * @param dim
+	 * @return
+	 * @throws LinAlgException if dim is <= 0
+	 */
+	public Matrix identity(int dim) throws LinAlgException {
+		Key key = new Key(Op.IDENTITY, dim, 0L);
+		Object cached = find(key, null, 0L, null, 0L);
+		if (cached != null)
+			return (Matrix)cached;
+		Matrix result = Matrix.GetIdentity(dim);
+		store(key, new Entry(result, result.getVersion(), bytes(result), null, 0L, null, 0L));
+		return result;
+	}
+
+	/** Returns the inverse of m (see Matrix.inverse())
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m is not square or is singular
+	 */
+	public Matrix inverse(Matrix m) throws LinAlgException {
+		long vm = m.getVersion();
+		Key key = new Key(Op.INVERSE, m.contentHash(), 0L);
+		Object cached = find(key, m, vm, null, 0L);
+		if (cached != null)
+			return (Matrix)cached;
+		Matrix result = m.inverse();
+		store(key, new Entry(result, result.getVersion(), bytes(result), m, vm, null, 0L));
+		return result;
+	}
+
+	/** Returns the LU factorization of m
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m is not square or is singular
+	 */
+	public LUDecomposition lu(Matrix m) throws LinAlgException {
+		long vm = m.getVersion();
+		Key key = new Key(Op.LU, m.contentHash(), 0L);
+		Object cached = find(key, m, vm, null, 0L);
+		if (cached != null)
+			return (LUDecomposition)cached;
+		LUDecomposition result = new LUDecomposition(m);
+		store(key, new Entry(result, 0L, bytes(m), m, vm, null, 0L));
+		return result;
+	}
+
+	/** Returns the Cholesky factorization of m
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m is not symmetric positive definite
+	 */
+	public CholeskyDecomposition cholesky(Matrix m) throws LinAlgException {
+		long vm = m.getVersion();
+		Key key = new Key(Op.CHOLESKY, m.contentHash(), 0L);
+		Object cached = find(key, m, vm, null, 0L);
+		if (cached != null)
+			return (CholeskyDecomposition)cached;
+		CholeskyDecomposition result = new CholeskyDecomposition(m);
+		store(key, new Entry(result, 0L, bytes(m), m, vm, null, 0L));
+		return result;
+	}
+
+	/** Returns the QR factorization of m
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m has fewer rows than columns
+	 */
+	public QRDecomposition qr(Matrix m) throws LinAlgException {
+		long vm = m.getVersion();
+		Key key = new Key(Op.QR, m.contentHash(), 0L);
+		Object cached = find(key, m, vm, null, 0L);
+		if (cached != null)
+			return (QRDecomposition)cached;
+		QRDecomposition result = new QRDecomposition(m);
+		store(key, new Entry(result, 0L, bytes(m), m, vm, null, 0L));
+		return result;
+	}
+
+	/** Returns the number of requests answered from the cache
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return _hits.sum();
+	}
+
+	/** Returns the number of requests that computed their result
+	 *
+	 * @return
+	 */
+	public long getMisses() {
+		return _misses.sum();
+	}
+
+	/** Returns the number of results evicted to stay within getMaxBytes()
+	 *
+	 * @return
+	 */
+	public long getEvictions() {
+		return _evictions.sum();
+	}
+
+	/** Returns the fraction of requests answered from the cache (0.0 before the first one)
+	 *
+	 * @return
+	 */
+	public double getHitRate() {
+		long hits = getHits(), total = hits + getMisses();
+		return total == 0 ? 0.0 : (double)hits / total;
+	}
+
+	/** Returns the number of cached results
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return _map.size();
+	}
+
+	/** Returns the bytes of the cached results
+	 *
+	 * @return
+	 */
+	public synchronized long getBytes() {
+		return _lBytes;
+	}
+
+	/** Returns the most bytes of results the cache holds before evicting (8 bytes per double)
+	 *
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return _lMaxBytes;
+	}
+
+	/** Drops every cached result (the statistics are kept) */
+	public synchronized void clear() {
+		_map.clear();
+		_lBytes = 0L;
+	}
+
+	@Override
+	public String toString() {
+		return "ResultCache[" + size() + " results, " + getBytes() + "/" + _lMaxBytes + " bytes, "
+				+ getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions]";
+	}
+
+	/** Returns the cached result for key if its entry is still valid for these operands, else null
+	 *  (an entry is verified outside the lock, since a copy of an operand is compared in full) */
+	private Object find(Key key, Object first, long firstVersion, Object second, long secondVersion) {
+		Entry entry;
+		synchronized (this) {
+			entry = _map.get(key); // Also marks it most recently used
+		}
+		if (entry != null && entry.isValid(first, firstVersion, second, secondVersion)) {
+			_hits.increment();
+			return entry._result;
+		}
+		_misses.increment();
+		return null;
+	}
+
+	/** Caches entry under key (replacing an invalid one), then evicts down to the bound */
+	private synchronized void store(Key key, Entry entry) {
+		if (entry._lBytes > _lMaxBytes)
+			return;
+		Entry old = _map.put(key, entry);
+		if (old != null)
+			_lBytes -= old._lBytes;
+		_lBytes += entry._lBytes;
+		// The new entry is the most recently used and fits on its own, so it is never evicted here
+		Iterator<Entry> it = _map.values().iterator();
+		while (_lBytes > _lMaxBytes) {
+			_lBytes -= it.next()._lBytes;
+			it.remove();
+			_evictions.increment();
+		}
+	}
+
+	private static long bytes(Matrix m) {
+		return 8L * m.getNumRows() * m.getNumCols();
+	}
+
+	/** The version of a Matrix or Vector operand or result */
+	private static long versionOf(Object o) {
+		return o instanceof Matrix ? ((Matrix)o).getVersion() : ((Vector)o).getVersion();
+	}
+
+	/** An operation and the content hashes of its operands (or another int parameter) */
+	private static final class Key {
+		private final Op _op;
+		private final long _lFirst, _lSecond;
+
+		Key(Op op, long first, long second) {
+			_op = op;
+			_lFirst = first;
+			_lSecond = second;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return _op == k._op && _lFirst == k._lFirst && _lSecond == k._lSecond;
+		}
+
+		@Override
+		public int hashCode() {
+			return ContentHash.fold(_lFirst * 31 + _lSecond) * 31 + _op.ordinal();
+		}
+	}
+
+	/** A cached result with what it was computed from */
+	private static final class Entry {
+		private final Object _result;
+		private final long _lResultVersion;   // For a Matrix or Vector result, its version when cached
+		private final long _lBytes;
+		private final WeakReference<Object> _first, _second; // The operands (null when absent)
+		private final long _lFirstVersion, _lSecondVersion;
+
+		Entry(Object result, long resultVersion, long bytes, Object first, long firstVersion, Object second, long secondVersion) {
+			_result = result;
+			_lResultVersion = resultVersion;
+			_lBytes = bytes;
+			_first = first == null ? null : new WeakReference<>(first);
+			_second = second == null ? null : new WeakReference<>(second);
+			_lFirstVersion = firstVersion;
+			_lSecondVersion = secondVersion;
+		}
+
+		/** True if the result is unmodified and was computed from these operands' content */
+		boolean isValid(Object first, long firstVersion, Object second, long secondVersion) {
+			if ((_result instanceof Matrix || _result instanceof Vector) && versionOf(_result) != _lResultVersion)
+				return false;
+			return sameOperand(_first, _lFirstVersion, first, firstVersion)
+					&& sameOperand(_second, _lSecondVersion, second, secondVersion);
+		}
+
+		/** True if operand (at version) has the content the stored operand had when cached */
+		private static boolean sameOperand(WeakReference<Object> ref, long storedVersion, Object operand, long version) {
+			if (ref == null)
+				return operand == null;
+			Object stored = ref.get();
+			if (stored == null || versionOf(stored) != storedVersion)
+				return false; // Collected or modified: what it held can no longer be checked
+			return stored == operand ? version == storedVersion : stored.equals(operand);
+		}
+	}
+}
@@ -0,0 +1,580 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A class that represents a sparse real-valued (double) matrix in compressed sparse row (CSR)
+ *   or compressed sparse column (CSC) form.
+ *
+ *   In CSR the entries of row r are stored at positions [_anPtr[r], _anPtr[r+1]) of _anIdx
+ *   (their column indices, increasing) and _adVal (their values).  CSC is the same with the
+ *   roles of rows and columns swapped.  Since the CSR arrays of a matrix are exactly the CSC
+ *   arrays of its transpose, transpose() is O(1) and shares storage.
+ *
+ *   A SparseMatrix is immutable; build one from COO (row, col, value) triplets with
+ *   SparseMatrix.Builder or convert a dense Matrix with fromMatrix().  Only non-zero
+ *   entries are ever stored (entries that sum or cancel to 0.0 are dropped), so two
+ *   matrices with the same content have the same stored entries.
+ *
+ */
+public class SparseMatrix implements LinearOperator {
+
+	/** The compressed storage layouts */
+	public enum Format { CSR, CSC }
+
+	private int _nRows;      // Number of rows in this matrix
+	private int _nCols;      // Number of columns in this matrix
+	private Format _format;  // Whether the major dimension is rows (CSR) or columns (CSC)
+	private int[] _anPtr;    // Start of each major line in _anIdx/_adVal; length is majorDim + 1
+	private int[] _anIdx;    // Minor index of each stored entry, increasing within a major line
+	private double[] _adVal; // Value of each stored entry
+
+	/** Collects COO (row, col, value) triplets in any order; values given for the same
+	 *  position are summed
+	 *
+	 */
+	public static class Builder {
+
+		private int _nRows;
+		private int _nCols;
+		private int _nCount;
+		private int[] _anRow = new int[16];
+		private int[] _anCol = new int[16];
+		private double[] _adVal = new double[16];
+
+		/** Starts a builder for a rows x cols sparse matrix
+		 *
+		 * @param rows
+		 * @param cols
+		 * @throws LinAlgException if either rows or cols is <= 0
+		 */
+		public Builder(int rows, int cols) throws LinAlgException {
+			if (rows <= 0 || cols <= 0)
+				throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+			_nRows = rows;
+			_nCols = cols;
+		}
+
+		/** Adds val at (row, col) (summed with anything already added there)
+		 *
+		 * @param row
+		 * @param col
+		 * @param val
+		 * @return this builder
+		 * @throws LinAlgException if row or col indices are out of bounds
+		 */
+		public Builder add(int row, int col, double val) throws LinAlgException {
+			if (row < 0 || col < 0 || row >= _nRows || col >= _nCols)
+				throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
+			if (_nCount == _anRow.length) {
+				_anRow = Arrays.copyOf(_anRow, 2 * _nCount);
+				_anCol = Arrays.copyOf(_anCol, 2 * _nCount);
+				_adVal = Arrays.copyOf(_adVal, 2 * _nCount);
+			}
+			_anRow[_nCount] = row;
+			_anCol[_nCount] = col;
+			_adVal[_nCount] = val;
+			_nCount++;
+			return this;
+		}
+
+		/** Builds the matrix in CSR form
+		 *
+		 * @return
+		 */
+		public SparseMatrix buildCSR() {
+			return build(Format.CSR, _anRow, _anCol, _nRows, _nCols);
+		}
+
+		/** Builds the matrix in CSC form
+		 *
+		 * @return
+		 */
+		public SparseMatrix buildCSC() {
+			return build(Format.CSC, _anCol, _anRow, _nCols, _nRows);
+		}
+
+		/** Two counting-sort passes (by minor index, then stably by major index) put the triplets
+		 *  in compressed order in O(nnz + rows + cols); duplicates are then adjacent and summed
+		 *
+		 */
+		private SparseMatrix build(Format format, int[] major, int[] minor, int majorDim, int minorDim) {
+			int[] byMinor = countingSort(null, minor, minorDim);
+			int[] order = countingSort(byMinor, major, majorDim);
+			int[] ptr = new int[majorDim + 1];
+			int[] idx = new int[_nCount];
+			double[] val = new double[_nCount];
+			int nnz = 0;
+			int prevLine = -1;
+			for (int k = 0; k < _nCount; k++) {
+				int pos = order[k];
+				int line = major[pos];
+				if (line == prevLine && idx[nnz - 1] == minor[pos]) {
+					val[nnz - 1] += _adVal[pos]; // Duplicate position: sum in insertion order
+					continue;
+				}
+				idx[nnz] = minor[pos];
+				val[nnz] = _adVal[pos];
+				nnz++;
+				ptr[line + 1] = nnz;
+				prevLine = line;
+			}
+			for (int line = 0; line < majorDim; line++)
+				ptr[line + 1] = Math.max(ptr[line + 1], ptr[line]); // Empty lines inherit the previous end
+			// Second pass: squeeze out positions whose values summed to zero
+			int end = 0;
+			nnz = 0;
+			for (int line = 0; line < majorDim; line++) {
+				int start = end;
+				end = ptr[line + 1];
+				for (int k = start; k < end; k++) {
+					if (val[k] != 0.0) {
+						idx[nnz] = idx[k];
+						val[nnz++] = val[k];
+					}
+				}
+				ptr[line + 1] = nnz;
+			}
+			return new SparseMatrix(_nRows, _nCols, format, ptr, Arrays.copyOf(idx, nnz), Arrays.copyOf(val, nnz));
+		}
+
+		/** Returns the positions of the triplets (or of the given order) stably sorted by key */
+		private int[] countingSort(int[] order, int[] key, int keyDim) {
+			int[] start = new int[keyDim + 1];
+			for (int k = 0; k < _nCount; k++)
+				start[key[k] + 1]++;
+			for (int i = 0; i < keyDim; i++)
+				start[i + 1] += start[i];
+			int[] sorted = new int[_nCount];
+			for (int k = 0; k < _nCount; k++) {
+				int pos = order == null ? k : order[k];
+				sorted[start[key[pos]]++] = pos;
+			}
+			return sorted;
+		}
+	}
+
+	/** Wraps compressed arrays (not copied)
+	 *
+	 */
+	SparseMatrix(int rows, int cols, Format format, int[] ptr, int[] idx, double[] val) {
+		_nRows = rows;
+		_nCols = cols;
+		_format = format;
+		_anPtr = ptr;
+		_anIdx = idx;
+		_adVal = val;
+	}
+
+	/** Returns a SparseMatrix in the given format holding the non-zero entries of m
+	 *
+	 * @param m
+	 * @param format
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public static SparseMatrix fromMatrix(Matrix m, Format format) throws LinAlgException {
+		// Scan along the major dimension so the entries come out already in compressed order
+		Matrix src = format == Format.CSR ? m : m.transposeView();
+		int majorDim = src.getNumRows(), minorDim = src.getNumCols();
+		double[] data = src.getData();
+		int off = src.getOffset(), rs = src.getRowStride(), cs = src.getColStride();
+		int[] ptr = new int[majorDim + 1];
+		int nnz = 0;
+		for (int i = 0; i < majorDim; i++)
+			for (int j = 0; j < minorDim; j++)
+				if (data[off + i * rs + j * cs] != 0.0)
+					nnz++;
+		int[] idx = new int[nnz];
+		double[] val = new double[nnz];
+		int k = 0;
+		for (int i = 0; i < majorDim; i++) {
+			for (int j = 0; j < minorDim; j++) {
+				double d = data[off + i * rs + j * cs];
+				if (d != 0.0) {
+					idx[k] = j;
+					val[k++] = d;
+				}
+			}
+			ptr[i + 1] = k;
+		}
+		return new SparseMatrix(m.getNumRows(), m.getNumCols(), format, ptr, idx, val);
+	}
+
+	/** Returns a dense copy of this matrix
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix toMatrix() throws LinAlgException {
+		Matrix m = new Matrix(_nRows, _nCols);
+		Matrix dst = _format == Format.CSR ? m : m.transposeView(); // Write along the major dimension
+		double[] data = dst.getData();
+		int rs = dst.getRowStride(), cs = dst.getColStride();
+		for (int i = 0; i < getMajorDim(); i++)
+			for (int k = _anPtr[i]; k < _anPtr[i + 1]; k++)
+				data[i * rs + _anIdx[k] * cs] = _adVal[k];
+		return m;
+	}
+
+	/** Returns this matrix in CSR form (*this* if it already is)
+	 *
+	 * @return
+	 */
+	public SparseMatrix toCSR() {
+		return _format == Format.CSR ? this : convert();
+	}
+
+	/** Returns this matrix in CSC form (*this* if it already is)
+	 *
+	 * @return
+	 */
+	public SparseMatrix toCSC() {
+		return _format == Format.CSC ? this : convert();
+	}
+
+	/** Re-compresses along the other dimension in O(nnz + rows + cols); scanning the major lines
+	 *  in order keeps the new minor indices sorted without any comparison sort
+	 *
+	 */
+	private SparseMatrix convert() {
+		int majorDim = getMajorDim(), minorDim = getMinorDim();
+		int nnz = _anIdx.length;
+		int[] ptr = new int[minorDim + 1];
+		for (int k = 0; k < nnz; k++)
+			ptr[_anIdx[k] + 1]++;
+		for (int j = 0; j < minorDim; j++)
+			ptr[j + 1] += ptr[j];
+		int[] next = Arrays.copyOf(ptr, minorDim);
+		int[] idx = new int[nnz];
+		double[] val = new double[nnz];
+		for (int i = 0; i < majorDim; i++) {
+			for (int k = _anPtr[i]; k < _anPtr[i + 1]; k++) {
+				int pos = next[_anIdx[k]]++;
+				idx[pos] = i;
+				val[pos] = _adVal[k];
+			}
+		}
+		Format other = _format == Format.CSR ? Format.CSC : Format.CSR;
+		return new SparseMatrix(_nRows, _nCols, other, ptr, idx, val);
+	}
+
+	/** Returns the transpose of *this* in O(1): the CSR arrays of this matrix are reused as
+	 *  the CSC arrays of the transpose (and vice versa)
+	 *
+	 * @return
+	 */
+	public SparseMatrix transpose() {
+		Format other = _format == Format.CSR ? Format.CSC : Format.CSR;
+		return new SparseMatrix(_nCols, _nRows, other, _anPtr, _anIdx, _adVal);
+	}
+
+	/** Return the number of rows in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	/** Return the number of columns in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Return the number of stored entries
+	 *
+	 * @return
+	 */
+	public int getNumNonZeros() {
+		return _anIdx.length;
+	}
+
+	/** Return the storage format of this matrix
+	 *
+	 * @return
+	 */
+	public Format getFormat() {
+		return _format;
+	}
+
+	/** Return the scalar value at the given row and column (0.0 if it is not stored)
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		if (row < 0 || col < 0 || row >= _nRows || col >= _nCols)
+			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + _nRows + "],[0, " + _nCols + "])");
+		int line = _format == Format.CSR ? row : col;
+		int minor = _format == Format.CSR ? col : row;
+		int k = Arrays.binarySearch(_anIdx, _anPtr[line], _anPtr[line + 1], minor);
+		return k >= 0 ? _adVal[k] : 0.0;
+	}
+
+	/** Returns the dense Vector result of multiplying SparseMatrix m by Vector v in O(nnz(m))
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector Multiply(SparseMatrix m, Vector v) throws LinAlgException {
+		Vector vec = new Vector(m._nRows);
+		Multiply(m, v, vec);
+		return vec;
+	}
+
+	/** Writes the product of SparseMatrix m and Vector v into out, allocating nothing
+	 *
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if m columns do match the size of v, out does not have one entry per
+	 *         row of m, or out is v
+	 */
+	public static void Multiply(SparseMatrix m, Vector v, Vector out) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("Cannot multiply matrix with " + m._nCols + " columns with a vector of dimension " + v.getDim());
+		if (out.getDim() != m._nRows)
+			throw new LinAlgException("Cannot write the product of a matrix with " + m._nRows + " rows into a vector of dimension " + out.getDim());
+		if (out == v)
+			throw new LinAlgException("Cannot Multiply into the input vector: it is read after entries are written");
+		double[] x = v.getValues();
+		double[] y = out.getValues();
+		if (m._format == Format.CSR) {
+			// One sparse dot product per row
+			for (int row = 0; row < m._nRows; row++) {
+				double sum = 0.0;
+				for (int k = m._anPtr[row]; k < m._anPtr[row + 1]; k++)
+					sum += m._adVal[k] * x[m._anIdx[k]];
+				y[row] = sum;
+			}
+		} else {
+			// Scatter each column scaled by its entry of v
+			Arrays.fill(y, 0, m._nRows, 0.0);
+			for (int col = 0; col < m._nCols; col++) {
+				double xc = x[col]; // Not skipped when 0: 0 * Inf and 0 * NaN give NaN, as in CSR and dense
+				for (int k = m._anPtr[col]; k < m._anPtr[col + 1]; k++)
+					y[m._anIdx[k]] += m._adVal[k] * xc;
+			}
+		}
+		out.modified();
+	}
+
+	/** Writes *this* times in into out (LinearOperator; see Multiply(m, v, out))
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		Multiply(this, in, out);
+	}
+
+	/** Writes the transpose of *this* times in into out, through the O(1) transpose()
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		Multiply(transpose(), in, out);
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** Returns the sparse result of multiplying SparseMatrix m by SparseVector v
+	 *  (CSC touches only the columns selected by the non-zeros of v)
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static SparseVector Multiply(SparseMatrix m, SparseVector v) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("Cannot multiply matrix with " + m._nCols + " columns with a vector of dimension " + v.getDim());
+		SparseMatrix csc = m.toCSC();
+		int[] vIdx = v.getIndices();
+		double[] vVal = v.getNonZeroValues();
+		double[] acc = new double[m._nRows];
+		boolean[] seen = new boolean[m._nRows];
+		int[] rows = new int[Math.min(m._nRows, 16)];
+		int count = 0;
+		for (int t = 0; t < vIdx.length; t++) {
+			int col = vIdx[t];
+			for (int k = csc._anPtr[col]; k < csc._anPtr[col + 1]; k++) {
+				int row = csc._anIdx[k];
+				if (!seen[row]) {
+					seen[row] = true;
+					if (count == rows.length)
+						rows = Arrays.copyOf(rows, Math.min(m._nRows, 2 * count));
+					rows[count++] = row;
+				}
+				acc[row] += csc._adVal[k] * vVal[t];
+			}
+		}
+		Arrays.sort(rows, 0, count);
+		double[] val = new double[count];
+		int nnz = 0;
+		for (int t = 0; t < count; t++) {
+			if (acc[rows[t]] != 0.0) { // Drop entries that cancelled out
+				rows[nnz] = rows[t];
+				val[nnz++] = acc[rows[t]];
+			}
+		}
+		return new SparseVector(m._nRows, Arrays.copyOf(rows, nnz), Arrays.copyOf(val, nnz));
+	}
+
+	/** Returns the dense Matrix result of multiplying SparseMatrix m1 by dense Matrix m2 in O(nnz(m1) * m2 columns)
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix Multiply(SparseMatrix m1, Matrix m2) throws LinAlgException {
+		if (m2.getNumRows() != m1._nCols)
+			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2.getNumRows() + " rows");
+		SparseMatrix a = m1.toCSR();
+		int n = m2.getNumCols();
+		Matrix C = new Matrix(m1._nRows, n);
+		double[] b = m2.getData(), c = C.getData();
+		int bOff = m2.getOffset(), bRs = m2.getRowStride(), bCs = m2.getColStride();
+		for (int row = 0; row < a._nRows; row++) {
+			int cRow = row * n;
+			for (int k = a._anPtr[row]; k < a._anPtr[row + 1]; k++) {
+				double aik = a._adVal[k];
+				int bj = bOff + a._anIdx[k] * bRs;
+				for (int j = 0; j < n; j++, bj += bCs)
+					c[cRow + j] += aik * b[bj]; // Row of C += a(row, k) * row k of m2
+			}
+		}
+		return C;
+	}
+
+	/** Returns the CSR result of multiplying two sparse matrices (Gustavson's row-by-row algorithm:
+	 *  row i of the result is the sum of the rows of m2 selected and scaled by row i of m1)
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static SparseMatrix Multiply(SparseMatrix m1, SparseMatrix m2) throws LinAlgException {
+		if (m2._nRows != m1._nCols)
+			throw new LinAlgException("Cannot multiply matrix m1 having " + m1._nCols + " columns with matrix m2 having " + m2._nRows + " rows");
+		SparseMatrix a = m1.toCSR(), b = m2.toCSR();
+		int n = b._nCols;
+		double[] acc = new double[n];   // Dense accumulator for the current row
+		int[] mark = new int[n];        // mark[j] == row + 1 once column j has appeared in this row
+		int[] cols = new int[n];        // Columns touched by the current row
+		int[] ptr = new int[a._nRows + 1];
+		int[] idx = new int[Math.max(16, a._anIdx.length + b._anIdx.length)];
+		double[] val = new double[idx.length];
+		int nnz = 0;
+		for (int row = 0; row < a._nRows; row++) {
+			int count = 0;
+			for (int ka = a._anPtr[row]; ka < a._anPtr[row + 1]; ka++) {
+				int k = a._anIdx[ka];
+				double aik = a._adVal[ka];
+				for (int kb = b._anPtr[k]; kb < b._anPtr[k + 1]; kb++) {
+					int col = b._anIdx[kb];
+					if (mark[col] != row + 1) {
+						mark[col] = row + 1;
+						acc[col] = 0.0;
+						cols[count++] = col;
+					}
+					acc[col] += aik * b._adVal[kb];
+				}
+			}
+			Arrays.sort(cols, 0, count);
+			if (nnz + count > idx.length) {
+				int capacity = Math.max(nnz + count, 2 * idx.length);
+				idx = Arrays.copyOf(idx, capacity);
+				val = Arrays.copyOf(val, capacity);
+			}
+			for (int t = 0; t < count; t++) {
+				if (acc[cols[t]] != 0.0) { // Drop entries that cancelled out
+					idx[nnz] = cols[t];
+					val[nnz++] = acc[cols[t]];
+				}
+			}
+			ptr[row + 1] = nnz;
+		}
+		return new SparseMatrix(a._nRows, n, Format.CSR, ptr, Arrays.copyOf(idx, nnz), Arrays.copyOf(val, nnz));
+	}
+
+	/** Shows the stored entries as one "(row, col) value" line each, in storage order
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(_format + " " + _nRows + " x " + _nCols + ", " + _anIdx.length + " non-zeros\n");
+		for (int i = 0; i < getMajorDim(); i++) {
+			for (int k = _anPtr[i]; k < _anPtr[i + 1]; k++) {
+				int row = _format == Format.CSR ? i : _anIdx[k];
+				int col = _format == Format.CSR ? _anIdx[k] : i;
+				sb.append("(" + row + ", " + col + ") " + String.format("%6.3f", _adVal[k]) + "\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Two sparse matrices are equal iff they have the same dimensions and the same stored
+	 *  entries (regardless of whether each is CSR or CSC)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof SparseMatrix) {
+			SparseMatrix m = (SparseMatrix)o;
+			if (_nRows != m._nRows || _nCols != m._nCols)
+				return false;
+			SparseMatrix other = _format == m._format ? m : (_format == Format.CSR ? m.toCSR() : m.toCSC());
+			return Arrays.equals(_anPtr, other._anPtr) && Arrays.equals(_anIdx, other._anIdx)
+					&& valuesEqual(_adVal, other._adVal);
+		} else
+			return false;
+	}
+
+	/** Compares with == (like Matrix.equals) so that 0.0 equals -0.0 */
+	private static boolean valuesEqual(double[] a, double[] b) {
+		if (a.length != b.length)
+			return false;
+		for (int k = 0; k < a.length; k++)
+			if (a[k] != b[k])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		SparseMatrix csr = toCSR();
+		int hash = 31 * _nRows + _nCols;
+		for (int i = 0; i < _nRows; i++)
+			for (int k = csr._anPtr[i]; k < csr._anPtr[i + 1]; k++)
+				hash = 31 * (31 * (31 * hash + i) + csr._anIdx[k]) + Double.hashCode(csr._adVal[k] + 0.0);
+		return hash;
+	}
+
+	private int getMajorDim() {
+		return _format == Format.CSR ? _nRows : _nCols;
+	}
+
+	private int getMinorDim() {
+		return _format == Format.CSR ? _nCols : _nRows;
+	}
+}
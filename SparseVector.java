@@ -0,0 +1,252 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A class that represents a sparse real-valued (double) vector: only the non-zero entries
+ *   are stored, as parallel arrays of strictly increasing indices and their values
+ *   (entries that sum to 0.0 in the builder are dropped).
+ *
+ *   A SparseVector is immutable; build one with SparseVector.Builder or fromVector().
+ *
+ */
+public class SparseVector {
+
+	private int _nDim;       // Dimension of the Vector (including the zeros that are not stored)
+	private int[] _anIdx;    // Indices of the stored entries, strictly increasing
+	private double[] _adVal; // Values of the stored entries, _adVal[k] belongs to index _anIdx[k]
+
+	/** Collects (index, value) pairs in any order; values given for the same index are summed
+	 *
+	 */
+	public static class Builder {
+
+		private int _nDim;
+		private int _nCount;
+		private int[] _anIdx = new int[16];
+		private double[] _adVal = new double[16];
+
+		/** Starts a builder for a sparse vector of dimension dim
+		 *
+		 * @param dim
+		 * @throws LinAlgException if dim is < 1
+		 */
+		public Builder(int dim) throws LinAlgException {
+			if (dim <= 0)
+				throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+			_nDim = dim;
+		}
+
+		/** Adds val at index (summed with anything already added at index)
+		 *
+		 * @param index
+		 * @param val
+		 * @return this builder
+		 * @throws LinAlgException if index is out of bounds
+		 */
+		public Builder add(int index, double val) throws LinAlgException {
+			if (index < 0 || index >= _nDim)
+				throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+			if (_nCount == _anIdx.length) {
+				_anIdx = Arrays.copyOf(_anIdx, 2 * _nCount);
+				_adVal = Arrays.copyOf(_adVal, 2 * _nCount);
+			}
+			_anIdx[_nCount] = index;
+			_adVal[_nCount] = val;
+			_nCount++;
+			return this;
+		}
+
+		/** Sorts the collected pairs by index, merges duplicates and returns the SparseVector
+		 *
+		 * @return
+		 */
+		public SparseVector build() {
+			// Sort positions by index (a counting sort would need O(dim) memory, so sort the pairs instead)
+			long[] keys = new long[_nCount];
+			for (int k = 0; k < _nCount; k++)
+				keys[k] = ((long)_anIdx[k] << 32) | k;
+			Arrays.sort(keys);
+			int[] idx = new int[_nCount];
+			double[] val = new double[_nCount];
+			int nnz = 0;
+			for (int k = 0; k < _nCount; k++) {
+				int pos = (int)keys[k];
+				int index = (int)(keys[k] >>> 32);
+				if (nnz > 0 && idx[nnz - 1] == index) {
+					val[nnz - 1] += _adVal[pos]; // Duplicate index: sum in insertion order
+				} else {
+					if (nnz > 0 && val[nnz - 1] == 0.0)
+						nnz--; // The previous index summed to zero: overwrite it
+					idx[nnz] = index;
+					val[nnz] = _adVal[pos];
+					nnz++;
+				}
+			}
+			if (nnz > 0 && val[nnz - 1] == 0.0)
+				nnz--;
+			return new SparseVector(_nDim, Arrays.copyOf(idx, nnz), Arrays.copyOf(val, nnz));
+		}
+	}
+
+	/** Wraps already sorted, duplicate-free arrays (not copied)
+	 *
+	 */
+	SparseVector(int dim, int[] idx, double[] val) {
+		_nDim = dim;
+		_anIdx = idx;
+		_adVal = val;
+	}
+
+	/** Returns a SparseVector holding the non-zero entries of v
+	 *
+	 * @param v
+	 * @return
+	 */
+	public static SparseVector fromVector(Vector v) {
+		double[] values = v.getValues();
+		int n = v.getDim();
+		int nnz = 0;
+		for (int i = 0; i < n; i++)
+			if (values[i] != 0.0)
+				nnz++;
+		int[] idx = new int[nnz];
+		double[] val = new double[nnz];
+		for (int i = 0, k = 0; i < n; i++) {
+			if (values[i] != 0.0) {
+				idx[k] = i;
+				val[k++] = values[i];
+			}
+		}
+		return new SparseVector(n, idx, val);
+	}
+
+	/** Returns a dense copy of this vector
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Vector toVector() throws LinAlgException {
+		Vector v = new Vector(_nDim);
+		double[] values = v.getValues();
+		for (int k = 0; k < _anIdx.length; k++)
+			values[_anIdx[k]] = _adVal[k];
+		return v;
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Get the number of stored (non-zero) entries
+	 *
+	 * @return
+	 */
+	public int getNumNonZeros() {
+		return _anIdx.length;
+	}
+
+	/** Returns the value at the given index (0.0 if it is not stored)
+	 *
+	 * @param index
+	 * @return
+	 * @throws LinAlgException if index is out of bounds
+	 */
+	public double get(int index) throws LinAlgException {
+		if (index < 0 || index >= _nDim)
+			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
+		int k = Arrays.binarySearch(_anIdx, index);
+		return k >= 0 ? _adVal[k] : 0.0;
+	}
+
+	/** Performs an inner product of sparse v1 and dense v2 in O(nnz(v1))
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if the dimensions do not match
+	 */
+	public static double InnerProd(SparseVector v1, Vector v2) throws LinAlgException {
+		if (v1._nDim != v2.getDim())
+			throw new LinAlgException("Cannot innerProd vectors of different dimensions " + v1._nDim + " and " + v2.getDim());
+		double[] x = v2.getValues();
+		double innerproduct = 0.0;
+		for (int k = 0; k < v1._anIdx.length; k++)
+			innerproduct += v1._adVal[k] * x[v1._anIdx[k]];
+		return innerproduct;
+	}
+
+	/** Performs an inner product of two sparse vectors by merging their index lists
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if the dimensions do not match
+	 */
+	public static double InnerProd(SparseVector v1, SparseVector v2) throws LinAlgException {
+		if (v1._nDim != v2._nDim)
+			throw new LinAlgException("Cannot innerProd vectors of different dimensions " + v1._nDim + " and " + v2._nDim);
+		double innerproduct = 0.0;
+		int a = 0, b = 0;
+		while (a < v1._anIdx.length && b < v2._anIdx.length) {
+			if (v1._anIdx[a] < v2._anIdx[b])
+				a++;
+			else if (v1._anIdx[a] > v2._anIdx[b])
+				b++;
+			else
+				innerproduct += v1._adVal[a++] * v2._adVal[b++];
+		}
+		return innerproduct;
+	}
+
+	/** Shows the stored entries as "index:value" pairs, e.g., "[ 0:1.000 7:-2.500 ] (dim 10)"
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		for (int k = 0; k < _anIdx.length; k++)
+			sb.append(" " + _anIdx[k] + ":" + String.format("%.3f", _adVal[k]));
+		sb.append(" ] (dim " + _nDim + ")");
+		return sb.toString();
+	}
+
+	/** Two sparse vectors are equal iff they have the same dimension and the same stored entries
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof SparseVector) {
+			SparseVector v = (SparseVector)o;
+			if (_nDim != v._nDim || _anIdx.length != v._anIdx.length)
+				return false;
+			for (int k = 0; k < _anIdx.length; k++)
+				if (_anIdx[k] != v._anIdx[k] || _adVal[k] != v._adVal[k])
+					return false;
+			return true;
+		} else
+			return false;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = _nDim;
+		for (int k = 0; k < _anIdx.length; k++)
+			hash = 31 * (31 * hash + _anIdx[k]) + Double.hashCode(_adVal[k] + 0.0); // + 0.0 folds -0.0 into 0.0
+		return hash;
+	}
+
+	// Package-private access to the storage for the sparse kernels
+	int[] getIndices() {
+		return _anIdx;
+	}
+
+	double[] getNonZeroValues() {
+		return _adVal;
+	}
+}
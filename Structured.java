@@ -0,0 +1,55 @@
+package linalg;
+
+/*** Helpers shared by the structured matrix types (DiagonalMatrix, TriangularMatrix,
+ *   SymmetricMatrix, BandedMatrix), which store only part of a matrix in a packed array.
+ *
+ */
+final class Structured {
+
+	/** Rows of a packed matrix expanded at a time for its Gemm-based products (Gemm.MC, one L2 block) */
+	static final int PANEL = Gemm.MC;
+
+	private Structured() {} // Static helpers only
+
+	/** True if a and b hold the same values in [0, n), compared with == as in Matrix.equals() */
+	static boolean sameValues(double[] a, double[] b, int n) {
+		for (int i = 0; i < n; i++)
+			if (a[i] != b[i])
+				return false;
+		return true;
+	}
+
+	/** A hash of a[0, n) consistent with sameValues() (0.0 and -0.0 hash alike) */
+	static int hashValues(double[] a, int n) {
+		int hash = 1;
+		for (int i = 0; i < n; i++)
+			hash = 31 * hash + Double.hashCode(a[i] + 0.0);
+		return hash;
+	}
+
+	static void checkIndices(int row, int col, int rows, int cols) throws LinAlgException {
+		if (row < 0 || col < 0 || row >= rows || col >= cols)
+			throw new LinAlgException("One or both indices (" + row + ", " + col + ") are out of bounds ([0, " + rows + "],[0, " + cols + "])");
+	}
+
+	static void checkProduct(int cols, int rows) throws LinAlgException {
+		if (cols != rows)
+			throw new LinAlgException("Cannot multiply matrix with " + cols + " columns with a matrix with " + rows + " rows");
+	}
+
+	static Matrix newMatrix(int rows, int cols) {
+		try {
+			return new Matrix(rows, cols);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: both dimensions are >= 1
+		}
+	}
+
+	static Vector newVector(int dim) {
+		try {
+			return new Vector(dim);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: dim >= 1
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A symmetric square matrix (e.g., a covariance or Gram matrix), storing only its lower
+ *   triangle, n (n + 1) / 2 entries packed row by row: row i holds columns [0, i] and starts
+ *   at i (i + 1) / 2.  Entry (i, j) above the diagonal is read from (j, i), and set() writes
+ *   both, so the matrix stays symmetric by construction.
+ *
+ *   A product with a Vector reads each stored entry once and uses it for both (i, j) and
+ *   (j, i), reading half the memory of a dense one.  Products with a Matrix expand a strip of
+ *   rows at a time and hand it to Gemm.
+ *
+ */
+public class SymmetricMatrix implements LinearOperator {
+
+	private final int _nDim;        // Number of rows and columns
+	private final double[] _adData; // The packed lower triangle
+
+	/** Allocates a new n x n symmetric matrix, all entries 0.0
+	 *
+	 * @param n
+	 * @throws LinAlgException if n is <= 0 or too large
+	 */
+	public SymmetricMatrix(int n) throws LinAlgException {
+		if (n <= 0)
+			throw new LinAlgException("Size " + n + " must be greater than 0");
+		if ((long)n * (n + 1) / 2 > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Size " + n + " exceeds the maximum array size");
+		_nDim = n;
+		_adData = new double[n * (n + 1) / 2];
+	}
+
+	/** Creates the symmetric matrix with the lower triangle (and diagonal) of the square matrix
+	 *  m; the entries above the diagonal of m are ignored
+	 *
+	 * @param m
+	 * @throws LinAlgException if m is not square
+	 */
+	public SymmetricMatrix(Matrix m) throws LinAlgException {
+		this(checkSquare(m));
+		for (int i = 0, p = 0; i < _nDim; i++)
+			for (int j = 0; j <= i; j++)
+				_adData[p++] = m.entry(i, j);
+	}
+
+	/** Copy constructor
+	 *
+	 * @param m
+	 */
+	public SymmetricMatrix(SymmetricMatrix m) {
+		_nDim = m._nDim;
+		_adData = m._adData.clone();
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nDim;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nDim;
+	}
+
+	/** Return the scalar value at the given row and column
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		return _adData[index(row, col)];
+	}
+
+	/** Set the value at (row, col) and at (col, row)
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public void set(int row, int col, double val) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		_adData[index(row, col)] = val;
+	}
+
+	/** Returns the transpose of *this* (a copy: a symmetric matrix is its own transpose)
+	 *
+	 * @return
+	 */
+	public SymmetricMatrix transpose() {
+		return new SymmetricMatrix(this);
+	}
+
+	/** Returns the dense Matrix with the same entries
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		Matrix m = Structured.newMatrix(_nDim, _nDim);
+		double[] data = m.getData();
+		for (int i = 0, p = 0; i < _nDim; i++)
+			for (int j = 0; j <= i; j++, p++) {
+				data[i * _nDim + j] = _adData[p];
+				data[j * _nDim + i] = _adData[p];
+			}
+		return m;
+	}
+
+	/** Returns the product s * m.  Blocks of PANEL rows of s are expanded from the packed
+	 *  triangle into a dense panel and multiplied by Gemm, so the product runs at the speed of
+	 *  a dense one while only a PANEL x n strip is ever unpacked.
+	 *
+	 * @param s
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(SymmetricMatrix s, Matrix m) throws LinAlgException {
+		Structured.checkProduct(s._nDim, m.getNumRows());
+		int n = s._nDim, cols = m.getNumCols();
+		Matrix out = new Matrix(n, cols);
+		double[] panel = new double[Math.min(Structured.PANEL, n) * n];
+		for (int i0 = 0; i0 < n; i0 += Structured.PANEL) {
+			int rows = Math.min(Structured.PANEL, n - i0);
+			s.fillPanel(i0, rows, panel);
+			Gemm.multiply(rows, cols, n,
+					panel, 0, n, 1,
+					m.getData(), m.getOffset(), m.getRowStride(), m.getColStride(),
+					out.getData(), i0 * cols, cols, 1);
+		}
+		return out;
+	}
+
+	/** Returns the product m * s: column block j of the product is m times rows block j of s,
+	 *  read transposed (s is symmetric), from the same panels as Multiply(s, m)
+	 *
+	 * @param m
+	 * @param s
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of s rows
+	 */
+	public static Matrix Multiply(Matrix m, SymmetricMatrix s) throws LinAlgException {
+		Structured.checkProduct(m.getNumCols(), s._nDim);
+		int n = s._nDim, rows = m.getNumRows();
+		Matrix out = new Matrix(rows, n);
+		double[] panel = new double[Math.min(Structured.PANEL, n) * n];
+		for (int j0 = 0; j0 < n; j0 += Structured.PANEL) {
+			int cols = Math.min(Structured.PANEL, n - j0);
+			s.fillPanel(j0, cols, panel);
+			Gemm.multiply(rows, cols, n,
+					m.getData(), m.getOffset(), m.getRowStride(), m.getColStride(),
+					panel, 0, 1, n,
+					out.getData(), j0, n, 1);
+		}
+		return out;
+	}
+
+	/** Returns the product s * v
+	 *
+	 * @param s
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of v
+	 */
+	public static Vector Multiply(SymmetricMatrix s, Vector v) throws LinAlgException {
+		Vector out = new Vector(s._nDim);
+		s.apply(v, out);
+		return out;
+	}
+
+	/** Writes *this* times in into out: each packed row gives one dot product (its own entry)
+	 *  and one axpy (the entries above it, by symmetry)
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, false);
+		double[] x = in.getValues(), y = out.getValues();
+		Arrays.fill(y, 0, _nDim, 0.0);
+		for (int i = 0; i < _nDim; i++) {
+			int start = (int)((long)i * (i + 1) / 2);
+			y[i] += VectorKernels.INSTANCE.dot(_adData, start, x, 0, i) + _adData[start + i] * x[i];
+			if (x[i] != 0.0)
+				VectorKernels.INSTANCE.axpy(x[i], _adData, start, y, 0, i);
+		}
+		out.modified();
+	}
+
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		apply(in, out);
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** One "[ ... ]" line per row, like Matrix.toString() */
+	@Override
+	public String toString() {
+		return toMatrix().toString();
+	}
+
+	/** Two SymmetricMatrices are equal iff they have the same size and stored entries (only
+	 *  the n (n + 1) / 2 stored entries are compared)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof SymmetricMatrix))
+			return false;
+		SymmetricMatrix m = (SymmetricMatrix)o;
+		return _nDim == m._nDim && Structured.sameValues(_adData, m._adData, _adData.length);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * _nDim + Structured.hashValues(_adData, _adData.length);
+	}
+
+	/** Expands rows [i0, i0 + rows) into panel, rows x n row-major: the packed run of each row
+	 *  up to the diagonal, then the rest of the row read down the column below it */
+	private void fillPanel(int i0, int rows, double[] panel) {
+		for (int i = i0; i < i0 + rows; i++) {
+			int p = (i - i0) * _nDim;
+			long start = (long)i * (i + 1) / 2;
+			System.arraycopy(_adData, (int)start, panel, p, i + 1);
+			long below = start + i + 1 + i; // Entry (i + 1, i)
+			for (int j = i + 1; j < _nDim; j++) {
+				panel[p + j] = _adData[(int)below];
+				below += j + 1; // On to entry (j + 1, i)
+			}
+		}
+	}
+
+	/** Position of (row, col) or, above the diagonal, of (col, row) */
+	private int index(int row, int col) {
+		int i = Math.max(row, col), j = Math.min(row, col);
+		return (int)((long)i * (i + 1) / 2) + j;
+	}
+
+	private static int checkSquare(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != m.getNumCols())
+			throw new LinAlgException("Cannot make a symmetric matrix of a " + m.getNumRows() + "x" + m.getNumCols() + " matrix: it must be square");
+		return m.getNumRows();
+	}
+}
@@ -0,0 +1,667 @@
+package linalg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/*** Streaming text reader and writer for Vectors and Matrices in the "[ a b c ]" format used
+ *   by Vector(String) and toString().
+ *
+ *   Writing formats each number straight into a small reusable char buffer (no String.format
+ *   and no String per element) and hands it to an Appendable or a WritableByteChannel.  Two
+ *   precisions are offered:
+ *
+ *     FIXED  exactly what toString() has always produced, " %6.3f " per element
+ *     EXACT  the shortest decimal that parses back to the identical double
+ *
+ *   Reading tokenizes a Reader or ReadableByteChannel through a fixed buffer and parses each
+ *   number in place; any whitespace may separate the tokens.  VectorReader returns one
+ *   vector (or matrix row) at a time, so files with millions of vectors can be processed
+ *   lazily.
+ *
+ *   The rare numbers outside the fast paths (more than 18 significant digits, large exponents,
+ *   NaN and infinities, or FIXED values within 1e-6 of a rounding tie) fall back to
+ *   Double.parseDouble / String.format, so results are always identical to the JDK's.  The
+ *   format is that of Locale.ROOT whatever the default locale, so the decimal separator is
+ *   always '.' and the text always parses back.
+ *
+ */
+public final class TextCodec {
+
+	/** How many digits write() emits per element */
+	public enum Precision { FIXED, EXACT }
+
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final long MAX_EXACT = 1L << 53; // Every long below this is exactly a double
+
+	private TextCodec() {} // Static helpers only
+
+	/** Writes v as "[ a b c ]" with today's fixed 3-decimal format
+	 *
+	 * @param v
+	 * @param out
+	 * @throws IOException if out throws
+	 */
+	public static void write(Vector v, Appendable out) throws IOException {
+		write(v, out, Precision.FIXED);
+	}
+
+	/** Writes v as "[ a b c ]" using the given precision
+	 *
+	 * @param v
+	 * @param out
+	 * @param precision
+	 * @throws IOException if out throws
+	 */
+	public static void write(Vector v, Appendable out, Precision precision) throws IOException {
+		Sink sink = new AppendableSink(out);
+		writeRow(v.getValues(), 0, 1, v.getDim(), precision, sink);
+		sink.flush();
+	}
+
+	/** Writes m as one "[ a b c ]" line per row with today's fixed 3-decimal format
+	 *
+	 * @param m
+	 * @param out
+	 * @throws IOException if out throws
+	 */
+	public static void write(Matrix m, Appendable out) throws IOException {
+		write(m, out, Precision.FIXED);
+	}
+
+	/** Writes m as one "[ a b c ]" line per row using the given precision
+	 *
+	 * @param m
+	 * @param out
+	 * @param precision
+	 * @throws IOException if out throws
+	 */
+	public static void write(Matrix m, Appendable out, Precision precision) throws IOException {
+		Sink sink = new AppendableSink(out);
+		writeRows(m, precision, sink);
+		sink.flush();
+	}
+
+	/** Writes v as ASCII "[ a b c ]" to a channel using the given precision
+	 *
+	 * @param v
+	 * @param out
+	 * @param precision
+	 * @throws IOException if the channel throws
+	 */
+	public static void write(Vector v, WritableByteChannel out, Precision precision) throws IOException {
+		Sink sink = new ChannelSink(out);
+		writeRow(v.getValues(), 0, 1, v.getDim(), precision, sink);
+		sink.flush();
+	}
+
+	/** Writes m as ASCII "[ a b c ]" lines to a channel using the given precision
+	 *
+	 * @param m
+	 * @param out
+	 * @param precision
+	 * @throws IOException if the channel throws
+	 */
+	public static void write(Matrix m, WritableByteChannel out, Precision precision) throws IOException {
+		Sink sink = new ChannelSink(out);
+		writeRows(m, precision, sink);
+		sink.flush();
+	}
+
+	/** Reads one vector from in
+	 *
+	 * @param in
+	 * @return
+	 * @throws LinAlgException if the input is malformed or empty
+	 * @throws IOException if in throws
+	 */
+	public static Vector readVector(Reader in) throws LinAlgException, IOException {
+		Vector v = new VectorReader(in).readNext();
+		if (v == null)
+			throw new LinAlgException("Malformed vector input: no vector found");
+		return v;
+	}
+
+	/** Reads one vector from a channel holding ASCII or UTF-8 text
+	 *
+	 * @param in
+	 * @return
+	 * @throws LinAlgException if the input is malformed or empty
+	 * @throws IOException if the channel throws
+	 */
+	public static Vector readVector(ReadableByteChannel in) throws LinAlgException, IOException {
+		return readVector(Channels.newReader(in, StandardCharsets.UTF_8));
+	}
+
+	/** Reads a matrix from in: one "[ ... ]" row after another until the end of input
+	 *
+	 * @param in
+	 * @return
+	 * @throws LinAlgException if the input is malformed, empty or has rows of different lengths
+	 * @throws IOException if in throws
+	 */
+	public static Matrix readMatrix(Reader in) throws LinAlgException, IOException {
+		VectorReader rows = new VectorReader(in);
+		double[] data = new double[64];
+		int nRows = 0, nCols = -1;
+		int used = 0;
+		while (rows.readNextInto()) {
+			int dim = rows._nDim;
+			if (nCols < 0)
+				nCols = dim;
+			else if (dim != nCols)
+				throw new LinAlgException("Malformed matrix input: row " + nRows + " has " + dim + " entries instead of " + nCols);
+			if (used + dim > data.length)
+				data = Arrays.copyOf(data, Math.max(used + dim, 2 * data.length));
+			System.arraycopy(rows._adValues, 0, data, used, dim);
+			used += dim;
+			nRows++;
+		}
+		if (nRows == 0)
+			throw new LinAlgException("Malformed matrix input: no rows found");
+		Matrix m = new Matrix(nRows, nCols);
+		System.arraycopy(data, 0, m.getData(), 0, used);
+		return m;
+	}
+
+	/** Reads a matrix from a channel holding ASCII or UTF-8 text (see readMatrix(Reader))
+	 *
+	 * @param in
+	 * @return
+	 * @throws LinAlgException if the input is malformed, empty or has rows of different lengths
+	 * @throws IOException if the channel throws
+	 */
+	public static Matrix readMatrix(ReadableByteChannel in) throws LinAlgException, IOException {
+		return readMatrix(Channels.newReader(in, StandardCharsets.UTF_8));
+	}
+
+	/** Parses init for Vector(String), keeping its original error messages
+	 *
+	 * @param init
+	 * @return the values (possibly none, for "[ ]")
+	 * @throws LinAlgException if init is not properly formatted
+	 */
+	static double[] parseVector(String init) throws LinAlgException {
+		// A buffer no larger than init keeps short strings cheap
+		VectorReader reader = new VectorReader(new StringReader(init), init, Math.max(16, Math.min(init.length(), 8192)));
+		try {
+			if (!reader.readNextInto() || reader._lexer.skipSpace() != -1)
+				throw new LinAlgException("Malformed vector initialization: missing [ or ] in " + init);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // Cannot happen: StringReader does not throw
+		}
+		return Arrays.copyOf(reader._adValues, reader._nDim);
+	}
+
+	/** Returns the text of v as produced by write(v, out) (used by Vector.toString)
+	 *
+	 * @param v
+	 * @return
+	 */
+	static String toString(Vector v) {
+		StringBuilder sb = new StringBuilder(10 * v.getDim() + 4);
+		try {
+			write(v, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // Cannot happen: StringBuilder does not throw
+		}
+		return sb.toString();
+	}
+
+	/** Returns the text of m as produced by write(m, out) (used by Matrix.toString)
+	 *
+	 * @param m
+	 * @return
+	 */
+	static String toString(Matrix m) {
+		StringBuilder sb = new StringBuilder((10 * m.getNumCols() + 4) * m.getNumRows());
+		try {
+			write(m, sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/** Reads vectors one at a time from a stream of "[ ... ]" groups (e.g., one vector or one
+	 *  matrix row per line); nothing beyond the current vector is held in memory
+	 *
+	 */
+	public static final class VectorReader implements Iterator<Vector>, Closeable {
+
+		private final Lexer _lexer;
+		private final String _sContext;   // Original text for Vector(String) error messages, else null
+		private double[] _adValues = new double[16]; // Values of the last vector read (reused)
+		private int _nDim;                // Number of values of the last vector read
+		private Vector _next;             // Vector read ahead by hasNext(), or null
+
+		/** Reads from in (input is buffered here, so no BufferedReader is needed)
+		 *
+		 * @param in
+		 */
+		public VectorReader(Reader in) {
+			this(in, null, 8192);
+		}
+
+		/** Reads from a channel holding ASCII or UTF-8 text
+		 *
+		 * @param in
+		 */
+		public VectorReader(ReadableByteChannel in) {
+			this(Channels.newReader(in, StandardCharsets.UTF_8), null, 8192);
+		}
+
+		private VectorReader(Reader in, String context, int bufferSize) {
+			_lexer = new Lexer(in, bufferSize);
+			_sContext = context;
+		}
+
+		/** Reads the next vector
+		 *
+		 * @return the next vector, or null at the end of the input
+		 * @throws LinAlgException if the input is malformed or a vector is empty
+		 * @throws IOException if the underlying input throws
+		 */
+		public Vector readNext() throws LinAlgException, IOException {
+			if (_next != null) {
+				Vector v = _next;
+				_next = null;
+				return v;
+			}
+			if (!readNextInto())
+				return null;
+			Vector v = new Vector(_nDim);
+			System.arraycopy(_adValues, 0, v.getValues(), 0, _nDim);
+			return v;
+		}
+
+		/** Iterator form of readNext(): IOException is rethrown as UncheckedIOException and
+		 *  LinAlgException as IllegalStateException (with the original as its cause)
+		 *
+		 */
+		@Override
+		public boolean hasNext() {
+			if (_next == null) {
+				try {
+					_next = readNext();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (LinAlgException e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			}
+			return _next != null;
+		}
+
+		@Override
+		public Vector next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Vector v = _next;
+			_next = null;
+			return v;
+		}
+
+		@Override
+		public void close() throws IOException {
+			_lexer._in.close();
+		}
+
+		/** Parses the next "[ ... ]" group into _adValues / _nDim; returns false at the end of input */
+		private boolean readNextInto() throws LinAlgException, IOException {
+			int c = _lexer.skipSpace();
+			if (c == -1)
+				return false;
+			if (c != '[')
+				throw malformed("missing [ or ]");
+			_lexer.consume();
+			int n = 0;
+			while (true) {
+				c = _lexer.skipSpace();
+				if (c == ']') {
+					_lexer.consume();
+					break;
+				}
+				if (c == -1 || c == '[')
+					throw malformed("missing [ or ]");
+				_lexer.readToken();
+				double d;
+				try {
+					d = _lexer.parseToken();
+				} catch (NumberFormatException e) {
+					throw malformed("could not parse " + _lexer.tokenString());
+				}
+				if (n == _adValues.length)
+					_adValues = Arrays.copyOf(_adValues, 2 * n);
+				_adValues[n++] = d;
+			}
+			_nDim = n;
+			return true;
+		}
+
+		private LinAlgException malformed(String what) {
+			if (_sContext != null)
+				return new LinAlgException("Malformed vector initialization: " + what + " in " + _sContext);
+			return new LinAlgException("Malformed vector input: " + what + " near character " + _lexer._lOffset);
+		}
+	}
+
+	/** Splits the input into "[", "]" and number tokens through one fixed char buffer */
+	private static final class Lexer {
+
+		private final Reader _in;
+		private final char[] _acBuf;
+		private int _nPos, _nLimit;
+		private long _lOffset;              // Characters consumed so far (for error messages)
+		private char[] _acTok = new char[32];
+		private int _nTokLen;
+
+		Lexer(Reader in, int bufferSize) {
+			_in = in;
+			_acBuf = new char[bufferSize];
+		}
+
+		/** Returns the next non-whitespace character without consuming it, or -1 at the end */
+		int skipSpace() throws IOException {
+			while (true) {
+				if (_nPos == _nLimit && !fill())
+					return -1;
+				char c = _acBuf[_nPos];
+				if (!Character.isWhitespace(c))
+					return c;
+				_nPos++;
+				_lOffset++;
+			}
+		}
+
+		void consume() {
+			_nPos++;
+			_lOffset++;
+		}
+
+		/** Reads characters up to the next whitespace, bracket or end of input into _acTok */
+		void readToken() throws IOException {
+			_nTokLen = 0;
+			while (_nPos < _nLimit || fill()) {
+				char c = _acBuf[_nPos];
+				if (Character.isWhitespace(c) || c == '[' || c == ']')
+					return;
+				if (_nTokLen == _acTok.length)
+					_acTok = Arrays.copyOf(_acTok, 2 * _nTokLen);
+				_acTok[_nTokLen++] = c;
+				consume();
+			}
+		}
+
+		String tokenString() {
+			return new String(_acTok, 0, _nTokLen);
+		}
+
+		/** Parses _acTok as a decimal number.  Up to 18 significant digits are gathered into a long;
+		 *  when that is below 2^53 and the decimal exponent is within +-22 both the mantissa and
+		 *  the power of ten are exact doubles, so one multiply or divide gives the correctly
+		 *  rounded result.  Anything else goes to Double.parseDouble.
+		 */
+		double parseToken() {
+			int i = 0, len = _nTokLen;
+			boolean negative = false;
+			if (i < len && (_acTok[i] == '-' || _acTok[i] == '+'))
+				negative = _acTok[i++] == '-';
+			long mantissa = 0;
+			int digits = 0, exp10 = 0;
+			boolean anyDigit = false, simple = true;
+			for (; i < len && isDigit(_acTok[i]); i++) {
+				anyDigit = true;
+				if (mantissa == 0 && _acTok[i] == '0')
+					continue; // Leading zeros do not count as significant digits
+				if (++digits > 18) {
+					simple = false;
+					break;
+				}
+				mantissa = mantissa * 10 + (_acTok[i] - '0');
+			}
+			if (simple && i < len && _acTok[i] == '.') {
+				for (i++; i < len && isDigit(_acTok[i]); i++) {
+					anyDigit = true;
+					if (mantissa == 0 && _acTok[i] == '0') {
+						exp10--;
+						continue;
+					}
+					if (++digits > 18) {
+						simple = false;
+						break;
+					}
+					mantissa = mantissa * 10 + (_acTok[i] - '0');
+					exp10--;
+				}
+			}
+			if (simple && anyDigit && i < len && (_acTok[i] == 'e' || _acTok[i] == 'E')) {
+				i++;
+				boolean negExp = false;
+				if (i < len && (_acTok[i] == '-' || _acTok[i] == '+'))
+					negExp = _acTok[i++] == '-';
+				int exp = 0, expDigits = 0;
+				for (; i < len && isDigit(_acTok[i]) && exp < 10000; i++, expDigits++)
+					exp = exp * 10 + (_acTok[i] - '0');
+				if (expDigits == 0)
+					simple = false;
+				exp10 += negExp ? -exp : exp;
+			}
+			if (simple && anyDigit && i == len && mantissa < MAX_EXACT) {
+				double value;
+				if (mantissa == 0)
+					value = 0.0;
+				else if (exp10 >= 0 && exp10 <= 22)
+					value = mantissa * POW10[exp10];
+				else if (exp10 < 0 && exp10 >= -22)
+					value = mantissa / POW10[-exp10];
+				else
+					return Double.parseDouble(tokenString());
+				return negative ? -value : value;
+			}
+			return Double.parseDouble(tokenString()); // Throws NumberFormatException for bad input
+		}
+
+		private static boolean isDigit(char c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private boolean fill() throws IOException {
+			int n = _in.read(_acBuf, 0, _acBuf.length);
+			if (n <= 0) {
+				_nPos = _nLimit = 0;
+				return false;
+			}
+			_nPos = 0;
+			_nLimit = n;
+			return true;
+		}
+	}
+
+	private static void writeRows(Matrix m, Precision precision, Sink sink) throws IOException {
+		for (int i = 0; i < m.getNumRows(); i++) {
+			writeRow(m.getData(), m.getOffset() + i * m.getRowStride(), m.getColStride(), m.getNumCols(), precision, sink);
+			sink.put('\n');
+		}
+	}
+
+	/** Writes "[", then each element framed by one space on either side, then " ]" */
+	private static void writeRow(double[] data, int offset, int stride, int n, Precision precision, Sink sink) throws IOException {
+		char[] scratch = sink._acScratch;
+		sink.put('[');
+		for (int i = 0; i < n; i++, offset += stride) {
+			double d = data[offset];
+			int len = precision == Precision.FIXED ? formatFixed(d, scratch) : formatExact(d, scratch);
+			if (len < 0) {
+				String s = precision == Precision.FIXED ? String.format(Locale.ROOT, " %6.3f ", d) : " " + Double.toString(d) + " ";
+				for (int k = 0; k < s.length(); k++)
+					sink.put(s.charAt(k));
+			} else
+				sink.put(scratch, len);
+		}
+		sink.put(' ');
+		sink.put(']');
+	}
+
+	/** Formats d like String.format(Locale.ROOT, " %6.3f ", d) into buf; returns the length, or
+	 *  -1 if d needs the JDK formatter (which writeRow also calls with Locale.ROOT).  The JDK rounds the shortest decimal form of d half-up, which can only
+	 *  disagree with rounding d * 1000 directly when that product is within 1e-6 of a tie, and
+	 *  those values are handed back.
+	 */
+	static int formatFixed(double d, char[] buf) {
+		double a = Math.abs(d);
+		if (!(a < 1e6)) // Also catches NaN
+			return -1;
+		double t = a * 1000;
+		double f = Math.floor(t);
+		double frac = t - f;
+		if (Math.abs(frac - 0.5) < 1e-6)
+			return -1;
+		long units = (long)f + (frac > 0.5 ? 1 : 0);
+		boolean negative = Double.doubleToRawLongBits(d) < 0; // "-0.000" for -0.0 and tiny negatives, like the JDK
+		// Build the digits right to left into the end of buf, then pad to width 6
+		int end = buf.length;
+		int pos = end;
+		buf[--pos] = ' ';
+		long fraction = units % 1000, whole = units / 1000;
+		buf[--pos] = (char)('0' + fraction % 10);
+		buf[--pos] = (char)('0' + fraction / 10 % 10);
+		buf[--pos] = (char)('0' + fraction / 100);
+		buf[--pos] = '.';
+		do {
+			buf[--pos] = (char)('0' + whole % 10);
+			whole /= 10;
+		} while (whole > 0);
+		if (negative)
+			buf[--pos] = '-';
+		while (end - 1 - pos < 6)
+			buf[--pos] = ' ';
+		buf[--pos] = ' ';
+		int len = end - pos;
+		System.arraycopy(buf, pos, buf, 0, len);
+		return len;
+	}
+
+	/** Formats d as " digits " with the fewest decimals (up to 15 significant digits) that parse
+	 *  back to exactly d; returns the length, or -1 if d needs Double.toString.  The check
+	 *  m / 10^p == d uses the same exact arithmetic as Lexer.parseToken, so the text reads
+	 *  back as d bit for bit.
+	 */
+	static int formatExact(double d, char[] buf) {
+		if (Double.isNaN(d) || Double.isInfinite(d))
+			return -1;
+		double a = Math.abs(d);
+		boolean negative = Double.doubleToRawLongBits(d) < 0;
+		for (int p = 0; p <= 17; p++) {
+			double scaled = a * POW10[p];
+			if (scaled >= 1e15)
+				return -1; // More than 15 significant digits would be needed
+			double m = Math.rint(scaled);
+			if (m / POW10[p] != a)
+				continue;
+			long digits = (long)m;
+			int end = buf.length;
+			int pos = end;
+			buf[--pos] = ' ';
+			for (int k = 0; k < p; k++) {
+				buf[--pos] = (char)('0' + digits % 10);
+				digits /= 10;
+			}
+			if (p == 0)
+				buf[--pos] = '0'; // Always print a decimal point, e.g., "3.0" like Double.toString
+			buf[--pos] = '.';
+			do {
+				buf[--pos] = (char)('0' + digits % 10);
+				digits /= 10;
+			} while (digits > 0);
+			if (negative)
+				buf[--pos] = '-';
+			buf[--pos] = ' ';
+			int len = end - pos;
+			System.arraycopy(buf, pos, buf, 0, len);
+			return len;
+		}
+		return -1;
+	}
+
+	/** Destination of written characters; subclasses batch them for their target */
+	private static abstract class Sink {
+		final char[] _acScratch = new char[40]; // Per-element formatting buffer
+
+		abstract void put(char c) throws IOException;
+
+		void put(char[] chars, int len) throws IOException {
+			for (int k = 0; k < len; k++)
+				put(chars[k]);
+		}
+
+		abstract void flush() throws IOException;
+	}
+
+	private static final class AppendableSink extends Sink {
+		private final Appendable _out;
+
+		AppendableSink(Appendable out) {
+			_out = out;
+		}
+
+		@Override
+		void put(char c) throws IOException {
+			_out.append(c);
+		}
+
+		@Override
+		void put(char[] chars, int len) throws IOException {
+			// Bulk paths for the common targets; any other Appendable gets one char at a time
+			if (_out instanceof StringBuilder)
+				((StringBuilder)_out).append(chars, 0, len);
+			else if (_out instanceof Writer)
+				((Writer)_out).write(chars, 0, len);
+			else
+				super.put(chars, len);
+		}
+
+		@Override
+		void flush() {
+			// Nothing is buffered here
+		}
+	}
+
+	private static final class ChannelSink extends Sink {
+		private final WritableByteChannel _out;
+		private final ByteBuffer _buf = ByteBuffer.allocate(1 << 16);
+
+		ChannelSink(WritableByteChannel out) {
+			_out = out;
+		}
+
+		@Override
+		void put(char c) throws IOException {
+			if (!_buf.hasRemaining())
+				flush();
+			_buf.put((byte)c); // Output is pure ASCII
+		}
+
+		@Override
+		void flush() throws IOException {
+			_buf.flip();
+			while (_buf.hasRemaining())
+				_out.write(_buf);
+			_buf.clear();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package linalg;
+
+/*** Transpose kernels used by Matrix.transpose() and Matrix.transposeInPlace().
+ *
+ *   copy() and swapSquare() are cache-oblivious: they halve the longer side of the block
+ *   until it holds at most LEAF elements, so at some level of the recursion both the rows
+ *   read and the rows written fit in every cache, whatever its size, and no tile size has to
+ *   be tuned per machine.  Operands are described by storage array, offset and row and column
+ *   stride, exactly as in Matrix, so views work without being copied first.
+ *
+ *   cycles() transposes a contiguous row-major rows x cols block within its own storage by
+ *   following the cycles of the index permutation, using one bit per element to mark the
+ *   entries already moved (1/64 of the matrix, instead of a second copy).
+ *
+ */
+final class Transpose {
+
+	/** Blocks of at most this many elements are transposed by a plain double loop (16 x 16) */
+	static final int LEAF = 256;
+
+	private Transpose() {} // Static helpers only
+
+	/** Writes the transpose of the rows x cols block of src into dst: element (i, j) of src,
+	 *  at src[sOff + i * sRs + j * sCs], goes to dst[dOff + j * dRs + i * dCs] */
+	static void copy(int rows, int cols,
+			double[] src, int sOff, int sRs, int sCs,
+			double[] dst, int dOff, int dRs, int dCs) {
+		while (rows * cols > LEAF) {
+			if (rows >= cols) {
+				int half = rows >>> 1;
+				copy(half, cols, src, sOff, sRs, sCs, dst, dOff, dRs, dCs);
+				sOff += half * sRs;
+				dOff += half * dCs;
+				rows -= half;
+			} else {
+				int half = cols >>> 1;
+				copy(rows, half, src, sOff, sRs, sCs, dst, dOff, dRs, dCs);
+				sOff += half * sCs;
+				dOff += half * dRs;
+				cols -= half;
+			}
+		}
+		for (int i = 0; i < rows; i++) {
+			int s = sOff + i * sRs, d = dOff + i * dCs;
+			for (int j = 0; j < cols; j++, s += sCs, d += dRs)
+				dst[d] = src[s];
+		}
+	}
+
+	/** Transposes the n x n block at a[off] (strides rs, cs) within its own storage */
+	static void square(int n, double[] a, int off, int rs, int cs) {
+		if (n * n <= LEAF) {
+			for (int i = 1; i < n; i++)
+				for (int j = 0; j < i; j++) {
+					int p = off + i * rs + j * cs, q = off + j * rs + i * cs;
+					double t = a[p];
+					a[p] = a[q];
+					a[q] = t;
+				}
+			return;
+		}
+		// [ A B ; C D ] -> [ A' C' ; B' D' ]: the diagonal blocks recurse, B and C swap transposed
+		int half = n >>> 1;
+		square(half, a, off, rs, cs);
+		square(n - half, a, off + half * (rs + cs), rs, cs);
+		swapSquare(n - half, half, a, off + half * rs, rs, cs, off + half * cs);
+	}
+
+	/** Swaps the rows x cols block at a[pOff] with the transpose of the cols x rows block at
+	 *  a[qOff]: element (i, j) of the first trades places with element (j, i) of the second */
+	static void swapSquare(int rows, int cols, double[] a, int pOff, int rs, int cs, int qOff) {
+		while (rows * cols > LEAF) {
+			if (rows >= cols) {
+				int half = rows >>> 1;
+				swapSquare(half, cols, a, pOff, rs, cs, qOff);
+				pOff += half * rs;
+				qOff += half * cs;
+				rows -= half;
+			} else {
+				int half = cols >>> 1;
+				swapSquare(rows, half, a, pOff, rs, cs, qOff);
+				pOff += half * cs;
+				qOff += half * rs;
+				cols -= half;
+			}
+		}
+		for (int i = 0; i < rows; i++) {
+			int p = pOff + i * rs, q = qOff + i * cs;
+			for (int j = 0; j < cols; j++, p += cs, q += rs) {
+				double t = a[p];
+				a[p] = a[q];
+				a[q] = t;
+			}
+		}
+	}
+
+	/** Rearranges the contiguous row-major rows x cols block at a[off] into its cols x rows
+	 *  row-major transpose.  Entry k = i * cols + j belongs at j * rows + i, which is
+	 *  k * rows mod (size - 1) for every k except the first and last (which stay put). */
+	static void cycles(int rows, int cols, double[] a, int off) {
+		int last = rows * cols - 1;
+		if (rows == 1 || cols == 1)
+			return; // Same sequence of values either way
+		long[] moved = new long[(last >>> 6) + 1];
+		for (int start = 1; start < last; start++) {
+			if ((moved[start >>> 6] & (1L << start)) != 0)
+				continue;
+			double carried = a[off + start];
+			int k = start;
+			do {
+				int next = (int)((long)k * rows % last);
+				double displaced = a[off + next];
+				a[off + next] = carried;
+				carried = displaced;
+				moved[next >>> 6] |= 1L << next;
+				k = next;
+			} while (k != start);
+		}
+	}
+}
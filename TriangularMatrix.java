@@ -0,0 +1,328 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A square upper or lower triangular matrix, storing only its n (n + 1) / 2 entries on and
+ *   on one side of the diagonal, packed row by row.
+ *
+ *   Row i of a lower triangular matrix holds columns [0, i] and starts at i (i + 1) / 2; row i
+ *   of an upper triangular one holds columns [i, n) and starts at i n - i (i - 1) / 2.  Either
+ *   way each row is one contiguous run, so products with a Vector and the triangular solve use
+ *   the SIMD dot and axpy kernels on it directly, doing half the work of a dense product.
+ *   Products with a Matrix expand a strip of rows at a time and hand it to Gemm.
+ *
+ */
+public class TriangularMatrix implements LinearOperator {
+
+	private final int _nDim;        // Number of rows and columns
+	private final boolean _bUpper;  // True for upper triangular, false for lower
+	private final double[] _adData; // The packed rows
+
+	/** Allocates a new n x n triangular matrix, all entries 0.0
+	 *
+	 * @param n
+	 * @param upper true for upper triangular, false for lower
+	 * @throws LinAlgException if n is <= 0 or too large
+	 */
+	public TriangularMatrix(int n, boolean upper) throws LinAlgException {
+		if (n <= 0)
+			throw new LinAlgException("Size " + n + " must be greater than 0");
+		if ((long)n * (n + 1) / 2 > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Size " + n + " exceeds the maximum array size");
+		_nDim = n;
+		_bUpper = upper;
+		_adData = new double[n * (n + 1) / 2];
+	}
+
+	/** Creates the triangular matrix holding the upper (or lower) triangle of the square
+	 *  matrix m, including its diagonal; the other entries of m are ignored
+	 *
+	 * @param m
+	 * @param upper
+	 * @throws LinAlgException if m is not square
+	 */
+	public TriangularMatrix(Matrix m, boolean upper) throws LinAlgException {
+		this(checkSquare(m), upper);
+		for (int i = 0; i < _nDim; i++) {
+			int p = rowStart(i);
+			for (int j = rowLo(i); j < rowHi(i); j++)
+				_adData[p++] = m.entry(i, j);
+		}
+	}
+
+	/** Copy constructor
+	 *
+	 * @param m
+	 */
+	public TriangularMatrix(TriangularMatrix m) {
+		_nDim = m._nDim;
+		_bUpper = m._bUpper;
+		_adData = m._adData.clone();
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nDim;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nDim;
+	}
+
+	/** True for an upper triangular matrix, false for a lower one
+	 *
+	 * @return
+	 */
+	public boolean isUpper() {
+		return _bUpper;
+	}
+
+	/** Return the scalar value at the given row and column (0.0 outside the triangle)
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		return inTriangle(row, col) ? _adData[index(row, col)] : 0.0;
+	}
+
+	/** Set the value at (row, col), which must be in the stored triangle
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds or outside the triangle
+	 */
+	public void set(int row, int col, double val) throws LinAlgException {
+		Structured.checkIndices(row, col, _nDim, _nDim);
+		if (!inTriangle(row, col)) {
+			throw new LinAlgException("Cannot set entry (" + row + ", " + col + ") of " + (_bUpper ? "an upper" : "a lower")
+					+ " triangular matrix: it is " + (_bUpper ? "below" : "above") + " the diagonal");
+		}
+		_adData[index(row, col)] = val;
+	}
+
+	/** Returns the transpose of *this*: lower triangular if *this* is upper and vice versa
+	 *
+	 * @return
+	 */
+	public TriangularMatrix transpose() {
+		TriangularMatrix out = new TriangularMatrix(_nDim, !_bUpper, new double[_adData.length]);
+		for (int i = 0; i < _nDim; i++) {
+			int p = rowStart(i);
+			for (int j = rowLo(i); j < rowHi(i); j++)
+				out._adData[out.index(j, i)] = _adData[p++];
+		}
+		return out;
+	}
+
+	/** Returns the dense Matrix with the same entries
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		Matrix m = Structured.newMatrix(_nDim, _nDim);
+		double[] data = m.getData();
+		for (int i = 0; i < _nDim; i++)
+			System.arraycopy(_adData, rowStart(i), data, i * _nDim + rowLo(i), rowHi(i) - rowLo(i));
+		return m;
+	}
+
+	/** Returns the solution x of *this* x = b by forward (lower) or back (upper) substitution, in O(n^2)
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if b does not have dimension n or a diagonal entry is 0.0
+	 */
+	public Vector solve(Vector b) throws LinAlgException {
+		if (b.getDim() != _nDim)
+			throw new LinAlgException("Cannot solve a system of dimension " + _nDim + " with a vector of dimension " + b.getDim());
+		Vector x = new Vector(b);
+		double[] y = x.getValues();
+		for (int step = 0; step < _nDim; step++) {
+			int i = _bUpper ? _nDim - 1 - step : step;
+			double diag = _adData[index(i, i)];
+			if (diag == 0.0)
+				throw new LinAlgException("Matrix is singular: diagonal entry " + i + " is 0.0");
+			// The row's off-diagonal part is the run after the diagonal (upper) or before it (lower)
+			double sum = _bUpper
+					? VectorKernels.INSTANCE.dot(_adData, rowStart(i) + 1, y, i + 1, _nDim - i - 1)
+					: VectorKernels.INSTANCE.dot(_adData, rowStart(i), y, 0, i);
+			y[i] = (y[i] - sum) / diag;
+		}
+		return x;
+	}
+
+	/** Returns the product t * m.  Blocks of PANEL rows of t are expanded into a dense panel
+	 *  spanning only the columns where the block can be non-zero, and multiplied by Gemm: the
+	 *  speed of a dense product at about half its flops.
+	 *
+	 * @param t
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if t columns do not match the size of m rows
+	 */
+	public static Matrix Multiply(TriangularMatrix t, Matrix m) throws LinAlgException {
+		Structured.checkProduct(t._nDim, m.getNumRows());
+		int n = t._nDim, cols = m.getNumCols();
+		Matrix out = new Matrix(n, cols);
+		double[] panel = new double[Math.min(Structured.PANEL, n) * n];
+		for (int i0 = 0; i0 < n; i0 += Structured.PANEL) {
+			int rows = Math.min(Structured.PANEL, n - i0);
+			// Rows [i0, i0 + rows) are non-zero in columns [0, i0 + rows) (lower) or [i0, n) (upper)
+			int lo = t._bUpper ? i0 : 0, width = t._bUpper ? n - i0 : i0 + rows;
+			t.fillPanel(i0, rows, lo, width, panel);
+			Gemm.multiply(rows, cols, width,
+					panel, 0, width, 1,
+					m.getData(), m.getOffset() + lo * m.getRowStride(), m.getRowStride(), m.getColStride(),
+					out.getData(), i0 * cols, cols, 1);
+		}
+		return out;
+	}
+
+	/** Returns the product m * t.  Column blocks of t are expanded (transposed) into a dense
+	 *  panel spanning only the rows where the block can be non-zero, and multiplied by Gemm.
+	 *
+	 * @param m
+	 * @param t
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of t rows
+	 */
+	public static Matrix Multiply(Matrix m, TriangularMatrix t) throws LinAlgException {
+		Structured.checkProduct(m.getNumCols(), t._nDim);
+		int n = t._nDim, rows = m.getNumRows();
+		Matrix out = new Matrix(rows, n);
+		double[] panel = new double[Math.min(Structured.PANEL, n) * n];
+		TriangularMatrix tt = t.transpose(); // Row block j of t^T is column block j of t
+		for (int j0 = 0; j0 < n; j0 += Structured.PANEL) {
+			int cols = Math.min(Structured.PANEL, n - j0);
+			int lo = tt._bUpper ? j0 : 0, width = tt._bUpper ? n - j0 : j0 + cols;
+			tt.fillPanel(j0, cols, lo, width, panel);
+			Gemm.multiply(rows, cols, width,
+					m.getData(), m.getOffset() + lo * m.getColStride(), m.getRowStride(), m.getColStride(),
+					panel, 0, 1, width,
+					out.getData(), j0, n, 1);
+		}
+		return out;
+	}
+
+	/** Returns the product t * v, in O(n^2 / 2)
+	 *
+	 * @param t
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if t columns do not match the size of v
+	 */
+	public static Vector Multiply(TriangularMatrix t, Vector v) throws LinAlgException {
+		Vector out = new Vector(t._nDim);
+		t.apply(v, out);
+		return out;
+	}
+
+	/** Writes *this* times in into out: one dot product per packed row
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void apply(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, false);
+		double[] x = in.getValues(), y = out.getValues();
+		for (int i = 0; i < _nDim; i++)
+			y[i] = VectorKernels.INSTANCE.dot(_adData, rowStart(i), x, rowLo(i), rowHi(i) - rowLo(i));
+		out.modified();
+	}
+
+	/** Writes the transpose of *this* times in into out: one axpy per packed row
+	 *
+	 * @param in
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is in
+	 */
+	@Override
+	public void applyTranspose(Vector in, Vector out) throws LinAlgException {
+		LinearOperators.checkApply(this, in, out, true);
+		double[] x = in.getValues(), y = out.getValues();
+		Arrays.fill(y, 0, _nDim, 0.0);
+		for (int i = 0; i < _nDim; i++)
+			if (x[i] != 0.0)
+				VectorKernels.INSTANCE.axpy(x[i], _adData, rowStart(i), y, rowLo(i), rowHi(i) - rowLo(i));
+		out.modified();
+	}
+
+	@Override
+	public boolean hasTranspose() {
+		return true;
+	}
+
+	/** One "[ ... ]" line per row, like Matrix.toString() */
+	@Override
+	public String toString() {
+		return toMatrix().toString();
+	}
+
+	/** Two TriangularMatrices are equal iff they have the same size, the same triangle and the
+	 *  same stored entries (only the n (n + 1) / 2 stored entries are compared)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof TriangularMatrix))
+			return false;
+		TriangularMatrix m = (TriangularMatrix)o;
+		return _nDim == m._nDim && _bUpper == m._bUpper && Structured.sameValues(_adData, m._adData, _adData.length);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * _nDim + (_bUpper ? 1 : 0)) + Structured.hashValues(_adData, _adData.length);
+	}
+
+	private TriangularMatrix(int n, boolean upper, double[] data) {
+		_nDim = n;
+		_bUpper = upper;
+		_adData = data;
+	}
+
+	/** Expands rows [i0, i0 + rows), columns [lo, lo + width) into panel (rows x width row-major) */
+	private void fillPanel(int i0, int rows, int lo, int width, double[] panel) {
+		Arrays.fill(panel, 0, rows * width, 0.0);
+		for (int i = i0; i < i0 + rows; i++)
+			System.arraycopy(_adData, rowStart(i), panel, (i - i0) * width + rowLo(i) - lo, rowHi(i) - rowLo(i));
+	}
+
+	private boolean inTriangle(int row, int col) {
+		return _bUpper ? col >= row : col <= row;
+	}
+
+	/** First column stored in row i */
+	private int rowLo(int i) {
+		return _bUpper ? i : 0;
+	}
+
+	/** One past the last column stored in row i */
+	private int rowHi(int i) {
+		return _bUpper ? _nDim : i + 1;
+	}
+
+	/** Position of the first stored entry of row i */
+	private int rowStart(int i) {
+		return _bUpper ? (int)((long)i * _nDim - (long)i * (i - 1) / 2) : (int)((long)i * (i + 1) / 2);
+	}
+
+	private int index(int row, int col) {
+		return rowStart(row) + col - rowLo(row);
+	}
+
+	private static int checkSquare(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != m.getNumCols())
+			throw new LinAlgException("Cannot make a triangular matrix of a " + m.getNumRows() + "x" + m.getNumCols() + " matrix: it must be square");
+		return m.getNumRows();
+	}
+}
@@ -1,15 +1,31 @@
 package linalg;
 
+import java.util.Arrays;
+
 /*** A class that represents a multidimensional real-valued (double) vector
  *   and supports various vector computations required in linear algebra.
  *   
  *   Class and method comments are in JavaDoc: https://en.wikipedia.org/wiki/Javadoc
  *
+ *   The storage may be longer than the dimension (its capacity), like an ArrayList, so a
+ *   vector built up with append() or changeDim() grows in amortized constant time per entry.
+ *   Everything else (equals, toString and every operation) only sees the first getDim() entries.
+ *
+ *   Every write (set, the in-place operations and any operation that writes its result into
+ *   a vector) advances the vector's version, and hashCode() is computed from the content and
+ *   cached until the next write; set() and append() keep a computed hash current in O(1).
+ *   Together they let results computed from a vector be cached and reused (see ResultCache).
+ *
  */
 public class Vector {
 
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8; // Largest array most JVMs allocate
+
 	private int _nDim;       // Dimension of the Vector; nomenclature: _ for data member, n for integer
-	private double[] _adVal; // Contents of the Vector; nomenclature: _ for data member, a for array, d for double
+	private double[] _adVal; // Contents of the Vector in [0, _nDim); the length is the capacity; nomenclature: _ for data member, a for array, d for double
+	private long _lVersion;  // Advanced by every write, see getVersion()
+	private long _lHash;     // Sum of the ContentHash terms of the entries, valid while _lHashVersion == _lVersion
+	private volatile long _lHashVersion = -1L; // Written after _lHash, so a reader that sees it current also sees _lHash
 
 	/** Constructor: allocates space for a new vector of dimension dim
 	 * 
@@ -22,6 +38,22 @@ public class Vector {
 		_nDim = dim;
 		_adVal = new double[dim]; // Entries will be automatically initialized to 0.0
 	}
+
+	/** Constructor: allocates a new vector of dimension dim, all entries 0.0, with room to grow
+	 *  to capacity entries before its storage is reallocated
+	 *
+	 * @param dim
+	 * @param capacity
+	 * @throws LinAlgException if vector dimension is < 1 or capacity is < dim
+	 */
+	public Vector(int dim, int capacity) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		if (capacity < dim)
+			throw new LinAlgException("Capacity " + capacity + " cannot be less than the dimension " + dim);
+		_nDim = dim;
+		_adVal = new double[capacity];
+	}
 	
 	/** Copy constructor: makes a new copy of an existing Vector v
 	 *                    (note: this explicitly allocates new memory and copies over content)
@@ -42,27 +74,10 @@ public class Vector {
 	 */
 	public Vector(String init) throws LinAlgException {
 		
-		// The following says split init on whitespace (\\s) into an array of Strings
-		String[] split = init.split("\\s");  
-		// Uncomment the following to see what split produces
-		// for (int i = 0; i < split.length; i++)
-		// 		System.out.println(i + ". " + split[i]);
-
-		if (!split[0].equals("[") || !split[split.length-1].equals("]"))
-			throw new LinAlgException("Malformed vector initialization: missing [ or ] in " + init);
-
-		// We don't count the [ and ] in the dimensionality
-		_nDim = split.length - 2;
-		_adVal = new double[_nDim];
-		
-		// Parse each number from init and add it to the Vector in order (note the +1 offset to account for [)
-		for (int index = 0; index < _nDim; index++) {
-			try {
-				set(index, Double.parseDouble(split[index + 1])); // refers to the above set function 
-			} catch (NumberFormatException e) {
-				throw new LinAlgException("Malformed vector initialization: could not parse " + split[index + 1] + " in " + init);
-			}
-		}
+		// TextCodec tokenizes init in place (any whitespace separates the numbers), so this
+		// also reads back the output of toString()
+		_adVal = TextCodec.parseVector(init);
+		_nDim = _adVal.length;
 	}
 
 	/** Overrides method toString() on Object: converts the class to a human readable String
@@ -74,14 +89,8 @@ public class Vector {
 	 */
 	@Override // optional annotation to tell Java we expect this overrides a parent method -- compiler will warn if not
 	public String toString() {
-		// We could just repeatedly append to an existing String, but that copies the String each
-		// time, whereas a StringBuilder simply appends new characters to the end of the String
-		StringBuilder sb = new StringBuilder();
-		sb.append("[");
-		for (int i = 0; i < _nDim; i++)
-			sb.append(String.format(" %6.3f ", _adVal[i])); // Append each vector value in order
-		sb.append(" ]");
-		return sb.toString(); // return sth like an array of string content
+		// Same " %6.3f " per element as always, formatted by TextCodec without String.format
+		return TextCodec.toString(this); // return sth like an array of string content
 	}
 
 	/** Overrides address equality check on Object: allows semantic equality testing of vectors,
@@ -109,9 +118,59 @@ public class Vector {
 		} else // if we get here "(o instanceof Vector)" was false
 			return false; // Two objects cannot be equal if they don't have the same class type
 	}
+
+	/** Overrides hashCode() on Object consistently with equals(): equal vectors have equal hash
+	 *  codes.  The hash is computed from the content once and cached until *this* is modified.
+	 *
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		return ContentHash.fold(contentHash());
+	}
+
+	/** Returns the version of *this*, which every write to it advances (set, changeDim, append,
+	 *  the in-place operations and any operation that writes its result into *this*): while the
+	 *  version stays the same, so does the content
+	 *
+	 * @return
+	 */
+	public long getVersion() {
+		return _lVersion;
+	}
+
+	/** 64-bit hash of the dimension and entries (see ContentHash), cached until the next write
+	 *
+	 * @return
+	 */
+	long contentHash() {
+		long version = _lVersion;
+		if (_lHashVersion != version) {
+			_lHash = ContentHash.sum(_adVal, 0, _nDim);
+			_lHashVersion = version;
+		}
+		return ContentHash.finish(_lHash, _nDim);
+	}
+
+	/** Records a write to the entries of *this*: advances the version, invalidating the cached
+	 *  hash (to be called by every operation in this package that writes into a vector)
+	 */
+	void modified() {
+		_lVersion++;
+	}
 	
+	/** Package-private access to the backing array for the kernels in this package
+	 *  (only the first getDim() entries are meaningful: the array may be longer; a caller that
+	 *  writes to it must call modified())
+	 *
+	 * @return
+	 */
+	double[] getValues() {
+		return _adVal;
+	}
+
 	/** Get the dimension of this vector
-	 * 
+	 *
 	 * @return: the dimensionality of this Vector
 	 */
 	public int getDim() {
@@ -144,13 +203,20 @@ public class Vector {
 		if (index < 0 || index >= _nDim) {
 			throw new LinAlgException("Index " + index + " is out of bounds [0, " + _nDim + "]");
 		}
+		boolean current = _lHashVersion == _lVersion;
+		if (current) // Keep the computed hash current: swap this entry's term
+			_lHash += ContentHash.term(index, val) - ContentHash.term(index, _adVal[index]);
 		_adVal[index] = val;
+		_lVersion++;
+		if (current)
+			_lHashVersion = _lVersion;
 	}
 	
-	/** Change the dimension of this Vector by *reallocating array storage* and copying content over
+	/** Change the dimension of this Vector
 	 *  ... if new dim is larger than current dim then the additional indices take value 0.0
+	 *      (the storage is only reallocated when it is full, and then to at least twice its size)
 	 *  ... if new dim is smaller than current dim then any indices in current vector beyond current
-	 *      dim are simply lost
+	 *      dim are simply lost (nothing is copied: the capacity stays, see trimToSize())
 	 * 
 	 * @param new_dim
 	 * @throws LinAlgException if vector dimension is < 1
@@ -161,25 +227,73 @@ public class Vector {
 			throw new LinAlgException("Vector dimension " + new_dim + " cannot be less than 1");
 		}
 		if (new_dim > _nDim) {
-			int old_nDim = _nDim;
-			_nDim = new_dim;
-			double[] old_adVal = _adVal;
-			_adVal = new double[new_dim];
-			for (int i = 0; i < old_nDim; i++) {
-				_adVal[i] = old_adVal[i];
-				for (int j = old_nDim; j < new_dim; j++) {
-					_adVal[j] = 0.0;
-				}
-			}
-		}
-		if (new_dim <= _nDim) {
-			_nDim = new_dim;
-			double[] old_adVal = _adVal;
-			_adVal = new double[new_dim];
-			for (int i = 0; i < new_dim; i++) {
-				_adVal[i] = old_adVal[i];
-			}
+			ensureCapacity(new_dim);
+			Arrays.fill(_adVal, _nDim, new_dim, 0.0); // Entries past a shrink still hold old values
 		}
+		_nDim = new_dim;
+		modified();
+	}
+
+	/** Appends val as a new last entry, growing the dimension by one
+	 *
+	 * @param val
+	 * @throws LinAlgException if the dimension would exceed the maximum array size
+	 */
+	public void append(double val) throws LinAlgException {
+		reserve(_nDim + 1L);
+		boolean current = _lHashVersion == _lVersion;
+		if (current) // Keep the computed hash current: add the new entry's term
+			_lHash += ContentHash.term(_nDim, val);
+		_adVal[_nDim++] = val;
+		_lVersion++;
+		if (current)
+			_lHashVersion = _lVersion;
+	}
+
+	/** Appends the entries of v after those of *this* (v may be *this*)
+	 *
+	 * @param v
+	 * @throws LinAlgException if the dimension would exceed the maximum array size
+	 */
+	public void appendAll(Vector v) throws LinAlgException {
+		int n = v._nDim;
+		reserve((long)_nDim + n);
+		System.arraycopy(v._adVal, 0, _adVal, _nDim, n);
+		_nDim += n;
+		modified();
+	}
+
+	/** Makes sure *this* can grow to dimension minCapacity without reallocating its storage
+	 *
+	 * @param minCapacity
+	 * @throws LinAlgException if minCapacity exceeds the maximum array size
+	 */
+	public void ensureCapacity(int minCapacity) throws LinAlgException {
+		reserve(minCapacity);
+	}
+
+	/** Shrinks the storage of *this* to exactly getDim() entries
+	 */
+	public void trimToSize() {
+		if (_adVal.length > _nDim)
+			_adVal = Arrays.copyOf(_adVal, _nDim);
+	}
+
+	/** Returns the dimension *this* can grow to without reallocating its storage
+	 *
+	 * @return
+	 */
+	public int getCapacity() {
+		return _adVal.length;
+	}
+
+	/** Reallocates the storage, if it is smaller than minCapacity, to at least twice its size */
+	private void reserve(long minCapacity) throws LinAlgException {
+		if (minCapacity <= _adVal.length)
+			return;
+		if (minCapacity > MAX_CAPACITY)
+			throw new LinAlgException("Vector dimension " + minCapacity + " exceeds the maximum array size");
+		_adVal = Arrays.copyOf(_adVal, (int)Math.min(MAX_CAPACITY, Math.max(minCapacity, 2L * _adVal.length)));
 	}
 	
 	/** This adds a scalar d to all elements of *this* Vector
@@ -188,8 +302,8 @@ public class Vector {
 	 * @param d
 	 */
 	public void scalarAddInPlace(double d) {
-		for (int index = 0; index < _nDim; index++)
-			_adVal[index] += d;
+		VectorKernels.INSTANCE.scalarAdd(_adVal, d, _adVal, 0, _nDim);
+		modified();
 	}
 	
 	/** This creates a new Vector, adds a scalar d to it, and returns it
@@ -201,12 +315,21 @@ public class Vector {
 	public Vector scalarAdd(double d) {
 		// TODO (this should not return null!)
 		Vector newVector = new Vector(this);
-		for (int index = 0; index < _nDim; index++) {
-			newVector._adVal[index] = newVector._adVal[index] + d;
-		}
-//		can call on newVector.scalarAddInPlace(d);
+		newVector.scalarAddInPlace(d);
 		return newVector;
 	}
+
+	/** Writes *this* plus a scalar d into out, allocating nothing (out may be *this*)
+	 * 
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void scalarAdd(double d, Vector out) throws LinAlgException {
+		checkOutput(out);
+		VectorKernels.INSTANCE.scalarAdd(_adVal, d, out._adVal, 0, _nDim);
+		out.modified();
+	}
 	
 	/** This multiplies a scalar d by all elements of *this* Vector
 	 *  (should modify *this*)
@@ -215,9 +338,8 @@ public class Vector {
 	 */
 	public void scalarMultInPlace(double d) {
 		// TODO
-		for (int index = 0; index < _nDim; index++) {
-			_adVal[index] *= d;	
-		}
+		VectorKernels.INSTANCE.scalarMult(_adVal, d, _adVal, 0, _nDim);
+		modified();
 	}
 	
 	/** This creates a new Vector, multiplies it by a scalar d, and returns it
@@ -229,12 +351,22 @@ public class Vector {
 	public Vector scalarMult(double d) {
 		// TODO (this should not return null!)
 		Vector newVector = new Vector(this);
-		for (int index = 0; index < _nDim; index++) {
-			newVector._adVal[index] *= d;
-		}
+		newVector.scalarMultInPlace(d);
 		return newVector;
 	}
 
+	/** Writes *this* multiplied by a scalar d into out, allocating nothing (out may be *this*)
+	 * 
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	public void scalarMult(double d, Vector out) throws LinAlgException {
+		checkOutput(out);
+		VectorKernels.INSTANCE.scalarMult(_adVal, d, out._adVal, 0, _nDim);
+		out.modified();
+	}
+
 	/** Performs an elementwise addition of v to *this*, modifies *this*
 	 * 
 	 * @param v
@@ -242,13 +374,29 @@ public class Vector {
 	 */
 	public void elementwiseAddInPlace(Vector v) throws LinAlgException {
 		// TODO
+		elementwiseAddInPlace(v, ExecutionContext.getDefault());
+	}
+
+	/** Performs an elementwise addition of v to *this* on the given context, modifies *this*
+	 * 
+	 * @param v
+	 * @param ctx
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseAddInPlace(Vector v, ExecutionContext ctx) throws LinAlgException {
 		// has the same LinAlgException printed as elementwiseAdd
 		if (v._nDim != _nDim) {
 			throw new LinAlgException("Cannot elementWiseAdd vectors of different dimensions " + _nDim + " and " + v._nDim);
 		}
-		for (int index = 0; index < _nDim; index++) {
-			_adVal[index] += v._adVal[index];
-		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = _adVal, b = v._adVal;
+		if (!ctx.shouldSplit(_nDim))
+			VectorKernels.INSTANCE.add(a, b, a, 0, _nDim); // No task objects on the sequential path
+		else
+			ctx.forRange(_nDim, ctx.getSplitSize(), (lo, hi) -> VectorKernels.INSTANCE.add(a, b, a, lo, hi));
+		modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.ELEMENTWISE_ADD, start, _nDim, _nDim);
 	}
 
 	/** Performs an elementwise addition of *this* and v and returns a new Vector with result
@@ -259,16 +407,61 @@ public class Vector {
 	 */
 	public Vector elementwiseAdd(Vector v) throws LinAlgException {
 		// TODO (this should not return null!)
+		return elementwiseAdd(v, ExecutionContext.getDefault());
+	}
+
+	/** Performs an elementwise addition of *this* and v on the given context and returns a new Vector with result
+	 * 
+	 * @param v
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public Vector elementwiseAdd(Vector v, ExecutionContext ctx) throws LinAlgException {
 		// has the same LinAlgException printed as elementwiseAddInPlace
-		Vector newVector = new Vector(this);
 		if (v._nDim != _nDim) {
 			throw new LinAlgException("Cannot elementWiseAdd vectors of different dimensions " + _nDim + " and " + v._nDim);
 		}
-		for (int index = 0; index < _nDim; index++) {
-			newVector._adVal[index] = v._adVal[index] + _adVal[index];
-		}
+		Vector newVector = new Vector(_nDim);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.ELEMENTWISE_ADD, 8L * _nDim);
+		elementwiseAdd(v, newVector, ctx);
 		return newVector;
 	}
+
+	/** Writes the elementwise sum of *this* and v into out, allocating nothing
+	 *  (out may be *this* or v, since every entry only depends on the same index)
+	 * 
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseAdd(Vector v, Vector out) throws LinAlgException {
+		elementwiseAdd(v, out, ExecutionContext.getDefault());
+	}
+
+	/** Writes the elementwise sum of *this* and v into out on the given context (see elementwiseAdd(v, out))
+	 * 
+	 * @param v
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseAdd(Vector v, Vector out, ExecutionContext ctx) throws LinAlgException {
+		if (v._nDim != _nDim) {
+			throw new LinAlgException("Cannot elementWiseAdd vectors of different dimensions " + _nDim + " and " + v._nDim);
+		}
+		checkOutput(out);
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = _adVal, b = v._adVal, c = out._adVal;
+		if (!ctx.shouldSplit(_nDim))
+			VectorKernels.INSTANCE.add(b, a, c, 0, _nDim); // No task objects on the sequential path
+		else
+			ctx.forRange(_nDim, ctx.getSplitSize(), (lo, hi) -> VectorKernels.INSTANCE.add(b, a, c, lo, hi));
+		out.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.ELEMENTWISE_ADD, start, _nDim, _nDim);
+	}
 	
 	/** Performs an elementwise multiplication of v and *this*, modifies *this*
 	 * 
@@ -277,13 +470,29 @@ public class Vector {
 	 */
 	public void elementwiseMultInPlace(Vector v) throws LinAlgException {
 		// TODO
+		elementwiseMultInPlace(v, ExecutionContext.getDefault());
+	}
+
+	/** Performs an elementwise multiplication of v and *this* on the given context, modifies *this*
+	 * 
+	 * @param v
+	 * @param ctx
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseMultInPlace(Vector v, ExecutionContext ctx) throws LinAlgException {
 		// has the same LinAlgException printed as elementwiseMult
 		if (v._nDim != _nDim) {
 			throw new LinAlgException("Cannot elementWiseMult vectors of different dimensions " + _nDim + " and " + v._nDim);
 		}
-		for (int index = 0; index < _nDim; index++) {
-			_adVal[index] *= v._adVal[index];	
-		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = _adVal, b = v._adVal;
+		if (!ctx.shouldSplit(_nDim))
+			VectorKernels.INSTANCE.mult(a, b, a, 0, _nDim); // No task objects on the sequential path
+		else
+			ctx.forRange(_nDim, ctx.getSplitSize(), (lo, hi) -> VectorKernels.INSTANCE.mult(a, b, a, lo, hi));
+		modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.ELEMENTWISE_MULT, start, _nDim, _nDim);
 	}
 
 	/** Performs an elementwise multiplication of *this* and v and returns a new Vector with result
@@ -294,17 +503,73 @@ public class Vector {
 	 */
 	public Vector elementwiseMult(Vector v) throws LinAlgException {
 		// TODO (this should not return null!)
+		return elementwiseMult(v, ExecutionContext.getDefault());
+	}
+
+	/** Performs an elementwise multiplication of *this* and v on the given context and returns a new Vector with result
+	 * 
+	 * @param v
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public Vector elementwiseMult(Vector v, ExecutionContext ctx) throws LinAlgException {
 		// has the same LinAlgException printed as elementwiseMultInPlace
-		Vector newVector = new Vector(this);
 		if (v._nDim != _nDim) {
 			throw new LinAlgException("Cannot elementWiseMult vectors of different dimensions " + _nDim + " and " + v._nDim);
 		}
-		for (int index = 0; index < _nDim; index++) {
-			newVector._adVal[index] = v._adVal[index] * _adVal[index];
-		}
+		Vector newVector = new Vector(_nDim);
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.allocated(LinAlgMetrics.Op.ELEMENTWISE_MULT, 8L * _nDim);
+		elementwiseMult(v, newVector, ctx);
 		return newVector;
 	}
 
+	/** Writes the elementwise product of *this* and v into out, allocating nothing
+	 *  (out may be *this* or v, since every entry only depends on the same index)
+	 * 
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseMult(Vector v, Vector out) throws LinAlgException {
+		elementwiseMult(v, out, ExecutionContext.getDefault());
+	}
+
+	/** Writes the elementwise product of *this* and v into out on the given context (see elementwiseMult(v, out))
+	 * 
+	 * @param v
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if the dimensions of v or out do not match *this*
+	 */
+	public void elementwiseMult(Vector v, Vector out, ExecutionContext ctx) throws LinAlgException {
+		if (v._nDim != _nDim) {
+			throw new LinAlgException("Cannot elementWiseMult vectors of different dimensions " + _nDim + " and " + v._nDim);
+		}
+		checkOutput(out);
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = _adVal, b = v._adVal, c = out._adVal;
+		if (!ctx.shouldSplit(_nDim))
+			VectorKernels.INSTANCE.mult(b, a, c, 0, _nDim); // No task objects on the sequential path
+		else
+			ctx.forRange(_nDim, ctx.getSplitSize(), (lo, hi) -> VectorKernels.INSTANCE.mult(b, a, c, lo, hi));
+		out.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.ELEMENTWISE_MULT, start, _nDim, _nDim);
+	}
+
+	/** Validates the destination of an "into" operation on *this*
+	 * 
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of *this*
+	 */
+	private void checkOutput(Vector out) throws LinAlgException {
+		if (out._nDim != _nDim) {
+			throw new LinAlgException("Cannot write a result of dimension " + _nDim + " into a vector of dimension " + out._nDim);
+		}
+	}
+
 	/** Performs an inner product of Vectors v1 and v2 and returns the scalar result
 	 * 
 	 * @param v1
@@ -316,13 +581,189 @@ public class Vector {
 		// TODO (this should not return -1.0!)
 		// static: use method in the class, but does not operate on the class,
 		// so when called, append class name in front of method instead of appending variable name
+		return InnerProd(v1, v2, ExecutionContext.getDefault());
+	}
+
+	/** Performs an inner product of Vectors v1 and v2 on the given context and returns the scalar result;
+	 *  in parallel each chunk of ctx.getSplitSize() entries is summed separately and the partial
+	 *  sums are combined in a fixed order, so the result is reproducible for a given split size
+	 * 
+	 * @param v1
+	 * @param v2
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public static double InnerProd(Vector v1, Vector v2, ExecutionContext ctx) throws LinAlgException {
 		if (v1._nDim != v2._nDim) {
 			throw new LinAlgException("Cannot innerProd vectors of different dimensions " + v1._nDim + " and " + v2._nDim);
 		}
-		double innerproduct = 0.0;
-		for (int index = 0; index < v1._nDim; index++) {
-			innerproduct += v1._adVal[index] * v2._adVal[index];	
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		double[] a = v1._adVal, b = v2._adVal;
+		double sum;
+		if (!ctx.shouldSplit(v1._nDim))
+			sum = VectorKernels.INSTANCE.dot(a, 0, b, 0, v1._nDim); // No task objects on the sequential path
+		else
+			sum = ctx.sumRange(v1._nDim, ctx.getSplitSize(), (lo, hi) -> VectorKernels.INSTANCE.dot(a, lo, b, lo, hi - lo));
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.INNER_PROD, start, 2L * v1._nDim, 2.0 * v1._nDim);
+		return sum;
+	}
+
+	/** Computes y = a * x + y in one pass (BLAS axpy), modifies y
+	 * 
+	 * @param a
+	 * @param x
+	 * @param y
+	 * @throws LinAlgException if dimensions of the two vectors do not match
+	 */
+	public static void Axpy(double a, Vector x, Vector y) throws LinAlgException {
+		if (x._nDim != y._nDim) {
+			throw new LinAlgException("Cannot axpy vectors of different dimensions " + x._nDim + " and " + y._nDim);
+		}
+		if (a == 0.0)
+			return;
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		VectorKernels.INSTANCE.axpy(a, x._adVal, 0, y._adVal, 0, x._nDim);
+		y.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.AXPY, start, 2L * x._nDim, 2.0 * x._nDim);
+	}
+
+	/** Computes y = a * x + b * y in one pass (BLAS axpby), modifies y; as in BLAS, y is not
+	 *  read when b is 0, so NaN or infinite entries already in y do not propagate
+	 * 
+	 * @param a
+	 * @param x
+	 * @param b
+	 * @param y
+	 * @throws LinAlgException if dimensions of the two vectors do not match
+	 */
+	public static void Axpby(double a, Vector x, double b, Vector y) throws LinAlgException {
+		if (x._nDim != y._nDim) {
+			throw new LinAlgException("Cannot axpby vectors of different dimensions " + x._nDim + " and " + y._nDim);
+		}
+		long start = LinAlgMetrics.ENABLED ? System.nanoTime() : 0L;
+		if (b == 0.0)
+			VectorKernels.INSTANCE.scalarMult(x._adVal, a, y._adVal, 0, x._nDim);
+		else if (b == 1.0)
+			VectorKernels.INSTANCE.axpy(a, x._adVal, 0, y._adVal, 0, x._nDim);
+		else
+			VectorKernels.INSTANCE.axpby(a, x._adVal, b, y._adVal, 0, x._nDim);
+		y.modified();
+		if (LinAlgMetrics.ENABLED)
+			LinAlgMetrics.record(LinAlgMetrics.Op.AXPY, start, 2L * x._nDim, 3.0 * x._nDim);
+	}
+
+	/** Computes x = a * x (BLAS scal), modifies x; the same as x.scalarMultInPlace(a)
+	 * 
+	 * @param a
+	 * @param x
+	 */
+	public static void Scal(double a, Vector x) {
+		x.scalarMultInPlace(a);
+	}
+
+	/** Returns the Euclidean norm of x (BLAS nrm2).  The sum of squares is first taken with
+	 *  the fast inner-product kernel; only when that overflows or comes out so small that
+	 *  underflow could matter is it recomputed with the scaled (overflow-free) recurrence
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public static double Nrm2(Vector x) {
+		return nrm2(x._adVal, 0, x._nDim);
+	}
+
+	/** Euclidean norm of a[off, off + n) (see Nrm2), shared with the factorizations
+	 * 
+	 * @param a
+	 * @param off
+	 * @param n
+	 * @return
+	 */
+	static double nrm2(double[] a, int off, int n) {
+		double sumSq = VectorKernels.INSTANCE.dot(a, off, a, off, n);
+		// Squares that underflow are below 2^-1022, negligible against a total of at least 2^-900
+		if (sumSq >= 0x1p-900 && sumSq <= Double.MAX_VALUE)
+			return Math.sqrt(sumSq);
+		double scale = 0.0, ssq = 1.0;
+		for (int i = off; i < off + n; i++) {
+			double v = a[i];
+			if (v == 0.0)
+				continue;
+			double abs = Math.abs(v);
+			if (scale < abs) {
+				double r = scale / abs;
+				ssq = 1.0 + ssq * r * r;
+				scale = abs;
+			} else {
+				double r = abs / scale;
+				ssq += r * r;
+			}
+		}
+		return scale * Math.sqrt(ssq);
+	}
+
+	/** Returns the sum of the absolute values of the entries of x (BLAS asum)
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public static double Asum(Vector x) {
+		return VectorKernels.INSTANCE.asum(x._adVal, 0, x._nDim);
+	}
+
+	/** Returns the index of the entry of x with the largest absolute value (BLAS iamax, but
+	 *  0-based); ties go to the lowest index and NaN entries are skipped
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public static int Iamax(Vector x) {
+		int best = 0;
+		double max = -1.0;
+		for (int i = 0; i < x._nDim; i++) {
+			double abs = Math.abs(x._adVal[i]);
+			if (abs > max) {
+				max = abs;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/** Returns { x.y, |x|, |y| } computed in a single pass over both vectors, e.g., for
+	 *  cosine similarity x.y / (|x| |y|); the norms are plain square roots of the sums of
+	 *  squares (use Nrm2 if entries may exceed about 1e150 in magnitude)
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 * @throws LinAlgException if dimensions of the two vectors do not match
+	 */
+	public static double[] DotAndNorms(Vector x, Vector y) throws LinAlgException {
+		double[] out = new double[3];
+		DotAndNorms(x, y, out);
+		return out;
+	}
+
+	/** Stores { x.y, |x|, |y| } into out[0..2], allocating nothing (see DotAndNorms(x, y))
+	 * 
+	 * @param x
+	 * @param y
+	 * @param out
+	 * @throws LinAlgException if dimensions of the two vectors do not match or out has fewer than 3 entries
+	 */
+	public static void DotAndNorms(Vector x, Vector y, double[] out) throws LinAlgException {
+		if (x._nDim != y._nDim) {
+			throw new LinAlgException("Cannot innerProd vectors of different dimensions " + x._nDim + " and " + y._nDim);
+		}
+		if (out.length < 3) {
+			throw new LinAlgException("Output array of length " + out.length + " cannot hold 3 results");
 		}
-		return innerproduct;
+		VectorKernels.INSTANCE.dotAndSquares(x._adVal, y._adVal, x._nDim, out);
+		out[1] = Math.sqrt(out[1]);
+		out[2] = Math.sqrt(out[2]);
 	}
 }
@@ -0,0 +1,475 @@
+package linalg;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*** A lazily evaluated Vector expression.  Building an expression only records the
+ *   operation (and checks dimensions, so errors surface where the expression is written);
+ *   nothing is computed until eval() or evalInto() is called, e.g.,
+ *
+ *     Vector r = VectorExpr.of(v).scalarMult(2).elementwiseAdd(w).elementwiseMult(u).eval();
+ *
+ *   computes every entry of r in a single pass over v, w and u, without the two
+ *   intermediate Vectors that the equivalent chain of Vector calls would allocate.
+ *
+ *   On evaluation, products with a matrix (see MatrixExpr.multiply(VectorExpr)) are computed
+ *   first, right to left, so (A * B) * v runs as A * (B * v) and never forms A * B.  Their
+ *   results, like the input Vectors, then feed one fused elementwise loop that walks the
+ *   output in blocks of BLOCK entries: each operation of the chain is applied to a block
+ *   held in small L1-resident buffers using the VectorKernels loops, so the inputs are read
+ *   from memory once and the output is written once.  A sub-expression used in several
+ *   places is only computed once per evaluation if it involves a matrix product.
+ *
+ *   Leaves refer to their Vectors, so changes to them before eval() are seen by eval(),
+ *   including a new backing array or dimension (ensureCapacity, trimToSize, append): the
+ *   dimension of an expression is that of its operands when it is asked for.  Operands whose
+ *   dimensions no longer match make eval() and evalInto() throw IllegalStateException.
+ *
+ */
+public abstract class VectorExpr {
+
+	/** Entries per block of the fused elementwise loop (small enough that all buffers stay in L1) */
+	static final int BLOCK = 256;
+
+	/** Returns an expression whose value is v (v is not copied)
+	 * 
+	 * @param v
+	 * @return
+	 */
+	public static VectorExpr of(Vector v) {
+		return new Leaf(v);
+	}
+
+	/** Returns the dimension of the result (that of the operands now)
+	 * 
+	 * @return
+	 */
+	public abstract int getDim();
+
+	/** Returns the expression *this* + d (added to every entry)
+	 * 
+	 * @param d
+	 * @return
+	 */
+	public VectorExpr scalarAdd(double d) {
+		return new ScalarAdd(this, d);
+	}
+
+	/** Returns the expression *this* * d (every entry multiplied by d)
+	 * 
+	 * @param d
+	 * @return
+	 */
+	public VectorExpr scalarMult(double d) {
+		return new ScalarMult(this, d);
+	}
+
+	/** Returns the expression *this* + e (elementwise)
+	 * 
+	 * @param e
+	 * @return
+	 * @throws LinAlgException if the dimensions of *this* and e do not match
+	 */
+	public VectorExpr elementwiseAdd(VectorExpr e) throws LinAlgException {
+		if (e.getDim() != getDim()) {
+			throw new LinAlgException("Cannot elementWiseAdd vectors of different dimensions " + getDim() + " and " + e.getDim());
+		}
+		return new Add(this, e);
+	}
+
+	/** Returns the expression *this* + v (elementwise)
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the dimensions of *this* and v do not match
+	 */
+	public VectorExpr elementwiseAdd(Vector v) throws LinAlgException {
+		return elementwiseAdd(of(v));
+	}
+
+	/** Returns the expression *this* * e (elementwise)
+	 * 
+	 * @param e
+	 * @return
+	 * @throws LinAlgException if the dimensions of *this* and e do not match
+	 */
+	public VectorExpr elementwiseMult(VectorExpr e) throws LinAlgException {
+		if (e.getDim() != getDim()) {
+			throw new LinAlgException("Cannot elementWiseMult vectors of different dimensions " + getDim() + " and " + e.getDim());
+		}
+		return new Mult(this, e);
+	}
+
+	/** Returns the expression *this* * v (elementwise)
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the dimensions of *this* and v do not match
+	 */
+	public VectorExpr elementwiseMult(Vector v) throws LinAlgException {
+		return elementwiseMult(of(v));
+	}
+
+	/** Evaluates the expression into a new Vector
+	 * 
+	 * @return
+	 */
+	public Vector eval() {
+		return eval(ExecutionContext.getDefault());
+	}
+
+	/** Evaluates the expression into a new Vector on the given context
+	 * 
+	 * @param ctx
+	 * @return
+	 * @throws IllegalStateException if operands were resized so that their dimensions no longer match
+	 */
+	public Vector eval(ExecutionContext ctx) {
+		VectorExpr prepared = prepare(ctx, new Memo());
+		Vector out = newVector(prepared.getDim());
+		prepared.run(out.getValues(), ctx);
+		return out;
+	}
+
+	/** Allocates a result Vector of a dimension that came from an existing Vector (so it is valid)
+	 * 
+	 * @param dim
+	 * @return
+	 */
+	static Vector newVector(int dim) {
+		try {
+			return new Vector(dim);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/** Evaluates the expression into out (which may also appear in the expression: every
+	 *  block is computed in full before it is written)
+	 * 
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of the expression
+	 */
+	public void evalInto(Vector out) throws LinAlgException {
+		evalInto(out, ExecutionContext.getDefault());
+	}
+
+	/** Evaluates the expression into out on the given context; in parallel each task handles
+	 *  a contiguous run of blocks
+	 * 
+	 * @param out
+	 * @param ctx
+	 * @throws LinAlgException if out does not have the dimension of the expression
+	 * @throws IllegalStateException if operands were resized so that their dimensions no longer match
+	 */
+	public void evalInto(Vector out, ExecutionContext ctx) throws LinAlgException {
+		VectorExpr prepared = prepare(ctx, new Memo());
+		if (out.getDim() != prepared.getDim()) {
+			throw new LinAlgException("Cannot write a result of dimension " + prepared.getDim() + " into a vector of dimension " + out.getDim());
+		}
+		prepared.run(out.getValues(), ctx);
+		out.modified();
+	}
+
+	/** Runs the fused elementwise loop of a prepared expression into dst
+	 * 
+	 * @param dst
+	 * @param ctx
+	 */
+	private void run(double[] dst, ExecutionContext ctx) {
+		if (this instanceof Leaf) {
+			System.arraycopy(((Leaf)this)._v.getValues(), 0, dst, 0, ((Leaf)this)._v.getDim());
+			return;
+		}
+		int n = getDim();
+		int blocks = (n + BLOCK - 1) / BLOCK;
+		if (!ctx.shouldSplit(n)) {
+			runBlocks(dst, 0, blocks); // No task objects on the sequential path
+			return;
+		}
+		ctx.forRange(blocks, Math.max(1, ctx.getSplitSize() / BLOCK), (lo, hi) -> runBlocks(dst, lo, hi));
+	}
+
+	/** Evaluates blocks [lo, hi) of a prepared expression into dst with buffers of its own */
+	private void runBlocks(double[] dst, int lo, int hi) {
+		int n = getDim();
+		int size = Math.min(BLOCK, n);
+		double[] buf = new double[size];
+		double[][] tmp = new double[depth()][size];
+		for (int b = lo; b < hi; b++) {
+			int start = b * BLOCK;
+			int len = Math.min(BLOCK, n - start);
+			evalBlock(start, len, buf, tmp, 0);
+			System.arraycopy(buf, 0, dst, start, len);
+		}
+	}
+
+	/** Returns an equivalent expression whose only non-elementwise parts are Leaf nodes,
+	 *  computing any matrix products; done remembers the products already computed
+	 * 
+	 * @param ctx
+	 * @param done
+	 * @return
+	 * @throws IllegalStateException if the operands' dimensions no longer match
+	 */
+	abstract VectorExpr prepare(ExecutionContext ctx, Memo done);
+
+	/** Results of the matrix products computed during one evaluation (the map is only
+	 *  created if the expression has any)
+	 */
+	static final class Memo {
+		Map<VectorExpr, VectorExpr> _map;
+	}
+
+	/** Number of temporary block buffers evalBlock needs */
+	abstract int depth();
+
+	/** Writes entries [lo, lo + len) of the (prepared) expression to out[0, len), using
+	 *  tmp[level] onwards for intermediate blocks
+	 */
+	abstract void evalBlock(int lo, int len, double[] out, double[][] tmp, int level);
+
+	/** An input Vector (or a computed intermediate result); its values and dimension are read
+	 *  from the Vector on every use, since resizing it may replace its backing array
+	 */
+	static final class Leaf extends VectorExpr {
+		private final Vector _v;
+
+		Leaf(Vector v) {
+			_v = v;
+		}
+
+		@Override
+		public int getDim() {
+			return _v.getDim();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			return this;
+		}
+
+		@Override
+		int depth() {
+			return 0;
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			System.arraycopy(_v.getValues(), lo, out, 0, len);
+		}
+
+		@Override
+		public String toString() {
+			return "v" + _v.getDim();
+		}
+	}
+
+	private static final class ScalarAdd extends VectorExpr {
+		private final VectorExpr _child;
+		private final double _d;
+
+		ScalarAdd(VectorExpr child, double d) {
+			_child = child;
+			_d = d;
+		}
+
+		@Override
+		public int getDim() {
+			return _child.getDim();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			VectorExpr child = _child.prepare(ctx, done);
+			return child == _child ? this : new ScalarAdd(child, _d);
+		}
+
+		@Override
+		int depth() {
+			return _child.depth();
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			_child.evalBlock(lo, len, out, tmp, level);
+			VectorKernels.INSTANCE.scalarAdd(out, _d, out, 0, len);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _child + " + " + _d + ")";
+		}
+	}
+
+	private static final class ScalarMult extends VectorExpr {
+		private final VectorExpr _child;
+		private final double _d;
+
+		ScalarMult(VectorExpr child, double d) {
+			_child = child;
+			_d = d;
+		}
+
+		@Override
+		public int getDim() {
+			return _child.getDim();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			VectorExpr child = _child.prepare(ctx, done);
+			return child == _child ? this : new ScalarMult(child, _d);
+		}
+
+		@Override
+		int depth() {
+			return _child.depth();
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			_child.evalBlock(lo, len, out, tmp, level);
+			VectorKernels.INSTANCE.scalarMult(out, _d, out, 0, len);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _child + " * " + _d + ")";
+		}
+	}
+
+	private static final class Add extends VectorExpr {
+		private final VectorExpr _left, _right;
+
+		Add(VectorExpr left, VectorExpr right) {
+			_left = left;
+			_right = right;
+		}
+
+		@Override
+		public int getDim() {
+			return _left.getDim();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			VectorExpr left = _left.prepare(ctx, done), right = _right.prepare(ctx, done);
+			if (left.getDim() != right.getDim()) {
+				throw new IllegalStateException("Cannot elementWiseAdd vectors of different dimensions " + left.getDim() + " and " + right.getDim() + " (an operand was resized)");
+			}
+			return left == _left && right == _right ? this : new Add(left, right);
+		}
+
+		@Override
+		int depth() {
+			return Math.max(_left.depth(), 1 + _right.depth());
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			_left.evalBlock(lo, len, out, tmp, level);
+			_right.evalBlock(lo, len, tmp[level], tmp, level + 1);
+			VectorKernels.INSTANCE.add(out, tmp[level], out, 0, len);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _left + " + " + _right + ")";
+		}
+	}
+
+	private static final class Mult extends VectorExpr {
+		private final VectorExpr _left, _right;
+
+		Mult(VectorExpr left, VectorExpr right) {
+			_left = left;
+			_right = right;
+		}
+
+		@Override
+		public int getDim() {
+			return _left.getDim();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			VectorExpr left = _left.prepare(ctx, done), right = _right.prepare(ctx, done);
+			if (left.getDim() != right.getDim()) {
+				throw new IllegalStateException("Cannot elementWiseMult vectors of different dimensions " + left.getDim() + " and " + right.getDim() + " (an operand was resized)");
+			}
+			return left == _left && right == _right ? this : new Mult(left, right);
+		}
+
+		@Override
+		int depth() {
+			return Math.max(_left.depth(), 1 + _right.depth());
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			_left.evalBlock(lo, len, out, tmp, level);
+			_right.evalBlock(lo, len, tmp[level], tmp, level + 1);
+			VectorKernels.INSTANCE.mult(out, tmp[level], out, 0, len);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _left + " .* " + _right + ")";
+		}
+	}
+
+	/** The product of a matrix expression and a vector expression (built by MatrixExpr.multiply) */
+	static final class MatVec extends VectorExpr {
+		private final MatrixExpr _m;
+		private final VectorExpr _v;
+
+		MatVec(MatrixExpr m, VectorExpr v) {
+			_m = m;
+			_v = v;
+		}
+
+		@Override
+		public int getDim() {
+			return _m.getNumRows();
+		}
+
+		@Override
+		VectorExpr prepare(ExecutionContext ctx, Memo done) {
+			if (done._map == null)
+				done._map = new IdentityHashMap<>();
+			VectorExpr result = done._map.get(this);
+			if (result == null) {
+				VectorExpr v = _v.prepare(ctx, done);
+				if (v.getDim() != _m.getNumCols()) {
+					throw new IllegalStateException("Cannot multiply matrix with " + _m.getNumCols() + " columns with a vector of dimension " + v.getDim() + " (an operand was resized)");
+				}
+				Vector x;
+				if (v instanceof Leaf) {
+					x = ((Leaf)v)._v; // Input vectors are used as they are
+				} else {
+					x = newVector(v.getDim());
+					v.run(x.getValues(), ctx);
+				}
+				result = new Leaf(_m.apply(x, ctx));
+				done._map.put(this, result);
+			}
+			return result;
+		}
+
+		@Override
+		int depth() {
+			throw new IllegalStateException("MatVec must be prepared before evaluation");
+		}
+
+		@Override
+		void evalBlock(int lo, int len, double[] out, double[][] tmp, int level) {
+			throw new IllegalStateException("MatVec must be prepared before evaluation");
+		}
+
+		@Override
+		public String toString() {
+			return "(" + _m + " * " + _v + ")";
+		}
+	}
+}
@@ -0,0 +1,589 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A brute-force similarity index: many vectors of one dimension packed into a single
+ *   contiguous block, scored against queries by inner product, cosine similarity or
+ *   Euclidean distance, returning the top k of them.
+ *
+ *   Storage can be quantized to cut memory and bandwidth (scoring a large index is limited by
+ *   how fast the block streams from memory):
+ *
+ *     NONE     8 bytes per entry (exact doubles)
+ *     FLOAT16  2 bytes per entry (IEEE half precision: ~3 significant digits, |x| <= 65504)
+ *     INT8     1 byte per entry plus one float scale per vector (x ~ code * max|x| / 127)
+ *
+ *   Quantized vectors are scored against a float copy of the query with the int8 and half
+ *   kernels of VectorKernels, which convert the codes to floats in registers.  Scoring is
+ *   blocked: BLOCK stored vectors are scored against every query of a batch while they are
+ *   in cache, so a batch of queries reads the index from memory once.  On a parallel
+ *   ExecutionContext the stored vectors are split into one contiguous range per thread of
+ *   the pool, each thread keeps a bounded heap of its best k per query, and the heaps are
+ *   merged at the end.  Ties are broken by the smaller id, so results do not depend on the
+ *   number of threads.
+ *
+ *   add() returns an id that stays valid until remove(id).  Removal moves the last stored
+ *   vector into the freed slot, so the block stays gap-free and nothing is ever rebuilt.
+ *   Searches may run concurrently with each other, but not with add() or remove().
+ *
+ */
+public class VectorIndex {
+
+	/** How the stored vectors are encoded */
+	public enum Quantization {
+		/** Exact doubles, 8 bytes per entry */
+		NONE,
+		/** IEEE 754 half precision, 2 bytes per entry; magnitudes above 65504 saturate */
+		FLOAT16,
+		/** Symmetric int8 with one scale per vector, 1 byte per entry */
+		INT8
+	}
+
+	/** How a stored vector x is scored against a query q */
+	public enum Metric {
+		/** q . x, highest first */
+		INNER_PRODUCT,
+		/** q . x / (|q| |x|), highest first (0.0 when either is the zero vector) */
+		COSINE,
+		/** |q - x|^2, lowest first */
+		L2
+	}
+
+	/** Stored vectors scored against all queries of a batch at a time */
+	static final int BLOCK = 64;
+
+	/** One search result: the id of a stored vector and its score under the index's metric
+	 *  (the inner product, the cosine similarity or the squared Euclidean distance)
+	 *
+	 */
+	public static final class Hit {
+		private final int _nId;
+		private final double _dScore;
+
+		Hit(int id, double score) {
+			_nId = id;
+			_dScore = score;
+		}
+
+		/** Returns the id that add() returned for the stored vector
+		 *
+		 * @return
+		 */
+		public int getId() {
+			return _nId;
+		}
+
+		/** Returns the score of the stored vector against the query (see Metric for which end is best)
+		 *
+		 * @return
+		 */
+		public double getScore() {
+			return _dScore;
+		}
+
+		@Override
+		public String toString() {
+			return _nId + ":" + _dScore;
+		}
+	}
+
+	private final int _nDim;                   // Dimension of every stored vector
+	private final Metric _metric;
+	private final Quantization _quantization;
+	private int _nSize;                        // Vectors stored, in slots [0, _nSize)
+	private int _nCapacity;                    // Slots allocated
+	private double[] _adData;                  // NONE: slot s at [s * dim, (s + 1) * dim)
+	private short[] _asData;                   // FLOAT16: likewise, half-precision bits
+	private byte[] _abData;                    // INT8: likewise, codes
+	private float[] _afScale;                  // INT8: entry = code * scale of the slot
+	private double[] _adAux;                   // COSINE: 1 / |x| (0.0 for x = 0), L2: |x|^2, else null
+	private int[] _anIdOfSlot;
+	private int[] _anSlotOfId = new int[0];    // -1 once removed
+	private int _nNextId;
+
+	/** Creates an empty exact inner-product index for vectors of dimension dim
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is < 1
+	 */
+	public VectorIndex(int dim) throws LinAlgException {
+		this(dim, Metric.INNER_PRODUCT, Quantization.NONE);
+	}
+
+	/** Creates an empty index for vectors of dimension dim
+	 *
+	 * @param dim
+	 * @param metric
+	 * @param quantization
+	 * @throws LinAlgException if dim is < 1 or metric or quantization is null
+	 */
+	public VectorIndex(int dim, Metric metric, Quantization quantization) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		if (metric == null || quantization == null)
+			throw new LinAlgException("Metric and quantization cannot be null");
+		_nDim = dim;
+		_metric = metric;
+		_quantization = quantization;
+		allocate(0);
+	}
+
+	/** Returns the dimension of the stored vectors and of the queries
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Returns how stored vectors are scored against a query
+	 *
+	 * @return
+	 */
+	public Metric getMetric() {
+		return _metric;
+	}
+
+	/** Returns how the stored vectors are encoded
+	 *
+	 * @return
+	 */
+	public Quantization getQuantization() {
+		return _quantization;
+	}
+
+	/** Returns the number of vectors stored
+	 *
+	 * @return
+	 */
+	public int size() {
+		return _nSize;
+	}
+
+	/** Returns the bytes held by the index's arrays (allocated capacity included)
+	 *
+	 * @return
+	 */
+	public long getMemoryBytes() {
+		int entryBytes = _quantization == Quantization.NONE ? 8 : _quantization == Quantization.FLOAT16 ? 2 : 1;
+		long perSlot = (long)_nDim * entryBytes + 4 + (_afScale != null ? 4 : 0) + (_adAux != null ? 8 : 0);
+		return _nCapacity * perSlot + 4L * _anSlotOfId.length;
+	}
+
+	/** Adds v (encoded with the index's quantization) and returns its id
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if v does not have dimension getDim() or has a non-finite entry
+	 */
+	public int add(Vector v) throws LinAlgException {
+		if (v.getDim() != _nDim)
+			throw new LinAlgException("Cannot add a vector of dimension " + v.getDim() + " to an index of dimension " + _nDim);
+		checkFinite(v.getValues(), 0, 1, "index a vector");
+		return add(v.getValues(), 0, 1);
+	}
+
+	/** Adds every row of m and returns their ids, in row order; if any row is rejected, none
+	 *  is added
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if m does not have getDim() columns or has a non-finite entry
+	 */
+	public int[] addAll(Matrix m) throws LinAlgException {
+		if (m.getNumCols() != _nDim)
+			throw new LinAlgException("Cannot add rows of dimension " + m.getNumCols() + " to an index of dimension " + _nDim);
+		for (int row = 0; row < m.getNumRows(); row++)
+			checkFinite(m.getData(), m.getOffset() + row * m.getRowStride(), m.getColStride(), "index row " + row);
+		ensureCapacity(_nSize + m.getNumRows());
+		int[] ids = new int[m.getNumRows()];
+		for (int row = 0; row < ids.length; row++)
+			ids[row] = add(m.getData(), m.getOffset() + row * m.getRowStride(), m.getColStride());
+		return ids;
+	}
+
+	/** Removes the vector with the given id; the last stored vector moves into its slot
+	 *
+	 * @param id
+	 * @return true if the id was present
+	 */
+	public boolean remove(int id) {
+		if (!contains(id))
+			return false;
+		int slot = _anSlotOfId[id], last = _nSize - 1;
+		if (slot != last) {
+			copySlot(last, slot);
+			_anSlotOfId[_anIdOfSlot[slot]] = slot;
+		}
+		_anSlotOfId[id] = -1;
+		_nSize--;
+		return true;
+	}
+
+	/** True if id was returned by add() and not removed since
+	 *
+	 * @param id
+	 * @return
+	 */
+	public boolean contains(int id) {
+		return id >= 0 && id < _nNextId && _anSlotOfId[id] >= 0;
+	}
+
+	/** Returns the stored vector with the given id, decoded (so quantization error included)
+	 *
+	 * @param id
+	 * @return
+	 * @throws LinAlgException if the id is not present
+	 */
+	public Vector get(int id) throws LinAlgException {
+		if (!contains(id))
+			throw new LinAlgException("Id " + id + " is not in the index");
+		int slot = _anSlotOfId[id], base = slot * _nDim;
+		Vector v = new Vector(_nDim);
+		double[] out = v.getValues();
+		for (int i = 0; i < _nDim; i++)
+			out[i] = entry(slot, base + i);
+		return v;
+	}
+
+	/** Returns the (up to) k best stored vectors for query, best first
+	 *
+	 * @param query
+	 * @param k
+	 * @return
+	 * @throws LinAlgException if query does not have dimension getDim() or a non-finite entry,
+	 *         or k is < 1
+	 */
+	public Hit[] search(Vector query, int k) throws LinAlgException {
+		return search(query, k, ExecutionContext.getDefault());
+	}
+
+	/** Returns the (up to) k best stored vectors for query, best first, on the given context
+	 *
+	 * @param query
+	 * @param k
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if query does not have dimension getDim() or a non-finite entry,
+	 *         or k is < 1
+	 */
+	public Hit[] search(Vector query, int k, ExecutionContext ctx) throws LinAlgException {
+		if (query.getDim() != _nDim)
+			throw new LinAlgException("Cannot search an index of dimension " + _nDim + " with a query of dimension " + query.getDim());
+		checkFinite(query.getValues(), 0, 1, "search with a query");
+		return searchBatch(query.getValues(), 0, 1, _nDim, 1, k, ctx)[0];
+	}
+
+	/** Returns the (up to) k best stored vectors for each row of queries, best first
+	 *
+	 * @param queries
+	 * @param k
+	 * @return
+	 * @throws LinAlgException if queries does not have getDim() columns or has a non-finite entry,
+	 *         or k is < 1
+	 */
+	public Hit[][] search(Matrix queries, int k) throws LinAlgException {
+		return search(queries, k, ExecutionContext.getDefault());
+	}
+
+	/** Returns the (up to) k best stored vectors for each row of queries, best first, on the
+	 *  given context; the whole batch is scored in one pass over the index
+	 *
+	 * @param queries
+	 * @param k
+	 * @param ctx
+	 * @return
+	 * @throws LinAlgException if queries does not have getDim() columns or has a non-finite entry,
+	 *         or k is < 1
+	 */
+	public Hit[][] search(Matrix queries, int k, ExecutionContext ctx) throws LinAlgException {
+		if (queries.getNumCols() != _nDim)
+			throw new LinAlgException("Cannot search an index of dimension " + _nDim + " with queries of dimension " + queries.getNumCols());
+		for (int row = 0; row < queries.getNumRows(); row++)
+			checkFinite(queries.getData(), queries.getOffset() + row * queries.getRowStride(), queries.getColStride(), "search with query " + row);
+		return searchBatch(queries.getData(), queries.getOffset(), queries.getColStride(), queries.getRowStride(), queries.getNumRows(), k, ctx);
+	}
+
+	/** Scores nq queries (query q, entry i at src[off + q * rs + i * cs]) against every slot */
+	private Hit[][] searchBatch(double[] src, int off, int cs, int rs, int nq, int k, ExecutionContext ctx) throws LinAlgException {
+		if (k < 1)
+			throw new LinAlgException("Number of results " + k + " cannot be less than 1");
+		int d = _nDim, n = _nSize;
+		// The queries, packed row-major as doubles (NONE) or floats (quantized), and the per-query
+		// factor of the metric: 1 / |q| for COSINE, |q|^2 for L2
+		double[] qd = _quantization == Quantization.NONE ? new double[nq * d] : null;
+		float[] qf = qd == null ? new float[nq * d] : null;
+		double[] qAux = new double[nq];
+		for (int q = 0; q < nq; q++) {
+			double sq = 0.0;
+			for (int i = 0; i < d; i++) {
+				double x = src[off + q * rs + i * cs];
+				if (qd != null)
+					qd[q * d + i] = x;
+				else
+					qf[q * d + i] = (float)x;
+				sq += x * x;
+			}
+			qAux[q] = _metric == Metric.COSINE ? (sq == 0.0 ? 0.0 : 1.0 / Math.sqrt(sq)) : sq;
+		}
+		int kk = Math.min(k, n);
+		Hit[][] results = new Hit[nq][];
+		if (kk == 0) {
+			for (int q = 0; q < nq; q++)
+				results[q] = new Hit[0];
+			return results;
+		}
+		// One contiguous range of slots (and one heap per query) per thread of the pool
+		int chunks = 1;
+		if (ctx.shouldSplit((long)n * d * nq))
+			chunks = Math.max(1, Math.min(ctx.getPool().getParallelism(), (n + BLOCK - 1) / BLOCK));
+		TopK[][] heaps = new TopK[chunks][];
+		int nChunks = chunks;
+		ctx.forRange(chunks, 1, (lo, hi) -> {
+			for (int t = lo; t < hi; t++)
+				heaps[t] = scan((int)((long)n * t / nChunks), (int)((long)n * (t + 1) / nChunks), qd, qf, qAux, nq, kk);
+		});
+		for (int q = 0; q < nq; q++) {
+			TopK top = heaps[0][q];
+			for (int t = 1; t < chunks; t++)
+				top.offerAll(heaps[t][q]);
+			results[q] = top.toHits(_metric == Metric.L2 ? qAux[q] : Double.NaN);
+		}
+		return results;
+	}
+
+	/** Scores slots [s0, s1) against every query, BLOCK slots at a time, keeping the best kk per query */
+	private TopK[] scan(int s0, int s1, double[] qd, float[] qf, double[] qAux, int nq, int kk) {
+		int d = _nDim;
+		TopK[] top = new TopK[nq];
+		for (int q = 0; q < nq; q++)
+			top[q] = new TopK(kk);
+		for (int b0 = s0; b0 < s1; b0 += BLOCK) {
+			int b1 = Math.min(s1, b0 + BLOCK);
+			for (int q = 0; q < nq; q++) {
+				TopK heap = top[q];
+				int qOff = q * d;
+				for (int s = b0; s < b1; s++) {
+					double dot;
+					switch (_quantization) {
+					case FLOAT16:
+						dot = VectorKernels.INSTANCE.dotHalf(qf, qOff, _asData, s * d, d);
+						break;
+					case INT8:
+						dot = (double)VectorKernels.INSTANCE.dotInt8(qf, qOff, _abData, s * d, d) * _afScale[s];
+						break;
+					default:
+						dot = VectorKernels.INSTANCE.dot(qd, qOff, _adData, s * d, d);
+					}
+					double score;
+					switch (_metric) {
+					case COSINE:
+						score = dot * _adAux[s] * qAux[q];
+						break;
+					case L2:
+						score = 2.0 * dot - _adAux[s]; // |q - x|^2 = |q|^2 - score, so higher is closer
+						break;
+					default:
+						score = dot;
+					}
+					heap.offer(score, _anIdOfSlot[s]);
+				}
+			}
+		}
+		return top;
+	}
+
+	/** Throws unless the getDim() entries at src[off + i * stride] are all finite; what names the
+	 *  rejected operation in the message
+	 */
+	private void checkFinite(double[] src, int off, int stride, String what) throws LinAlgException {
+		for (int i = 0; i < _nDim; i++)
+			if (!Double.isFinite(src[off + i * stride]))
+				throw new LinAlgException("Cannot " + what + " with a non-finite entry at index " + i);
+	}
+
+	/** Encodes the (already checked) vector at src[off + i * stride] into a new slot and returns its id */
+	private int add(double[] src, int off, int stride) throws LinAlgException {
+		ensureCapacity(_nSize + 1);
+		int slot = _nSize, base = slot * _nDim;
+		switch (_quantization) {
+		case FLOAT16:
+			for (int i = 0; i < _nDim; i++)
+				_asData[base + i] = toHalf((float)src[off + i * stride]);
+			break;
+		case INT8:
+			double max = 0.0;
+			for (int i = 0; i < _nDim; i++)
+				max = Math.max(max, Math.abs(src[off + i * stride]));
+			float scale = (float)(max / 127.0);
+			_afScale[slot] = scale;
+			for (int i = 0; i < _nDim; i++)
+				_abData[base + i] = scale == 0.0f ? 0 : (byte)Math.max(-127, Math.min(127, Math.round(src[off + i * stride] / scale)));
+			break;
+		default:
+			for (int i = 0; i < _nDim; i++)
+				_adData[base + i] = src[off + i * stride];
+		}
+		if (_adAux != null) {
+			double sq = 0.0; // Of the decoded vector, so scores are consistent with what is stored
+			for (int i = 0; i < _nDim; i++) {
+				double x = entry(slot, base + i);
+				sq += x * x;
+			}
+			_adAux[slot] = _metric == Metric.L2 ? sq : (sq == 0.0 ? 0.0 : 1.0 / Math.sqrt(sq));
+		}
+		if (_nNextId == _anSlotOfId.length)
+			_anSlotOfId = Arrays.copyOf(_anSlotOfId, Math.max(16, _anSlotOfId.length * 2));
+		int id = _nNextId++;
+		_anSlotOfId[id] = slot;
+		_anIdOfSlot[slot] = id;
+		_nSize++;
+		return id;
+	}
+
+	/** Decoded entry at position p of the storage (which is in slot) */
+	private double entry(int slot, int p) {
+		switch (_quantization) {
+		case FLOAT16:
+			return VectorKernels.halfToFloat(_asData[p]);
+		case INT8:
+			return (double)_abData[p] * _afScale[slot];
+		default:
+			return _adData[p];
+		}
+	}
+
+	private void copySlot(int from, int to) {
+		int d = _nDim;
+		switch (_quantization) {
+		case FLOAT16:
+			System.arraycopy(_asData, from * d, _asData, to * d, d);
+			break;
+		case INT8:
+			System.arraycopy(_abData, from * d, _abData, to * d, d);
+			_afScale[to] = _afScale[from];
+			break;
+		default:
+			System.arraycopy(_adData, from * d, _adData, to * d, d);
+		}
+		if (_adAux != null)
+			_adAux[to] = _adAux[from];
+		_anIdOfSlot[to] = _anIdOfSlot[from];
+	}
+
+	private void ensureCapacity(int slots) throws LinAlgException {
+		if (slots <= _nCapacity)
+			return;
+		if ((long)slots * _nDim > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("An index of " + slots + " vectors of dimension " + _nDim + " exceeds the maximum array size");
+		long grown = Math.max(slots, Math.max(16, 2L * _nCapacity));
+		allocate((int)Math.min(grown, (Integer.MAX_VALUE - 8) / _nDim));
+	}
+
+	/** Resizes every per-slot array to capacity slots, keeping the stored ones */
+	private void allocate(int capacity) {
+		int entries = capacity * _nDim;
+		switch (_quantization) {
+		case FLOAT16:
+			_asData = _asData == null ? new short[entries] : Arrays.copyOf(_asData, entries);
+			break;
+		case INT8:
+			_abData = _abData == null ? new byte[entries] : Arrays.copyOf(_abData, entries);
+			_afScale = _afScale == null ? new float[capacity] : Arrays.copyOf(_afScale, capacity);
+			break;
+		default:
+			_adData = _adData == null ? new double[entries] : Arrays.copyOf(_adData, entries);
+		}
+		if (_metric != Metric.INNER_PRODUCT)
+			_adAux = _adAux == null ? new double[capacity] : Arrays.copyOf(_adAux, capacity);
+		_anIdOfSlot = _anIdOfSlot == null ? new int[capacity] : Arrays.copyOf(_anIdOfSlot, capacity);
+		_nCapacity = capacity;
+	}
+
+	/** Rounds f to the nearest half-precision value (ties to even), saturating at +-65504 */
+	static short toHalf(float f) {
+		int sign = (Float.floatToRawIntBits(f) >>> 16) & 0x8000;
+		float abs = Math.abs(f);
+		if (abs >= 65520.0f) // Would round to infinity
+			return (short)(sign | 0x7bff);
+		if (abs < 0x1p-14f) // Subnormal half: a multiple of 2^-24
+			return (short)(sign | (int)Math.rint(abs * 0x1p24f));
+		int bits = Float.floatToRawIntBits(abs);
+		bits += 0x0fff + ((bits >>> 13) & 1); // Round the 13 dropped mantissa bits, ties to even
+		return (short)(sign | ((bits >>> 13) - ((127 - 15) << 10)));
+	}
+
+	/** The best kk (score, id) pairs seen so far: a min-heap whose root is the worst of them.
+	 *  Higher scores are better, and among equal scores the smaller id. */
+	private static final class TopK {
+		private final double[] _adScore;
+		private final int[] _anId;
+		private int _nSize;
+
+		TopK(int k) {
+			_adScore = new double[k];
+			_anId = new int[k];
+		}
+
+		void offer(double score, int id) {
+			if (_nSize < _adScore.length) {
+				int i = _nSize++;
+				while (i > 0) { // Sift up
+					int parent = (i - 1) >>> 1;
+					if (!worse(score, id, _adScore[parent], _anId[parent]))
+						break;
+					_adScore[i] = _adScore[parent];
+					_anId[i] = _anId[parent];
+					i = parent;
+				}
+				_adScore[i] = score;
+				_anId[i] = id;
+			} else if (worse(_adScore[0], _anId[0], score, id)) {
+				siftDown(score, id, _nSize);
+			}
+		}
+
+		void offerAll(TopK other) {
+			for (int i = 0; i < other._nSize; i++)
+				offer(other._adScore[i], other._anId[i]);
+		}
+
+		/** Empties the heap into hits, best first; for L2, qSq = |q|^2 turns scores into distances */
+		Hit[] toHits(double qSq) {
+			Hit[] hits = new Hit[_nSize];
+			for (int n = _nSize; n > 0; n--) { // Repeatedly take the worst, filling from the back
+				double score = _adScore[0];
+				int id = _anId[0];
+				siftDown(_adScore[n - 1], _anId[n - 1], n - 1);
+				hits[n - 1] = new Hit(id, Double.isNaN(qSq) ? score : Math.max(0.0, qSq - score));
+			}
+			_nSize = 0;
+			return hits;
+		}
+
+		/** Places (score, id) at the root of a heap of size entries and sifts it down */
+		private void siftDown(double score, int id, int size) {
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && worse(_adScore[child + 1], _anId[child + 1], _adScore[child], _anId[child]))
+					child++;
+				if (!worse(_adScore[child], _anId[child], score, id))
+					break;
+				_adScore[i] = _adScore[child];
+				_anId[i] = _anId[child];
+				i = child;
+			}
+			if (size > 0) {
+				_adScore[i] = score;
+				_anId[i] = id;
+			}
+		}
+
+		private static boolean worse(double s1, int id1, double s2, int id2) {
+			return s1 < s2 || (s1 == s2 && id1 > id2);
+		}
+	}
+}
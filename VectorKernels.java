@@ -0,0 +1,214 @@
+package linalg;
+
+/*** The innermost loops behind Vector and Matrix: inner products, elementwise maps,
+ *   scalar maps and the fused BLAS level-1 updates over plain double[] ranges, plus the
+ *   float[] inner products behind FloatVector and FloatMatrix and the quantized (int8 and
+ *   half-precision) inner products behind VectorIndex.  (Their elementwise float
+ *   loops are simple enough for the JIT to vectorize on its own; reductions are not, since
+ *   it may not reorder floating-point sums.)
+ *
+ *   INSTANCE is chosen once, when the class is first used.  If the jdk.incubator.vector
+ *   module is available (run with --add-modules jdk.incubator.vector) the explicit SIMD
+ *   implementation in SimdKernels is used; otherwise, or when the system property
+ *   linalg.simd is set to false, the plain scalar loops below are used.  Because INSTANCE
+ *   is static final the JIT sees a single receiver type and inlines the calls.
+ *
+ *   Note: SimdKernels lives in its own source directory, simd/, because it alone must be
+ *   compiled with --add-modules jdk.incubator.vector; the rest of the package compiles
+ *   without it, and runs with the scalar loops when simd/ is left out altogether.
+ *
+ */
+abstract class VectorKernels {
+
+	static final VectorKernels INSTANCE = load();
+
+	/** Returns sum over i of a[aOff + i] * b[bOff + i] for i in [0, n) */
+	abstract double dot(double[] a, int aOff, double[] b, int bOff, int n);
+
+	/** out[i] = a[i] + b[i] for i in [lo, hi) (out may be a or b) */
+	abstract void add(double[] a, double[] b, double[] out, int lo, int hi);
+
+	/** out[i] = a[i] * b[i] for i in [lo, hi) (out may be a or b) */
+	abstract void mult(double[] a, double[] b, double[] out, int lo, int hi);
+
+	/** out[i] = a[i] + d for i in [lo, hi) (out may be a) */
+	abstract void scalarAdd(double[] a, double d, double[] out, int lo, int hi);
+
+	/** out[i] = a[i] * d for i in [lo, hi) (out may be a) */
+	abstract void scalarMult(double[] a, double d, double[] out, int lo, int hi);
+
+	/** y[yOff + i] += alpha * x[xOff + i] for i in [0, n) */
+	abstract void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n);
+
+	/** y[i] = alpha * x[i] + beta * y[i] for i in [lo, hi) */
+	abstract void axpby(double alpha, double[] x, double beta, double[] y, int lo, int hi);
+
+	/** Returns sum over i of |a[off + i]| for i in [0, n) */
+	abstract double asum(double[] a, int off, int n);
+
+	/** Stores a.b, a.a and b.b over [0, n) into out[0], out[1] and out[2] in a single pass */
+	abstract void dotAndSquares(double[] a, double[] b, int n, double[] out);
+
+	/** Returns sum over i of a[aOff + i] * b[bOff + i] for i in [0, n), accumulated in float */
+	abstract float dotFloat(float[] a, int aOff, float[] b, int bOff, int n);
+
+	/** Returns sum over i of a[aOff + i] * b[bOff + i] for i in [0, n), accumulated in double
+	 *  (each product of two floats is exact in double, so only the additions round) */
+	abstract double dotFloatWide(float[] a, int aOff, float[] b, int bOff, int n);
+
+	/** Like dotFloatWide, but the double sum is Kahan-compensated as well */
+	abstract double dotFloatKahan(float[] a, int aOff, float[] b, int bOff, int n);
+
+	/** Returns sum over i of q[qOff + i] * c[cOff + i] for i in [0, n), where c holds int8
+	 *  codes, accumulated in float */
+	abstract float dotInt8(float[] q, int qOff, byte[] c, int cOff, int n);
+
+	/** Returns sum over i of q[qOff + i] * halfToFloat(c[cOff + i]) for i in [0, n), where c
+	 *  holds finite IEEE 754 half-precision values, accumulated in float */
+	abstract float dotHalf(float[] q, int qOff, short[] c, int cOff, int n);
+
+	/** Short name of the implementation in use (for diagnostics and benchmarks) */
+	abstract String getName();
+
+	/** Decodes a finite IEEE 754 half-precision value.  Shifting the 15 magnitude bits into
+	 *  place gives a float 2^112 times too small, for normal and subnormal halves alike, and
+	 *  the multiplication that fixes that is exact (SimdKernels.dotHalf does the same per lane).
+	 *
+	 * @param h
+	 * @return
+	 */
+	static float halfToFloat(short h) {
+		float f = Float.intBitsToFloat((h & 0x7fff) << 13) * 0x1p112f;
+		return (h & 0x8000) != 0 ? -f : f;
+	}
+
+	private static VectorKernels load() {
+		if (!"false".equalsIgnoreCase(System.getProperty("linalg.simd"))) {
+			try {
+				return (VectorKernels)Class.forName("linalg.SimdKernels").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// The incubator module is not resolved in this VM: fall through to the scalar loops
+			}
+		}
+		return new Scalar();
+	}
+
+	/** The plain loops (these are exactly the loops Vector and Matrix used before SIMD) */
+	static final class Scalar extends VectorKernels {
+
+		@Override
+		double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+			double sum = 0.0;
+			for (int i = 0; i < n; i++)
+				sum += a[aOff + i] * b[bOff + i];
+			return sum;
+		}
+
+		@Override
+		void add(double[] a, double[] b, double[] out, int lo, int hi) {
+			for (int i = lo; i < hi; i++)
+				out[i] = a[i] + b[i];
+		}
+
+		@Override
+		void mult(double[] a, double[] b, double[] out, int lo, int hi) {
+			for (int i = lo; i < hi; i++)
+				out[i] = a[i] * b[i];
+		}
+
+		@Override
+		void scalarAdd(double[] a, double d, double[] out, int lo, int hi) {
+			for (int i = lo; i < hi; i++)
+				out[i] = a[i] + d;
+		}
+
+		@Override
+		void scalarMult(double[] a, double d, double[] out, int lo, int hi) {
+			for (int i = lo; i < hi; i++)
+				out[i] = a[i] * d;
+		}
+
+		@Override
+		void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n) {
+			for (int i = 0; i < n; i++)
+				y[yOff + i] += alpha * x[xOff + i];
+		}
+
+		@Override
+		void axpby(double alpha, double[] x, double beta, double[] y, int lo, int hi) {
+			for (int i = lo; i < hi; i++)
+				y[i] = alpha * x[i] + beta * y[i];
+		}
+
+		@Override
+		double asum(double[] a, int off, int n) {
+			double sum = 0.0;
+			for (int i = 0; i < n; i++)
+				sum += Math.abs(a[off + i]);
+			return sum;
+		}
+
+		@Override
+		void dotAndSquares(double[] a, double[] b, int n, double[] out) {
+			double ab = 0.0, aa = 0.0, bb = 0.0;
+			for (int i = 0; i < n; i++) {
+				double ai = a[i], bi = b[i];
+				ab += ai * bi;
+				aa += ai * ai;
+				bb += bi * bi;
+			}
+			out[0] = ab;
+			out[1] = aa;
+			out[2] = bb;
+		}
+
+		@Override
+		float dotFloat(float[] a, int aOff, float[] b, int bOff, int n) {
+			float sum = 0.0f;
+			for (int i = 0; i < n; i++)
+				sum += a[aOff + i] * b[bOff + i];
+			return sum;
+		}
+
+		@Override
+		double dotFloatWide(float[] a, int aOff, float[] b, int bOff, int n) {
+			double sum = 0.0;
+			for (int i = 0; i < n; i++)
+				sum += (double)a[aOff + i] * b[bOff + i];
+			return sum;
+		}
+
+		@Override
+		double dotFloatKahan(float[] a, int aOff, float[] b, int bOff, int n) {
+			double sum = 0.0, comp = 0.0; // comp holds the low-order bits lost by the last addition
+			for (int i = 0; i < n; i++) {
+				double y = (double)a[aOff + i] * b[bOff + i] - comp;
+				double t = sum + y;
+				comp = (t - sum) - y;
+				sum = t;
+			}
+			return sum;
+		}
+
+		@Override
+		float dotInt8(float[] q, int qOff, byte[] c, int cOff, int n) {
+			float sum = 0.0f;
+			for (int i = 0; i < n; i++)
+				sum += q[qOff + i] * c[cOff + i];
+			return sum;
+		}
+
+		@Override
+		float dotHalf(float[] q, int qOff, short[] c, int cOff, int n) {
+			float sum = 0.0f;
+			for (int i = 0; i < n; i++)
+				sum += q[qOff + i] * halfToFloat(c[cOff + i]);
+			return sum;
+		}
+
+		@Override
+		String getName() {
+			return "scalar";
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A per-thread arena of scratch Vectors and Matrices, handed out by shape so that a
+ *   steady-state loop built on the "into" operations allocates nothing, e.g.,
+ *
+ *     Workspace ws = Workspace.get();
+ *     for (...) {
+ *         int mark = ws.mark();
+ *         Vector h = ws.vector(hidden);
+ *         Matrix.Multiply(w1, x, h);
+ *         ...
+ *         ws.release(mark);       // everything handed out since mark() can be reused
+ *     }
+ *
+ *   After the first iteration every request is served from the pools.  Scratch objects keep
+ *   whatever values they held when released, so overwrite them before reading (all "into"
+ *   operations do).  Do not keep a reference past release().  An object whose shape changed
+ *   while it was handed out (changeDim() or append() on a Vector, transposeInPlace() on a
+ *   rectangular Matrix) goes back to the pool of its new shape.
+ *
+ *   A Workspace is not thread-safe; get() returns the calling thread's own instance.
+ *
+ */
+public final class Workspace {
+
+	private static final ThreadLocal<Workspace> CURRENT = ThreadLocal.withInitial(Workspace::new);
+
+	private final ShapeMap _vectors = new ShapeMap(); // dim -> Pool of Vectors
+	private final ShapeMap _matrices = new ShapeMap(); // (rows << 32 | cols) -> Pool of Matrices
+	private Pool[] _aLog = new Pool[16];               // Pool of each object handed out, in order
+	private int _nLogSize;
+
+	/** Creates an empty workspace (most code should use get() instead)
+	 * 
+	 */
+	public Workspace() {
+	}
+
+	/** Returns the calling thread's workspace
+	 * 
+	 * @return
+	 */
+	public static Workspace get() {
+		return CURRENT.get();
+	}
+
+	/** Hands out a scratch Vector of dimension dim (contents are unspecified)
+	 * 
+	 * @param dim
+	 * @return
+	 * @throws LinAlgException if dim is < 1
+	 */
+	public Vector vector(int dim) throws LinAlgException {
+		if (dim <= 0) {
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		}
+		Pool pool = _vectors.get(dim);
+		if (pool.hasFree())
+			return (Vector)take(pool);
+		Vector v = new Vector(dim);
+		pool.add(v);
+		return (Vector)take(pool);
+	}
+
+	/** Hands out a scratch Matrix of the given shape (contents are unspecified)
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @return
+	 * @throws LinAlgException if either dimension is < 1
+	 */
+	public Matrix matrix(int rows, int cols) throws LinAlgException {
+		if (rows <= 0 || cols <= 0) {
+			throw new LinAlgException("Both dimensions (" + rows + "," + cols + ") must be greater than 0");
+		}
+		Pool pool = _matrices.get(((long)rows << 32) | cols);
+		if (pool.hasFree())
+			return (Matrix)take(pool);
+		Matrix m = new Matrix(rows, cols);
+		pool.add(m);
+		return (Matrix)take(pool);
+	}
+
+	/** Returns a marker for the objects handed out so far (see release)
+	 * 
+	 * @return
+	 */
+	public int mark() {
+		return _nLogSize;
+	}
+
+	/** Makes every object handed out since the given mark() available again; marks nest,
+	 *  so an inner scope can release its scratch without touching the outer scope's
+	 * 
+	 * @param mark
+	 * @throws LinAlgException if mark is not a live marker of this workspace
+	 */
+	public void release(int mark) throws LinAlgException {
+		if (mark < 0 || mark > _nLogSize) {
+			throw new LinAlgException("Mark " + mark + " is out of bounds [0, " + _nLogSize + "]");
+		}
+		releaseTo(mark);
+	}
+
+	/** Makes every object handed out so far available again (same as release(0))
+	 * 
+	 */
+	public void reset() {
+		releaseTo(0);
+	}
+
+	/** Drops all pooled objects so the garbage collector can reclaim them
+	 * 
+	 */
+	public void clear() {
+		reset();
+		_vectors.clear();
+		_matrices.clear();
+	}
+
+	private void releaseTo(int mark) {
+		while (_nLogSize > mark) {
+			Pool pool = _aLog[--_nLogSize];
+			_aLog[_nLogSize] = null;
+			// Releases are last in, first out, so the object released is the pool's last one in use
+			Object item = pool._aItems[--pool._nUsed];
+			long key = item instanceof Vector ? ((Vector)item).getDim()
+					: ((long)((Matrix)item).getNumRows() << 32) | ((Matrix)item).getNumCols();
+			if (key != pool._lKey) {
+				pool.remove(pool._nUsed);
+				(item instanceof Vector ? _vectors : _matrices).get(key).add(item);
+			}
+		}
+	}
+
+	/** Hands out the next free object of pool and records it for release() */
+	private Object take(Pool pool) {
+		if (_nLogSize == _aLog.length)
+			_aLog = Arrays.copyOf(_aLog, 2 * _nLogSize);
+		_aLog[_nLogSize++] = pool;
+		return pool._aItems[pool._nUsed++];
+	}
+
+	/** Objects of one shape; the first _nUsed are handed out, the rest are free */
+	private static final class Pool {
+		private final long _lKey; // The shape of the objects in this pool
+		private Object[] _aItems = new Object[4];
+		private int _nSize;
+		private int _nUsed;
+
+		Pool(long key) {
+			_lKey = key;
+		}
+
+		boolean hasFree() {
+			return _nUsed < _nSize;
+		}
+
+		void add(Object item) {
+			if (_nSize == _aItems.length)
+				_aItems = Arrays.copyOf(_aItems, 2 * _nSize);
+			_aItems[_nSize++] = item;
+		}
+
+		/** Removes the free object at index i (>= _nUsed), moving the last one into its place */
+		void remove(int i) {
+			_aItems[i] = _aItems[--_nSize];
+			_aItems[_nSize] = null;
+		}
+	}
+
+	/** Open-addressing map from a shape key to its Pool, so lookups do not box the key */
+	private static final class ShapeMap {
+		private long[] _alKeys = new long[16];
+		private Pool[] _aPools = new Pool[16];
+		private int _nSize;
+
+		/** Returns the pool for key, creating it on first use */
+		Pool get(long key) {
+			int mask = _alKeys.length - 1;
+			for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+				Pool pool = _aPools[i];
+				if (pool == null)
+					return insert(key, i);
+				if (_alKeys[i] == key)
+					return pool;
+			}
+		}
+
+		void clear() {
+			Arrays.fill(_aPools, null);
+			_nSize = 0;
+		}
+
+		private Pool insert(long key, int slot) {
+			if (2 * (_nSize + 1) > _alKeys.length) { // Keep the load factor at or below 1/2
+				grow();
+				return get(key);
+			}
+			Pool pool = new Pool(key);
+			_alKeys[slot] = key;
+			_aPools[slot] = pool;
+			_nSize++;
+			return pool;
+		}
+
+		private void grow() {
+			long[] oldKeys = _alKeys;
+			Pool[] oldPools = _aPools;
+			_alKeys = new long[2 * oldKeys.length];
+			_aPools = new Pool[2 * oldPools.length];
+			int mask = _alKeys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldPools[j] == null)
+					continue;
+				int i = hash(oldKeys[j]) & mask;
+				while (_aPools[i] != null)
+					i = (i + 1) & mask;
+				_alKeys[i] = oldKeys[j];
+				_aPools[i] = oldPools[j];
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads consecutive shapes
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+}
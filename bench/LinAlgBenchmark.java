@@ -0,0 +1,478 @@
+package linalg.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import linalg.BandedMatrix;
+import linalg.BiCGSTAB;
+import linalg.ConcurrentAccumulatorVector;
+import linalg.ConjugateGradient;
+import linalg.DiagonalMatrix;
+import linalg.FloatMatrix;
+import linalg.FloatVector;
+import linalg.GMRES;
+import linalg.GramAccumulator;
+import linalg.IterativeSolver;
+import linalg.LinearOperators;
+import linalg.LUDecomposition;
+import linalg.LinAlgException;
+import linalg.Matrix;
+import linalg.MatrixBatch;
+import linalg.ResultCache;
+import linalg.SparseMatrix;
+import linalg.SymmetricMatrix;
+import linalg.TriangularMatrix;
+import linalg.Vector;
+import linalg.VectorExpr;
+import linalg.VectorIndex;
+
+/*** A self-contained micro-benchmark harness for the linalg package (no build tool or
+ *   external libraries needed, just a JDK).
+ *
+ *   Every benchmark runs at a small, medium and large size.  Each one is warmed up for a
+ *   fixed time so the JIT has compiled the kernels, then measured over several timed
+ *   iterations.  For every benchmark the harness reports:
+ *
+ *     ops/s    mean and standard deviation over the measured iterations
+ *     GFLOP/s  from the benchmark's flop count per operation ("-" when it does no arithmetic)
+ *     B/op     bytes allocated per operation, read from the per-thread allocation counter
+ *              of com.sun.management.ThreadMXBean (the same counter JMH's GC profiler reads)
+ *
+ *   Compile and run from the repository root:
+ *
+ *     javac -d out *.java bench/*.java
+ *     javac --add-modules jdk.incubator.vector -cp out -d out simd/*.java
+ *     java --add-modules jdk.incubator.vector -cp out linalg.bench.LinAlgBenchmark [options] [regex]
+ *
+ *   Options: -w <seconds> warmup per benchmark (default 1), -i <count> measured iterations
+ *   (default 5), -t <seconds> per iteration (default 1).  The optional regex selects
+ *   benchmarks by name, e.g., "Multiply.*large".  Leave out --add-modules to measure the
+ *   scalar kernels instead of the SIMD ones.
+ *
+ */
+public class LinAlgBenchmark {
+
+	private static final String[] SIZE_NAMES = { "small", "medium", "large" };
+	private static final int[] VECTOR_SIZES = { 16, 4096, 1 << 20 };
+	private static final int[] MATRIX_SIZES = { 8, 128, 1024 };
+	private static final int[] MATVEC_SIZES = { 16, 512, 4096 };
+	private static final int BATCH_SIZE = 4096;
+
+	private static volatile double _dSink; // Results are folded in here so the JIT cannot drop the work
+
+	/** One measured operation at one size */
+	private static abstract class Benchmark {
+		final String _sName;
+		final double _dFlops; // Floating point operations per call of run() (0 if not meaningful)
+
+		Benchmark(String name, double flops) {
+			_sName = name;
+			_dFlops = flops;
+		}
+
+		/** Performs the operation once and returns a value derived from its result */
+		abstract double run() throws LinAlgException;
+	}
+
+	/** Result of measuring one benchmark */
+	private static final class Result {
+		double _dOpsPerSec;
+		double _dOpsStdDev;
+		double _dBytesPerOp;
+	}
+
+	public static void main(String[] args) throws Exception {
+		double warmup = 1.0, iterTime = 1.0;
+		int iterations = 5;
+		Pattern filter = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-w"))
+				warmup = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-i"))
+				iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t"))
+				iterTime = Double.parseDouble(args[++i]);
+			else
+				filter = Pattern.compile(args[i]);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		System.out.println(String.format(Locale.ROOT, "%-40s %14s %10s %10s %14s", "Benchmark", "ops/s", "+-", "GFLOP/s", "B/op"));
+		for (Benchmark b : createBenchmarks()) {
+			if (filter != null && !filter.matcher(b._sName).find())
+				continue;
+			Result r = measure(b, threads, warmup, iterations, iterTime);
+			String gflops = b._dFlops > 0 ? String.format(Locale.ROOT, "%10.3f", r._dOpsPerSec * b._dFlops / 1e9) : String.format("%10s", "-");
+			System.out.println(String.format(Locale.ROOT, "%-40s %14.1f %10.1f %s %14.1f",
+					b._sName, r._dOpsPerSec, r._dOpsStdDev, gflops, r._dBytesPerOp));
+		}
+		if (_dSink == 42.4242) // Practically never true, but the JIT cannot know that
+			System.out.println(_dSink);
+	}
+
+	/** Warms b up for warmup seconds, then runs iterations timed iterations of iterTime seconds each
+	 *
+	 */
+	private static Result measure(Benchmark b, com.sun.management.ThreadMXBean threads,
+			double warmup, int iterations, double iterTime) throws LinAlgException {
+		long tid = Thread.currentThread().getId();
+		runFor(b, (long)(warmup * 1e9));
+		double[] opsPerSec = new double[iterations];
+		long totalOps = 0, totalBytes = 0;
+		for (int it = 0; it < iterations; it++) {
+			long bytes0 = threads.getThreadAllocatedBytes(tid);
+			long t0 = System.nanoTime();
+			long ops = runFor(b, (long)(iterTime * 1e9));
+			long elapsed = System.nanoTime() - t0;
+			totalBytes += threads.getThreadAllocatedBytes(tid) - bytes0;
+			totalOps += ops;
+			opsPerSec[it] = ops * 1e9 / elapsed;
+		}
+		Result r = new Result();
+		for (double v : opsPerSec)
+			r._dOpsPerSec += v / iterations;
+		for (double v : opsPerSec)
+			r._dOpsStdDev += (v - r._dOpsPerSec) * (v - r._dOpsPerSec) / Math.max(1, iterations - 1);
+		r._dOpsStdDev = Math.sqrt(r._dOpsStdDev);
+		r._dBytesPerOp = (double)totalBytes / totalOps;
+		return r;
+	}
+
+	/** Calls b.run() in batches until at least nanos have elapsed; returns the number of calls
+	 *
+	 */
+	private static long runFor(Benchmark b, long nanos) throws LinAlgException {
+		long ops = 0, batch = 1;
+		double sink = 0;
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < nanos) {
+			for (long i = 0; i < batch; i++)
+				sink += b.run();
+			ops += batch;
+			if (batch < (1 << 16))
+				batch *= 2; // Grow batches so the clock is not read after every fast operation
+		}
+		_dSink += sink;
+		return ops;
+	}
+
+	private static List<Benchmark> createBenchmarks() throws LinAlgException {
+		Random rand = new Random(42);
+		List<Benchmark> list = new ArrayList<Benchmark>();
+
+		for (int s = 0; s < SIZE_NAMES.length; s++) {
+			final int n = VECTOR_SIZES[s];
+			final String suffix = ":" + SIZE_NAMES[s] + "(" + n + ")";
+			final Vector x = randomVector(n, rand), y = randomVector(n, rand);
+			final Vector z = new Vector(x);
+			final Vector signs = new Vector(n); // Entries of +-1 keep repeated in-place products from underflowing
+			for (int i = 0; i < n; i++)
+				signs.set(i, rand.nextBoolean() ? 1.0 : -1.0);
+
+			list.add(new Benchmark("InnerProd" + suffix, 2.0 * n) {
+				double run() throws LinAlgException { return Vector.InnerProd(x, y); }
+			});
+			list.add(new Benchmark("elementwiseAdd" + suffix, n) {
+				double run() throws LinAlgException { return x.elementwiseAdd(y).get(0); }
+			});
+			final Vector out = new Vector(n);
+			list.add(new Benchmark("elementwiseAddInto" + suffix, n) {
+				double run() throws LinAlgException { x.elementwiseAdd(y, out); return out.get(0); }
+			});
+			list.add(new Benchmark("elementwiseAddInPlace" + suffix, n) {
+				double run() throws LinAlgException { z.elementwiseAddInPlace(y); return z.get(0); }
+			});
+			list.add(new Benchmark("elementwiseMult" + suffix, n) {
+				double run() throws LinAlgException { return x.elementwiseMult(y).get(0); }
+			});
+			list.add(new Benchmark("elementwiseMultInPlace" + suffix, n) {
+				double run() throws LinAlgException { z.elementwiseMultInPlace(signs); return z.get(0); }
+			});
+			list.add(new Benchmark("scalarAdd" + suffix, n) {
+				double run() throws LinAlgException { return x.scalarAdd(0.5).get(0); }
+			});
+			list.add(new Benchmark("scalarAddInPlace" + suffix, n) {
+				double d = 0.5;
+				double run() throws LinAlgException { d = -d; z.scalarAddInPlace(d); return z.get(0); }
+			});
+			list.add(new Benchmark("scalarMult" + suffix, n) {
+				double run() throws LinAlgException { return x.scalarMult(1.0001).get(0); }
+			});
+			list.add(new Benchmark("scalarMultInPlace" + suffix, n) {
+				double d = 2.0;
+				double run() throws LinAlgException { d = 1.0 / d; z.scalarMultInPlace(d); return z.get(0); }
+			});
+			// (2x + y) .* x evaluated eagerly (two temporaries) and as one fused VectorExpr pass
+			list.add(new Benchmark("chain:eager" + suffix, 3.0 * n) {
+				double run() throws LinAlgException { return x.scalarMult(2).elementwiseAdd(y).elementwiseMult(x).get(0); }
+			});
+			list.add(new Benchmark("chain:VectorExpr" + suffix, 3.0 * n) {
+				double run() throws LinAlgException { return VectorExpr.of(x).scalarMult(2).elementwiseAdd(y).elementwiseMult(x).eval().get(0); }
+			});
+			list.add(new Benchmark("Axpy" + suffix, 2.0 * n) {
+				double a = 1.0;
+				double run() throws LinAlgException { a = -a; Vector.Axpy(a, y, z); return z.get(0); }
+			});
+			final FloatVector fx = new FloatVector(x), fy = new FloatVector(y);
+			for (FloatVector.Accumulation acc : FloatVector.Accumulation.values()) {
+				list.add(new Benchmark("FloatVector.InnerProd(" + acc + ")" + suffix, 2.0 * n) {
+					double run() throws LinAlgException { return FloatVector.InnerProd(fx, fy, acc); }
+				});
+			}
+			final ConcurrentAccumulatorVector accumulator = new ConcurrentAccumulatorVector(n);
+			list.add(new Benchmark("ConcurrentAccumulatorVector.addInPlace" + suffix, n) {
+				double run() throws LinAlgException { accumulator.addInPlace(x); return accumulator.getDim(); }
+			});
+			// Krylov solves of diagonally dominant tridiagonal systems through the LinearOperator interface
+			SparseMatrix.Builder symmetric = new SparseMatrix.Builder(n, n), general = new SparseMatrix.Builder(n, n);
+			for (int i = 0; i < n; i++) {
+				symmetric.add(i, i, 4.0);
+				general.add(i, i, 4.0);
+				if (i > 0) {
+					symmetric.add(i, i - 1, -1.5);
+					general.add(i, i - 1, -2.0);
+				}
+				if (i < n - 1) {
+					symmetric.add(i, i + 1, -1.5);
+					general.add(i, i + 1, -0.5);
+				}
+			}
+			final SparseMatrix spd = symmetric.buildCSR(), nonsymmetric = general.buildCSR();
+			final Vector solution = new Vector(n);
+			final IterativeSolver[] solvers = { new ConjugateGradient(1e-8, 0, LinearOperators.jacobi(spd)), new BiCGSTAB(1e-8, 0), new GMRES(1e-8, 0, 10) };
+			for (final IterativeSolver solver : solvers) {
+				final SparseMatrix system = solver instanceof ConjugateGradient ? spd : nonsymmetric;
+				list.add(new Benchmark(solver.getClass().getSimpleName() + suffix, 0) {
+					double run() throws LinAlgException { solution.scalarMultInPlace(0.0); return solver.solve(system, x, solution).getIterations(); }
+				});
+			}
+			list.add(new Benchmark("Nrm2" + suffix, 2.0 * n) {
+				double run() throws LinAlgException { return Vector.Nrm2(x); }
+			});
+			list.add(new Benchmark("DotAndNorms" + suffix, 6.0 * n) {
+				final double[] res = new double[3];
+				double run() throws LinAlgException { Vector.DotAndNorms(x, y, res); return res[0]; }
+			});
+
+			// Building a vector of n entries one at a time
+			list.add(new Benchmark("append" + suffix, 0) {
+				double run() throws LinAlgException {
+					Vector v = new Vector(1);
+					for (int i = 1; i < n; i++)
+						v.append(i);
+					return v.get(n - 1);
+				}
+			});
+			list.add(new Benchmark("changeDim(+1)" + suffix, 0) {
+				double run() throws LinAlgException {
+					Vector v = new Vector(1);
+					for (int i = 1; i < n; i++) {
+						v.changeDim(i + 1);
+						v.set(i, i);
+					}
+					return v.get(n - 1);
+				}
+			});
+
+			// Text conversion is much slower per element, so it runs on smaller vectors.  Parsing
+			// is measured on single-space separated input (all that Vector(String) used to accept)
+			// so results stay comparable with older runs; textRoundTrip parses toString() directly.
+			final int textDim = Math.min(n, 1 << 14);
+			final Vector t = randomVector(textDim, rand);
+			final String text = t.toString().trim().replaceAll("\\s+", " ");
+			final String textSuffix = ":" + SIZE_NAMES[s] + "(" + textDim + ")";
+			list.add(new Benchmark("Vector(String)" + textSuffix, 0) {
+				double run() throws LinAlgException { return new Vector(text).getDim(); }
+			});
+			list.add(new Benchmark("toString" + textSuffix, 0) {
+				double run() throws LinAlgException { return t.toString().length(); }
+			});
+			list.add(new Benchmark("textRoundTrip" + textSuffix, 0) {
+				double run() throws LinAlgException { return new Vector(t.toString()).get(0); }
+			});
+		}
+
+		for (int s = 0; s < SIZE_NAMES.length; s++) {
+			final int n = MATRIX_SIZES[s];
+			final String suffix = ":" + SIZE_NAMES[s] + "(" + n + "x" + n + ")";
+			final Matrix a = randomMatrix(n, n, rand), b = randomMatrix(n, n, rand);
+
+			list.add(new Benchmark("Multiply(Matrix,Matrix)" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(a, b).get(0, 0); }
+			});
+			final FloatMatrix fa = new FloatMatrix(a), fb = new FloatMatrix(b), fc = new FloatMatrix(n, n);
+			for (FloatVector.Accumulation acc : FloatVector.Accumulation.values()) {
+				list.add(new Benchmark("FloatMatrix.Multiply(" + acc + ")" + suffix, 2.0 * n * n * n) {
+					double run() throws LinAlgException { FloatMatrix.Multiply(fa, fb, fc, acc); return fc.get(0, 0); }
+				});
+			}
+			final Matrix product = new Matrix(n, n);
+			list.add(new Benchmark("MultiplyInto(Matrix,Matrix)" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { Matrix.Multiply(a, b, product); return product.get(0, 0); }
+			});
+			list.add(new Benchmark("transpose" + suffix, 0) {
+				double run() throws LinAlgException { return a.transpose().get(0, 0); }
+			});
+			final Matrix scratch = new Matrix(a);
+			list.add(new Benchmark("transposeInPlace" + suffix, 0) {
+				double run() throws LinAlgException { scratch.transposeInPlace(); return scratch.get(0, 1); }
+			});
+			list.add(new Benchmark("getRow" + suffix, 0) {
+				int row = 0;
+				double run() throws LinAlgException { row = (row + 1) % n; return a.getRow(row).get(0); }
+			});
+			list.add(new Benchmark("power(16)" + suffix, 4 * 2.0 * n * n * n) {
+				double run() throws LinAlgException { return a.power(16).get(0, 0); }
+			});
+			list.add(new Benchmark("LUDecomposition" + suffix, 2.0 / 3.0 * n * n * n) {
+				double run() throws LinAlgException { return new LUDecomposition(a).det(); }
+			});
+			// X^T X of n rows streamed through the accumulator vs built from the whole matrix
+			final GramAccumulator gram = new GramAccumulator(n);
+			list.add(new Benchmark("GramAccumulator.addRows" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { gram.addRows(a); return gram.getGram().get(0, 0); }
+			});
+			list.add(new Benchmark("Multiply(transpose,Matrix)" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(a.transpose(), a).get(0, 0); }
+			});
+			// Structured operands: the identity as a dense Matrix vs a DiagonalMatrix, and packed triangles
+			final Matrix denseIdentity = Matrix.GetIdentity(n);
+			final DiagonalMatrix identity = DiagonalMatrix.identity(n);
+			list.add(new Benchmark("Multiply(identity,Matrix)" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(denseIdentity, a).get(0, 0); }
+			});
+			list.add(new Benchmark("Multiply(DiagonalMatrix,Matrix)" + suffix, n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(identity, a).get(0, 0); }
+			});
+			final TriangularMatrix lower = new TriangularMatrix(a, false);
+			list.add(new Benchmark("Multiply(TriangularMatrix,Matrix)" + suffix, 1.0 * n * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(lower, b).get(0, 0); }
+			});
+			final SymmetricMatrix symmetric = new SymmetricMatrix(a);
+			list.add(new Benchmark("Multiply(SymmetricMatrix,Matrix)" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(symmetric, b).get(0, 0); }
+			});
+			list.add(new Benchmark("GetIdentity" + suffix, 0) {
+				double run() throws LinAlgException { return Matrix.GetIdentity(n).get(0, 0); }
+			});
+			// Repeated requests for the same product: recomputed every time vs served by a ResultCache
+			final ResultCache cache = new ResultCache();
+			list.add(new Benchmark("ResultCache.multiply" + suffix, 2.0 * n * n * n) {
+				double run() throws LinAlgException { return cache.multiply(a, b).get(0, 0); }
+			});
+			list.add(new Benchmark("hashCode(copy)" + suffix, 0) {
+				double run() throws LinAlgException { return new Matrix(a).hashCode(); }
+			});
+		}
+
+		for (int s = 0; s < SIZE_NAMES.length; s++) {
+			final int n = MATVEC_SIZES[s];
+			final Matrix a = randomMatrix(n, n, rand);
+			final Vector x = randomVector(n, rand);
+			list.add(new Benchmark("Multiply(Matrix,Vector):" + SIZE_NAMES[s] + "(" + n + "x" + n + ")", 2.0 * n * n) {
+				double run() throws LinAlgException { return Matrix.Multiply(a, x).get(0); }
+			});
+			final Vector y = new Vector(n);
+			list.add(new Benchmark("MultiplyInto(Matrix,Vector):" + SIZE_NAMES[s] + "(" + n + "x" + n + ")", 2.0 * n * n) {
+				double run() throws LinAlgException { Matrix.Multiply(a, x, y); return y.get(0); }
+			});
+			list.add(new Benchmark("Gemv:" + SIZE_NAMES[s] + "(" + n + "x" + n + ")", 2.0 * n * n) {
+				double run() throws LinAlgException { Matrix.Gemv(1.0, a, x, 0.5, y); return y.get(0); }
+			});
+			final SymmetricMatrix symmetric = new SymmetricMatrix(a);
+			list.add(new Benchmark("apply(SymmetricMatrix):" + SIZE_NAMES[s] + "(" + n + "x" + n + ")", 2.0 * n * n) {
+				double run() throws LinAlgException { symmetric.apply(x, y); return y.get(0); }
+			});
+			final BandedMatrix tridiagonal = new BandedMatrix(a, 1, 1);
+			list.add(new Benchmark("apply(BandedMatrix):" + SIZE_NAMES[s] + "(" + n + "x" + n + ",1,1)", 6.0 * n) {
+				double run() throws LinAlgException { tridiagonal.apply(x, y); return y.get(0); }
+			});
+		}
+
+		// Top-10 inner-product search of 16 queries over 20000 vectors of dimension 128: every
+		// InnerProd over a List<Vector> vs a VectorIndex at each quantization
+		{
+			final int count = 20000, dim = 128, queries = 16, k = 10;
+			final Matrix qs = randomMatrix(queries, dim, rand);
+			final Vector[] qv = new Vector[queries];
+			for (int q = 0; q < queries; q++)
+				qv[q] = qs.getRow(q);
+			final List<Vector> stored = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+				stored.add(randomVector(dim, rand));
+			final String suffix = ":" + queries + "x" + count + "x" + dim;
+			list.add(new Benchmark("InnerProd(List<Vector>)" + suffix, 2.0 * queries * count * dim) {
+				double run() throws LinAlgException {
+					double sum = 0.0;
+					for (Vector q : qv) {
+						double best = Double.NEGATIVE_INFINITY;
+						for (Vector v : stored)
+							best = Math.max(best, Vector.InnerProd(q, v));
+						sum += best;
+					}
+					return sum;
+				}
+			});
+			for (final VectorIndex.Quantization quantization : VectorIndex.Quantization.values()) {
+				final VectorIndex index = new VectorIndex(dim, VectorIndex.Metric.INNER_PRODUCT, quantization);
+				for (Vector v : stored)
+					index.add(v);
+				list.add(new Benchmark("VectorIndex.search(" + quantization + ")" + suffix, 2.0 * queries * count * dim) {
+					double run() throws LinAlgException { return index.search(qs, k)[0][0].getScore(); }
+				});
+			}
+		}
+
+		// 4096 small transforms per op: one Matrix object each vs one MatrixBatch
+		for (int n = 3; n <= 4; n++) {
+			final int count = BATCH_SIZE;
+			final Matrix[] ms = new Matrix[count], vs = new Matrix[count];
+			for (int b = 0; b < count; b++) {
+				ms[b] = randomMatrix(n, n, rand);
+				vs[b] = randomMatrix(n, 1, rand);
+			}
+			final MatrixBatch a = MatrixBatch.of(ms), x = MatrixBatch.of(vs);
+			final MatrixBatch out = new MatrixBatch(count, n, n), outVec = new MatrixBatch(count, n, 1);
+			final String suffix = ":" + count + "x(" + n + "x" + n + ")";
+			list.add(new Benchmark("Multiply(Matrix,Matrix)" + suffix, 2.0 * n * n * n * count) {
+				double run() throws LinAlgException {
+					double sum = 0.0;
+					for (int b = 0; b < count; b++)
+						sum += Matrix.Multiply(ms[b], ms[b]).get(0, 0);
+					return sum;
+				}
+			});
+			list.add(new Benchmark("MatrixBatch.Multiply" + suffix, 2.0 * n * n * n * count) {
+				double run() throws LinAlgException { MatrixBatch.Multiply(a, a, out); return out.get(0, 0, 0); }
+			});
+			list.add(new Benchmark("MatrixBatch.Multiply(vec)" + suffix, 2.0 * n * n * count) {
+				double run() throws LinAlgException { MatrixBatch.Multiply(a, x, outVec); return outVec.get(0, 0, 0); }
+			});
+			list.add(new Benchmark("MatrixBatch.inverse" + suffix, 0) {
+				double run() throws LinAlgException { a.inverse(out); return out.get(0, 0, 0); }
+			});
+		}
+		return list;
+	}
+
+	private static Vector randomVector(int n, Random rand) throws LinAlgException {
+		Vector v = new Vector(n);
+		for (int i = 0; i < n; i++)
+			v.set(i, rand.nextDouble() * 2 - 1);
+		return v;
+	}
+
+	private static Matrix randomMatrix(int rows, int cols, Random rand) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				m.set(i, j, rand.nextDouble() * 2 - 1);
+		return m;
+	}
+}
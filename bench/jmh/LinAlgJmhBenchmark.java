@@ -0,0 +1,213 @@
+package linalg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import linalg.LinAlgException;
+import linalg.Matrix;
+import linalg.Vector;
+
+/*** The JMH suite for the linalg package: the operations of LinAlgBenchmark that every change
+ *   to Vector or Matrix should be measured on, at the same small, medium and large sizes.
+ *
+ *   JMH reports ops/s; run with the GC profiler (configured in bench/build.gradle) for the
+ *   bytes allocated per op (gc.alloc.rate.norm).  GFLOP/s is the score times the flops per op:
+ *   2n for InnerProd, n for the elementwise and scalar ops, 2n^2 for the matrix-vector
+ *   product and 2n^3 for the matrix product.
+ *
+ */
+public class LinAlgJmhBenchmark {
+
+	/** Vectors of 16, 4096 and 2^20 entries */
+	@State(Scope.Thread)
+	public static class Vectors {
+		@Param({ "small", "medium", "large" })
+		public String size;
+
+		Vector x, y, out;
+		String text;
+
+		@Setup(Level.Trial)
+		public void setUp() throws LinAlgException {
+			int n = size.equals("small") ? 16 : size.equals("medium") ? 4096 : 1 << 20;
+			Random rand = new Random(42);
+			x = randomVector(n, rand);
+			y = randomVector(n, rand);
+			out = new Vector(n);
+			text = randomVector(Math.min(n, 1 << 14), rand).toString(); // Text is far slower per entry
+		}
+	}
+
+	/** Square matrices of 8, 128 and 1024 rows */
+	@State(Scope.Thread)
+	public static class Matrices {
+		@Param({ "small", "medium", "large" })
+		public String size;
+
+		Matrix a, b, product;
+		Vector x, y;
+		int row;
+
+		@Setup(Level.Trial)
+		public void setUp() throws LinAlgException {
+			int n = size.equals("small") ? 8 : size.equals("medium") ? 128 : 1024;
+			Random rand = new Random(42);
+			a = randomMatrix(n, rand);
+			b = randomMatrix(n, rand);
+			product = new Matrix(n, n);
+			x = randomVector(n, rand);
+			y = new Vector(n);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public double innerProd(Vectors s) throws LinAlgException {
+		return Vector.InnerProd(s.x, s.y);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector elementwiseAdd(Vectors s) throws LinAlgException {
+		return s.x.elementwiseAdd(s.y);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector elementwiseAddInPlace(Vectors s) throws LinAlgException {
+		s.out.elementwiseAddInPlace(s.y);
+		return s.out;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector elementwiseMult(Vectors s) throws LinAlgException {
+		return s.x.elementwiseMult(s.y);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector elementwiseMultInPlace(Vectors s) throws LinAlgException {
+		s.out.elementwiseMultInPlace(s.y);
+		return s.out;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector scalarAdd(Vectors s) {
+		return s.x.scalarAdd(0.5);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector scalarAddInPlace(Vectors s) {
+		s.out.scalarAddInPlace(0.5);
+		return s.out;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector scalarMult(Vectors s) {
+		return s.x.scalarMult(0.5);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector scalarMultInPlace(Vectors s) {
+		s.out.scalarMultInPlace(0.5);
+		return s.out;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector textRoundTrip(Vectors s) throws LinAlgException {
+		return new Vector(new Vector(s.text).toString());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Matrix multiplyMatrix(Matrices s) throws LinAlgException {
+		return Matrix.Multiply(s.a, s.b);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Matrix multiplyMatrixInto(Matrices s) throws LinAlgException {
+		Matrix.Multiply(s.a, s.b, s.product);
+		return s.product;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector multiplyVector(Matrices s) throws LinAlgException {
+		return Matrix.Multiply(s.a, s.x);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector multiplyVectorInto(Matrices s) throws LinAlgException {
+		Matrix.Multiply(s.a, s.x, s.y);
+		return s.y;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Matrix transpose(Matrices s) throws LinAlgException {
+		return s.a.transpose();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Vector getRow(Matrices s) throws LinAlgException {
+		s.row = (s.row + 1) % s.a.getNumRows();
+		return s.a.getRow(s.row);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Matrix getIdentity(Matrices s) throws LinAlgException {
+		return Matrix.GetIdentity(s.a.getNumRows());
+	}
+
+	private static Vector randomVector(int n, Random rand) throws LinAlgException {
+		Vector v = new Vector(n);
+		for (int i = 0; i < n; i++)
+			v.set(i, rand.nextDouble() * 2 - 1);
+		return v;
+	}
+
+	private static Matrix randomMatrix(int n, Random rand) throws LinAlgException {
+		Matrix m = new Matrix(n, n);
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				m.set(i, j, rand.nextDouble() * 2 - 1);
+		return m;
+	}
+}
@@ -0,0 +1,289 @@
+package linalg;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*** Explicit SIMD versions of the VectorKernels loops on the Java Vector API.
+ *
+ *   Uses the platform's preferred double species (e.g., 4 lanes on AVX2, 8 on AVX-512).
+ *   The remainder of each range (fewer than one vector's worth) runs as a plain scalar
+ *   loop: JDK 17 does not intrinsify masked loads with a variable bound, so a masked tail
+ *   would box a temporary vector on every call.  The inner product keeps four independent vector accumulators so that
+ *   consecutive fused multiply-adds do not wait on each other; the lanes are only
+ *   reduced to a scalar at the end (so its rounding differs slightly from the scalar loop).
+ *
+ *   The float inner products load floats through the incubator FloatVector (always written
+ *   fully qualified here, since linalg.FloatVector is the package's own float vector).  The
+ *   widening ones load half a register of floats and convert it to a full register of doubles.
+ *   The quantized ones load a quarter register of int8 codes (or half a register of
+ *   half-precision values) and convert it to a full register of floats; registers narrower
+ *   than 256 bits have no byte shape that small, so there they run the scalar loop.
+ *
+ *   This class is only loaded reflectively by VectorKernels and requires
+ *   --add-modules jdk.incubator.vector both to compile and to run, which is why it is kept
+ *   apart from the other sources (the simd source set in build.gradle).
+ *
+ */
+final class SimdKernels extends VectorKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final VectorSpecies<Float> FLOAT_SPECIES = jdk.incubator.vector.FloatVector.SPECIES_PREFERRED;
+	private static final int FLOAT_LANES = FLOAT_SPECIES.length();
+	// Floats that widen to exactly one register of SPECIES doubles
+	private static final VectorSpecies<Float> HALF_FLOAT_SPECIES = VectorSpecies.of(float.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+	// Codes that convert to exactly one register of FLOAT_SPECIES floats (when such shapes exist)
+	private static final boolean QUANTIZED = FLOAT_SPECIES.vectorBitSize() >= 256;
+	private static final VectorSpecies<Byte> BYTE_SPECIES = QUANTIZED ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOAT_SPECIES.vectorBitSize() / 4)) : null;
+	private static final VectorSpecies<Short> SHORT_SPECIES = QUANTIZED ? VectorSpecies.of(short.class, VectorShape.forBitSize(FLOAT_SPECIES.vectorBitSize() / 2)) : null;
+	private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, FLOAT_SPECIES.vectorShape());
+
+	@Override
+	double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		DoubleVector acc2 = DoubleVector.zero(SPECIES);
+		DoubleVector acc3 = DoubleVector.zero(SPECIES);
+		int i = 0;
+		int unrolled = n - 4 * LANES;
+		for (; i <= unrolled; i += 4 * LANES) {
+			acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i).fma(DoubleVector.fromArray(SPECIES, b, bOff + i), acc0);
+			acc1 = DoubleVector.fromArray(SPECIES, a, aOff + i + LANES).fma(DoubleVector.fromArray(SPECIES, b, bOff + i + LANES), acc1);
+			acc2 = DoubleVector.fromArray(SPECIES, a, aOff + i + 2 * LANES).fma(DoubleVector.fromArray(SPECIES, b, bOff + i + 2 * LANES), acc2);
+			acc3 = DoubleVector.fromArray(SPECIES, a, aOff + i + 3 * LANES).fma(DoubleVector.fromArray(SPECIES, b, bOff + i + 3 * LANES), acc3);
+		}
+		int bound = SPECIES.loopBound(n);
+		for (; i < bound; i += LANES)
+			acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i).fma(DoubleVector.fromArray(SPECIES, b, bOff + i), acc0);
+		double sum = acc0.add(acc1).add(acc2.add(acc3)).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	void add(double[] a, double[] b, double[] out, int lo, int hi) {
+		int i = lo;
+		int bound = lo + SPECIES.loopBound(hi - lo);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		for (; i < hi; i++)
+			out[i] = a[i] + b[i];
+	}
+
+	@Override
+	void mult(double[] a, double[] b, double[] out, int lo, int hi) {
+		int i = lo;
+		int bound = lo + SPECIES.loopBound(hi - lo);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		for (; i < hi; i++)
+			out[i] = a[i] * b[i];
+	}
+
+	@Override
+	void scalarAdd(double[] a, double d, double[] out, int lo, int hi) {
+		int i = lo;
+		int bound = lo + SPECIES.loopBound(hi - lo);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, a, i).add(d).intoArray(out, i);
+		for (; i < hi; i++)
+			out[i] = a[i] + d;
+	}
+
+	@Override
+	void scalarMult(double[] a, double d, double[] out, int lo, int hi) {
+		int i = lo;
+		int bound = lo + SPECIES.loopBound(hi - lo);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, a, i).mul(d).intoArray(out, i);
+		for (; i < hi; i++)
+			out[i] = a[i] * d;
+	}
+
+	@Override
+	void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n) {
+		DoubleVector av = DoubleVector.broadcast(SPECIES, alpha);
+		int i = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, x, xOff + i).fma(av, DoubleVector.fromArray(SPECIES, y, yOff + i)).intoArray(y, yOff + i);
+		for (; i < n; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	@Override
+	void axpby(double alpha, double[] x, double beta, double[] y, int lo, int hi) {
+		DoubleVector av = DoubleVector.broadcast(SPECIES, alpha);
+		int i = lo;
+		int bound = lo + SPECIES.loopBound(hi - lo);
+		for (; i < bound; i += LANES)
+			DoubleVector.fromArray(SPECIES, x, i).fma(av, DoubleVector.fromArray(SPECIES, y, i).mul(beta)).intoArray(y, i);
+		for (; i < hi; i++)
+			y[i] = alpha * x[i] + beta * y[i];
+	}
+
+	@Override
+	double asum(double[] a, int off, int n) {
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		int i = 0;
+		int unrolled = n - 2 * LANES;
+		for (; i <= unrolled; i += 2 * LANES) {
+			acc0 = acc0.add(DoubleVector.fromArray(SPECIES, a, off + i).abs());
+			acc1 = acc1.add(DoubleVector.fromArray(SPECIES, a, off + i + LANES).abs());
+		}
+		double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += Math.abs(a[off + i]);
+		return sum;
+	}
+
+	@Override
+	void dotAndSquares(double[] a, double[] b, int n, double[] out) {
+		DoubleVector ab = DoubleVector.zero(SPECIES);
+		DoubleVector aa = DoubleVector.zero(SPECIES);
+		DoubleVector bb = DoubleVector.zero(SPECIES);
+		int i = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; i < bound; i += LANES) {
+			DoubleVector av = DoubleVector.fromArray(SPECIES, a, i);
+			DoubleVector bv = DoubleVector.fromArray(SPECIES, b, i);
+			ab = av.fma(bv, ab);
+			aa = av.fma(av, aa);
+			bb = bv.fma(bv, bb);
+		}
+		double sab = ab.reduceLanes(VectorOperators.ADD);
+		double saa = aa.reduceLanes(VectorOperators.ADD);
+		double sbb = bb.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			sab += a[i] * b[i];
+			saa += a[i] * a[i];
+			sbb += b[i] * b[i];
+		}
+		out[0] = sab;
+		out[1] = saa;
+		out[2] = sbb;
+	}
+
+	@Override
+	float dotFloat(float[] a, int aOff, float[] b, int bOff, int n) {
+		jdk.incubator.vector.FloatVector acc0 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		jdk.incubator.vector.FloatVector acc1 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		int i = 0;
+		int unrolled = n - 2 * FLOAT_LANES;
+		for (; i <= unrolled; i += 2 * FLOAT_LANES) {
+			acc0 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i)
+					.fma(jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, b, bOff + i), acc0);
+			acc1 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, a, aOff + i + FLOAT_LANES)
+					.fma(jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, b, bOff + i + FLOAT_LANES), acc1);
+		}
+		float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	double dotFloatWide(float[] a, int aOff, float[] b, int bOff, int n) {
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		int i = 0;
+		int unrolled = n - 2 * LANES;
+		for (; i <= unrolled; i += 2 * LANES) {
+			acc0 = widen(a, aOff + i).fma(widen(b, bOff + i), acc0);
+			acc1 = widen(a, aOff + i + LANES).fma(widen(b, bOff + i + LANES), acc1);
+		}
+		double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += (double)a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	double dotFloatKahan(float[] a, int aOff, float[] b, int bOff, int n) {
+		// One compensated sum per lane, then the lanes and the tail are combined the same way
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		DoubleVector comp = DoubleVector.zero(SPECIES);
+		int i = 0;
+		int bound = SPECIES.loopBound(n);
+		for (; i < bound; i += LANES) {
+			DoubleVector y = widen(a, aOff + i).mul(widen(b, bOff + i)).sub(comp);
+			DoubleVector t = sum.add(y);
+			comp = t.sub(sum).sub(y);
+			sum = t;
+		}
+		double s = 0.0, c = 0.0;
+		for (int lane = 0; lane < LANES; lane++) {
+			double y = sum.lane(lane) - (c + comp.lane(lane));
+			double t = s + y;
+			c = (t - s) - y;
+			s = t;
+		}
+		for (; i < n; i++) {
+			double y = (double)a[aOff + i] * b[bOff + i] - c;
+			double t = s + y;
+			c = (t - s) - y;
+			s = t;
+		}
+		return s;
+	}
+
+	@Override
+	float dotInt8(float[] q, int qOff, byte[] c, int cOff, int n) {
+		jdk.incubator.vector.FloatVector acc0 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		jdk.incubator.vector.FloatVector acc1 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		int i = 0;
+		int unrolled = QUANTIZED ? n - 2 * FLOAT_LANES : -1;
+		for (; i <= unrolled; i += 2 * FLOAT_LANES) {
+			acc0 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, q, qOff + i).fma(bytesToFloats(c, cOff + i), acc0);
+			acc1 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, q, qOff + i + FLOAT_LANES).fma(bytesToFloats(c, cOff + i + FLOAT_LANES), acc1);
+		}
+		float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += q[qOff + i] * c[cOff + i];
+		return sum;
+	}
+
+	@Override
+	float dotHalf(float[] q, int qOff, short[] c, int cOff, int n) {
+		jdk.incubator.vector.FloatVector acc0 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		jdk.incubator.vector.FloatVector acc1 = jdk.incubator.vector.FloatVector.zero(FLOAT_SPECIES);
+		int i = 0;
+		int unrolled = QUANTIZED ? n - 2 * FLOAT_LANES : -1;
+		for (; i <= unrolled; i += 2 * FLOAT_LANES) {
+			acc0 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, q, qOff + i).fma(halvesToFloats(c, cOff + i), acc0);
+			acc1 = jdk.incubator.vector.FloatVector.fromArray(FLOAT_SPECIES, q, qOff + i + FLOAT_LANES).fma(halvesToFloats(c, cOff + i + FLOAT_LANES), acc1);
+		}
+		float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += q[qOff + i] * halfToFloat(c[cOff + i]);
+		return sum;
+	}
+
+	private static jdk.incubator.vector.FloatVector bytesToFloats(byte[] c, int off) {
+		return (jdk.incubator.vector.FloatVector)ByteVector.fromArray(BYTE_SPECIES, c, off).convertShape(VectorOperators.B2F, FLOAT_SPECIES, 0);
+	}
+
+	/** Lane-wise VectorKernels.halfToFloat */
+	private static jdk.incubator.vector.FloatVector halvesToFloats(short[] c, int off) {
+		IntVector h = (IntVector)ShortVector.fromArray(SHORT_SPECIES, c, off).convertShape(VectorOperators.S2I, INT_SPECIES, 0);
+		IntVector sign = h.and(0x8000).lanewise(VectorOperators.LSHL, 16);
+		jdk.incubator.vector.FloatVector magnitude = h.and(0x7fff).lanewise(VectorOperators.LSHL, 13).reinterpretAsFloats().mul(0x1p112f);
+		return magnitude.reinterpretAsInts().or(sign).reinterpretAsFloats();
+	}
+
+	private static DoubleVector widen(float[] a, int off) {
+		return (DoubleVector)jdk.incubator.vector.FloatVector.fromArray(HALF_FLOAT_SPECIES, a, off).convertShape(VectorOperators.F2D, SPECIES, 0);
+	}
+
+	@Override
+	String getName() {
+		return "simd-" + SPECIES.vectorBitSize();
+	}
+}
@@ -0,0 +1,170 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import jdk.incubator.vector.DoubleVector;
+
+import org.junit.jupiter.api.Test;
+
+/*** SimdKernels agrees with the scalar loops of VectorKernels.Scalar: bit for bit for the
+ *   elementwise kernels, and to within rounding for dot (its lanes sum in another order),
+ *   axpy and axpby (a fused multiply-add rounds once where the scalar loop rounds twice).
+ *
+ *   The lengths straddle multiples of the species length and of the four-register unrolling,
+ *   so the vector loop, the single-register loop and the scalar tail all run, and the ranges
+ *   start at non-zero offsets so that a vector loop indexed from 0 instead of lo would show.
+ *
+ */
+class SimdKernelsTest {
+
+	private static final int LANES = DoubleVector.SPECIES_PREFERRED.length();
+
+	private static final int[] LENGTHS = { 0, 1, LANES - 1, LANES, LANES + 1, 2 * LANES + 1, 4 * LANES - 1,
+			4 * LANES, 4 * LANES + 3, 8 * LANES + LANES - 1, 1001 };
+
+	private static final int[] OFFSETS = { 0, 1, 3, LANES + 2 };
+
+	private static final VectorKernels SIMD = new SimdKernels();
+	private static final VectorKernels SCALAR = new VectorKernels.Scalar();
+
+	@Test
+	void simdKernelsAreInUse() {
+		assertTrue(VectorKernels.INSTANCE instanceof SimdKernels, VectorKernels.INSTANCE.getName());
+	}
+
+	@Test
+	void elementwiseKernelsMatchScalar() {
+		Random rand = new Random(1);
+		for (int n : LENGTHS) {
+			for (int lo : OFFSETS) {
+				int hi = lo + n;
+				double[] a = random(hi + 2, rand), b = random(hi + 2, rand);
+				double d = rand.nextGaussian();
+
+				double[] expected = random(hi + 2, rand), actual = expected.clone();
+				SCALAR.add(a, b, expected, lo, hi);
+				SIMD.add(a, b, actual, lo, hi);
+				assertArrayEquals(expected, actual, 0.0);
+
+				SCALAR.mult(a, b, expected, lo, hi);
+				SIMD.mult(a, b, actual, lo, hi);
+				assertArrayEquals(expected, actual, 0.0);
+
+				SCALAR.scalarAdd(a, d, expected, lo, hi);
+				SIMD.scalarAdd(a, d, actual, lo, hi);
+				assertArrayEquals(expected, actual, 0.0);
+
+				SCALAR.scalarMult(a, d, expected, lo, hi);
+				SIMD.scalarMult(a, d, actual, lo, hi);
+				assertArrayEquals(expected, actual, 0.0);
+			}
+		}
+	}
+
+	@Test
+	void elementwiseKernelsWorkInPlace() {
+		Random rand = new Random(2);
+		for (int n : LENGTHS) {
+			int lo = 3, hi = lo + n;
+			double[] a = random(hi + 1, rand), b = random(hi + 1, rand);
+			double[] expected = a.clone(), actual = a.clone();
+			SCALAR.add(expected, b, expected, lo, hi);
+			SIMD.add(actual, b, actual, lo, hi);
+			assertArrayEquals(expected, actual, 0.0);
+			SCALAR.scalarMult(expected, -0.5, expected, lo, hi);
+			SIMD.scalarMult(actual, -0.5, actual, lo, hi);
+			assertArrayEquals(expected, actual, 0.0);
+		}
+	}
+
+	@Test
+	void axpbyMatchesScalar() {
+		Random rand = new Random(3);
+		for (int n : LENGTHS) {
+			for (int lo : OFFSETS) {
+				int hi = lo + n;
+				double[] x = random(hi + 2, rand), y = random(hi + 2, rand);
+				double alpha = rand.nextGaussian(), beta = rand.nextGaussian();
+				double[] expected = y.clone(), actual = y.clone();
+				SCALAR.axpby(alpha, x, beta, expected, lo, hi);
+				SIMD.axpby(alpha, x, beta, actual, lo, hi);
+				for (int i = 0; i < y.length; i++) {
+					if (i < lo || i >= hi)
+						assertEquals(y[i], actual[i], 0.0); // Outside the range: untouched
+					else
+						assertEquals(expected[i], actual[i], 4 * Math.ulp(Math.abs(alpha * x[i]) + Math.abs(beta * y[i])));
+				}
+			}
+		}
+	}
+
+	@Test
+	void axpyMatchesScalar() {
+		Random rand = new Random(4);
+		for (int n : LENGTHS) {
+			for (int xOff : OFFSETS) {
+				int yOff = (xOff + 2) % 5;
+				double[] x = random(xOff + n + 1, rand), y = random(yOff + n + 1, rand);
+				double alpha = rand.nextGaussian();
+				double[] expected = y.clone(), actual = y.clone();
+				SCALAR.axpy(alpha, x, xOff, expected, yOff, n);
+				SIMD.axpy(alpha, x, xOff, actual, yOff, n);
+				for (int i = 0; i < y.length; i++) {
+					if (i < yOff || i >= yOff + n)
+						assertEquals(y[i], actual[i], 0.0);
+					else
+						assertEquals(expected[i], actual[i], 4 * Math.ulp(Math.abs(alpha * x[xOff + i - yOff]) + Math.abs(y[i])));
+				}
+			}
+		}
+	}
+
+	@Test
+	void dotMatchesScalar() {
+		Random rand = new Random(5);
+		for (int n : LENGTHS) {
+			for (int aOff : OFFSETS) {
+				int bOff = (aOff + 1) % 4;
+				double[] a = random(aOff + n + 1, rand), b = random(bOff + n + 1, rand);
+				double abs = 0.0;
+				for (int i = 0; i < n; i++)
+					abs += Math.abs(a[aOff + i] * b[bOff + i]);
+				// Any summation order is within n rounding errors of the sum of magnitudes
+				assertEquals(SCALAR.dot(a, aOff, b, bOff, n), SIMD.dot(a, aOff, b, bOff, n), 2 * (n + 1) * Math.ulp(abs));
+			}
+		}
+	}
+
+	@Test
+	void exactDataGivesExactResults() {
+		// Small integers: every product and partial sum is exact, so the order cannot matter
+		for (int n : LENGTHS) {
+			for (int off : OFFSETS) {
+				double[] a = new double[off + n], b = new double[off + n];
+				for (int i = 0; i < a.length; i++) {
+					a[i] = i % 7 - 3;
+					b[i] = i % 5 + 1;
+				}
+				assertEquals(SCALAR.dot(a, off, b, off, n), SIMD.dot(a, off, b, off, n), 0.0);
+				double[] expected = b.clone(), actual = b.clone();
+				SCALAR.axpy(2.0, a, off, expected, off, n);
+				SIMD.axpy(2.0, a, off, actual, off, n);
+				assertArrayEquals(expected, actual, 0.0);
+				SCALAR.axpby(2.0, a, -3.0, expected, off, off + n);
+				SIMD.axpby(2.0, a, -3.0, actual, off, off + n);
+				assertArrayEquals(expected, actual, 0.0);
+			}
+		}
+	}
+
+	private static double[] random(int n, Random rand) {
+		double[] a = new double[n];
+		for (int i = 0; i < n; i++)
+			a[i] = rand.nextGaussian();
+		return a;
+	}
+}
@@ -0,0 +1,132 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** The edge cases of the BLAS-style operations: Nrm2 neither overflows nor underflows for
+ *   entries near the ends of the double range, Iamax breaks ties towards the lowest index and
+ *   skips NaN, and Axpby and Gemv do not read y when its coefficient is 0, so NaN or infinite
+ *   garbage already in y does not reach the result.
+ *
+ */
+class BlasTest {
+
+	@Test
+	void nrm2HandlesHugeEntries() throws LinAlgException {
+		assertEquals(5e300, Vector.Nrm2(vector(3e300, 4e300)), 1e285);
+		assertEquals(5e300, Vector.Nrm2(vector(-4e300, 0.0, 3e300)), 1e285);
+		assertEquals(Double.MAX_VALUE / 2 * Math.sqrt(2.0), Vector.Nrm2(vector(Double.MAX_VALUE / 2, Double.MAX_VALUE / 2)),
+				Math.ulp(Double.MAX_VALUE));
+		assertEquals(1e300, Vector.Nrm2(vector(1e300, 1e-300, 1.0)), 0.0);
+		Vector many = new Vector(1000);
+		for (int i = 0; i < many.getDim(); i++)
+			many.set(i, i % 2 == 0 ? 1e300 : -1e300);
+		assertEquals(Math.sqrt(1000.0) * 1e300, Vector.Nrm2(many), 1e286);
+	}
+
+	@Test
+	void nrm2HandlesTinyEntries() throws LinAlgException {
+		assertEquals(5e-300, Vector.Nrm2(vector(3e-300, 4e-300)), 1e-315);
+		assertEquals(5e-300, Vector.Nrm2(vector(0.0, -3e-300, 0.0, 4e-300)), 1e-315);
+		assertEquals(5 * Double.MIN_NORMAL, Vector.Nrm2(vector(3 * Double.MIN_NORMAL, -4 * Double.MIN_NORMAL)), Math.ulp(Double.MIN_NORMAL));
+		assertEquals(Double.MIN_VALUE, Vector.Nrm2(vector(0.0, -Double.MIN_VALUE)), 0.0);
+		Vector many = new Vector(1000);
+		for (int i = 0; i < many.getDim(); i++)
+			many.set(i, 1e-300);
+		assertEquals(Math.sqrt(1000.0) * 1e-300, Vector.Nrm2(many), 1e-314);
+	}
+
+	@Test
+	void nrm2OfSpecialVectors() throws LinAlgException {
+		assertEquals(0.0, Vector.Nrm2(new Vector(5)), 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, Vector.Nrm2(vector(1.0, Double.NEGATIVE_INFINITY, 2.0)), 0.0);
+		assertTrue(Double.isNaN(Vector.Nrm2(vector(1.0, Double.NaN, 2.0))));
+		Random rand = new Random(1);
+		Vector x = TestData.randomVector(333, rand);
+		assertEquals(Math.sqrt(Vector.InnerProd(x, x)), Vector.Nrm2(x), 1e-15);
+	}
+
+	@Test
+	void iamaxBreaksTiesTowardsTheLowestIndex() throws LinAlgException {
+		assertEquals(1, Vector.Iamax(vector(1.0, -3.0, 3.0, 2.0)));
+		assertEquals(0, Vector.Iamax(vector(-2.0, 2.0, -2.0)));
+		assertEquals(2, Vector.Iamax(vector(0.0, -0.0, 7.0, -7.0, 7.0)));
+		assertEquals(0, Vector.Iamax(new Vector(4)));
+		assertEquals(1, Vector.Iamax(vector(1.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)));
+	}
+
+	@Test
+	void iamaxSkipsNaN() throws LinAlgException {
+		assertEquals(2, Vector.Iamax(vector(Double.NaN, 2.0, -5.0, Double.NaN, 5.0)));
+		assertEquals(1, Vector.Iamax(vector(1.0, -4.0, Double.NaN)));
+		assertEquals(0, Vector.Iamax(vector(Double.NaN, Double.NaN)));
+	}
+
+	@Test
+	void axpbyWithZeroBetaIgnoresY() throws LinAlgException {
+		Random rand = new Random(2);
+		for (int n : new int[] { 1, 7, 64, 1001 }) {
+			Vector x = TestData.randomVector(n, rand);
+			Vector y = garbage(n);
+			Vector.Axpby(-1.5, x, 0.0, y);
+			for (int i = 0; i < n; i++)
+				assertEquals(-1.5 * x.get(i), y.get(i), 0.0);
+			y = garbage(n);
+			Vector.Axpby(0.0, x, 0.0, y);
+			for (int i = 0; i < n; i++)
+				assertEquals(0.0, y.get(i), 0.0);
+		}
+	}
+
+	@Test
+	void axpbyMatchesTheElementwiseFormula() throws LinAlgException {
+		Random rand = new Random(3);
+		for (double b : new double[] { 1.0, -1.0, 0.5 }) {
+			Vector x = TestData.randomVector(101, rand), y = TestData.randomVector(101, rand);
+			Vector expected = new Vector(101);
+			for (int i = 0; i < 101; i++)
+				expected.set(i, 2.0 * x.get(i) + b * y.get(i));
+			Vector.Axpby(2.0, x, b, y);
+			TestData.assertClose(expected, y, 1e-15);
+		}
+		// Unlike b == 0, a NaN already in y still propagates for any other b
+		Vector y = garbage(3);
+		Vector.Axpby(1.0, vector(1.0, 2.0, 3.0), 1.0, y);
+		assertTrue(Double.isNaN(y.get(0)));
+	}
+
+	@Test
+	void gemvWithZeroBetaIgnoresY() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomMatrix(37, 29, rand);
+		Vector x = TestData.randomVector(29, rand);
+		Vector expected = Matrix.Multiply(a, x);
+		Vector y = garbage(37);
+		Matrix.Gemv(1.0, a, x, 0.0, y);
+		TestData.assertClose(expected, y, 1e-14);
+		// Column-major layout: one axpy per column, accumulating into y
+		Matrix at = a.transpose().transposeView();
+		y = garbage(37);
+		Matrix.Gemv(1.0, at, x, 0.0, y);
+		TestData.assertClose(expected, y, 1e-14);
+	}
+
+	private static Vector vector(double... values) throws LinAlgException {
+		Vector v = new Vector(values.length);
+		for (int i = 0; i < values.length; i++)
+			v.set(i, values[i]);
+		return v;
+	}
+
+	/** A vector of NaN and infinite entries, which must not survive when it is not read */
+	private static Vector garbage(int n) throws LinAlgException {
+		Vector v = new Vector(n);
+		for (int i = 0; i < n; i++)
+			v.set(i, i % 3 == 0 ? Double.NaN : i % 3 == 1 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY);
+		return v;
+	}
+}
@@ -0,0 +1,135 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/*** ConcurrentAccumulatorVector sums exactly what was added, whether the updates come from one
+ *   thread or race with each other and with a draining sumThenReset().
+ *
+ *   The concurrent tests add small integers, whose sums are exact in double arithmetic in any
+ *   order, so the totals can be compared with ==.
+ *
+ */
+class ConcurrentAccumulatorVectorTest {
+
+	private static final int THREADS = 8;
+	private static final int UPDATES = 20000;
+	private static final int DIM = 37;
+
+	@Test
+	void singleThreadedUpdates() throws LinAlgException {
+		ConcurrentAccumulatorVector acc = new ConcurrentAccumulatorVector(4);
+		acc.add(1, 2.5);
+		acc.addInPlace(new Vector("[1 2 3 4]"));
+		acc.addInPlace(-2.0, new Vector("[1 1 1 1]"));
+		acc.scalarAddInPlace(0.5);
+		assertEquals(new Vector("[-0.5 3 1.5 2.5]"), acc.sum());
+		assertEquals(3.0, acc.get(1));
+		assertEquals(new Vector("[-0.5 3 1.5 2.5]"), acc.sumThenReset());
+		assertEquals(new Vector(4), acc.sum());
+		acc.add(0, 1.0);
+		acc.reset();
+		assertEquals(0.0, acc.get(0));
+	}
+
+	@Test
+	void sumIntoOutput() throws LinAlgException {
+		ConcurrentAccumulatorVector acc = new ConcurrentAccumulatorVector(3);
+		acc.add(2, 7.0);
+		Vector out = new Vector("[9 9 9]");
+		acc.sum(out);
+		assertEquals(new Vector("[0 0 7]"), out);
+		acc.sumThenReset(out);
+		assertEquals(new Vector("[0 0 7]"), out);
+		assertEquals(0.0, acc.get(2));
+		assertThrows(LinAlgException.class, () -> acc.sum(new Vector(2)));
+	}
+
+	@Test
+	void invalidArgumentsThrow() throws LinAlgException {
+		assertThrows(LinAlgException.class, () -> new ConcurrentAccumulatorVector(0));
+		ConcurrentAccumulatorVector acc = new ConcurrentAccumulatorVector(3);
+		assertThrows(LinAlgException.class, () -> acc.add(3, 1.0));
+		assertThrows(LinAlgException.class, () -> acc.get(-1));
+		assertThrows(LinAlgException.class, () -> acc.addInPlace(new Vector(4)));
+	}
+
+	@Test
+	void concurrentUpdatesSumExactly() throws Exception {
+		ConcurrentAccumulatorVector acc = new ConcurrentAccumulatorVector(DIM);
+		runWorkers(acc, new AtomicBoolean());
+		assertEquals(expectedTotal(), acc.sum());
+		assertTrue(acc.getStripeCount() >= 1);
+	}
+
+	@Test
+	void concurrentDrainLosesNothing() throws Exception {
+		ConcurrentAccumulatorVector acc = new ConcurrentAccumulatorVector(DIM);
+		AtomicBoolean done = new AtomicBoolean();
+		Vector drained = new Vector(DIM);
+		Thread drainer = new Thread(() -> {
+			try {
+				while (!done.get())
+					drained.elementwiseAddInPlace(acc.sumThenReset());
+			} catch (LinAlgException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		drainer.start();
+		runWorkers(acc, done);
+		drainer.join();
+		drained.elementwiseAddInPlace(acc.sumThenReset());
+		assertEquals(expectedTotal(), drained);
+	}
+
+	/** Each worker t adds 1 to entry (t + i) % DIM and t to every entry through a Vector, UPDATES
+	 *  times, all starting together; done is set once they have all finished
+	 */
+	private static void runWorkers(ConcurrentAccumulatorVector acc, AtomicBoolean done) throws Exception {
+		CyclicBarrier start = new CyclicBarrier(THREADS);
+		Thread[] workers = new Thread[THREADS];
+		Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < THREADS; t++) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				try {
+					Vector v = new Vector(DIM);
+					for (int i = 0; i < DIM; i++)
+						v.set(i, id);
+					start.await();
+					for (int i = 0; i < UPDATES; i++) {
+						acc.add((id + i) % DIM, 1.0);
+						if (i % 16 == 0)
+							acc.addInPlace(v);
+					}
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread w : workers)
+			w.join();
+		done.set(true);
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+	}
+
+	private static Vector expectedTotal() throws LinAlgException {
+		Vector total = new Vector(DIM);
+		int vectorAdds = (UPDATES + 15) / 16;
+		for (int t = 0; t < THREADS; t++) {
+			for (int i = 0; i < UPDATES; i++)
+				total.set((t + i) % DIM, total.get((t + i) % DIM) + 1.0);
+			for (int i = 0; i < DIM; i++)
+				total.set(i, total.get(i) + (double)t * vectorAdds);
+		}
+		return total;
+	}
+}
@@ -0,0 +1,85 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** hashCode() of Matrix and Vector agrees with equals() whatever the layout of the storage,
+ *   and getVersion() advances on every write, so the cached hash is never stale.
+ *
+ */
+class ContentHashTest {
+
+	@Test
+	void viewsHashLikeTheirCompactCopies() throws LinAlgException {
+		Matrix a = TestData.randomMatrix(6, 5, new Random(1));
+		Matrix[] views = { a.subMatrix(1, 2, 4, 3), a.transposeView(), a.rowView(3), a.columnView(4), a.transposeView().subMatrix(0, 1, 5, 2) };
+		for (Matrix view : views) {
+			Matrix copy = new Matrix(view);
+			assertEquals(copy, view);
+			assertEquals(copy.hashCode(), view.hashCode());
+		}
+	}
+
+	@Test
+	void negativeZeroHashesLikeZero() throws LinAlgException {
+		Matrix m = new Matrix(2, 2), n = new Matrix(2, 2);
+		m.set(1, 0, -0.0);
+		assertEquals(n, m);
+		assertEquals(n.hashCode(), m.hashCode());
+		Vector v = new Vector(3), w = new Vector(3);
+		v.set(2, -0.0);
+		assertEquals(w, v);
+		assertEquals(w.hashCode(), v.hashCode());
+	}
+
+	@Test
+	void shapeIsPartOfTheHash() throws LinAlgException {
+		assertNotEquals(new Matrix(2, 3).hashCode(), new Matrix(3, 2).hashCode());
+		assertNotEquals(new Vector(2).hashCode(), new Vector(3).hashCode());
+	}
+
+	@Test
+	void matrixWritesAdvanceTheVersionOfEveryView() throws LinAlgException {
+		Matrix a = TestData.randomMatrix(4, 4, new Random(2));
+		Matrix view = a.subMatrix(1, 1, 2, 2);
+		int hash = a.hashCode(), viewHash = view.hashCode();
+		long version = a.getVersion();
+		view.set(0, 0, 100.0);
+		assertTrue(a.getVersion() > version);
+		assertEquals(a.getVersion(), view.getVersion());
+		assertNotEquals(hash, a.hashCode());
+		assertNotEquals(viewHash, view.hashCode());
+		assertEquals(new Matrix(a).hashCode(), a.hashCode());
+		version = a.getVersion();
+		a.transposeInPlace();
+		assertTrue(a.getVersion() > version);
+		assertEquals(new Matrix(a).hashCode(), a.hashCode());
+	}
+
+	@Test
+	void vectorWritesAdvanceTheVersion() throws LinAlgException {
+		Vector v = new Vector("[1 2 3]");
+		int hash = v.hashCode();
+		long version = v.getVersion();
+		v.set(0, 4.0);
+		assertTrue(v.getVersion() > version);
+		assertNotEquals(hash, v.hashCode());
+		version = v.getVersion();
+		v.scalarAddInPlace(1.0);
+		assertTrue(v.getVersion() > version);
+		version = v.getVersion();
+		v.append(0.0);
+		assertTrue(v.getVersion() > version);
+		assertEquals(new Vector("[5 3 4 0]").hashCode(), v.hashCode());
+		v.set(0, 1.0);
+		v.scalarAddInPlace(-1.0);
+		v.set(0, 0.0);
+		assertEquals(new Vector("[0 2 3 -1]"), v);
+		assertEquals(new Vector("[0 2 3 -1]").hashCode(), v.hashCode());
+	}
+}
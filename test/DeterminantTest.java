@@ -0,0 +1,78 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** Matrix.det(): exact 0 only for singular matrices, NaN for non-finite input.
+ *
+ */
+class DeterminantTest {
+
+	@Test
+	void smallKnownValues() throws LinAlgException {
+		Matrix m = new Matrix(3, 3);
+		double[][] a = { { 2, -1, 0 }, { 1, 3, 4 }, { 0, 5, -2 } };
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				m.set(i, j, a[i][j]);
+		assertEquals(-54.0, m.det(), 1e-12);
+		assertEquals(1.0, Matrix.GetIdentity(5).det());
+		// One row swap flips the sign
+		Matrix swap = new Matrix(2, 2);
+		swap.set(0, 1, 1.0);
+		swap.set(1, 0, 1.0);
+		assertEquals(-1.0, swap.det());
+	}
+
+	@Test
+	void productRule() throws LinAlgException {
+		// Larger than one LU panel, so the blocked path is used
+		Random rand = new Random(1);
+		Matrix a = TestData.randomMatrix(LUDecomposition.BLOCK + 30, LUDecomposition.BLOCK + 30, rand);
+		Matrix b = TestData.randomMatrix(LUDecomposition.BLOCK + 30, LUDecomposition.BLOCK + 30, rand);
+		double expected = a.det() * b.det();
+		assertEquals(expected, Matrix.Multiply(a, b).det(), 1e-8 * Math.abs(expected));
+	}
+
+	@Test
+	void singularIsZero() throws LinAlgException {
+		assertEquals(0.0, new Matrix(4, 4).det());
+		// Rank deficient in a middle column, in the blocked path: the factorization carries on
+		// past the zero pivot
+		int n = LUDecomposition.BLOCK + 20;
+		Matrix m = TestData.randomMatrix(n, n, new Random(2));
+		for (int i = 0; i < n; i++)
+			m.set(i, 10, 0.0);
+		assertEquals(0.0, m.det());
+		assertThrows(LinAlgException.class, () -> new LUDecomposition(m));
+	}
+
+	@Test
+	void nonFiniteIsNaN() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(6, 6, new Random(3));
+		m.set(2, 4, Double.NaN);
+		assertTrue(Double.isNaN(m.det()));
+		m.set(2, 4, Double.POSITIVE_INFINITY);
+		assertTrue(Double.isNaN(m.det()));
+		// Also when the non-finite entry would otherwise make LU report a singular column
+		Matrix z = new Matrix(3, 3);
+		z.set(0, 0, Double.NaN);
+		assertTrue(Double.isNaN(z.det()));
+	}
+
+	@Test
+	void viewsUseTheirOwnEntries() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(5, 5, new Random(4));
+		assertEquals(m.det(), m.transposeView().det(), 1e-12 * Math.max(1.0, Math.abs(m.det())));
+	}
+
+	@Test
+	void rectangularThrows() throws LinAlgException {
+		assertThrows(LinAlgException.class, () -> new Matrix(2, 3).det());
+	}
+}
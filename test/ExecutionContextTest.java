@@ -0,0 +1,124 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/*** The parallel kernels give the sequential results: bit for bit for elementwise operations
+ *   and products (each entry is still computed by one task, in the same order), and for
+ *   Vector.InnerProd the same value on every run and every pool size for a given split size,
+ *   equal to the sequential one below the split threshold.
+ *
+ */
+class ExecutionContextTest {
+
+	private static final int SPLIT = 1000;
+
+	/** Sizes below, at and just above SPLIT, and many chunks with a ragged last one */
+	private static final int[] SIZES = { 1, SPLIT - 1, SPLIT, SPLIT + 1, 7 * SPLIT + 13, 100003 };
+
+	@Test
+	void elementwiseOperationsMatchSequential() throws LinAlgException {
+		Random rand = new Random(1);
+		ExecutionContext seq = ExecutionContext.sequential();
+		for (ExecutionContext par : parallelContexts()) {
+			for (int n : SIZES) {
+				Vector x = TestData.randomVector(n, rand), y = TestData.randomVector(n, rand);
+				assertIdentical(x.elementwiseAdd(y, seq), x.elementwiseAdd(y, par));
+				assertIdentical(x.elementwiseMult(y, seq), x.elementwiseMult(y, par));
+				Vector out = new Vector(n);
+				x.elementwiseAdd(y, out, par);
+				assertIdentical(x.elementwiseAdd(y, seq), out);
+				x.elementwiseMult(y, out, par);
+				assertIdentical(x.elementwiseMult(y, seq), out);
+				Vector a = new Vector(x), b = new Vector(x);
+				a.elementwiseAddInPlace(y, seq);
+				b.elementwiseAddInPlace(y, par);
+				assertIdentical(a, b);
+				a.elementwiseMultInPlace(y, seq);
+				b.elementwiseMultInPlace(y, par);
+				assertIdentical(a, b);
+			}
+		}
+	}
+
+	@Test
+	void innerProdIsReproducible() throws LinAlgException {
+		Random rand = new Random(2);
+		ExecutionContext[] pars = parallelContexts();
+		for (int n : SIZES) {
+			Vector x = TestData.randomVector(n, rand), y = TestData.randomVector(n, rand);
+			double seq = Vector.InnerProd(x, y, ExecutionContext.sequential());
+			double first = Vector.InnerProd(x, y, pars[0]);
+			if (n <= SPLIT)
+				assertEquals(seq, first, 0.0); // Not split: the same single pass
+			else
+				assertEquals(seq, first, 1e-12 * n); // Split: chunk sums in a fixed tree
+			for (ExecutionContext par : pars)
+				for (int run = 0; run < 5; run++)
+					assertEquals(first, Vector.InnerProd(x, y, par), 0.0);
+		}
+	}
+
+	@Test
+	void matrixVectorProductsMatchSequential() throws LinAlgException {
+		Random rand = new Random(3);
+		ExecutionContext seq = ExecutionContext.sequential();
+		int[][] shapes = { { 3, 5 }, { 20, 49 }, { 20, 51 }, { 333, 77 }, { 1200, 9 } }; // Around and above SPLIT entries
+		for (ExecutionContext par : parallelContexts()) {
+			for (int[] shape : shapes) {
+				Matrix m = TestData.randomMatrix(shape[0], shape[1], rand);
+				Vector x = TestData.randomVector(shape[1], rand);
+				Vector expected = Matrix.Multiply(m, x, seq);
+				assertIdentical(expected, Matrix.Multiply(m, x, par));
+				Vector out = new Vector(shape[0]);
+				Matrix.Multiply(m, x, out, par);
+				assertIdentical(expected, out);
+			}
+		}
+	}
+
+	@Test
+	void matrixProductsMatchSequential() throws LinAlgException {
+		Random rand = new Random(4);
+		ExecutionContext seq = ExecutionContext.sequential();
+		int[][] shapes = { { 10, 10, 10 }, { 31, 33, 5 }, { 300, 280, 20 }, { 520, 40, 30 } };
+		for (ExecutionContext par : parallelContexts()) {
+			for (int[] shape : shapes) {
+				Matrix a = TestData.randomMatrix(shape[0], shape[2], rand), b = TestData.randomMatrix(shape[2], shape[1], rand);
+				Matrix expected = Matrix.Multiply(a, b, seq);
+				Matrix actual = Matrix.Multiply(a, b, par);
+				for (int i = 0; i < shape[0]; i++)
+					for (int j = 0; j < shape[1]; j++)
+						assertEquals(expected.get(i, j), actual.get(i, j), 0.0);
+			}
+		}
+	}
+
+	@Test
+	void invalidContextsAreRejected() {
+		assertThrows(LinAlgException.class, () -> ExecutionContext.parallel(0));
+		assertThrows(LinAlgException.class, () -> ExecutionContext.parallel(null, SPLIT));
+		assertThrows(LinAlgException.class, () -> ExecutionContext.parallel(new ForkJoinPool(1), 0));
+		assertThrows(LinAlgException.class, () -> ExecutionContext.setDefault(null));
+	}
+
+	/** Pools of 1, 2, 3 and 8 threads, all splitting every SPLIT elements */
+	private static ExecutionContext[] parallelContexts() throws LinAlgException {
+		int[] threads = { 1, 2, 3, 8 };
+		ExecutionContext[] contexts = new ExecutionContext[threads.length];
+		for (int i = 0; i < threads.length; i++)
+			contexts[i] = ExecutionContext.parallel(new ForkJoinPool(threads[i]), SPLIT);
+		return contexts;
+	}
+
+	private static void assertIdentical(Vector expected, Vector actual) throws LinAlgException {
+		assertEquals(expected.getDim(), actual.getDim());
+		for (int i = 0; i < expected.getDim(); i++)
+			assertEquals(expected.get(i), actual.get(i), 0.0);
+	}
+}
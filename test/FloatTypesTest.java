@@ -0,0 +1,65 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/*** FloatVector and FloatMatrix: equals() and hashCode() agree, and the float results stay
+ *   within single-precision error of the double ones.
+ *
+ */
+class FloatTypesTest {
+
+	@Test
+	void equalVectorsHashAlike() throws LinAlgException {
+		FloatVector v = new FloatVector(TestData.randomVector(50, new Random(1)));
+		FloatVector copy = new FloatVector(v);
+		assertEquals(v, copy);
+		assertEquals(v.hashCode(), copy.hashCode());
+		copy.set(7, copy.get(7) + 1.0f);
+		assertFalse(v.equals(copy));
+		assertFalse(v.hashCode() == copy.hashCode());
+	}
+
+	@Test
+	void signedZerosHashAlike() throws LinAlgException {
+		FloatVector pos = new FloatVector(3), neg = new FloatVector(3);
+		neg.set(1, -0.0f);
+		assertEquals(pos, neg);
+		assertEquals(pos.hashCode(), neg.hashCode());
+		FloatMatrix mpos = new FloatMatrix(2, 2), mneg = new FloatMatrix(2, 2);
+		mneg.set(1, 0, -0.0f);
+		assertEquals(mpos, mneg);
+		assertEquals(mpos.hashCode(), mneg.hashCode());
+	}
+
+	@Test
+	void equalMatricesHashAlike() throws LinAlgException {
+		FloatMatrix m = new FloatMatrix(TestData.randomMatrix(6, 9, new Random(2)));
+		FloatMatrix copy = new FloatMatrix(m);
+		assertEquals(m.hashCode(), copy.hashCode());
+		// The shape is part of the hash: all-zero matrices of transposed shapes differ
+		assertFalse(new FloatMatrix(6, 9).hashCode() == new FloatMatrix(9, 6).hashCode());
+		Set<FloatMatrix> set = new HashSet<>();
+		set.add(m);
+		assertTrue(set.contains(copy));
+		assertEquals(m.transpose().transpose(), m);
+	}
+
+	@Test
+	void productsAreCloseToDouble() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix a = TestData.randomMatrix(20, 30, rand);
+		Matrix b = TestData.randomMatrix(30, 10, rand);
+		Vector x = TestData.randomVector(30, rand);
+		TestData.assertClose(Matrix.Multiply(a, b), FloatMatrix.Multiply(new FloatMatrix(a), new FloatMatrix(b)).toMatrix(), 1e-5);
+		TestData.assertClose(Matrix.Multiply(a, x), FloatMatrix.Multiply(new FloatMatrix(a), new FloatVector(x)).toVector(), 1e-5);
+		assertEquals(Vector.InnerProd(x, x), FloatVector.InnerProd(new FloatVector(x), new FloatVector(x)), 1e-4);
+	}
+}
@@ -0,0 +1,109 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/*** Matrix.Multiply, through the blocked and packed Gemm engine, gives results bit-for-bit equal
+ *   to the textbook i-k-j loop: on shapes that are not multiples of the register tile or of the
+ *   cache blocks, on both sides of SMALL_THRESHOLD, on strided views, and on a sequential or a
+ *   parallel context alike.
+ *
+ */
+class GemmTest {
+
+	/** m, n, k of the products checked: k = 1, ragged tiles, both sides of SMALL_THRESHOLD
+	 *  (64^3), more than KC deep, and more than MC, NC and one parallel tile wide */
+	private static final int[][] SHAPES = {
+		{ 1, 1, 1 }, { 7, 9, 1 }, { 300, 5, 1 },
+		{ 5, 6, 7 }, { Gemm.MR + 1, Gemm.NR + 3, 11 },
+		{ 63, 64, 64 }, { 64, 64, 64 }, { 65, 64, 64 }, { 64, 63, 65 },
+		{ 17, 19, Gemm.KC * 3 + 5 },
+		{ Gemm.MC + 3, Gemm.NC + 5, Gemm.KC + 7 },
+		{ 300, 270, 40 }
+	};
+
+	@Test
+	void compactOperandsMatchTheTripleLoop() throws LinAlgException {
+		Random rand = new Random(1);
+		ExecutionContext parallel = parallel();
+		for (int[] shape : SHAPES) {
+			Matrix a = TestData.randomMatrix(shape[0], shape[2], rand);
+			Matrix b = TestData.randomMatrix(shape[2], shape[1], rand);
+			Matrix expected = reference(a, b);
+			assertExact(expected, Matrix.Multiply(a, b, ExecutionContext.sequential()));
+			assertExact(expected, Matrix.Multiply(a, b, parallel));
+		}
+	}
+
+	@Test
+	void stridedViewsMatchTheTripleLoop() throws LinAlgException {
+		Random rand = new Random(2);
+		ExecutionContext parallel = parallel();
+		for (int[] shape : SHAPES) {
+			int m = shape[0], n = shape[1], k = shape[2];
+			// A as the transpose of a k x m matrix, B as a block in the middle of a larger one
+			Matrix a = TestData.randomMatrix(k, m, rand).transposeView();
+			Matrix b = TestData.randomMatrix(k + 5, n + 3, rand).subMatrix(2, 1, k, n);
+			Matrix expected = reference(a, b);
+			assertExact(expected, Matrix.Multiply(a, b, ExecutionContext.sequential()));
+			assertExact(expected, Matrix.Multiply(a, b, parallel));
+			// The output as a view too, its surroundings untouched
+			Matrix big = TestData.randomMatrix(m + 2, n + 4, rand);
+			Matrix before = new Matrix(big);
+			Matrix.Multiply(a, b, big.subMatrix(1, 3, m, n), parallel);
+			for (int i = 0; i < m + 2; i++)
+				for (int j = 0; j < n + 4; j++) {
+					boolean inside = i >= 1 && i <= m && j >= 3 && j < n + 3;
+					assertEquals(inside ? expected.get(i - 1, j - 3) : before.get(i, j), big.get(i, j), 0.0);
+				}
+		}
+	}
+
+	@Test
+	void rowAndColumnViewsMatchTheTripleLoop() throws LinAlgException {
+		Random rand = new Random(3);
+		ExecutionContext parallel = parallel();
+		Matrix a = TestData.randomMatrix(70, 300, rand), b = TestData.randomMatrix(300, 90, rand);
+		Matrix row = a.rowView(13), col = b.columnView(41), colT = a.transposeView().columnView(5);
+		Matrix[][] products = { { row, b }, { a, col }, { row, col }, { col, row }, { a.transposeView().transposeView(), colT } };
+		for (Matrix[] p : products) {
+			Matrix expected = reference(p[0], p[1]);
+			assertExact(expected, Matrix.Multiply(p[0], p[1], ExecutionContext.sequential()));
+			assertExact(expected, Matrix.Multiply(p[0], p[1], parallel));
+		}
+	}
+
+	/** A parallel context that splits even small products (into Multiply's output tiles) */
+	private static ExecutionContext parallel() throws LinAlgException {
+		return ExecutionContext.parallel(new ForkJoinPool(3), 64);
+	}
+
+	/** The textbook i-k-j loop, each entry summed in ascending k */
+	private static Matrix reference(Matrix a, Matrix b) throws LinAlgException {
+		int m = a.getNumRows(), n = b.getNumCols(), k = a.getNumCols();
+		double[][] c = new double[m][n];
+		for (int i = 0; i < m; i++)
+			for (int p = 0; p < k; p++) {
+				double aip = a.get(i, p);
+				for (int j = 0; j < n; j++)
+					c[i][j] += aip * b.get(p, j);
+			}
+		Matrix out = new Matrix(m, n);
+		for (int i = 0; i < m; i++)
+			for (int j = 0; j < n; j++)
+				out.set(i, j, c[i][j]);
+		return out;
+	}
+
+	private static void assertExact(Matrix expected, Matrix actual) throws LinAlgException {
+		assertEquals(expected.getNumRows(), actual.getNumRows());
+		assertEquals(expected.getNumCols(), actual.getNumCols());
+		for (int i = 0; i < expected.getNumRows(); i++)
+			for (int j = 0; j < expected.getNumCols(); j++)
+				assertEquals(expected.get(i, j), actual.get(i, j), 0.0);
+	}
+}
@@ -0,0 +1,175 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** GramAccumulator agrees with a direct two-pass computation over the rows held in memory,
+ *   for row counts on both sides of the BLOCK flush, however the rows are fed in or split
+ *   across merged accumulators, and keeps the covariance accurate when the means dwarf the
+ *   spread.
+ *
+ */
+class GramAccumulatorTest {
+
+	private static final int DIM = 5;
+
+	@Test
+	void matchesTwoPassAcrossBlockBoundaries() throws LinAlgException {
+		Random rand = new Random(1);
+		for (int n : new int[] { 2, 63, 64, 65, 129 }) {
+			Matrix X = randomRows(n, 0.0, rand);
+			Vector y = TestData.randomVector(n, rand);
+			GramAccumulator acc = new GramAccumulator(DIM, true);
+			for (int i = 0; i < n; i++) {
+				if (i % 2 == 0)
+					acc.addRow(X.getRow(i), y.get(i));
+				else
+					acc.addRow(X.getRow(i).getValues().clone(), y.get(i));
+			}
+			assertEquals(n, acc.getCount());
+			checkAgainstTwoPass(acc, X, y, 1e-12);
+		}
+	}
+
+	@Test
+	void addRowsMatchesAddRow() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix X = randomRows(150, 3.0, rand);
+		GramAccumulator rows = new GramAccumulator(DIM), block = new GramAccumulator(DIM), strided = new GramAccumulator(DIM);
+		for (int i = 0; i < X.getNumRows(); i++)
+			rows.addRow(X.getRow(i));
+		block.addRows(X);
+		strided.addRows(X.transposeView().transposeView()); // Same rows through the strided copy
+		Matrix XT = X.transpose();
+		GramAccumulator fromView = new GramAccumulator(DIM);
+		fromView.addRows(XT.transposeView()); // Column stride != 1
+		for (GramAccumulator acc : new GramAccumulator[] { block, strided, fromView }) {
+			TestData.assertClose(rows.getGram(), acc.getGram(), 1e-9);
+			TestData.assertClose(rows.getCovariance(), acc.getCovariance(), 1e-12);
+			TestData.assertClose(rows.getMeans(), acc.getMeans(), 1e-12);
+		}
+	}
+
+	@Test
+	void mergeMatchesASingleAccumulator() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix X = randomRows(200, 10.0, rand);
+		Vector y = TestData.randomVector(200, rand);
+		GramAccumulator all = new GramAccumulator(DIM, true);
+		all.addRows(X, y);
+		// Split at 65 and 141: neither part is a whole number of blocks
+		GramAccumulator a = new GramAccumulator(DIM, true), b = new GramAccumulator(DIM, true), c = new GramAccumulator(DIM, true);
+		for (int i = 0; i < 200; i++)
+			(i < 65 ? a : i < 141 ? b : c).addRow(X.getRow(i), y.get(i));
+		a.merge(b);
+		a.merge(c);
+		assertEquals(200, a.getCount());
+		TestData.assertClose(all.getGram(), a.getGram(), 1e-9);
+		TestData.assertClose(all.getCovariance(), a.getCovariance(), 1e-12);
+		TestData.assertClose(all.getMeans(), a.getMeans(), 1e-12);
+		TestData.assertClose(all.getCrossProduct(), a.getCrossProduct(), 1e-9);
+		TestData.assertClose(all.getCrossCovariance(), a.getCrossCovariance(), 1e-12);
+		checkAgainstTwoPass(a, X, y, 1e-12);
+		assertEquals(76, b.getCount()); // The merged-in accumulator is unchanged
+		assertThrows(LinAlgException.class, () -> a.merge(a));
+		assertThrows(LinAlgException.class, () -> a.merge(new GramAccumulator(DIM)));
+	}
+
+	@Test
+	void covarianceStaysAccurateWithALargeMean() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix X = randomRows(1000, 1e8, rand);
+		Vector y = new Vector(1000);
+		for (int i = 0; i < 1000; i++)
+			y.set(i, X.get(i, 0) + rand.nextGaussian()); // Also around 1e8
+		GramAccumulator acc = new GramAccumulator(DIM, true);
+		acc.addRows(X, y);
+		// Raw sums of products would leave no correct digit here: x^2 ~ 1e16 and ulp(1e16) = 2
+		checkAgainstTwoPass(acc, X, y, 1e-7);
+	}
+
+	@Test
+	void resetEmptiesTheAccumulator() throws LinAlgException {
+		Random rand = new Random(5);
+		GramAccumulator acc = new GramAccumulator(DIM);
+		acc.addRows(randomRows(70, 100.0, rand));
+		acc.reset();
+		assertEquals(0, acc.getCount());
+		assertThrows(LinAlgException.class, () -> acc.getMeans());
+		Matrix X = randomRows(3, 0.0, rand);
+		acc.addRows(X);
+		assertThrows(LinAlgException.class, () -> acc.getCrossProduct());
+		checkAgainstTwoPass(acc, X, null, 1e-12);
+	}
+
+	/** Compares every accessor of acc with its direct computation from X (and y, if not null),
+	 *  within tol relative to the largest entry of the expected result */
+	private static void checkAgainstTwoPass(GramAccumulator acc, Matrix X, Vector y, double tol) throws LinAlgException {
+		int n = X.getNumRows(), d = X.getNumCols();
+		double[] mean = new double[d];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < d; j++)
+				mean[j] += X.get(i, j);
+		for (int j = 0; j < d; j++)
+			mean[j] /= n;
+		Matrix gram = new Matrix(d, d), cov = new Matrix(d, d);
+		for (int j = 0; j < d; j++)
+			for (int k = 0; k < d; k++) {
+				double g = 0.0, c = 0.0;
+				for (int i = 0; i < n; i++) {
+					g += X.get(i, j) * X.get(i, k);
+					c += (X.get(i, j) - mean[j]) * (X.get(i, k) - mean[k]);
+				}
+				gram.set(j, k, g);
+				cov.set(j, k, c / (n - 1));
+			}
+		assertClose(gram, acc.getGram(), tol);
+		assertClose(cov, acc.getCovariance(), tol);
+		for (int j = 0; j < d; j++)
+			assertEquals(mean[j], acc.getMeans().get(j), tol * Math.max(1.0, Math.abs(mean[j])));
+		if (y == null)
+			return;
+		double meanY = 0.0;
+		for (int i = 0; i < n; i++)
+			meanY += y.get(i);
+		meanY /= n;
+		Vector cross = acc.getCrossProduct(), crossCov = acc.getCrossCovariance();
+		double crossScale = 0.0, covScale = 0.0;
+		double[] xy = new double[d], cxy = new double[d];
+		for (int j = 0; j < d; j++) {
+			for (int i = 0; i < n; i++) {
+				xy[j] += X.get(i, j) * y.get(i);
+				cxy[j] += (X.get(i, j) - mean[j]) * (y.get(i) - meanY) / (n - 1);
+			}
+			crossScale = Math.max(crossScale, Math.abs(xy[j]));
+			covScale = Math.max(covScale, Math.abs(cxy[j]));
+		}
+		for (int j = 0; j < d; j++) {
+			assertEquals(xy[j], cross.get(j), tol * crossScale);
+			assertEquals(cxy[j], crossCov.get(j), tol * covScale);
+		}
+	}
+
+	private static void assertClose(Matrix expected, Matrix actual, double tol) throws LinAlgException {
+		double scale = 0.0;
+		for (int i = 0; i < expected.getNumRows(); i++)
+			for (int j = 0; j < expected.getNumCols(); j++)
+				scale = Math.max(scale, Math.abs(expected.get(i, j)));
+		TestData.assertClose(expected, actual, tol * scale);
+	}
+
+	/** n rows of correlated Gaussian noise around a common offset */
+	private static Matrix randomRows(int n, double offset, Random rand) throws LinAlgException {
+		Matrix X = new Matrix(n, DIM);
+		for (int i = 0; i < n; i++) {
+			double shared = rand.nextGaussian();
+			for (int j = 0; j < DIM; j++)
+				X.set(i, j, offset + (j + 1) * rand.nextGaussian() + shared * j);
+		}
+		return X;
+	}
+}
@@ -0,0 +1,136 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** The "into" variants of the Vector and Matrix operations: same results as the allocating
+ *   versions, stale contents of out overwritten, and the documented aliasing rules enforced.
+ *
+ */
+class IntoOperationsTest {
+
+	/** A rows x cols Matrix holding garbage, as a reused scratch Matrix would */
+	private static Matrix stale(int rows, int cols) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				m.set(i, j, Double.NaN);
+		return m;
+	}
+
+	/** A Vector of dimension dim holding garbage, as a reused scratch Vector would */
+	private static Vector stale(int dim) throws LinAlgException {
+		Vector v = new Vector(dim);
+		for (int i = 0; i < dim; i++)
+			v.set(i, Double.NaN);
+		return v;
+	}
+
+	@Test
+	void vectorOpsMatchAllocatingVersions() throws LinAlgException {
+		Random rand = new Random(1);
+		Vector a = TestData.randomVector(37, rand);
+		Vector b = TestData.randomVector(37, rand);
+		Vector out = stale(37);
+		a.scalarAdd(1.5, out);
+		assertEquals(a.scalarAdd(1.5), out);
+		a.scalarMult(-2.0, out);
+		assertEquals(a.scalarMult(-2.0), out);
+		a.elementwiseAdd(b, out);
+		assertEquals(a.elementwiseAdd(b), out);
+		a.elementwiseMult(b, out);
+		assertEquals(a.elementwiseMult(b), out);
+	}
+
+	@Test
+	void vectorOpsMayWriteOverAnOperand() throws LinAlgException {
+		Random rand = new Random(2);
+		Vector a = TestData.randomVector(19, rand);
+		Vector b = TestData.randomVector(19, rand);
+		Vector expected = a.elementwiseAdd(b);
+		a.elementwiseAdd(b, a);
+		assertEquals(expected, a);
+		expected = a.elementwiseMult(b);
+		a.elementwiseMult(b, b);
+		assertEquals(expected, b);
+		expected = b.scalarMult(3.0);
+		b.scalarMult(3.0, b);
+		assertEquals(expected, b);
+	}
+
+	@Test
+	void vectorOpsRejectWrongDimension() throws LinAlgException {
+		Vector a = new Vector(4);
+		assertThrows(LinAlgException.class, () -> a.scalarAdd(1.0, new Vector(5)));
+		assertThrows(LinAlgException.class, () -> a.scalarMult(1.0, new Vector(3)));
+		assertThrows(LinAlgException.class, () -> a.elementwiseAdd(new Vector(4), new Vector(5)));
+		assertThrows(LinAlgException.class, () -> a.elementwiseMult(new Vector(5), new Vector(4)));
+	}
+
+	@Test
+	void getRowMatchesAllocatingVersion() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(6, 9, new Random(3));
+		Vector out = stale(9);
+		for (int row = 0; row < 6; row++) {
+			m.getRow(row, out);
+			assertEquals(m.getRow(row), out);
+		}
+		// Strided rows of a transposed view
+		Matrix t = m.transposeView();
+		Vector col = stale(6);
+		t.getRow(4, col);
+		assertEquals(t.getRow(4), col);
+		assertThrows(LinAlgException.class, () -> m.getRow(6, new Vector(9)));
+		assertThrows(LinAlgException.class, () -> m.getRow(0, new Vector(6)));
+	}
+
+	@Test
+	void transposeMatchesAllocatingVersion() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(7, 12, new Random(4));
+		Matrix out = stale(12, 7);
+		m.transpose(out);
+		assertEquals(m.transpose(), out);
+		assertThrows(LinAlgException.class, () -> m.transpose(new Matrix(7, 12)));
+		Matrix square = TestData.randomMatrix(5, 5, new Random(5));
+		assertThrows(LinAlgException.class, () -> square.transpose(square));
+		assertThrows(LinAlgException.class, () -> square.transpose(square.transposeView()));
+	}
+
+	@Test
+	void matrixProductMatchesAllocatingVersion() throws LinAlgException {
+		Random rand = new Random(6);
+		Matrix a = TestData.randomMatrix(33, 21, rand);
+		Matrix b = TestData.randomMatrix(21, 17, rand);
+		Matrix out = stale(33, 17);
+		Matrix.Multiply(a, b, out);
+		assertEquals(Matrix.Multiply(a, b), out);
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(a, b, new Matrix(17, 33)));
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(b, a, new Matrix(21, 21)));
+	}
+
+	@Test
+	void matrixProductRejectsAliasedOutput() throws LinAlgException {
+		Matrix a = TestData.randomMatrix(8, 8, new Random(7));
+		Matrix b = TestData.randomMatrix(8, 8, new Random(8));
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(a, b, a));
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(a, b, b));
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(a, b, b.transposeView()));
+	}
+
+	@Test
+	void matrixVectorProductMatchesAllocatingVersion() throws LinAlgException {
+		Random rand = new Random(9);
+		Matrix m = TestData.randomMatrix(14, 10, rand);
+		Vector v = TestData.randomVector(10, rand);
+		Vector out = stale(14);
+		Matrix.Multiply(m, v, out);
+		assertEquals(Matrix.Multiply(m, v), out);
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(m, v, new Vector(10)));
+		Matrix square = TestData.randomMatrix(10, 10, rand);
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(square, v, v));
+	}
+}
@@ -0,0 +1,166 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** ConjugateGradient, BiCGSTAB and GMRES converge to the direct solution on dense, sparse and
+ *   matrix-free operators, and report convergence honestly.
+ *
+ */
+class IterativeSolverTest {
+
+	/** The n x n 1-D Laplacian tridiag(-1, 2, -1), symmetric positive definite */
+	private static SparseMatrix laplacian(int n) throws LinAlgException {
+		SparseMatrix.Builder b = new SparseMatrix.Builder(n, n);
+		for (int i = 0; i < n; i++) {
+			b.add(i, i, 2.0);
+			if (i > 0)
+				b.add(i, i - 1, -1.0);
+			if (i + 1 < n)
+				b.add(i, i + 1, -1.0);
+		}
+		return b.buildCSR();
+	}
+
+	/** A random nonsymmetric, strictly diagonally dominant n x n Matrix */
+	private static Matrix nonsymmetric(int n, Random rand) throws LinAlgException {
+		Matrix a = TestData.randomMatrix(n, n, rand);
+		for (int i = 0; i < n; i++)
+			a.set(i, i, a.get(i, i) + n);
+		return a;
+	}
+
+	/** Checks that result converged and that x solves A x = b to the solver's tolerance */
+	private static void assertSolves(LinearOperator A, Vector b, Vector x, IterativeSolver.Result result) throws LinAlgException {
+		assertTrue(result.isConverged(), result.toString());
+		Vector r = new Vector(b.getDim());
+		IterativeSolver.residual(A, b, x, r);
+		assertTrue(Vector.Nrm2(r) <= 10 * IterativeSolver.DEFAULT_TOLERANCE * Vector.Nrm2(b), "residual " + Vector.Nrm2(r));
+	}
+
+	@Test
+	void conjugateGradientOnDenseSPD() throws LinAlgException {
+		Random rand = new Random(1);
+		Matrix a = TestData.randomSPD(60, rand);
+		Vector b = TestData.randomVector(60, rand);
+		Vector x = new Vector(60);
+		assertSolves(a, b, x, new ConjugateGradient().solve(a, b, x));
+		TestData.assertClose(a.solve(b), x, 1e-8);
+	}
+
+	@Test
+	void conjugateGradientOnSparseLaplacian() throws LinAlgException {
+		int n = 200;
+		SparseMatrix a = laplacian(n);
+		Vector b = TestData.randomVector(n, new Random(2));
+		Vector x = new Vector(n);
+		IterativeSolver.Result plain = new ConjugateGradient().solve(a, b, x);
+		assertSolves(a, b, x, plain);
+		// In exact arithmetic CG needs at most n iterations
+		assertTrue(plain.getIterations() <= n + n / 2, plain.toString());
+		TestData.assertClose(a.toMatrix().solve(b), x, 1e-6);
+	}
+
+	@Test
+	void jacobiPreconditionerCutsIterations() throws LinAlgException {
+		// A badly scaled SPD matrix: D A0 D for a well conditioned A0
+		Random rand = new Random(3);
+		int n = 80;
+		Matrix a = TestData.randomSPD(n, rand);
+		for (int i = 0; i < n; i++) {
+			double s = Math.pow(10.0, 3.0 * i / n);
+			for (int j = 0; j < n; j++) {
+				a.set(i, j, a.get(i, j) * s);
+				a.set(j, i, a.get(j, i) * s);
+			}
+		}
+		Vector b = TestData.randomVector(n, rand);
+		Vector x1 = new Vector(n), x2 = new Vector(n);
+		IterativeSolver.Result plain = new ConjugateGradient(IterativeSolver.DEFAULT_TOLERANCE, 0).solve(a, b, x1);
+		IterativeSolver.Result jacobi = new ConjugateGradient(IterativeSolver.DEFAULT_TOLERANCE, 0, LinearOperators.jacobi(a)).solve(a, b, x2);
+		assertTrue(jacobi.isConverged(), jacobi.toString());
+		assertTrue(jacobi.getIterations() < plain.getIterations(), jacobi + " vs " + plain);
+	}
+
+	@Test
+	void biCGSTABOnNonsymmetric() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = nonsymmetric(70, rand);
+		Vector b = TestData.randomVector(70, rand);
+		Vector x = new Vector(70);
+		assertSolves(a, b, x, new BiCGSTAB().solve(a, b, x));
+		TestData.assertClose(a.solve(b), x, 1e-8);
+	}
+
+	@Test
+	void gmresOnNonsymmetric() throws LinAlgException {
+		Random rand = new Random(5);
+		Matrix a = nonsymmetric(70, rand);
+		Vector b = TestData.randomVector(70, rand);
+		Vector x = new Vector(70);
+		assertSolves(a, b, x, new GMRES().solve(a, b, x));
+		TestData.assertClose(a.solve(b), x, 1e-8);
+		// A restart shorter than the iteration count still converges on this well conditioned system
+		Vector y = new Vector(70);
+		assertSolves(a, b, y, new GMRES(IterativeSolver.DEFAULT_TOLERANCE, 0, 5).solve(a, b, y));
+	}
+
+	@Test
+	void matrixFreeNormalEquations() throws LinAlgException {
+		// A^T A x = A^T b, with A^T A never formed
+		Random rand = new Random(6);
+		Matrix a = nonsymmetric(40, rand);
+		LinearOperator normal = LinearOperators.compose(LinearOperators.transpose(a), a);
+		Vector b = TestData.randomVector(40, rand);
+		Vector rhs = Matrix.Multiply(a.transpose(), b);
+		Vector x = new Vector(40);
+		assertSolves(normal, rhs, x, new ConjugateGradient().solve(normal, rhs, x));
+		TestData.assertClose(a.solve(b), x, 1e-7);
+	}
+
+	@Test
+	void startsFromTheGivenGuess() throws LinAlgException {
+		Random rand = new Random(7);
+		Matrix a = TestData.randomSPD(30, rand);
+		Vector b = TestData.randomVector(30, rand);
+		Vector x = a.solve(b);
+		IterativeSolver.Result result = new ConjugateGradient().solve(a, b, x);
+		assertTrue(result.isConverged());
+		assertTrue(result.getIterations() <= 1, result.toString());
+	}
+
+	@Test
+	void zeroRightHandSide() throws LinAlgException {
+		Matrix a = TestData.randomSPD(10, new Random(8));
+		Vector x = TestData.randomVector(10, new Random(9));
+		IterativeSolver.Result result = new GMRES().solve(a, new Vector(10), x);
+		assertTrue(result.isConverged());
+		assertEquals(new Vector(10), x);
+	}
+
+	@Test
+	void iterationLimitIsReported() throws LinAlgException {
+		SparseMatrix a = laplacian(100);
+		Vector b = TestData.randomVector(100, new Random(10));
+		IterativeSolver.Result result = new ConjugateGradient(IterativeSolver.DEFAULT_TOLERANCE, 3).solve(a, b, new Vector(100));
+		assertFalse(result.isConverged());
+		assertEquals(3, result.getIterations());
+		assertTrue(result.getRelativeResidual() > IterativeSolver.DEFAULT_TOLERANCE);
+	}
+
+	@Test
+	void invalidArgumentsThrow() throws LinAlgException {
+		ConjugateGradient cg = new ConjugateGradient();
+		assertThrows(LinAlgException.class, () -> cg.solve(new Matrix(3, 4), new Vector(3)));
+		assertThrows(LinAlgException.class, () -> cg.solve(Matrix.GetIdentity(3), new Vector(4)));
+		assertThrows(LinAlgException.class, () -> new ConjugateGradient(0.0, 10));
+		assertThrows(LinAlgException.class, () -> new BiCGSTAB(1e-8, -1));
+		assertThrows(LinAlgException.class, () -> new ConjugateGradient(1e-8, 0, LinearOperators.identity(2)).solve(Matrix.GetIdentity(3), new Vector(3)));
+	}
+}
@@ -0,0 +1,96 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** The operation counters: a Matrix.Multiply moves them by exactly one call of the expected
+ *   size when metrics are on (the build runs the tests with -Dlinalg.metrics=true), leaves them
+ *   untouched when they are off, and reset() clears them.
+ *
+ */
+class LinAlgMetricsTest {
+
+	@Test
+	void multiplyIsCounted() throws LinAlgException {
+		Random rand = new Random(1);
+		Matrix a = TestData.randomMatrix(7, 5, rand), b = TestData.randomMatrix(5, 3, rand);
+		LinAlgMetrics.reset();
+		Matrix.Multiply(a, b);
+		Map<LinAlgMetrics.Op, LinAlgMetrics.OpSnapshot> snapshot = LinAlgMetrics.snapshot();
+		if (!LinAlgMetrics.ENABLED) {
+			assertTrue(snapshot.isEmpty(), snapshot.toString());
+			return;
+		}
+		LinAlgMetrics.OpSnapshot s = snapshot.get(LinAlgMetrics.Op.MATRIX_MULTIPLY);
+		assertEquals(LinAlgMetrics.Op.MATRIX_MULTIPLY, s.getOp());
+		assertEquals(1L, s.getCalls());
+		assertEquals(7L * 5 + 5 * 3 + 7 * 3, s.getElements());
+		assertEquals(2L * 7 * 5 * 3, s.getFlops());
+		assertEquals(8L * 7 * 3, s.getBytesAllocated());
+		assertTrue(s.getTotalNanos() >= 0);
+		long calls = 0;
+		for (long c : s.getLatencyHistogram())
+			calls += c;
+		assertEquals(1L, calls);
+		assertFalse(snapshot.containsKey(LinAlgMetrics.Op.INNER_PROD));
+
+		Matrix.Multiply(a, b);
+		assertEquals(2L, LinAlgMetrics.snapshot().get(LinAlgMetrics.Op.MATRIX_MULTIPLY).getCalls());
+	}
+
+	@Test
+	void resetClearsTheCounters() throws LinAlgException {
+		Random rand = new Random(2);
+		Vector x = TestData.randomVector(10, rand);
+		Vector.InnerProd(x, x);
+		Matrix.Multiply(TestData.randomMatrix(3, 3, rand), TestData.randomMatrix(3, 3, rand));
+		LinAlgMetrics.reset();
+		assertTrue(LinAlgMetrics.snapshot().isEmpty());
+		assertNull(LinAlgMetrics.snapshot().get(LinAlgMetrics.Op.MATRIX_MULTIPLY));
+	}
+
+	@Test
+	void recordFillsEveryCounter() {
+		// record itself does not test ENABLED (its callers do), so this runs either way
+		LinAlgMetrics.reset();
+		long start = System.nanoTime();
+		LinAlgMetrics.record(LinAlgMetrics.Op.GRAM_UPDATE, start, 100L, 250.0);
+		LinAlgMetrics.record(LinAlgMetrics.Op.GRAM_UPDATE, start, 20L, 50.0);
+		LinAlgMetrics.allocated(LinAlgMetrics.Op.GRAM_UPDATE, 64L);
+		LinAlgMetrics.OpSnapshot s = LinAlgMetrics.snapshot().get(LinAlgMetrics.Op.GRAM_UPDATE);
+		assertEquals(2L, s.getCalls());
+		assertEquals(120L, s.getElements());
+		assertEquals(300L, s.getFlops());
+		assertEquals(64L, s.getBytesAllocated());
+		assertTrue(s.getLatencyQuantile(0.5) <= s.getLatencyQuantile(1.0));
+		LinAlgMetrics.reset();
+		assertTrue(LinAlgMetrics.snapshot().isEmpty());
+	}
+
+	@Test
+	void latencyBuckets() {
+		assertEquals(0, LinAlgMetrics.bucket(0L));
+		assertEquals(1, LinAlgMetrics.bucket(1L));
+		assertEquals(2, LinAlgMetrics.bucket(2L));
+		assertEquals(2, LinAlgMetrics.bucket(3L));
+		assertEquals(11, LinAlgMetrics.bucket(1024L));
+		assertEquals(LinAlgMetrics.HISTOGRAM_BUCKETS - 1, LinAlgMetrics.bucket(Long.MAX_VALUE));
+		long[] histogram = new long[LinAlgMetrics.HISTOGRAM_BUCKETS];
+		histogram[3] = 9;   // 9 calls of [4, 8) ns
+		histogram[11] = 1;  // 1 call of [1024, 2048) ns
+		LinAlgMetrics.OpSnapshot s = new LinAlgMetrics.OpSnapshot(LinAlgMetrics.Op.QR, 10, 0, 0, 0, 0, histogram);
+		assertEquals(7L, s.getLatencyQuantile(0.5));
+		assertEquals(7L, s.getLatencyQuantile(0.9));
+		assertEquals(2047L, s.getLatencyQuantile(0.99));
+		assertEquals(0L, new LinAlgMetrics.OpSnapshot(LinAlgMetrics.Op.QR, 0, 0, 0, 0, 0, new long[LinAlgMetrics.HISTOGRAM_BUCKETS]).getLatencyQuantile(0.5));
+		assertArrayEquals(histogram, s.getLatencyHistogram());
+	}
+}
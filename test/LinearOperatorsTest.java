@@ -0,0 +1,119 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** Each LinearOperators factory applies (and applies transposed) like the dense matrix it stands for.
+ *
+ */
+class LinearOperatorsTest {
+
+	/** Checks op.apply and op.applyTranspose against the dense matrix m */
+	private static void assertActsLike(Matrix m, LinearOperator op, Random rand) throws LinAlgException {
+		assertEquals(m.getNumRows(), op.getNumRows());
+		assertEquals(m.getNumCols(), op.getNumCols());
+		Vector x = TestData.randomVector(m.getNumCols(), rand);
+		Vector out = new Vector(m.getNumRows());
+		op.apply(x, out);
+		TestData.assertClose(Matrix.Multiply(m, x), out);
+		Vector y = TestData.randomVector(m.getNumRows(), rand);
+		Vector outT = new Vector(m.getNumCols());
+		op.applyTranspose(y, outT);
+		TestData.assertClose(Matrix.Multiply(m.transpose(), y), outT);
+	}
+
+	/** Returns alpha * a + b (b may be null for alpha * a) */
+	private static Matrix combine(double alpha, Matrix a, Matrix b) throws LinAlgException {
+		Matrix m = new Matrix(a.getNumRows(), a.getNumCols());
+		for (int i = 0; i < a.getNumRows(); i++)
+			for (int j = 0; j < a.getNumCols(); j++)
+				m.set(i, j, alpha * a.get(i, j) + (b == null ? 0.0 : b.get(i, j)));
+		return m;
+	}
+
+	private static Matrix diag(Vector d) throws LinAlgException {
+		Matrix m = new Matrix(d.getDim(), d.getDim());
+		for (int i = 0; i < d.getDim(); i++)
+			m.set(i, i, d.get(i));
+		return m;
+	}
+
+	@Test
+	void identityAndDiagonal() throws LinAlgException {
+		Random rand = new Random(1);
+		assertActsLike(Matrix.GetIdentity(9), LinearOperators.identity(9), rand);
+		Vector d = TestData.randomVector(9, rand);
+		assertActsLike(diag(d), LinearOperators.diagonal(d), rand);
+	}
+
+	@Test
+	void jacobiIsInverseDiagonal() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix a = TestData.randomSPD(8, rand);
+		Vector inv = new Vector(8);
+		for (int i = 0; i < 8; i++)
+			inv.set(i, 1.0 / a.get(i, i));
+		assertActsLike(diag(inv), LinearOperators.jacobi(a), rand);
+		assertActsLike(diag(inv), LinearOperators.jacobi(SparseMatrix.fromMatrix(a, SparseMatrix.Format.CSC)), rand);
+		Matrix zero = Matrix.GetIdentity(3);
+		zero.set(1, 1, 0.0);
+		assertThrows(LinAlgException.class, () -> LinearOperators.jacobi(zero));
+		assertThrows(LinAlgException.class, () -> LinearOperators.jacobi(new Matrix(2, 3)));
+	}
+
+	@Test
+	void scaledTransposedSumAndComposition() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix a = TestData.randomMatrix(6, 4, rand);
+		Matrix b = TestData.randomMatrix(6, 4, rand);
+		Matrix c = TestData.randomMatrix(4, 5, rand);
+		assertActsLike(combine(-2.5, a, null), LinearOperators.scaled(-2.5, a), rand);
+		assertActsLike(a.transpose(), LinearOperators.transpose(a), rand);
+		assertActsLike(combine(1.0, a, b), LinearOperators.sum(a, b), rand);
+		assertActsLike(Matrix.Multiply(a, c), LinearOperators.compose(a, c), rand);
+		// Mixed with a sparse operand
+		assertActsLike(Matrix.Multiply(a, c), LinearOperators.compose(SparseMatrix.fromMatrix(a, SparseMatrix.Format.CSR), c), rand);
+	}
+
+	@Test
+	void operatorsSeeLaterChanges() throws LinAlgException {
+		Vector d = new Vector(3);
+		LinearOperator op = LinearOperators.diagonal(d);
+		d.set(1, 4.0);
+		Vector out = new Vector(3);
+		op.apply(new Vector("[1 1 1]"), out);
+		assertEquals(new Vector("[0 4 0]"), out);
+	}
+
+	@Test
+	void dimensionMismatchThrows() throws LinAlgException {
+		Matrix a = new Matrix(3, 4);
+		assertThrows(LinAlgException.class, () -> LinearOperators.sum(a, new Matrix(4, 3)));
+		assertThrows(LinAlgException.class, () -> LinearOperators.compose(a, a));
+		assertThrows(LinAlgException.class, () -> LinearOperators.identity(0));
+		LinearOperator sum = LinearOperators.sum(a, a);
+		assertThrows(LinAlgException.class, () -> sum.apply(new Vector(3), new Vector(3)));
+		Vector v = new Vector(3);
+		assertThrows(LinAlgException.class, () -> LinearOperators.identity(3).apply(v, v));
+		LinearOperator opaque = new LinearOperator() {
+			@Override
+			public int getNumRows() {
+				return 1;
+			}
+
+			@Override
+			public int getNumCols() {
+				return 1;
+			}
+
+			@Override
+			public void apply(Vector in, Vector out) {
+			}
+		};
+		assertThrows(LinAlgException.class, () -> LinearOperators.transpose(opaque));
+	}
+}
@@ -0,0 +1,114 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/*** Every matrix of a MatrixBatch product or inverse matches Matrix.Multiply or LUDecomposition
+ *   applied to that matrix alone, through the unrolled 1x1 to 4x4 kernels and the general path
+ *   above them, and a parallel context gives bit-for-bit the result of a sequential one.
+ *
+ *   The batch size is prime, so it never divides evenly into the parallel chunks.
+ *
+ */
+class MatrixBatchTest {
+
+	private static final int SIZE = 101;
+
+	@Test
+	void squareProductsMatchMatrixMultiply() throws LinAlgException {
+		Random rand = new Random(1);
+		for (int n = 1; n <= 6; n++) {
+			checkMultiply(randomBatch(SIZE, n, n, rand), randomBatch(SIZE, n, n, rand));
+			checkMultiply(randomBatch(SIZE, n, n, rand), randomBatch(SIZE, n, 1, rand)); // Matrix-vector
+		}
+	}
+
+	@Test
+	void rectangularProductsMatchMatrixMultiply() throws LinAlgException {
+		Random rand = new Random(2);
+		checkMultiply(randomBatch(SIZE, 2, 3, rand), randomBatch(SIZE, 3, 5, rand));
+		checkMultiply(randomBatch(SIZE, 4, 1, rand), randomBatch(SIZE, 1, 4, rand));
+	}
+
+	@Test
+	void inversesMatchLUDecomposition() throws LinAlgException {
+		Random rand = new Random(3);
+		for (int n = 1; n <= 6; n++) {
+			MatrixBatch batch = randomBatch(SIZE, n, n, rand);
+			MatrixBatch inv = batch.inverse(ExecutionContext.sequential());
+			for (int b = 0; b < SIZE; b++) {
+				Matrix expected = new LUDecomposition(batch.getMatrix(b)).inverse();
+				TestData.assertClose(expected, inv.getMatrix(b), 1e-9 * Math.max(1.0, maxAbs(expected)));
+			}
+			assertIdentical(inv, batch.inverse(parallel()));
+		}
+	}
+
+	@Test
+	void singularMembersAreReported() throws LinAlgException {
+		Random rand = new Random(4);
+		for (int n = 1; n <= 6; n++) {
+			MatrixBatch batch = randomBatch(SIZE, n, n, rand);
+			for (int b : new int[] { 5, 60 }) { // The first singular member is the one reported
+				for (int col = 0; col < n; col++)
+					batch.set(b, n - 1, col, 0.0); // A zero row: every determinant formula gives exactly 0
+			}
+			for (ExecutionContext ctx : new ExecutionContext[] { ExecutionContext.sequential(), parallel() }) {
+				LinAlgException e = assertThrows(LinAlgException.class, () -> batch.inverse(ctx));
+				assertEquals("Matrix 5 of the batch is singular", e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	void nonSquareInverseIsRejected() throws LinAlgException {
+		MatrixBatch batch = new MatrixBatch(3, 2, 3);
+		assertThrows(LinAlgException.class, () -> batch.inverse());
+	}
+
+	/** Checks a * x against Matrix.Multiply for every member, and sequential against parallel */
+	private static void checkMultiply(MatrixBatch a, MatrixBatch x) throws LinAlgException {
+		MatrixBatch product = MatrixBatch.Multiply(a, x, ExecutionContext.sequential());
+		for (int b = 0; b < SIZE; b++)
+			TestData.assertClose(Matrix.Multiply(a.getMatrix(b), x.getMatrix(b)), product.getMatrix(b));
+		assertIdentical(product, MatrixBatch.Multiply(a, x, parallel()));
+		MatrixBatch into = new MatrixBatch(SIZE, a.getNumRows(), x.getNumCols());
+		MatrixBatch.Multiply(a, x, into, parallel());
+		assertIdentical(product, into);
+	}
+
+	/** A parallel context that splits even these small batches into many uneven chunks */
+	private static ExecutionContext parallel() throws LinAlgException {
+		return ExecutionContext.parallel(new ForkJoinPool(3), 7);
+	}
+
+	/** Entries in [-1, 1), plus rows on the diagonal of square members so they are well conditioned */
+	private static MatrixBatch randomBatch(int size, int rows, int cols, Random rand) throws LinAlgException {
+		MatrixBatch batch = new MatrixBatch(size, rows, cols);
+		for (int b = 0; b < size; b++)
+			for (int i = 0; i < rows; i++)
+				for (int j = 0; j < cols; j++)
+					batch.set(b, i, j, rand.nextDouble() * 2 - 1 + (i == j && rows == cols ? rows : 0.0));
+		return batch;
+	}
+
+	private static double maxAbs(Matrix m) throws LinAlgException {
+		double max = 0.0;
+		for (int i = 0; i < m.getNumRows(); i++)
+			for (int j = 0; j < m.getNumCols(); j++)
+				max = Math.max(max, Math.abs(m.get(i, j)));
+		return max;
+	}
+
+	private static void assertIdentical(MatrixBatch expected, MatrixBatch actual) throws LinAlgException {
+		for (int b = 0; b < expected.getSize(); b++)
+			for (int i = 0; i < expected.getNumRows(); i++)
+				for (int j = 0; j < expected.getNumCols(); j++)
+					assertEquals(expected.get(b, i, j), actual.get(b, i, j), 0.0);
+	}
+}
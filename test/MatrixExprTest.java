@@ -0,0 +1,149 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** MatrixExpr evaluates to the same values as the eager Matrix calls, and its rewrites
+ *   (matrix-vector products instead of matrix products, transposes as views) are taken.
+ *
+ */
+class MatrixExprTest {
+
+	@Test
+	void productMatchesMultiply() throws LinAlgException {
+		Random rand = new Random(1);
+		Matrix a = TestData.randomMatrix(12, 30, rand);
+		Matrix b = TestData.randomMatrix(30, 5, rand);
+		Matrix c = TestData.randomMatrix(5, 40, rand);
+		Matrix expected = Matrix.Multiply(Matrix.Multiply(a, b), c);
+		// Evaluated in the cheapest order whichever way it was parenthesized
+		TestData.assertClose(expected, MatrixExpr.of(a).multiply(b).multiply(c).eval());
+		TestData.assertClose(expected, MatrixExpr.of(a).multiply(MatrixExpr.of(b).multiply(c)).eval());
+	}
+
+	@Test
+	void transposeMatchesTranspose() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix a = TestData.randomMatrix(7, 9, rand);
+		Matrix b = TestData.randomMatrix(7, 4, rand);
+		assertEquals(a.transpose(), MatrixExpr.of(a).transpose().eval());
+		TestData.assertClose(Matrix.Multiply(a.transpose(), b), MatrixExpr.of(a).transpose().multiply(b).eval());
+		TestData.assertClose(Matrix.Multiply(a.transpose(), b).transpose(),
+				MatrixExpr.of(a).transpose().multiply(b).transpose().eval());
+	}
+
+	@Test
+	void doubleTransposeCancels() throws LinAlgException {
+		MatrixExpr a = MatrixExpr.of(new Matrix(3, 5));
+		assertSame(a, a.transpose().transpose());
+	}
+
+	@Test
+	void evalNeverReturnsAnInput() throws LinAlgException {
+		Matrix a = TestData.randomMatrix(4, 6, new Random(3));
+		Matrix leaf = MatrixExpr.of(a).eval();
+		assertNotSame(a, leaf);
+		assertEquals(a, leaf);
+		leaf.set(0, 0, 42.0);
+		assertEquals(a.getRow(0).get(1), leaf.get(0, 1));
+		assertEquals(a.transpose(), MatrixExpr.of(a).transpose().eval()); // A copy, not the view
+	}
+
+	@Test
+	void productTimesVectorRunsAsMatrixVectorProducts() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomMatrix(15, 25, rand);
+		Matrix b = TestData.randomMatrix(25, 20, rand);
+		Vector x = TestData.randomVector(20, rand);
+		// Exactly the values of A * (B * x), which differ in rounding from (A * B) * x
+		assertEquals(Matrix.Multiply(a, Matrix.Multiply(b, x)), MatrixExpr.of(a).multiply(b).multiply(x).eval());
+		TestData.assertClose(Matrix.Multiply(Matrix.Multiply(a, b), x), MatrixExpr.of(a).multiply(b).multiply(x).eval());
+	}
+
+	@Test
+	void transposedProductTimesVectorRunsAsMatrixVectorProducts() throws LinAlgException {
+		Random rand = new Random(5);
+		Matrix a = TestData.randomMatrix(15, 25, rand);
+		Matrix b = TestData.randomMatrix(25, 20, rand);
+		Vector x = TestData.randomVector(15, rand);
+		// Exactly the values of B^T * (A^T * x), computed on transposed views
+		Vector t = new Vector(25), expected = new Vector(20);
+		Matrix.Gemv(1.0, a.transposeView(), x, 0.0, t);
+		Matrix.Gemv(1.0, b.transposeView(), t, 0.0, expected);
+		VectorExpr e = MatrixExpr.of(a).multiply(b).transpose().multiply(x);
+		assertEquals(expected, e.eval());
+		TestData.assertClose(Matrix.Multiply(Matrix.Multiply(a, b).transpose(), x), e.eval());
+	}
+
+	@Test
+	void nestedTransposedProductsTimesVector() throws LinAlgException {
+		Random rand = new Random(6);
+		Matrix a = TestData.randomMatrix(6, 8, rand);
+		Matrix b = TestData.randomMatrix(8, 10, rand);
+		Matrix c = TestData.randomMatrix(6, 3, rand);
+		Vector x = TestData.randomVector(3, rand);
+		// ((A * B)^T * C) * x = (B^T * A^T * C) * x
+		MatrixExpr e = MatrixExpr.of(a).multiply(b).transpose().multiply(c);
+		Matrix expected = Matrix.Multiply(Matrix.Multiply(a, b).transpose(), c);
+		TestData.assertClose(Matrix.Multiply(expected, x), e.multiply(x).eval());
+		TestData.assertClose(Matrix.Multiply(expected.transpose(), TestData.randomVector(10, new Random(7))),
+				e.transpose().multiply(TestData.randomVector(10, new Random(7))).eval());
+	}
+
+	@Test
+	void matrixVectorProductFeedsFusedLoop() throws LinAlgException {
+		Random rand = new Random(8);
+		Matrix a = TestData.randomMatrix(300, 40, rand);
+		Vector x = TestData.randomVector(40, rand);
+		Vector y = TestData.randomVector(300, rand);
+		Vector expected = Matrix.Multiply(a, x).scalarMult(2.0).elementwiseAdd(y);
+		TestData.assertClose(expected, MatrixExpr.of(a).multiply(x).scalarMult(2.0).elementwiseAdd(y).eval());
+	}
+
+	@Test
+	void reshapingALeafAfterBuildingIsSeen() throws LinAlgException {
+		Random rand = new Random(8);
+		Matrix a = TestData.randomMatrix(2, 3, rand);
+		MatrixExpr t = MatrixExpr.of(a).transpose();
+		MatrixExpr gram = MatrixExpr.of(a).multiply(MatrixExpr.of(a).transpose());
+		a.transposeInPlace(); // Now 3 x 2
+		assertEquals(2, t.getNumRows());
+		assertEquals(3, t.getNumCols());
+		assertEquals(a.transpose(), t.eval());
+		assertEquals(3, gram.getNumRows());
+		TestData.assertClose(Matrix.Multiply(a, a.transpose()), gram.eval());
+		Vector x = TestData.randomVector(2, rand);
+		TestData.assertClose(Matrix.Multiply(Matrix.Multiply(a, a.transpose()), Matrix.Multiply(a, x)), gram.multiply(MatrixExpr.of(a).multiply(x)).eval());
+	}
+
+	@Test
+	void reshapedOperandsThatNoLongerFitThrowOnEval() throws LinAlgException {
+		Random rand = new Random(9);
+		Matrix a = TestData.randomMatrix(2, 3, rand), b = TestData.randomMatrix(3, 4, rand);
+		MatrixExpr product = MatrixExpr.of(a).multiply(b);
+		VectorExpr times = MatrixExpr.of(a).multiply(TestData.randomVector(3, rand));
+		VectorExpr chained = product.multiply(TestData.randomVector(4, rand));
+		a.transposeInPlace(); // 3 x 2: no longer fits b or the vectors
+		assertThrows(IllegalStateException.class, () -> product.eval());
+		assertThrows(IllegalStateException.class, () -> times.eval());
+		assertThrows(IllegalStateException.class, () -> chained.eval());
+		a.transposeInPlace(); // Back to 2 x 3
+		TestData.assertClose(Matrix.Multiply(a, b), product.eval());
+	}
+
+	@Test
+	void dimensionMismatchThrowsWhenBuilt() throws LinAlgException {
+		MatrixExpr a = MatrixExpr.of(new Matrix(3, 4));
+		assertThrows(LinAlgException.class, () -> a.multiply(new Matrix(3, 4)));
+		assertThrows(LinAlgException.class, () -> a.multiply(new Vector(3)));
+		assertThrows(LinAlgException.class, () -> a.transpose().multiply(new Vector(4)));
+		assertEquals(4, a.transpose().getNumRows());
+		assertEquals(3, a.transpose().getNumCols());
+	}
+}
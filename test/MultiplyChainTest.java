@@ -0,0 +1,108 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** Matrix.MultiplyChain and Matrix.power give the values of plain left-to-right multiplication
+ *   whatever order they choose, and always return a new matrix.
+ *
+ */
+class MultiplyChainTest {
+
+	@Test
+	void unevenChainMatchesLeftToRight() throws LinAlgException {
+		Random rand = new Random(1);
+		// The cheapest order is far from left to right on these shapes
+		int[] dims = { 10, 300, 2, 250, 7, 1, 90 };
+		Matrix[] chain = new Matrix[dims.length - 1];
+		for (int i = 0; i < chain.length; i++)
+			chain[i] = TestData.randomMatrix(dims[i], dims[i + 1], rand);
+		Matrix expected = chain[0];
+		for (int i = 1; i < chain.length; i++)
+			expected = Matrix.Multiply(expected, chain[i]);
+		assertClose(expected, Matrix.MultiplyChain(chain));
+		assertClose(expected, Matrix.MultiplyChain(ExecutionContext.parallel(2), chain));
+		// And for every prefix of the chain
+		for (int k = 2; k < chain.length; k++) {
+			Matrix[] prefix = new Matrix[k];
+			System.arraycopy(chain, 0, prefix, 0, k);
+			Matrix left = prefix[0];
+			for (int i = 1; i < k; i++)
+				left = Matrix.Multiply(left, prefix[i]);
+			assertClose(left, Matrix.MultiplyChain(prefix));
+		}
+	}
+
+	@Test
+	void singleMatrixChainIsACopy() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(3, 4, new Random(2));
+		Matrix result = Matrix.MultiplyChain(m);
+		assertNotSame(m, result);
+		assertEquals(m, result);
+		result.set(0, 0, 99.0);
+		assertNotEquals(99.0, m.get(0, 0));
+		Matrix view = m.transposeView();
+		assertEquals(view, Matrix.MultiplyChain(view));
+	}
+
+	@Test
+	void powerZeroAndOne() throws LinAlgException {
+		Matrix m = TestData.randomMatrix(5, 5, new Random(3));
+		assertEquals(Matrix.GetIdentity(5), m.power(0));
+		Matrix one = m.power(1);
+		assertNotSame(m, one);
+		assertEquals(m, one);
+		one.set(1, 1, 99.0);
+		assertNotEquals(99.0, m.get(1, 1));
+	}
+
+	@Test
+	void powerMatchesRepeatedMultiplication() throws LinAlgException {
+		Matrix fib = new Matrix(2, 2);
+		fib.set(0, 0, 1.0);
+		fib.set(0, 1, 1.0);
+		fib.set(1, 0, 1.0);
+		// Fibonacci numbers are exact in doubles up to F(78)
+		Matrix f = fib.power(70);
+		assertEquals(308061521170129.0, f.get(0, 0), 0.0); // F(71)
+		assertEquals(190392490709135.0, f.get(0, 1), 0.0); // F(70)
+		Random rand = new Random(4);
+		Matrix m = TestData.randomMatrix(6, 6, rand);
+		for (int i = 0; i < 6; i++)
+			for (int j = 0; j < 6; j++)
+				m.set(i, j, m.get(i, j) / 3.0); // Spectral radius near 1, so powers stay moderate
+		for (int exponent : new int[] { 2, 3, 37, 64, 100 }) {
+			Matrix expected = m;
+			for (int i = 1; i < exponent; i++)
+				expected = Matrix.Multiply(expected, m);
+			assertClose(expected, m.power(exponent));
+			assertClose(expected, m.power(exponent, ExecutionContext.parallel(2)));
+		}
+	}
+
+	@Test
+	void invalidChainsAndPowersThrow() throws LinAlgException {
+		assertThrows(LinAlgException.class, () -> Matrix.MultiplyChain());
+		Matrix a = new Matrix(2, 3), b = new Matrix(3, 4), c = new Matrix(5, 2);
+		LinAlgException e = assertThrows(LinAlgException.class, () -> Matrix.MultiplyChain(a, b, c));
+		assertEquals("Cannot multiply matrix m1 having 4 columns with matrix m2 having 5 rows", e.getMessage());
+		assertThrows(LinAlgException.class, () -> a.power(2));
+		assertThrows(LinAlgException.class, () -> a.power(0));
+		assertThrows(LinAlgException.class, () -> new Matrix(2, 2).power(-1));
+	}
+
+	/** Equal within a tolerance relative to the largest entry of expected */
+	private static void assertClose(Matrix expected, Matrix actual) throws LinAlgException {
+		double scale = 1.0;
+		for (int i = 0; i < expected.getNumRows(); i++)
+			for (int j = 0; j < expected.getNumCols(); j++)
+				scale = Math.max(scale, Math.abs(expected.get(i, j)));
+		TestData.assertClose(expected, actual, 1e-12 * scale);
+	}
+}
@@ -0,0 +1,117 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** OffHeapMatrix against the heap Matrix operations, and its use as a LinearOperator.
+ *
+ */
+class OffHeapMatrixTest {
+
+	@Test
+	void heapRoundTrip() throws LinAlgException, IOException {
+		Matrix m = TestData.randomMatrix(13, 7, new Random(1));
+		try (OffHeapMatrix off = OffHeapMatrix.fromMatrix(m)) {
+			assertEquals(m, off.toMatrix());
+			assertEquals(m.get(4, 5), off.get(4, 5));
+			assertEquals(m.getRow(6), off.getRow(6));
+			off.set(2, 3, 42.0);
+			assertEquals(42.0, off.toMatrix().get(2, 3));
+		}
+	}
+
+	@Test
+	void fileRoundTrip() throws LinAlgException, IOException {
+		Matrix m = TestData.randomMatrix(9, 11, new Random(2));
+		Path file = Files.createTempFile("offheap", ".lamx");
+		try {
+			try (OffHeapMatrix off = OffHeapMatrix.fromMatrix(m, file)) {
+				assertTrue(off.isMapped());
+			}
+			try (OffHeapMatrix off = OffHeapMatrix.open(file)) {
+				assertEquals(m, off.toMatrix());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	void forgedHeadersAreRejected() throws LinAlgException, IOException {
+		Path file = Files.createTempFile("offheap", ".lamx");
+		try {
+			try (OffHeapMatrix off = OffHeapMatrix.fromMatrix(TestData.randomMatrix(3, 4, new Random(3)), file)) {
+				assertTrue(off.isMapped());
+			}
+			// rows * cols * 8 = 2^63 overflows to a negative size, which any file would exceed
+			long[][] forged = { { 1L << 30, 1L << 30 }, { Integer.MAX_VALUE, Integer.MAX_VALUE }, { 0, 4 }, { 3, -1 }, { 1L << 31, 1 }, { 3, 5 } };
+			for (long[] dims : forged) {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(dims[0]).putLong(dims[1]);
+					header.flip();
+					channel.write(header, 8); // After the magic and the version
+				}
+				LinAlgException e = assertThrows(LinAlgException.class, () -> OffHeapMatrix.open(file));
+				assertTrue(e.getMessage().startsWith("Malformed matrix file"), e.getMessage());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	void productsMatchHeap() throws LinAlgException, IOException {
+		Random rand = new Random(3);
+		Matrix a = TestData.randomMatrix(31, 17, rand);
+		Matrix b = TestData.randomMatrix(17, 23, rand);
+		Vector v = TestData.randomVector(17, rand);
+		try (OffHeapMatrix offA = OffHeapMatrix.fromMatrix(a); OffHeapMatrix offB = OffHeapMatrix.fromMatrix(b);
+				OffHeapMatrix product = OffHeapMatrix.Multiply(offA, offB); OffHeapMatrix transposed = offA.transpose()) {
+			TestData.assertClose(Matrix.Multiply(a, b), product.toMatrix());
+			TestData.assertClose(Matrix.Multiply(a, v), OffHeapMatrix.Multiply(offA, v));
+			assertEquals(a.transpose(), transposed.toMatrix());
+		}
+	}
+
+	@Test
+	void linearOperatorMatchesHeap() throws LinAlgException, IOException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomMatrix(20, 12, rand);
+		Vector x = TestData.randomVector(12, rand);
+		Vector y = TestData.randomVector(20, rand);
+		try (OffHeapMatrix off = OffHeapMatrix.fromMatrix(a)) {
+			LinearOperator op = off;
+			TestData.assertClose(Matrix.Multiply(a, x), Matrix.Multiply(op, x));
+			Vector out = new Vector(12);
+			out.set(0, 99.0); // Stale contents must be overwritten
+			op.applyTranspose(y, out);
+			TestData.assertClose(Matrix.Multiply(a.transpose(), y), out);
+			assertThrows(LinAlgException.class, () -> op.apply(y, new Vector(20)));
+			assertThrows(LinAlgException.class, () -> op.applyTranspose(x, new Vector(12)));
+		}
+	}
+
+	@Test
+	void closedOperandThrows() throws LinAlgException, IOException {
+		OffHeapMatrix open = OffHeapMatrix.allocate(4, 4);
+		OffHeapMatrix closed = OffHeapMatrix.allocate(4, 4);
+		closed.close();
+		assertThrows(LinAlgException.class, () -> OffHeapMatrix.Multiply(open, closed));
+		assertThrows(LinAlgException.class, () -> OffHeapMatrix.Multiply(closed, open));
+		assertThrows(LinAlgException.class, () -> closed.apply(new Vector(4), new Vector(4)));
+		assertThrows(LinAlgException.class, () -> closed.get(0, 0));
+		open.close();
+	}
+}
@@ -0,0 +1,118 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** The QR factorization: Q R reproduces A, Q has orthonormal columns and R is upper
+ *   triangular, unblocked (up to CROSSOVER entries) and in panels of BLOCK columns, including
+ *   a ragged last panel, and its solves and determinant agree with LUDecomposition.
+ *
+ */
+class QRDecompositionTest {
+
+	private static final int B = QRDecomposition.BLOCK;
+
+	/** { rows, cols }: unblocked, then blocked with two panels, a ragged one, several and exactly BLOCK */
+	private static final int[][] SHAPES = { { 1, 1 }, { 5, 3 }, { 40, 40 }, { 300, 270 }, { 2400, B + 1 },
+			{ 800, 3 * B + 5 }, { 420, 420 }, { 3000, B } };
+
+	@Test
+	void shapesCoverBothPaths() {
+		assertTrue((long)SHAPES[3][0] * SHAPES[3][1] <= QRDecomposition.CROSSOVER);
+		for (int s = 4; s < SHAPES.length; s++)
+			assertTrue((long)SHAPES[s][0] * SHAPES[s][1] > QRDecomposition.CROSSOVER);
+	}
+
+	@Test
+	void factorsReproduceA() throws LinAlgException {
+		Random rand = new Random(1);
+		for (int[] shape : SHAPES) {
+			Matrix A = TestData.randomMatrix(shape[0], shape[1], rand);
+			QRDecomposition qr = new QRDecomposition(A);
+			checkFactors(A, qr);
+			assertTrue(qr.isFullRank());
+		}
+	}
+
+	@Test
+	void viewsAreFactoredLikeTheirCopies() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix big = TestData.randomMatrix(420, 600, rand);
+		Matrix view = big.transposeView().subMatrix(3, 5, 500, 350);
+		QRDecomposition qr = new QRDecomposition(view);
+		checkFactors(new Matrix(view), qr);
+		assertEquals(new QRDecomposition(new Matrix(view)).getR(), qr.getR());
+	}
+
+	@Test
+	void solvesMatchLU() throws LinAlgException {
+		Random rand = new Random(3);
+		for (int n : new int[] { 7, B + 1, 390, 6 * B + 9 }) {
+			Matrix A = TestData.randomMatrix(n, n, rand);
+			for (int i = 0; i < n; i++)
+				A.set(i, i, A.get(i, i) + n); // Well conditioned
+			QRDecomposition qr = new QRDecomposition(A);
+			LUDecomposition lu = new LUDecomposition(A);
+			Vector b = TestData.randomVector(n, rand);
+			TestData.assertClose(lu.solve(b), qr.solve(b), 1e-12);
+			Matrix Bm = TestData.randomMatrix(n, 5, rand);
+			TestData.assertClose(lu.solve(Bm), qr.solve(Bm), 1e-12);
+			TestData.assertClose(lu.inverse(), qr.inverse(), 1e-12);
+			double det = lu.det();
+			assertEquals(det, qr.det(), 1e-10 * Math.abs(det));
+		}
+	}
+
+	@Test
+	void leastSquaresResidualIsOrthogonalToColumns() throws LinAlgException {
+		Random rand = new Random(4);
+		for (int[] shape : new int[][] { { 50, 10 }, { 3000, B + 3 }, { 1200, 150 } }) {
+			Matrix A = TestData.randomMatrix(shape[0], shape[1], rand);
+			Vector b = TestData.randomVector(shape[0], rand);
+			Vector x = new QRDecomposition(A).leastSquares(b);
+			Vector r = Matrix.Multiply(A, x);
+			Vector.Axpby(1.0, b, -1.0, r); // r = b - A x
+			Vector normal = Matrix.Multiply(A.transposeView(), r);
+			assertTrue(Vector.Nrm2(normal) < 1e-10 * Vector.Nrm2(b), "A^T r = " + Vector.Nrm2(normal));
+		}
+	}
+
+	@Test
+	void zeroColumnsInLaterPanels() throws LinAlgException {
+		// A zero column reflects nothing; it must not disturb the compact WY update of its panel
+		Random rand = new Random(5);
+		Matrix A = TestData.randomMatrix(1200, 2 * B + 10, rand);
+		for (int col : new int[] { 3, B + 2, 2 * B + 1 })
+			for (int i = 0; i < A.getNumRows(); i++)
+				A.set(i, col, 0.0);
+		QRDecomposition qr = new QRDecomposition(A);
+		checkFactors(A, qr);
+		assertFalse(qr.isFullRank());
+		assertThrows(LinAlgException.class, () -> qr.solve(new Vector(A.getNumRows())));
+	}
+
+	@Test
+	void wideMatrixThrows() {
+		assertThrows(LinAlgException.class, () -> new QRDecomposition(new Matrix(3, 4)));
+	}
+
+	/** Q R == A, Q^T Q == I and R upper triangular, within rounding */
+	private static void checkFactors(Matrix A, QRDecomposition qr) throws LinAlgException {
+		int m = A.getNumRows(), n = A.getNumCols();
+		Matrix Q = qr.getQ(), R = qr.getR();
+		assertEquals(m, Q.getNumRows());
+		assertEquals(n, Q.getNumCols());
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < i; j++)
+				assertEquals(0.0, R.get(i, j), 0.0);
+		double tol = 1e-13 * Math.max(m, 10);
+		TestData.assertClose(A, Matrix.Multiply(Q, R), tol);
+		TestData.assertClose(Matrix.GetIdentity(n), Matrix.Multiply(Q.transposeView(), Q), tol);
+	}
+}
@@ -0,0 +1,147 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** ResultCache returns the cached result only while its operands are unchanged (or are equal
+ *   copies of them), recomputes it after any write to an operand, to a view of one or to the
+ *   result itself, and stays within its byte bound by evicting the least recently used.
+ *
+ */
+class ResultCacheTest {
+
+	@Test
+	void repeatedRequestsAreHits() throws LinAlgException {
+		Random rand = new Random(1);
+		Matrix a = TestData.randomMatrix(5, 4, rand), b = TestData.randomMatrix(4, 3, rand);
+		Vector x = TestData.randomVector(4, rand);
+		ResultCache cache = new ResultCache();
+		Matrix ab = cache.multiply(a, b);
+		TestData.assertClose(Matrix.Multiply(a, b), ab);
+		assertSame(ab, cache.multiply(a, b));
+		Vector ax = cache.multiply(a, x);
+		assertSame(ax, cache.multiply(a, x));
+		assertSame(cache.transpose(a), cache.transpose(a));
+		assertSame(cache.identity(4), cache.identity(4));
+		assertEquals(4, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate());
+		assertEquals(4, cache.size());
+		assertEquals(8L * (5 * 3 + 5 + 4 * 5 + 4 * 4), cache.getBytes());
+	}
+
+	@Test
+	void equalCopiesOfOperandsAreHits() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix a = TestData.randomSPD(6, rand);
+		ResultCache cache = new ResultCache();
+		Matrix inv = cache.inverse(a);
+		LUDecomposition lu = cache.lu(a);
+		CholeskyDecomposition chol = cache.cholesky(a);
+		QRDecomposition qr = cache.qr(a);
+		Matrix copy = new Matrix(a);
+		assertSame(inv, cache.inverse(copy));
+		assertSame(lu, cache.lu(copy));
+		assertSame(chol, cache.cholesky(copy));
+		assertSame(qr, cache.qr(copy));
+		assertEquals(4, cache.getHits());
+	}
+
+	@Test
+	void writingAnOperandInvalidates() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix a = TestData.randomMatrix(4, 4, rand), b = TestData.randomMatrix(4, 4, rand);
+		Vector x = TestData.randomVector(4, rand);
+		ResultCache cache = new ResultCache();
+		Matrix ab = cache.multiply(a, b);
+		Vector ax = cache.multiply(a, x);
+		b.set(1, 2, 10.0);
+		x.set(3, -4.0);
+		Matrix ab2 = cache.multiply(a, b);
+		Vector ax2 = cache.multiply(a, x);
+		assertNotSame(ab, ab2);
+		assertNotSame(ax, ax2);
+		TestData.assertClose(Matrix.Multiply(a, b), ab2);
+		TestData.assertClose(Matrix.Multiply(a, x), ax2);
+		assertEquals(0, cache.getHits());
+		assertEquals(4, cache.size()); // The new content has new keys: the stale entries wait for eviction
+		assertSame(ab2, cache.multiply(a, b));
+	}
+
+	@Test
+	void writingThroughAViewInvalidates() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomMatrix(4, 4, rand);
+		ResultCache cache = new ResultCache();
+		Matrix t = cache.transpose(a);
+		a.subMatrix(1, 1, 2, 2).set(0, 1, 7.0);
+		Matrix t2 = cache.transpose(a);
+		assertNotSame(t, t2);
+		assertEquals(7.0, t2.get(2, 1));
+		a.transposeView().set(3, 0, -1.0);
+		assertEquals(-1.0, cache.transpose(a).get(3, 0));
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	void writingAResultInvalidates() throws LinAlgException {
+		ResultCache cache = new ResultCache();
+		Matrix id = cache.identity(3);
+		id.set(0, 0, 5.0);
+		Matrix id2 = cache.identity(3);
+		assertNotSame(id, id2);
+		assertEquals(Matrix.GetIdentity(3), id2);
+		assertEquals(1, cache.size()); // Same key, so the recomputed result replaced the stale one
+		assertSame(id2, cache.identity(3));
+	}
+
+	@Test
+	void leastRecentlyUsedResultsAreEvicted() throws LinAlgException {
+		Random rand = new Random(5);
+		Matrix a = TestData.randomMatrix(4, 4, rand), b = TestData.randomMatrix(4, 4, rand), c = TestData.randomMatrix(4, 4, rand);
+		ResultCache cache = new ResultCache(2 * 8 * 16); // Room for two 4 x 4 results
+		Matrix ta = cache.transpose(a);
+		cache.transpose(b);
+		assertSame(ta, cache.transpose(a)); // b is now the least recently used
+		cache.transpose(c);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertEquals(cache.getMaxBytes(), cache.getBytes());
+		assertSame(ta, cache.transpose(a));
+		long misses = cache.getMisses();
+		cache.transpose(b);
+		assertEquals(misses + 1, cache.getMisses());
+		assertEquals(2, cache.getEvictions());
+	}
+
+	@Test
+	void resultsLargerThanTheBoundAreNotCached() throws LinAlgException {
+		ResultCache cache = new ResultCache(8 * 15);
+		cache.identity(4);
+		cache.identity(4);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	void clearKeepsStatistics() throws LinAlgException {
+		ResultCache cache = new ResultCache();
+		cache.identity(2);
+		cache.identity(2);
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		cache.identity(2);
+		assertEquals(2, cache.getMisses());
+		assertTrue(cache.toString().contains("1 results"));
+	}
+}
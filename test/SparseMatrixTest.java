@@ -0,0 +1,139 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** SparseMatrix against the dense Matrix operations it replaces, in both CSR and CSC form.
+ *
+ */
+class SparseMatrixTest {
+
+	@Test
+	void builderSumsDuplicatesAndDropsZeros() throws LinAlgException {
+		SparseMatrix m = new SparseMatrix.Builder(3, 4)
+				.add(2, 1, 1.5).add(0, 3, 2.0).add(2, 1, 0.5).add(1, 0, 4.0).add(1, 0, -4.0)
+				.buildCSR();
+		assertEquals(2, m.getNumNonZeros());
+		assertEquals(2.0, m.get(2, 1));
+		assertEquals(2.0, m.get(0, 3));
+		assertEquals(0.0, m.get(1, 0));
+		assertEquals(m, new SparseMatrix.Builder(3, 4).add(0, 3, 2.0).add(2, 1, 2.0).buildCSC());
+	}
+
+	@Test
+	void denseRoundTrip() throws LinAlgException {
+		Matrix dense = TestData.randomSparseMatrix(17, 11, 0.1, new Random(1));
+		for (SparseMatrix.Format format : SparseMatrix.Format.values()) {
+			SparseMatrix m = SparseMatrix.fromMatrix(dense, format);
+			assertEquals(format, m.getFormat());
+			assertEquals(dense, m.toMatrix());
+			assertEquals(dense, m.toCSR().toMatrix());
+			assertEquals(dense, m.toCSC().toMatrix());
+			assertEquals(dense.transpose(), m.transpose().toMatrix());
+		}
+		// A strided view converts like its compact copy
+		assertEquals(dense.transpose(), SparseMatrix.fromMatrix(dense.transposeView(), SparseMatrix.Format.CSR).toMatrix());
+	}
+
+	@Test
+	void matrixVectorProductMatchesDense() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix dense = TestData.randomSparseMatrix(40, 30, 0.05, rand);
+		Vector v = TestData.randomVector(30, rand);
+		Vector expected = Matrix.Multiply(dense, v);
+		for (SparseMatrix.Format format : SparseMatrix.Format.values()) {
+			SparseMatrix m = SparseMatrix.fromMatrix(dense, format);
+			TestData.assertClose(expected, Matrix.Multiply(m, v));
+			Vector out = new Vector(40);
+			out.set(0, 99.0); // Stale contents must be overwritten
+			SparseMatrix.Multiply(m, v, out);
+			TestData.assertClose(expected, out);
+		}
+	}
+
+	@Test
+	void nonFiniteEntriesPropagateInEveryFormat() throws LinAlgException {
+		// Inf and NaN entries in the columns that v zeroes: 0 * Inf is NaN in every format
+		Matrix dense = new Matrix(3, 3);
+		dense.set(0, 0, Double.POSITIVE_INFINITY);
+		dense.set(1, 0, 1.0);
+		dense.set(1, 1, 2.0);
+		dense.set(2, 1, 5.0);
+		dense.set(2, 2, Double.NaN);
+		Vector v = new Vector(3);
+		v.set(1, 3.0);
+		Vector expected = Matrix.Multiply(dense, v);
+		assertTrue(Double.isNaN(expected.get(0)));
+		assertEquals(6.0, expected.get(1), 0.0);
+		assertTrue(Double.isNaN(expected.get(2)));
+		for (SparseMatrix.Format format : SparseMatrix.Format.values()) {
+			Vector actual = Matrix.Multiply(SparseMatrix.fromMatrix(dense, format), v);
+			for (int i = 0; i < 3; i++)
+				assertEquals(expected.get(i), actual.get(i), 0.0, format + " entry " + i);
+		}
+	}
+
+	@Test
+	void transposeProductMatchesDense() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix dense = TestData.randomSparseMatrix(25, 35, 0.1, rand);
+		Vector v = TestData.randomVector(25, rand);
+		Vector out = new Vector(35);
+		SparseMatrix.fromMatrix(dense, SparseMatrix.Format.CSR).applyTranspose(v, out);
+		TestData.assertClose(Matrix.Multiply(dense.transpose(), v), out);
+	}
+
+	@Test
+	void sparseDenseMatrixProductMatchesDense() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomSparseMatrix(20, 30, 0.1, rand);
+		Matrix b = TestData.randomMatrix(30, 7, rand);
+		Matrix expected = Matrix.Multiply(a, b);
+		for (SparseMatrix.Format format : SparseMatrix.Format.values())
+			TestData.assertClose(expected, SparseMatrix.Multiply(SparseMatrix.fromMatrix(a, format), b));
+		TestData.assertClose(expected, SparseMatrix.Multiply(SparseMatrix.fromMatrix(a, SparseMatrix.Format.CSR), new Matrix(b)));
+	}
+
+	@Test
+	void sparseSparseProductMatchesDense() throws LinAlgException {
+		Random rand = new Random(5);
+		Matrix a = TestData.randomSparseMatrix(30, 40, 0.08, rand);
+		Matrix b = TestData.randomSparseMatrix(40, 25, 0.08, rand);
+		SparseMatrix product = SparseMatrix.Multiply(SparseMatrix.fromMatrix(a, SparseMatrix.Format.CSC),
+				SparseMatrix.fromMatrix(b, SparseMatrix.Format.CSR));
+		assertEquals(SparseMatrix.Format.CSR, product.getFormat());
+		TestData.assertClose(Matrix.Multiply(a, b), product.toMatrix());
+	}
+
+	@Test
+	void sparseSparseProductDropsCancellations() throws LinAlgException {
+		SparseMatrix a = new SparseMatrix.Builder(1, 2).add(0, 0, 1.0).add(0, 1, -1.0).buildCSR();
+		SparseMatrix b = new SparseMatrix.Builder(2, 1).add(0, 0, 3.0).add(1, 0, 3.0).buildCSR();
+		assertEquals(0, SparseMatrix.Multiply(a, b).getNumNonZeros());
+	}
+
+	@Test
+	void dimensionMismatchThrows() throws LinAlgException {
+		SparseMatrix m = new SparseMatrix.Builder(3, 4).add(0, 0, 1.0).buildCSR();
+		LinAlgException sparse = assertThrows(LinAlgException.class, () -> Matrix.Multiply(m, new Vector(3)));
+		LinAlgException dense = assertThrows(LinAlgException.class, () -> Matrix.Multiply(m.toMatrix(), new Vector(3)));
+		assertEquals(dense.getMessage(), sparse.getMessage());
+		assertThrows(LinAlgException.class, () -> SparseMatrix.Multiply(m, m));
+		assertThrows(LinAlgException.class, () -> new SparseMatrix.Builder(3, 4).add(3, 0, 1.0));
+		assertThrows(LinAlgException.class, () -> new SparseMatrix.Builder(0, 4));
+	}
+
+	@Test
+	void equalMatricesHashAlike() throws LinAlgException {
+		Matrix dense = TestData.randomSparseMatrix(9, 13, 0.2, new Random(6));
+		SparseMatrix csr = SparseMatrix.fromMatrix(dense, SparseMatrix.Format.CSR);
+		SparseMatrix csc = SparseMatrix.fromMatrix(dense, SparseMatrix.Format.CSC);
+		assertTrue(csr.equals(csc));
+		assertEquals(csr.hashCode(), csc.hashCode());
+	}
+}
@@ -0,0 +1,69 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** SparseVector against the dense Vector and Matrix operations it replaces.
+ *
+ */
+class SparseVectorTest {
+
+	private static Vector randomSparseVector(int dim, double density, Random rand) throws LinAlgException {
+		Vector v = new Vector(dim);
+		for (int i = 0; i < dim; i++)
+			if (rand.nextDouble() < density)
+				v.set(i, 2 * rand.nextDouble() - 1);
+		return v;
+	}
+
+	@Test
+	void builderSortsAndSumsDuplicates() throws LinAlgException {
+		SparseVector v = new SparseVector.Builder(10).add(7, 1.0).add(2, 3.0).add(7, 1.5).add(4, 2.0).add(4, -2.0).build();
+		assertEquals(2, v.getNumNonZeros());
+		assertEquals(3.0, v.get(2));
+		assertEquals(2.5, v.get(7));
+		assertEquals(0.0, v.get(4));
+		assertThrows(LinAlgException.class, () -> v.get(10));
+	}
+
+	@Test
+	void denseRoundTrip() throws LinAlgException {
+		Vector dense = randomSparseVector(50, 0.2, new Random(1));
+		assertEquals(dense, SparseVector.fromVector(dense).toVector());
+	}
+
+	@Test
+	void innerProductsMatchDense() throws LinAlgException {
+		Random rand = new Random(2);
+		Vector a = randomSparseVector(200, 0.1, rand);
+		Vector b = randomSparseVector(200, 0.3, rand);
+		double expected = Vector.InnerProd(a, b);
+		assertEquals(expected, SparseVector.InnerProd(SparseVector.fromVector(a), b), 1e-12);
+		assertEquals(expected, SparseVector.InnerProd(SparseVector.fromVector(a), SparseVector.fromVector(b)), 1e-12);
+		assertThrows(LinAlgException.class, () -> SparseVector.InnerProd(SparseVector.fromVector(a), new Vector(3)));
+	}
+
+	@Test
+	void productsMatchDense() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix dense = TestData.randomSparseMatrix(30, 40, 0.1, rand);
+		Vector v = randomSparseVector(40, 0.15, rand);
+		Vector expected = Matrix.Multiply(dense, v);
+		TestData.assertClose(expected, Matrix.Multiply(dense, SparseVector.fromVector(v)));
+		for (SparseMatrix.Format format : SparseMatrix.Format.values())
+			TestData.assertClose(expected, SparseMatrix.Multiply(SparseMatrix.fromMatrix(dense, format), SparseVector.fromVector(v)).toVector());
+	}
+
+	@Test
+	void dimensionMismatchThrows() throws LinAlgException {
+		SparseVector v = new SparseVector.Builder(3).add(0, 1.0).build();
+		LinAlgException sparse = assertThrows(LinAlgException.class, () -> Matrix.Multiply(new Matrix(2, 4), v));
+		LinAlgException dense = assertThrows(LinAlgException.class, () -> Matrix.Multiply(new Matrix(2, 4), v.toVector()));
+		assertEquals(dense.getMessage(), sparse.getMessage());
+		assertThrows(LinAlgException.class, () -> new SparseVector.Builder(0));
+	}
+}
@@ -0,0 +1,157 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** DiagonalMatrix, TriangularMatrix, SymmetricMatrix and BandedMatrix: their products, transposes
+ *   and operator applications match the dense Matrix they stand for.
+ *
+ */
+class StructuredMatrixTest {
+
+	/** Checks apply, applyTranspose and the vector product of op against the dense matrix m */
+	private static void assertActsLike(Matrix m, LinearOperator op, Random rand) throws LinAlgException {
+		Vector x = TestData.randomVector(m.getNumCols(), rand);
+		Vector out = new Vector(m.getNumRows());
+		op.apply(x, out);
+		TestData.assertClose(Matrix.Multiply(m, x), out);
+		TestData.assertClose(Matrix.Multiply(m, x), Matrix.Multiply(op, x));
+		Vector y = TestData.randomVector(m.getNumRows(), rand);
+		Vector outT = new Vector(m.getNumCols());
+		op.applyTranspose(y, outT);
+		TestData.assertClose(Matrix.Multiply(m.transpose(), y), outT);
+	}
+
+	/** Returns m with the entries outside lo <= j - i <= hi set to 0.0 */
+	private static Matrix band(Matrix m, int lo, int hi) throws LinAlgException {
+		Matrix b = new Matrix(m.getNumRows(), m.getNumCols());
+		for (int i = 0; i < m.getNumRows(); i++)
+			for (int j = 0; j < m.getNumCols(); j++)
+				if (j - i >= lo && j - i <= hi)
+					b.set(i, j, m.get(i, j));
+		return b;
+	}
+
+	@Test
+	void diagonal() throws LinAlgException {
+		Random rand = new Random(1);
+		Vector d = TestData.randomVector(12, rand);
+		DiagonalMatrix diag = new DiagonalMatrix(d);
+		Matrix dense = diag.toMatrix();
+		assertEquals(band(dense, 0, 0), dense);
+		for (int i = 0; i < 12; i++)
+			assertEquals(d.get(i), dense.get(i, i));
+		Matrix m = TestData.randomMatrix(12, 7, rand);
+		Matrix left = TestData.randomMatrix(5, 12, rand);
+		TestData.assertClose(Matrix.Multiply(dense, m), Matrix.Multiply(diag, m));
+		TestData.assertClose(Matrix.Multiply(left, dense), Matrix.Multiply(left, diag));
+		TestData.assertClose(Matrix.Multiply(dense, dense), DiagonalMatrix.Multiply(diag, diag).toMatrix());
+		assertEquals(diag, diag.transpose());
+		assertActsLike(dense, diag, rand);
+		assertThrows(LinAlgException.class, () -> diag.set(0, 1, 1.0));
+		assertThrows(LinAlgException.class, () -> Matrix.Multiply(diag, new Matrix(11, 3)));
+	}
+
+	@Test
+	void triangular() throws LinAlgException {
+		Random rand = new Random(2);
+		Matrix full = TestData.randomMatrix(15, 15, rand);
+		for (boolean upper : new boolean[] { true, false }) {
+			TriangularMatrix t = new TriangularMatrix(full, upper);
+			Matrix dense = upper ? band(full, 0, 14) : band(full, -14, 0);
+			assertEquals(dense, t.toMatrix());
+			assertEquals(dense.transpose(), t.transpose().toMatrix());
+			assertEquals(!upper, t.transpose().isUpper());
+			Matrix m = TestData.randomMatrix(15, 6, rand);
+			Matrix left = TestData.randomMatrix(4, 15, rand);
+			TestData.assertClose(Matrix.Multiply(dense, m), Matrix.Multiply(t, m));
+			TestData.assertClose(Matrix.Multiply(left, dense), Matrix.Multiply(left, t));
+			assertActsLike(dense, t, rand);
+			int outside = upper ? 1 : 0, inside = upper ? 0 : 1;
+			assertThrows(LinAlgException.class, () -> t.set(outside, inside, 1.0));
+		}
+	}
+
+	@Test
+	void triangularSolve() throws LinAlgException {
+		Random rand = new Random(3);
+		Matrix full = TestData.randomMatrix(20, 20, rand);
+		for (int i = 0; i < 20; i++)
+			full.set(i, i, full.get(i, i) + 20); // Well conditioned
+		Vector b = TestData.randomVector(20, rand);
+		for (boolean upper : new boolean[] { true, false }) {
+			TriangularMatrix t = new TriangularMatrix(full, upper);
+			TestData.assertClose(b, Matrix.Multiply(t.toMatrix(), t.solve(b)), 1e-12);
+		}
+		TriangularMatrix singular = new TriangularMatrix(3, true);
+		assertThrows(LinAlgException.class, () -> singular.solve(new Vector(3)));
+	}
+
+	@Test
+	void symmetric() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix a = TestData.randomMatrix(14, 14, rand);
+		Matrix dense = new Matrix(14, 14);
+		for (int i = 0; i < 14; i++)
+			for (int j = 0; j < 14; j++)
+				dense.set(i, j, a.get(i, j) + a.get(j, i));
+		SymmetricMatrix s = new SymmetricMatrix(dense);
+		assertEquals(dense, s.toMatrix());
+		assertEquals(s, s.transpose());
+		s.set(2, 9, 5.0);
+		assertEquals(5.0, s.get(9, 2));
+		dense.set(2, 9, 5.0);
+		dense.set(9, 2, 5.0);
+		Matrix m = TestData.randomMatrix(14, 3, rand);
+		Matrix left = TestData.randomMatrix(6, 14, rand);
+		TestData.assertClose(Matrix.Multiply(dense, m), Matrix.Multiply(s, m));
+		TestData.assertClose(Matrix.Multiply(left, dense), Matrix.Multiply(left, s));
+		assertActsLike(dense, s, rand);
+		assertThrows(LinAlgException.class, () -> new SymmetricMatrix(new Matrix(3, 4)));
+	}
+
+	@Test
+	void banded() throws LinAlgException {
+		Random rand = new Random(5);
+		// Square and both rectangular shapes
+		int[][] shapes = { { 16, 16 }, { 20, 11 }, { 9, 17 } };
+		for (int[] shape : shapes) {
+			Matrix full = TestData.randomMatrix(shape[0], shape[1], rand);
+			BandedMatrix b = new BandedMatrix(full, 2, 3);
+			Matrix dense = band(full, -2, 3);
+			assertEquals(dense, b.toMatrix());
+			assertEquals(dense.transpose(), b.transpose().toMatrix());
+			assertEquals(3, b.transpose().getLowerBandwidth());
+			Matrix m = TestData.randomMatrix(shape[1], 5, rand);
+			Matrix left = TestData.randomMatrix(7, shape[0], rand);
+			TestData.assertClose(Matrix.Multiply(dense, m), Matrix.Multiply(b, m));
+			TestData.assertClose(Matrix.Multiply(left, dense), Matrix.Multiply(left, b));
+			assertActsLike(dense, b, rand);
+			assertThrows(LinAlgException.class, () -> b.set(5, 0, 1.0));
+		}
+	}
+
+	@Test
+	void bandedProductKeepsBand() throws LinAlgException {
+		Random rand = new Random(6);
+		BandedMatrix a = new BandedMatrix(TestData.randomMatrix(18, 18, rand), 1, 2);
+		BandedMatrix b = new BandedMatrix(TestData.randomMatrix(18, 18, rand), 3, 1);
+		BandedMatrix product = BandedMatrix.Multiply(a, b);
+		assertEquals(4, product.getLowerBandwidth());
+		assertEquals(3, product.getUpperBandwidth());
+		TestData.assertClose(Matrix.Multiply(a.toMatrix(), b.toMatrix()), product.toMatrix());
+		assertThrows(LinAlgException.class, () -> BandedMatrix.Multiply(a, new BandedMatrix(17, 18, 1, 1)));
+	}
+
+	@Test
+	void equalStructuresHashAlike() throws LinAlgException {
+		Matrix full = TestData.randomMatrix(6, 6, new Random(7));
+		assertEquals(new TriangularMatrix(full, true).hashCode(), new TriangularMatrix(new TriangularMatrix(full, true)).hashCode());
+		assertEquals(new BandedMatrix(full, 1, 1).hashCode(), new BandedMatrix(new BandedMatrix(full, 1, 1)).hashCode());
+		assertEquals(new SymmetricMatrix(full).hashCode(), new SymmetricMatrix(new SymmetricMatrix(full)).hashCode());
+	}
+}
@@ -0,0 +1,78 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+/*** Random operands and tolerant comparisons shared by the tests.
+ *
+ *   Results computed along different paths (sparse vs dense, blocked vs naive, SIMD vs scalar)
+ *   add the same terms in a different order, so they are compared entry by entry within a
+ *   tolerance relative to the size of the entries rather than with equals().
+ *
+ */
+final class TestData {
+
+	static final double TOL = 1e-10;
+
+	private TestData() {
+	}
+
+	/** A dim-dimensional Vector with entries uniform in [-1, 1) */
+	static Vector randomVector(int dim, Random rand) throws LinAlgException {
+		Vector v = new Vector(dim);
+		for (int i = 0; i < dim; i++)
+			v.set(i, 2 * rand.nextDouble() - 1);
+		return v;
+	}
+
+	/** A rows x cols Matrix with entries uniform in [-1, 1) */
+	static Matrix randomMatrix(int rows, int cols, Random rand) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				m.set(i, j, 2 * rand.nextDouble() - 1);
+		return m;
+	}
+
+	/** A rows x cols Matrix in which each entry is non-zero (uniform in [-1, 1)) with probability density */
+	static Matrix randomSparseMatrix(int rows, int cols, double density, Random rand) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				if (rand.nextDouble() < density)
+					m.set(i, j, 2 * rand.nextDouble() - 1);
+		return m;
+	}
+
+	/** A symmetric positive definite n x n Matrix (B^T B + n I for a random B) */
+	static Matrix randomSPD(int n, Random rand) throws LinAlgException {
+		Matrix b = randomMatrix(n, n, rand);
+		Matrix a = Matrix.Multiply(b.transpose(), b);
+		for (int i = 0; i < n; i++)
+			a.set(i, i, a.get(i, i) + n);
+		return a;
+	}
+
+	static void assertClose(Vector expected, Vector actual) throws LinAlgException {
+		assertClose(expected, actual, TOL);
+	}
+
+	static void assertClose(Vector expected, Vector actual, double tol) throws LinAlgException {
+		assertEquals(expected.getDim(), actual.getDim(), "dimension");
+		for (int i = 0; i < expected.getDim(); i++)
+			assertEquals(expected.get(i), actual.get(i), tol * Math.max(1.0, Math.abs(expected.get(i))), "entry " + i);
+	}
+
+	static void assertClose(Matrix expected, Matrix actual) throws LinAlgException {
+		assertClose(expected, actual, TOL);
+	}
+
+	static void assertClose(Matrix expected, Matrix actual, double tol) throws LinAlgException {
+		assertEquals(expected.getNumRows(), actual.getNumRows(), "rows");
+		assertEquals(expected.getNumCols(), actual.getNumCols(), "columns");
+		for (int i = 0; i < expected.getNumRows(); i++)
+			for (int j = 0; j < expected.getNumCols(); j++)
+				assertEquals(expected.get(i, j), actual.get(i, j), tol * Math.max(1.0, Math.abs(expected.get(i, j))), "entry (" + i + ", " + j + ")");
+	}
+}
@@ -0,0 +1,159 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** Text written by TextCodec reads back: bit for bit at EXACT precision, to the 3 printed
+ *   decimals at FIXED precision (which must match String.format in the ROOT locale exactly,
+ *   rounding ties included), whatever the default locale.
+ *
+ */
+class TextCodecTest {
+
+	/** Values off the fast paths: signed zeros, non-finite, huge, tiny, 17 digits, FIXED ties */
+	private static final double[] SPECIAL = {
+		0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+		1e300, -1e-300, Double.MIN_VALUE, Double.MAX_VALUE, 0.1 + 0.2, Math.PI, -1.0 / 3.0,
+		0.0005, 0.0015, 1.0005, -2.0125, 0.1235, 999.9995, 1e6, 123456.7895, -1e-4
+	};
+
+	@Test
+	void exactRoundTripsBitForBit() throws LinAlgException, IOException {
+		Random rand = new Random(1);
+		Vector v = vectorWith(SPECIAL, 200, rand);
+		StringBuilder sb = new StringBuilder();
+		TextCodec.write(v, sb, TextCodec.Precision.EXACT);
+		assertBits(v, TextCodec.readVector(new StringReader(sb.toString())));
+		Matrix m = new Matrix(SPECIAL.length, 3);
+		for (int i = 0; i < SPECIAL.length; i++) {
+			m.set(i, 0, SPECIAL[i]);
+			m.set(i, 1, rand.nextGaussian() * Math.pow(10, rand.nextInt(40) - 20));
+			m.set(i, 2, -SPECIAL[SPECIAL.length - 1 - i]);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextCodec.write(m.transposeView(), Channels.newChannel(bytes), TextCodec.Precision.EXACT);
+		Matrix back = TextCodec.readMatrix(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(3, back.getNumRows());
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < SPECIAL.length; j++)
+				assertEquals(Double.doubleToLongBits(m.get(j, i)), Double.doubleToLongBits(back.get(i, j)));
+	}
+
+	@Test
+	void fixedMatchesStringFormatAndRoundTrips() throws LinAlgException, IOException {
+		Random rand = new Random(2);
+		Vector v = vectorWith(SPECIAL, 500, rand);
+		for (int i = SPECIAL.length; i < v.getDim(); i += 3)
+			v.set(i, Math.round(v.get(i) * 1000) / 1000.0 + 0.0005); // Near a rounding tie
+		StringBuilder expected = new StringBuilder("[");
+		for (int i = 0; i < v.getDim(); i++)
+			expected.append(String.format(Locale.ROOT, " %6.3f ", v.get(i)));
+		expected.append(" ]");
+		StringBuilder sb = new StringBuilder();
+		TextCodec.write(v, sb, TextCodec.Precision.FIXED);
+		assertEquals(expected.toString(), sb.toString());
+		assertEquals(sb.toString(), v.toString());
+		assertFixed(v, TextCodec.readVector(new StringReader(sb.toString())));
+	}
+
+	@Test
+	void fixedIgnoresTheDefaultLocale() throws LinAlgException, IOException {
+		Locale saved = Locale.getDefault();
+		try {
+			for (Locale locale : new Locale[] { Locale.GERMANY, Locale.FRANCE }) {
+				Locale.setDefault(locale);
+				Vector v = vectorWith(SPECIAL, 50, new Random(3));
+				String text = v.toString();
+				assertFalse(text.contains(","), text);
+				assertFixed(v, new Vector(text));
+				Matrix m = new Matrix(2, 2);
+				m.set(0, 1, 0.0015); // A tie, so the JDK formatter writes it
+				m.set(1, 0, -2.5);
+				Matrix back = TextCodec.readMatrix(new StringReader(m.toString()));
+				assertEquals(0.002, back.get(0, 1));
+				assertEquals(-2.5, back.get(1, 0));
+			}
+		} finally {
+			Locale.setDefault(saved);
+		}
+	}
+
+	@Test
+	void negativeZeroAndNonFiniteValuesSurviveFixed() throws LinAlgException, IOException {
+		Vector v = new Vector(4);
+		v.set(0, -0.0);
+		v.set(1, Double.NaN);
+		v.set(2, Double.NEGATIVE_INFINITY);
+		v.set(3, -1e-9); // Rounds to -0.000, like the JDK
+		String text = v.toString();
+		assertEquals("[ -0.000     NaN  -Infinity  -0.000  ]", text);
+		Vector back = new Vector(text);
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(back.get(0)));
+		assertTrue(Double.isNaN(back.get(1)));
+		assertEquals(Double.NEGATIVE_INFINITY, back.get(2));
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(back.get(3)));
+	}
+
+	@Test
+	void vectorReaderStreamsOneVectorAtATime() throws LinAlgException, IOException {
+		Random rand = new Random(4);
+		Vector[] vectors = new Vector[300];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < vectors.length; i++) {
+			vectors[i] = vectorWith(new double[0], 1 + rand.nextInt(40), rand);
+			TextCodec.write(vectors[i], sb, TextCodec.Precision.EXACT);
+			sb.append(i % 2 == 0 ? "\n" : " \t\r\n  "); // Any whitespace separates vectors
+		}
+		// A small reader buffer would split tokens; this input is many buffers long
+		TextCodec.VectorReader reader = new TextCodec.VectorReader(Channels.newChannel(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8))));
+		for (Vector expected : vectors) {
+			assertTrue(reader.hasNext());
+			assertTrue(reader.hasNext()); // Idempotent
+			assertBits(expected, reader.next());
+		}
+		assertFalse(reader.hasNext());
+		assertEquals(null, reader.readNext());
+		reader.close();
+		TextCodec.VectorReader bad = new TextCodec.VectorReader(new StringReader("[ 1 2 ] [ 3 x ]"));
+		assertBits(new Vector("[1 2]"), bad.next());
+		assertThrows(IllegalStateException.class, () -> bad.hasNext());
+	}
+
+	/** specials followed by random values of widely varying magnitude, dim entries in all */
+	private static Vector vectorWith(double[] specials, int dim, Random rand) throws LinAlgException {
+		Vector v = new Vector(specials.length + dim);
+		for (int i = 0; i < specials.length; i++)
+			v.set(i, specials[i]);
+		for (int i = specials.length; i < v.getDim(); i++)
+			v.set(i, (rand.nextDouble() * 2 - 1) * Math.pow(10, rand.nextInt(9) - 3));
+		return v;
+	}
+
+	private static void assertBits(Vector expected, Vector actual) throws LinAlgException {
+		assertEquals(expected.getDim(), actual.getDim());
+		for (int i = 0; i < expected.getDim(); i++)
+			assertEquals(Double.doubleToLongBits(expected.get(i)), Double.doubleToLongBits(actual.get(i)));
+	}
+
+	/** actual holds expected rounded to 3 decimals, as String.format rounds it */
+	private static void assertFixed(Vector expected, Vector actual) throws LinAlgException {
+		assertEquals(expected.getDim(), actual.getDim());
+		for (int i = 0; i < expected.getDim(); i++) {
+			double rounded = Double.parseDouble(String.format(Locale.ROOT, "%.3f", expected.get(i)));
+			assertEquals(Double.doubleToLongBits(rounded), Double.doubleToLongBits(actual.get(i)));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** Matrix.transpose() and transposeInPlace() (the Transpose kernels) against an element-by-
+ *   element reference: square sizes around the recursion's LEAF, rectangular shapes whose index
+ *   permutation has many cycles, and views with non-unit strides.
+ *
+ */
+class TransposeTest {
+
+	@Test
+	void squareInPlace() throws LinAlgException {
+		Random rand = new Random(1);
+		for (int n : new int[] { 1, 2, 15, 16, 17, 255, 256, 257 }) {
+			Matrix m = TestData.randomMatrix(n, n, rand);
+			Matrix original = new Matrix(m);
+			m.transposeInPlace();
+			assertTransposed(original, m);
+			m.transposeInPlace();
+			assertEquals(original, m);
+		}
+	}
+
+	@Test
+	void rectangularInPlace() throws LinAlgException {
+		Random rand = new Random(2);
+		int[][] shapes = { { 2, 1000 }, { 2, 1023 }, { 1000, 3 }, { 511, 3 }, { 17, 23 }, { 23, 17 }, { 1, 7 }, { 7, 1 }, { 64, 65 }, { 300, 257 } };
+		for (int[] shape : shapes) {
+			Matrix m = TestData.randomMatrix(shape[0], shape[1], rand);
+			Matrix original = new Matrix(m);
+			m.transposeInPlace();
+			assertTransposed(original, m);
+			m.transposeInPlace();
+			assertEquals(original, m);
+		}
+	}
+
+	@Test
+	void squareViewsInPlaceLeaveTheirSurroundings() throws LinAlgException {
+		Random rand = new Random(3);
+		for (int n : new int[] { 1, 16, 17, 40 }) {
+			Matrix big = TestData.randomMatrix(n + 5, n + 9, rand);
+			Matrix before = new Matrix(big);
+			// A transposed block: row stride 1, column stride n + 9
+			Matrix view = big.subMatrix(2, 4, n, n).transposeView();
+			Matrix original = new Matrix(view);
+			view.transposeInPlace();
+			assertTransposed(original, view);
+			for (int i = 0; i < n + 5; i++)
+				for (int j = 0; j < n + 9; j++)
+					if (i < 2 || i >= n + 2 || j < 4 || j >= n + 4)
+						assertEquals(before.get(i, j), big.get(i, j), 0.0);
+		}
+		Matrix rectangular = new Matrix(4, 6).subMatrix(0, 0, 2, 3);
+		assertThrows(LinAlgException.class, () -> rectangular.transposeInPlace());
+	}
+
+	@Test
+	void copiesOfStridedViews() throws LinAlgException {
+		Random rand = new Random(4);
+		Matrix big = TestData.randomMatrix(70, 90, rand);
+		Matrix[] views = {
+			big, big.transposeView(), big.subMatrix(3, 5, 40, 61), big.transposeView().subMatrix(7, 2, 33, 50),
+			big.rowView(11), big.columnView(17), big.subMatrix(1, 1, 1, 1)
+		};
+		for (Matrix view : views) {
+			assertTransposed(view, view.transpose());
+			// Into a strided output, itself a transposed block of a larger matrix
+			Matrix host = new Matrix(view.getNumRows() + 2, view.getNumCols() + 3);
+			Matrix out = host.subMatrix(1, 2, view.getNumRows(), view.getNumCols()).transposeView();
+			view.transpose(out);
+			assertTransposed(view, out);
+		}
+	}
+
+	private static void assertTransposed(Matrix original, Matrix t) throws LinAlgException {
+		assertEquals(original.getNumRows(), t.getNumCols());
+		assertEquals(original.getNumCols(), t.getNumRows());
+		for (int i = 0; i < original.getNumRows(); i++)
+			for (int j = 0; j < original.getNumCols(); j++)
+				assertEquals(original.get(i, j), t.get(j, i), 0.0);
+	}
+}
@@ -0,0 +1,116 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** The fused evaluation of VectorExpr gives exactly the values of the equivalent chain of
+ *   Vector calls, across block boundaries and whatever the shape of the expression.
+ *
+ */
+class VectorExprTest {
+
+	@Test
+	void fusedChainMatchesVectorCalls() throws LinAlgException {
+		Random rand = new Random(1);
+		// Not a multiple of BLOCK, so the last block is partial
+		int n = 3 * VectorExpr.BLOCK + 17;
+		Vector v = TestData.randomVector(n, rand);
+		Vector w = TestData.randomVector(n, rand);
+		Vector u = TestData.randomVector(n, rand);
+		Vector expected = v.scalarMult(2.0).elementwiseAdd(w).elementwiseMult(u).scalarAdd(-0.5);
+		assertEquals(expected, VectorExpr.of(v).scalarMult(2.0).elementwiseAdd(w).elementwiseMult(u).scalarAdd(-0.5).eval());
+	}
+
+	@Test
+	void nestedOperandsMatchVectorCalls() throws LinAlgException {
+		Random rand = new Random(2);
+		Vector v = TestData.randomVector(1000, rand);
+		Vector w = TestData.randomVector(1000, rand);
+		VectorExpr left = VectorExpr.of(v).scalarAdd(1.0).elementwiseMult(w);
+		VectorExpr right = VectorExpr.of(w).scalarMult(3.0).elementwiseAdd(v);
+		Vector expected = v.scalarAdd(1.0).elementwiseMult(w).elementwiseAdd(w.scalarMult(3.0).elementwiseAdd(v));
+		assertEquals(expected, left.elementwiseAdd(right).eval());
+		assertEquals(expected.elementwiseMult(expected), left.elementwiseAdd(right).elementwiseMult(left.elementwiseAdd(right)).eval());
+	}
+
+	@Test
+	void evalIntoMatchesEval() throws LinAlgException {
+		Random rand = new Random(3);
+		Vector v = TestData.randomVector(600, rand);
+		Vector w = TestData.randomVector(600, rand);
+		VectorExpr e = VectorExpr.of(v).elementwiseAdd(w).scalarMult(0.25);
+		Vector out = new Vector(600);
+		e.evalInto(out);
+		assertEquals(e.eval(), out);
+		// An input may be the output: each entry only depends on the same index
+		Vector expected = e.eval();
+		e.evalInto(v);
+		assertEquals(expected, v);
+		assertThrows(LinAlgException.class, () -> e.evalInto(new Vector(599)));
+	}
+
+	@Test
+	void leafEvalIsACopy() throws LinAlgException {
+		Vector v = TestData.randomVector(10, new Random(4));
+		Vector r = VectorExpr.of(v).eval();
+		assertNotSame(v, r);
+		assertEquals(v, r);
+	}
+
+	@Test
+	void changesBeforeEvalAreSeen() throws LinAlgException {
+		Vector v = new Vector(3);
+		VectorExpr e = VectorExpr.of(v).scalarMult(2.0);
+		v.set(1, 5.0);
+		assertEquals(10.0, e.eval().get(1));
+	}
+
+	@Test
+	void growingTheArrayAfterBuildingIsSeen() throws LinAlgException {
+		Vector v = new Vector("[1 2 3]");
+		VectorExpr e = VectorExpr.of(v).scalarMult(2.0);
+		v.ensureCapacity(1000); // Replaces the backing array
+		v.set(0, 100.0);
+		assertEquals(new Vector("[200 4 6]"), e.eval());
+	}
+
+	@Test
+	void trimmingAfterBuildingIsSeen() throws LinAlgException {
+		Vector v = new Vector(3, 1000);
+		v.set(2, 7.0);
+		VectorExpr e = VectorExpr.of(v).scalarAdd(1.0);
+		v.trimToSize();
+		v.set(0, -1.0);
+		assertEquals(new Vector("[0 1 8]"), e.eval());
+	}
+
+	@Test
+	void appendingAfterBuildingChangesTheDimension() throws LinAlgException {
+		Vector v = new Vector("[1 2 3]");
+		Vector w = new Vector("[1 1 1]");
+		VectorExpr scaled = VectorExpr.of(v).scalarMult(2.0);
+		VectorExpr sum = VectorExpr.of(v).elementwiseAdd(w);
+		v.append(5.0);
+		assertEquals(4, scaled.getDim());
+		Vector r = scaled.eval();
+		assertEquals(v.getDim(), r.getDim());
+		assertEquals(new Vector("[2 4 6 10]"), r);
+		// The other operand did not grow with it
+		assertThrows(IllegalStateException.class, () -> sum.eval());
+		assertThrows(IllegalStateException.class, () -> sum.evalInto(new Vector(4)));
+		w.append(0.5);
+		assertEquals(new Vector("[2 3 4 5.5]"), sum.eval());
+	}
+
+	@Test
+	void dimensionMismatchThrowsWhenBuilt() throws LinAlgException {
+		VectorExpr e = VectorExpr.of(new Vector(3));
+		assertThrows(LinAlgException.class, () -> e.elementwiseAdd(new Vector(4)));
+		assertThrows(LinAlgException.class, () -> e.elementwiseMult(VectorExpr.of(new Vector(2))));
+	}
+}
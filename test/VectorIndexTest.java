@@ -0,0 +1,156 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*** VectorIndex returns exactly the top k of a brute-force scan when it stores exact doubles, on
+ *   one thread or many, one query or a batch, and rejects non-finite vectors and queries without
+ *   changing the index.
+ *
+ *   The index spans several BLOCKs with a ragged last one, so the blocked scan and the merge of
+ *   per-thread heaps are both exercised.
+ *
+ */
+class VectorIndexTest {
+
+	private static final int DIM = 13;
+	private static final int SIZE = 3 * VectorIndex.BLOCK + 17;
+	private static final int K = 10;
+
+	@Test
+	void exactTopKMatchesBruteForceForEveryMetric() throws LinAlgException {
+		for (VectorIndex.Metric metric : VectorIndex.Metric.values()) {
+			Random rand = new Random(1);
+			VectorIndex index = new VectorIndex(DIM, metric, VectorIndex.Quantization.NONE);
+			Vector[] stored = new Vector[SIZE];
+			for (int i = 0; i < SIZE; i++)
+				assertEquals(i, index.add(stored[i] = TestData.randomVector(DIM, rand)));
+			for (int q = 0; q < 5; q++) {
+				Vector query = TestData.randomVector(DIM, rand);
+				int[] expected = bruteForce(stored, query, metric, K);
+				VectorIndex.Hit[] hits = index.search(query, K, ExecutionContext.sequential());
+				assertArrayEquals(expected, ids(hits), metric.toString());
+				for (VectorIndex.Hit hit : hits)
+					assertEquals(score(stored[hit.getId()], query, metric), hit.getScore(), TestData.TOL);
+				assertArrayEquals(expected, ids(index.search(query, K, ExecutionContext.parallel(4))), metric.toString());
+			}
+		}
+	}
+
+	@Test
+	void kLargerThanTheIndexReturnsEveryVector() throws LinAlgException {
+		VectorIndex index = new VectorIndex(2);
+		index.add(new Vector("[1 0]"));
+		index.add(new Vector("[2 0]"));
+		assertArrayEquals(new int[] { 1, 0 }, ids(index.search(new Vector("[1 1]"), 5)));
+	}
+
+	@Test
+	void batchSearchMatchesSingleSearches() throws LinAlgException {
+		Random rand = new Random(2);
+		VectorIndex index = new VectorIndex(DIM, VectorIndex.Metric.L2, VectorIndex.Quantization.NONE);
+		index.addAll(TestData.randomMatrix(SIZE, DIM, rand));
+		Matrix queries = TestData.randomMatrix(7, DIM, rand);
+		VectorIndex.Hit[][] batch = index.search(queries, K, ExecutionContext.parallel(3));
+		assertEquals(7, batch.length);
+		for (int q = 0; q < 7; q++)
+			assertArrayEquals(ids(index.search(queries.getRow(q), K)), ids(batch[q]));
+	}
+
+	@Test
+	void removeMovesTheLastVectorAndKeepsIds() throws LinAlgException {
+		VectorIndex index = new VectorIndex(3);
+		int a = index.add(new Vector("[1 0 0]"));
+		int b = index.add(new Vector("[0 1 0]"));
+		int c = index.add(new Vector("[0 0 1]"));
+		assertTrue(index.remove(a));
+		assertFalse(index.remove(a));
+		assertFalse(index.contains(a));
+		assertEquals(2, index.size());
+		assertEquals(new Vector("[0 1 0]"), index.get(b));
+		assertEquals(new Vector("[0 0 1]"), index.get(c));
+		assertArrayEquals(new int[] { c }, ids(index.search(new Vector("[0 0 1]"), 1)));
+		assertThrows(LinAlgException.class, () -> index.get(a));
+	}
+
+	@Test
+	void addAllWithANonFiniteRowAddsNothing() throws LinAlgException {
+		VectorIndex index = new VectorIndex(3);
+		index.add(new Vector("[1 2 3]"));
+		Matrix m = new Matrix(4, 3);
+		for (int i = 0; i < 4; i++)
+			for (int j = 0; j < 3; j++)
+				m.set(i, j, i + j);
+		m.set(2, 1, Double.NaN);
+		assertThrows(LinAlgException.class, () -> index.addAll(m));
+		assertEquals(1, index.size());
+		assertFalse(index.contains(1));
+		m.set(2, 1, 0.0);
+		assertArrayEquals(new int[] { 1, 2, 3, 4 }, index.addAll(m));
+		assertEquals(5, index.size());
+	}
+
+	@Test
+	void nonFiniteQueriesAreRejected() throws LinAlgException {
+		for (VectorIndex.Metric metric : VectorIndex.Metric.values()) {
+			VectorIndex index = new VectorIndex(2, metric, VectorIndex.Quantization.INT8);
+			index.add(new Vector("[1 2]"));
+			Vector bad = new Vector(2);
+			bad.set(1, Double.POSITIVE_INFINITY);
+			assertThrows(LinAlgException.class, () -> index.add(bad));
+			bad.set(1, Double.NaN);
+			assertThrows(LinAlgException.class, () -> index.search(bad, 1));
+			Matrix queries = new Matrix(2, 2);
+			queries.set(1, 0, Double.NEGATIVE_INFINITY);
+			assertThrows(LinAlgException.class, () -> index.search(queries, 1));
+			assertEquals(1, index.size());
+		}
+	}
+
+	/** The ids of the k best of stored for query, best first, ties to the smaller id */
+	private static int[] bruteForce(Vector[] stored, Vector query, VectorIndex.Metric metric, int k) throws LinAlgException {
+		Integer[] order = new Integer[stored.length];
+		double[] scores = new double[stored.length];
+		for (int i = 0; i < stored.length; i++) {
+			order[i] = i;
+			scores[i] = score(stored[i], query, metric);
+		}
+		Comparator<Integer> best = Comparator.comparingDouble(i -> scores[i]);
+		if (metric != VectorIndex.Metric.L2)
+			best = best.reversed();
+		Arrays.sort(order, best.thenComparingInt(i -> i));
+		int[] ids = new int[k];
+		for (int i = 0; i < k; i++)
+			ids[i] = order[i];
+		return ids;
+	}
+
+	private static double score(Vector x, Vector q, VectorIndex.Metric metric) throws LinAlgException {
+		switch (metric) {
+		case COSINE:
+			return Vector.InnerProd(q, x) / Math.sqrt(Vector.InnerProd(q, q) * Vector.InnerProd(x, x));
+		case L2:
+			Vector diff = new Vector(q);
+			diff.elementwiseAddInPlace(x.scalarMult(-1.0));
+			return Vector.InnerProd(diff, diff);
+		default:
+			return Vector.InnerProd(q, x);
+		}
+	}
+
+	private static int[] ids(VectorIndex.Hit[] hits) {
+		int[] ids = new int[hits.length];
+		for (int i = 0; i < hits.length; i++)
+			ids[i] = hits[i].getId();
+		return ids;
+	}
+}
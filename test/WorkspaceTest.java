@@ -0,0 +1,128 @@
+package linalg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/*** Workspace hands out scratch objects of the requested shape and reuses them after release().
+ *
+ */
+class WorkspaceTest {
+
+	@Test
+	void handsOutRequestedShapes() throws LinAlgException {
+		Workspace ws = new Workspace();
+		assertEquals(7, ws.vector(7).getDim());
+		Matrix m = ws.matrix(3, 5);
+		assertEquals(3, m.getNumRows());
+		assertEquals(5, m.getNumCols());
+		assertThrows(LinAlgException.class, () -> ws.vector(0));
+		assertThrows(LinAlgException.class, () -> ws.matrix(3, 0));
+	}
+
+	@Test
+	void liveObjectsAreDistinct() throws LinAlgException {
+		Workspace ws = new Workspace();
+		Vector a = ws.vector(4);
+		Vector b = ws.vector(4);
+		assertNotSame(a, b);
+		assertNotSame(ws.matrix(2, 2), ws.matrix(2, 2));
+	}
+
+	@Test
+	void releasedObjectsAreReused() throws LinAlgException {
+		Workspace ws = new Workspace();
+		int mark = ws.mark();
+		Vector v = ws.vector(4);
+		Matrix m = ws.matrix(2, 3);
+		ws.release(mark);
+		// A steady-state loop gets the same objects back every iteration
+		for (int iter = 0; iter < 3; iter++) {
+			mark = ws.mark();
+			assertSame(v, ws.vector(4));
+			assertSame(m, ws.matrix(2, 3));
+			ws.release(mark);
+		}
+	}
+
+	@Test
+	void marksNest() throws LinAlgException {
+		Workspace ws = new Workspace();
+		Vector outer = ws.vector(3);
+		int inner = ws.mark();
+		Vector scratch = ws.vector(3);
+		ws.release(inner);
+		// The outer vector is still live, only the inner one is free again
+		assertSame(scratch, ws.vector(3));
+		assertNotSame(outer, ws.vector(3));
+		ws.reset();
+		assertSame(outer, ws.vector(3));
+	}
+
+	@Test
+	void shapesArePooledSeparately() throws LinAlgException {
+		Workspace ws = new Workspace();
+		Matrix m23 = ws.matrix(2, 3);
+		Matrix m32 = ws.matrix(3, 2);
+		ws.reset();
+		assertSame(m32, ws.matrix(3, 2));
+		assertSame(m23, ws.matrix(2, 3));
+		for (int dim = 1; dim <= 40; dim++) // Enough shapes to grow the pool map
+			assertEquals(dim, ws.vector(dim).getDim());
+	}
+
+	@Test
+	void reshapedMatrixGoesToItsNewShape() throws LinAlgException {
+		Workspace ws = new Workspace();
+		Matrix m = ws.matrix(2, 3);
+		m.transposeInPlace();
+		ws.reset();
+		Matrix m23 = ws.matrix(2, 3);
+		assertNotSame(m, m23);
+		assertEquals(2, m23.getNumRows());
+		assertEquals(3, m23.getNumCols());
+		assertSame(m, ws.matrix(3, 2));
+	}
+
+	@Test
+	void resizedVectorGoesToItsNewShape() throws LinAlgException {
+		Workspace ws = new Workspace();
+		Vector a = ws.vector(4);
+		Vector b = ws.vector(4);
+		int mark = ws.mark();
+		Vector c = ws.vector(4);
+		c.append(1.0);
+		ws.release(mark);
+		assertSame(c, ws.vector(5));
+		Vector d = ws.vector(4);
+		assertEquals(4, d.getDim());
+		ws.reset();
+		// a and b stay in the pool of dimension 4, c moved to 5
+		assertSame(a, ws.vector(4));
+		assertSame(b, ws.vector(4));
+		assertSame(d, ws.vector(4));
+		assertSame(c, ws.vector(5));
+	}
+
+	@Test
+	void invalidMarkThrows() throws LinAlgException {
+		Workspace ws = new Workspace();
+		ws.vector(2);
+		assertThrows(LinAlgException.class, () -> ws.release(2));
+		assertThrows(LinAlgException.class, () -> ws.release(-1));
+	}
+
+	@Test
+	void getIsPerThread() throws Exception {
+		Workspace mine = Workspace.get();
+		assertSame(mine, Workspace.get());
+		Workspace[] other = new Workspace[1];
+		Thread t = new Thread(() -> other[0] = Workspace.get());
+		t.start();
+		t.join();
+		assertNotSame(mine, other[0]);
+	}
+}